@@ -3,6 +3,11 @@ package com.yisan.audiodemo;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -10,18 +15,41 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.PermissionChecker;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.batch.BatchTranscoder;
+import com.yisan.audiodemo.core.batch.FlacTranscoder;
+import com.yisan.audiodemo.core.batch.SpectrogramTranscoder;
+import com.yisan.audiodemo.core.batch.TranscodeResult;
+import com.yisan.audiodemo.core.batch.Transcoder;
+import com.yisan.audiodemo.core.batch.WavTranscoder;
+import com.yisan.audiodemo.core.catalog.RecordingCatalog;
+import com.yisan.audiodemo.recorder.AacTranscoder;
+import com.yisan.audiodemo.recorder.AudioBuffers;
 import com.yisan.audiodemo.recorder.ByteRecorderActivity;
 import com.yisan.audiodemo.recorder.FileRecorderActivity;
+import com.yisan.audiodemo.recorder.OpusTranscoder;
+import com.yisan.audiodemo.recorder.Recordings;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Android系统录音api
  */
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = "MainActivity";
+
     private TextView mTvToFile, mTvToByte;
+    private TextView mTvTranscodeStatus;
 
     private static final int REQUEST_CODE = 1;
 
+    private Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 正在进行的批量转换，同一时间只有一个
+     */
+    private volatile BatchTranscoder batchTranscoder;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -44,6 +72,46 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        //批量转换录音目录，输出到 audioDemo/converted
+        mTvTranscodeStatus = findViewById(R.id.tv_transcode_status);
+        final File recordings = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/audioDemo/");
+        final File converted = new File(recordings, "converted");
+        findViewById(R.id.tv_transcode_wav).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //重采样成16kHz，峰值归一化到90%
+                startTranscode(recordings, new WavTranscoder(converted, AudioFormatSpec.MONO_16BIT_44100, 16000, 0.9f));
+            }
+        });
+        findViewById(R.id.tv_transcode_m4a).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startTranscode(recordings, new AacTranscoder(converted, AudioFormatSpec.MONO_16BIT_44100, 96000));
+            }
+        });
+        findViewById(R.id.tv_transcode_opus).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //16kHz、24kbps的语音，用于低带宽上传
+                startTranscode(recordings, new OpusTranscoder(converted, AudioFormatSpec.MONO_16BIT_44100, 16000,
+                        24000));
+            }
+        });
+        findViewById(R.id.tv_compact_flac).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //无损压缩，解码校验一致后删除原文件，FLAC直接放在录音目录
+                startTranscode(recordings, new FlacTranscoder(recordings, AudioFormatSpec.MONO_16BIT_44100, true));
+            }
+        });
+        findViewById(R.id.tv_spectrogram).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //以前的录音补上频谱图，和录音放在同一个目录
+                startTranscode(recordings, new SpectrogramTranscoder(recordings, AudioFormatSpec.MONO_16BIT_44100));
+            }
+        });
+
 
         //请求录音动态权限、读写文件
         int check = PermissionChecker.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO);
@@ -59,6 +127,106 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 在后台线程批量转换，转换本身在BatchTranscoder的线程池里并行
+     */
+    private void startTranscode(File directory, Transcoder transcoder) {
+        if (batchTranscoder != null) {
+            return;
+        }
+        final BatchTranscoder batch = new BatchTranscoder(directory, transcoder);
+        batchTranscoder = batch;
+        mTvTranscodeStatus.setText("正在扫描录音目录");
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                //转换不能和录音、界面抢CPU
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                String summary;
+                try {
+                    batch.run(new BatchTranscoder.Listener() {
+                        @Override
+                        public void onFileDone(TranscodeResult result, final int completed, final int total) {
+                            if (result != null) {
+                                Log.d(TAG, result.toString());
+                                //原文件已经删除，目录里登记新文件
+                                if (result.isSuccess() && !result.getInput().exists()) {
+                                    Recordings.replace(result.getInput(), result.getOutput(), "FLAC");
+                                }
+                            }
+                            handler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    mTvTranscodeStatus.setText("已处理 " + completed + "/" + total);
+                                }
+                            });
+                        }
+                    });
+                    summary = "转换 " + batch.getCompletedCount() + " 个，失败 " + batch.getFailedCount()
+                            + " 个，跳过 " + batch.getSkippedCount() + " 个，用时 " + batch.getElapsedMillis()
+                            + " ms，" + (long) (batch.getBytesPerSecond() / 1024) + " KB/s";
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                    summary = "转换失败：" + e.getMessage();
+                } finally {
+                    batchTranscoder = null;
+                }
+                final String text = summary;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mTvTranscodeStatus.setText(text);
+                    }
+                });
+            }
+        }, "batch-transcode");
+        thread.start();
+    }
+
+    /**
+     * 从录音目录统计录音数量和总时长，不遍历录音文件夹
+     */
+    private void showCatalogSummary() {
+        Recordings.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RecordingCatalog catalog = Recordings.catalog();
+                    final String text = "共 " + catalog.size() + " 个录音，总时长 "
+                            + catalog.getTotalDurationMillis() / 1000 + " 秒";
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (batchTranscoder == null) {
+                                mTvTranscodeStatus.setText(text);
+                            }
+                        }
+                    });
+                } catch (IOException e) {
+                    Log.e(TAG, "open catalog fail", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //正在转换的文件做完后停止，下次从进度文件继续
+        BatchTranscoder batch = batchTranscoder;
+        if (batch != null) {
+            batch.cancel();
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        //从录音页面返回时检查缓冲区是否都已归还
+        AudioBuffers.dump();
+        showCatalogSummary();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
@@ -0,0 +1,152 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.codec.AacOutput;
+import com.yisan.audiodemo.core.codec.AdtsHeader;
+import com.yisan.audiodemo.core.codec.PcmFramer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 边录边编码：把PCM数据按1024个采样一帧送进 {@link MediaCodec} 编码成AAC
+ * <p>
+ * 编码器会阻塞等待输入缓冲区，所以要放在 {@link com.yisan.audiodemo.core.AsyncPcmSink}
+ * 的写线程后面，编码卡顿只会让环形缓冲区排队，不会阻塞 AudioRecord.read。
+ * 不是线程安全的，同一时间只能有一个线程调用。
+ */
+public class AacEncoderSink implements PcmSink {
+
+    private static final String MIME = MediaFormat.MIMETYPE_AUDIO_AAC;
+    /**
+     * 等待编码器缓冲区的超时时间
+     */
+    private static final long TIMEOUT_US = 10000;
+
+    private final MediaCodec codec;
+    private final AacOutput output;
+    private final PcmFramer framer;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private boolean configured;
+    private boolean closed;
+
+    public AacEncoderSink(AudioFormatSpec format, int bitRate, AacOutput output) throws IOException {
+        this.output = output;
+        MediaFormat mediaFormat = MediaFormat.createAudioFormat(MIME, format.getSampleRate(),
+                format.getChannelCount());
+        mediaFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        mediaFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        mediaFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE,
+                AdtsHeader.SAMPLES_PER_FRAME * format.getBytesPerFrame());
+        codec = MediaCodec.createEncoderByType(MIME);
+        try {
+            codec.configure(mediaFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+        } catch (RuntimeException e) {
+            codec.release();
+            throw new IOException("aac encoder init fail", e);
+        }
+        framer = new PcmFramer(format, AdtsHeader.SAMPLES_PER_FRAME, new PcmFramer.FrameSink() {
+            @Override
+            public void writeFrame(byte[] frame, int length, long presentationTimeUs) throws IOException {
+                queueInput(frame, length, presentationTimeUs, 0);
+            }
+
+            @Override
+            public void close() throws IOException {
+                //通知编码器数据结束，把剩余的输出取完
+                queueInput(null, 0, framer.getPresentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            }
+        });
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        framer.write(buffer, offset, length);
+    }
+
+    private void queueInput(byte[] frame, int length, long presentationTimeUs, int flags) throws IOException {
+        try {
+            int index;
+            //没有空闲的输入缓冲区时先取输出，让编码器腾出位置
+            while ((index = codec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+                drainOutput(false);
+            }
+            if (length > 0) {
+                ByteBuffer input = codec.getInputBuffer(index);
+                input.clear();
+                input.put(frame, 0, length);
+            }
+            codec.queueInputBuffer(index, 0, length, presentationTimeUs, flags);
+            drainOutput((flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0);
+        } catch (IllegalStateException e) {
+            throw new IOException("aac encode fail", e);
+        }
+    }
+
+    /**
+     * 取出编码结果
+     *
+     * @param endOfStream true时一直等到编码器输出结束标记
+     */
+    private void drainOutput(boolean endOfStream) throws IOException {
+        while (true) {
+            int index = codec.dequeueOutputBuffer(bufferInfo, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                ByteBuffer csd = codec.getOutputFormat().getByteBuffer("csd-0");
+                if (csd != null) {
+                    configure(csd);
+                }
+            } else if (index >= 0) {
+                ByteBuffer data = codec.getOutputBuffer(index);
+                data.position(bufferInfo.offset);
+                data.limit(bufferInfo.offset + bufferInfo.size);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    configure(data);
+                } else if (bufferInfo.size > 0) {
+                    output.writeAccessUnit(data, bufferInfo.presentationTimeUs);
+                }
+                codec.releaseOutputBuffer(index, false);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void configure(ByteBuffer csd) throws IOException {
+        if (configured) {
+            return;
+        }
+        configured = true;
+        byte[] config = new byte[csd.remaining()];
+        csd.duplicate().get(config);
+        output.configure(config);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            framer.close();
+        } finally {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+            codec.release();
+            output.close();
+        }
+    }
+}
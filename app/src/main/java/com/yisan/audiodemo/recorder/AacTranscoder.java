@@ -0,0 +1,83 @@
+package com.yisan.audiodemo.recorder;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.batch.Transcoder;
+import com.yisan.audiodemo.core.io.SeekablePcmReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 批量转换：把裸PCM或wav录音编码成m4a
+ * <p>
+ * 每个文件一个编码器，在转换线程上创建、使用、释放。输出先写到临时文件，完成后改名。
+ */
+public class AacTranscoder implements Transcoder {
+
+    private final File outputDirectory;
+    private final AudioFormatSpec rawFormat;
+    private final int bitRate;
+
+    public AacTranscoder(File outputDirectory, AudioFormatSpec rawFormat, int bitRate) {
+        this.outputDirectory = outputDirectory;
+        this.rawFormat = rawFormat;
+        this.bitRate = bitRate;
+    }
+
+    @Override
+    public boolean accepts(File input) {
+        String name = input.getName();
+        return name.endsWith(".pcm") || name.endsWith(".wav");
+    }
+
+    @Override
+    public File outputFor(File input) {
+        String name = input.getName();
+        return new File(outputDirectory, name.substring(0, name.lastIndexOf('.')) + ".m4a");
+    }
+
+    @Override
+    public long transcode(File input, File output, byte[] buffer) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs() && !outputDirectory.isDirectory()) {
+            throw new IOException("can not create " + outputDirectory);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        SeekablePcmReader reader = SeekablePcmReader.open(input, rawFormat);
+        try {
+            AudioFormatSpec format = reader.getFormat();
+            if (format.isFloat() || format.getBitsPerSample() != 16) {
+                throw new IOException("aac encoder needs 16bit pcm: " + format);
+            }
+            Mp4AacOutput mp4 = new Mp4AacOutput(temp, format.getSampleRate(), format.getChannelCount());
+            AacEncoderSink encoder;
+            try {
+                encoder = new AacEncoderSink(format, bitRate, mp4);
+            } catch (IOException | RuntimeException e) {
+                mp4.close();
+                throw e;
+            }
+            try {
+                int length = buffer.length - buffer.length % format.getBytesPerFrame();
+                int read;
+                while ((read = reader.read(buffer, 0, length)) > 0) {
+                    encoder.write(buffer, 0, read);
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    encoder.close();
+                } catch (IOException ignored) {
+                    //已经失败了
+                }
+                temp.delete();
+                throw e;
+            }
+            encoder.close();
+        } finally {
+            reader.close();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        return output.length();
+    }
+}
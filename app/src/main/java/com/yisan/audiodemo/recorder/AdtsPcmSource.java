@@ -0,0 +1,207 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSource;
+import com.yisan.audiodemo.core.codec.AdtsFrameIndex;
+import com.yisan.audiodemo.core.codec.AdtsHeader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * 播放ADTS(.aac)录音：按 {@link AdtsFrameIndex} 找到开始播放的那一帧，从那里用 {@link MediaCodec} 解码成16bit PCM
+ * <p>
+ * 跳到任意位置不需要从头读文件。AAC的一帧要和前一帧重叠相加才能还原，
+ * 所以从目标帧的前一帧开始送进解码器，丢掉它的输出。
+ * 解码器在 {@link #start} 里创建，创建、读取、关闭必须在同一个线程。
+ */
+public class AdtsPcmSource implements PcmSource {
+
+    private static final String MIME = MediaFormat.MIMETYPE_AUDIO_AAC;
+    /**
+     * 等待解码器缓冲区的超时时间
+     */
+    private static final long TIMEOUT_US = 10000;
+    /**
+     * ADTS帧长度字段是13位
+     */
+    private static final int MAX_FRAME_SIZE = 8192;
+
+    private final File file;
+    private final AdtsFrameIndex index;
+    private final AudioFormatSpec format;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private final byte[] frame = new byte[MAX_FRAME_SIZE];
+
+    private RandomAccessFile in;
+    private MediaCodec codec;
+    private int startFrame;
+    private int nextFrame;
+    private boolean inputDone;
+    private boolean outputDone;
+    /**
+     * 还没读完的解码输出
+     */
+    private ByteBuffer pending;
+    private int pendingIndex = -1;
+
+    private AdtsPcmSource(File file, AdtsFrameIndex index) {
+        this.file = file;
+        this.index = index;
+        this.format = new AudioFormatSpec(index.getSampleRate(), index.getChannelCount(), 16);
+    }
+
+    /**
+     * 扫描帧头建立索引
+     */
+    public static AdtsPcmSource open(File file) throws IOException {
+        AdtsFrameIndex index = AdtsFrameIndex.build(file);
+        if (index.getFrameCount() == 0) {
+            throw new IOException("no adts frame: " + file);
+        }
+        return new AdtsPcmSource(file, index);
+    }
+
+    /**
+     * 解码输出的格式
+     */
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    public long getDurationMillis() {
+        return index.getDurationMillis();
+    }
+
+    /**
+     * 跳到指定时间所在的帧，只能在 {@link #start} 之前调用
+     */
+    public void seekToMillis(long millis) {
+        startFrame = index.frameAtMillis(millis);
+    }
+
+    /**
+     * 跳到总时长的某个比例，0~1，只能在 {@link #start} 之前调用
+     */
+    public void seekToFraction(float fraction) {
+        seekToMillis((long) (getDurationMillis() * (double) Math.max(0, Math.min(1, fraction))));
+    }
+
+    @Override
+    public void start() throws IOException {
+        in = new RandomAccessFile(file, "r");
+        //送进解码器的是去掉ADTS头的裸帧，配置信息从帧头换算
+        MediaFormat mediaFormat = MediaFormat.createAudioFormat(MIME, index.getSampleRate(),
+                index.getChannelCount());
+        mediaFormat.setByteBuffer("csd-0", ByteBuffer.wrap(AdtsHeader.audioSpecificConfig(
+                AdtsHeader.OBJECT_TYPE_AAC_LC, index.getSampleRate(), index.getChannelCount())));
+        codec = MediaCodec.createDecoderByType(MIME);
+        try {
+            codec.configure(mediaFormat, null, null, 0);
+            codec.start();
+        } catch (RuntimeException e) {
+            codec.release();
+            codec = null;
+            throw new IOException("aac decoder init fail", e);
+        }
+        nextFrame = Math.max(0, startFrame - 1);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        try {
+            while (true) {
+                if (pending != null) {
+                    int read = Math.min(length, pending.remaining());
+                    pending.get(buffer, offset, read);
+                    if (!pending.hasRemaining()) {
+                        releasePending();
+                    }
+                    return read;
+                }
+                if (outputDone) {
+                    return -1;
+                }
+                if (!inputDone) {
+                    queueInput();
+                }
+                dequeueOutput();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("aac decode fail", e);
+        }
+    }
+
+    /**
+     * 解码器有空闲的输入缓冲区时送一帧，文件读完时送结束标记
+     */
+    private void queueInput() throws IOException {
+        int inputIndex = codec.dequeueInputBuffer(0);
+        if (inputIndex < 0) {
+            return;
+        }
+        if (nextFrame >= index.getFrameCount()) {
+            codec.queueInputBuffer(inputIndex, 0, 0, index.timeUsOf(nextFrame), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+            return;
+        }
+        long position = index.offsetOf(nextFrame);
+        int frameLength = (int) (index.offsetOf(nextFrame + 1) - position);
+        in.seek(position);
+        in.readFully(frame, 0, frameLength);
+        int headerLength = AdtsHeader.headerLength(frame, 0);
+        ByteBuffer input = codec.getInputBuffer(inputIndex);
+        input.clear();
+        input.put(frame, headerLength, frameLength - headerLength);
+        codec.queueInputBuffer(inputIndex, 0, frameLength - headerLength, index.timeUsOf(nextFrame), 0);
+        nextFrame++;
+    }
+
+    private void dequeueOutput() {
+        int outputIndex = codec.dequeueOutputBuffer(bufferInfo, TIMEOUT_US);
+        if (outputIndex < 0) {
+            return;
+        }
+        if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+            outputDone = true;
+        }
+        //开始帧之前的那一帧只用来预热解码器
+        if (bufferInfo.size > 0 && bufferInfo.presentationTimeUs >= index.timeUsOf(startFrame)) {
+            pending = codec.getOutputBuffer(outputIndex);
+            pending.position(bufferInfo.offset);
+            pending.limit(bufferInfo.offset + bufferInfo.size);
+            pendingIndex = outputIndex;
+        } else {
+            codec.releaseOutputBuffer(outputIndex, false);
+        }
+    }
+
+    private void releasePending() {
+        pending = null;
+        codec.releaseOutputBuffer(pendingIndex, false);
+        pendingIndex = -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    e.printStackTrace();
+                }
+                codec.release();
+                codec = null;
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.yisan.audiodemo.recorder;
+
+import android.util.Log;
+import com.yisan.audiodemo.BuildConfig;
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import com.yisan.audiodemo.core.io.PcmFileWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 进程内共享的音频缓冲区池，录音、播放会话之间复用缓冲区
+ * <p>
+ * debug版本会记录每次借出的调用栈，用于检查没有归还的缓冲区
+ */
+public final class AudioBuffers {
+
+    private static final String TAG = "AudioBuffers";
+
+    /**
+     * 每次读写PCM的缓冲区，也是写线程队列的槽位。
+     * AudioRecord自己的缓冲区已经按 getMinBufferSize 分配，这里保持每次读取 2048 字节，
+     * 延迟更低。录音队列 64 个槽位 + 读缓冲区 + 播放缓冲区，保留 96 个足够复用。
+     */
+    public static final BufferPool<byte[]> PCM = BufferPool.heap(ByteRecorderActivity.BUFFER_SIZE, 96,
+            BuildConfig.DEBUG);
+
+    /**
+     * 写文件时合并小块数据的直接内存缓冲区
+     */
+    public static final BufferPool<ByteBuffer> BLOCKS = BufferPool.direct(PcmFileWriter.DEFAULT_BLOCK_SIZE, 4,
+            BuildConfig.DEBUG);
+
+    private AudioBuffers() {
+    }
+
+    /**
+     * 打印缓冲区池的命中情况和没有归还的缓冲区，只在debug版本有调用栈
+     */
+    public static void dump() {
+        Log.d(TAG, "pcm " + PCM + ", blocks " + BLOCKS);
+        if (BuildConfig.DEBUG) {
+            logLeases(PCM.getOutstandingLeases());
+            logLeases(BLOCKS.getOutstandingLeases());
+        }
+    }
+
+    private static void logLeases(List<Throwable> leases) {
+        for (Throwable lease : leases) {
+            Log.w(TAG, "buffer not released", lease);
+        }
+    }
+}
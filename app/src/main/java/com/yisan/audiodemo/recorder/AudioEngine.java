@@ -0,0 +1,88 @@
+package com.yisan.audiodemo.recorder;
+
+import android.os.Process;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 音频线程：录音和播放各自一个单线程，互不阻塞
+ * <p>
+ * 另外有一个控制线程，录音的启动、停止命令在这里串行执行，
+ * 录音线程被采集循环占用时也能响应命令，主线程不会等待录音器。
+ * <p>
+ * Android的录音、播放api线程不安全，多个线程调用同一个jni对象会奔溃。
+ * 所以录音对象（AudioRecord、MediaRecorder）只在录音线程上使用，
+ * 播放对象（AudioTrack、MediaPlayer）只在播放线程上使用，
+ * 每个native对象仍然只被一个线程访问，但录音时也可以播放。
+ */
+public class AudioEngine {
+
+    private final ExecutorService captureExecutor;
+    private final ExecutorService renderExecutor;
+    private final ExecutorService controlExecutor;
+
+    public AudioEngine() {
+        captureExecutor = Executors.newSingleThreadExecutor(new AudioThreadFactory("audio-capture"));
+        renderExecutor = Executors.newSingleThreadExecutor(new AudioThreadFactory("audio-render"));
+        controlExecutor = Executors.newSingleThreadExecutor(new AudioThreadFactory("audio-control"));
+    }
+
+    /**
+     * 在录音线程执行
+     */
+    public Future<?> submitCapture(Runnable task) {
+        return captureExecutor.submit(task);
+    }
+
+    /**
+     * 在播放线程执行
+     */
+    public Future<?> submitRender(Runnable task) {
+        return renderExecutor.submit(task);
+    }
+
+    /**
+     * 控制线程，用来执行 {@link com.yisan.audiodemo.core.RecorderStateMachine} 的命令
+     */
+    public Executor controlExecutor() {
+        return controlExecutor;
+    }
+
+    /**
+     * 销毁线程，正在执行的任务会收到中断
+     * <p>
+     * 控制线程执行完已经提交的命令再退出，离开页面前的停止命令能正常保存录音
+     */
+    public void shutdownNow() {
+        captureExecutor.shutdownNow();
+        renderExecutor.shutdownNow();
+        controlExecutor.shutdown();
+    }
+
+    /**
+     * 创建音频优先级的线程，减少被其他线程抢占导致的录音丢帧、播放卡顿
+     */
+    private static class AudioThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        AudioThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //线程优先级只能在线程内部设置
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                    r.run();
+                }
+            }, name);
+        }
+    }
+}
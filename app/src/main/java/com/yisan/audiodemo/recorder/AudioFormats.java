@@ -0,0 +1,66 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.AudioFormat;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+
+/**
+ * {@link AudioFormatSpec} 和 android.media.AudioFormat 常量之间的换算
+ */
+final class AudioFormats {
+
+    private AudioFormats() {
+    }
+
+    /**
+     * AudioRecord 的声道配置
+     */
+    static int channelInMask(AudioFormatSpec format) {
+        switch (format.getChannelCount()) {
+            case 1:
+                return AudioFormat.CHANNEL_IN_MONO;
+            case 2:
+                return AudioFormat.CHANNEL_IN_STEREO;
+            default:
+                throw new IllegalArgumentException("unsupported channel count: " + format);
+        }
+    }
+
+    /**
+     * AudioTrack 的声道配置
+     */
+    static int channelOutMask(AudioFormatSpec format) {
+        switch (format.getChannelCount()) {
+            case 1:
+                return AudioFormat.CHANNEL_OUT_MONO;
+            case 2:
+                return AudioFormat.CHANNEL_OUT_STEREO;
+            default:
+                throw new IllegalArgumentException("unsupported channel count: " + format);
+        }
+    }
+
+    /**
+     * 采样编码
+     */
+    static int encoding(AudioFormatSpec format) {
+        if (format.isFloat()) {
+            return AudioFormat.ENCODING_PCM_FLOAT;
+        }
+        switch (format.getBitsPerSample()) {
+            case 8:
+                return AudioFormat.ENCODING_PCM_8BIT;
+            case 16:
+                return AudioFormat.ENCODING_PCM_16BIT;
+            default:
+                throw new IllegalArgumentException("unsupported encoding: " + format);
+        }
+    }
+
+    /**
+     * 能不能按字节直接写给 AudioTrack，浮点数据不能用 byte[] 写入
+     */
+    static boolean isPlayable(AudioFormatSpec format) {
+        return !format.isFloat() && (format.getBitsPerSample() == 8 || format.getBitsPerSample() == 16)
+                && format.getChannelCount() <= 2;
+    }
+}
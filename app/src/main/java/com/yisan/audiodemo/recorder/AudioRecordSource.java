@@ -0,0 +1,65 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.AudioRecord;
+import com.yisan.audiodemo.core.PcmSource;
+import java.io.IOException;
+
+/**
+ * 麦克风数据源，把 {@link AudioRecord} 适配成 {@link PcmSource}
+ * <p>
+ * AudioRecord 在 {@link #start()} 里创建，保证创建、读取、释放都在管线线程上完成
+ */
+public class AudioRecordSource implements PcmSource {
+
+    private final int audioSource;
+    private final int sampleRate;
+    private final int channelConfig;
+    private final int audioFormat;
+    private final int bufferSize;
+
+    private AudioRecord audioRecord;
+
+    public AudioRecordSource(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSize) {
+        this.audioSource = audioSource;
+        this.sampleRate = sampleRate;
+        this.channelConfig = channelConfig;
+        this.audioFormat = audioFormat;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void start() throws IOException {
+        //最小的缓存数据
+        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
+        //buffer不能小于最低要求，也不能小于我们每次读取的大小
+        audioRecord = new AudioRecord(audioSource, sampleRate, channelConfig, audioFormat,
+                Math.max(minBufferSize, bufferSize));
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            throw new IOException("AudioRecord init fail");
+        }
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = audioRecord.read(buffer, offset, length);
+        if (read < 0) {
+            //ERROR_INVALID_OPERATION、ERROR_BAD_VALUE、ERROR_DEAD_OBJECT 等错误码
+            throw new IOException("AudioRecord read fail: " + read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() {
+        if (audioRecord != null) {
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
+}
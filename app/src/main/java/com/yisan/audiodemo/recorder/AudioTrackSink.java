@@ -0,0 +1,130 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.SystemClock;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.IOException;
+
+/**
+ * 播放输出：把PCM数据写给流模式的 {@link AudioTrack}
+ * <p>
+ * 写够一小段预取数据就开始播放，不等整个文件写完，开始播放的延迟和录音长度无关。
+ * AudioTrack在构造时创建，创建、写入、关闭必须在同一个播放线程。
+ */
+public class AudioTrackSink implements PcmSink {
+
+    /**
+     * 关闭时等待已写入数据播放完的最长时间
+     */
+    private static final long DRAIN_TIMEOUT_MS = 2000;
+
+    private final AudioTrack audioTrack;
+    private final int bytesPerFrame;
+    private final int prefetchBytes;
+    private final long requestTimeNanos;
+
+    private long bytesWritten;
+    private boolean playing;
+    private long firstSampleNanos = -1;
+    private boolean closed;
+
+    /**
+     * @param prefetchBytes    写入多少数据后开始播放
+     * @param requestTimeNanos 用户请求播放的时间（System.nanoTime），用来统计首帧延迟
+     */
+    public AudioTrackSink(AudioFormatSpec format, int prefetchBytes, long requestTimeNanos) throws IOException {
+        //音乐类型，扬声器播放
+        int streamType = AudioManager.STREAM_MUSIC;
+        if (!AudioFormats.isPlayable(format)) {
+            throw new IOException("unsupported format: " + format);
+        }
+        int channelConfig = AudioFormats.channelOutMask(format);
+        int audioFormat = AudioFormats.encoding(format);
+        //计算最小buffer大小
+        int minBufferSize = AudioTrack.getMinBufferSize(format.getSampleRate(), channelConfig, audioFormat);
+        //流模式
+        audioTrack = new AudioTrack(streamType, format.getSampleRate(), channelConfig, audioFormat,
+                Math.max(minBufferSize, prefetchBytes), AudioTrack.MODE_STREAM);
+        if (audioTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+            audioTrack.release();
+            throw new IOException("AudioTrack init fail");
+        }
+        this.bytesPerFrame = format.getBytesPerFrame();
+        this.prefetchBytes = prefetchBytes;
+        this.requestTimeNanos = requestTimeNanos;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int ret = audioTrack.write(buffer, offset, length);
+            //检查write返回值，错误处理
+            if (ret < 0) {
+                throw new IOException("AudioTrack write fail: " + ret);
+            }
+            offset += ret;
+            length -= ret;
+            bytesWritten += ret;
+            if (!playing && bytesWritten >= prefetchBytes) {
+                startPlay();
+            }
+        }
+    }
+
+    private void startPlay() {
+        audioTrack.play();
+        playing = true;
+        firstSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * 从请求播放到开始播放的时间，单位毫秒，还没开始播放时返回-1
+     */
+    public long getTimeToFirstSampleMillis() {
+        return firstSampleNanos < 0 ? -1 : (firstSampleNanos - requestTimeNanos) / 1000000;
+    }
+
+    /**
+     * AudioTrack自己统计的卡顿次数，7.0以下不支持，返回-1
+     */
+    public int getUnderrunCount() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return audioTrack.getUnderrunCount();
+        }
+        return -1;
+    }
+
+    /**
+     * 等已经写入的数据播放完，再释放AudioTrack
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!playing && bytesWritten > 0) {
+                //数据不够预取长度，也要播放出来
+                startPlay();
+            }
+            if (playing) {
+                long frames = bytesWritten / bytesPerFrame;
+                long deadline = SystemClock.elapsedRealtime() + DRAIN_TIMEOUT_MS;
+                //播放位置是32位无符号的帧数
+                while ((audioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL) < frames
+                        && SystemClock.elapsedRealtime() < deadline) {
+                    SystemClock.sleep(10);
+                }
+                audioTrack.stop();
+            }
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        } finally {
+            audioTrack.release();
+        }
+    }
+}
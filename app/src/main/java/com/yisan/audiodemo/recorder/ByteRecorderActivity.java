@@ -2,27 +2,59 @@ package com.yisan.audiodemo.recorder;
 
 import android.content.Context;
 import android.content.Intent;
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioRecord;
-import android.media.AudioTrack;
 import android.media.MediaRecorder;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import com.yisan.audiodemo.BuildConfig;
 import com.yisan.audiodemo.R;
+import com.yisan.audiodemo.core.AsyncPcmSink;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.CaptureMetrics;
+import com.yisan.audiodemo.core.PcmPipeline;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.PcmSource;
+import com.yisan.audiodemo.core.ReadAheadPcmSource;
+import com.yisan.audiodemo.core.TeePcmSink;
+import com.yisan.audiodemo.core.catalog.RecordingEntry;
+import com.yisan.audiodemo.core.codec.AdtsWriter;
+import com.yisan.audiodemo.core.codec.FlacReader;
+import com.yisan.audiodemo.core.codec.FlacWriter;
+import com.yisan.audiodemo.core.dsp.AutomaticGainControl;
+import com.yisan.audiodemo.core.dsp.BiquadFilter;
+import com.yisan.audiodemo.core.dsp.DspChain;
+import com.yisan.audiodemo.core.dsp.FormatConverterSink;
+import com.yisan.audiodemo.core.dsp.NoiseGate;
+import com.yisan.audiodemo.core.dsp.ResamplerSink;
+import com.yisan.audiodemo.core.dsp.VadPcmSink;
+import com.yisan.audiodemo.core.io.PcmFileWriter;
+import com.yisan.audiodemo.core.io.PeakFile;
+import com.yisan.audiodemo.core.io.PeakIndexWriter;
+import com.yisan.audiodemo.core.io.SeekablePcmReader;
+import com.yisan.audiodemo.core.io.SpectrogramFile;
+import com.yisan.audiodemo.core.io.SpectrogramWriter;
+import com.yisan.audiodemo.core.io.SegmentIndexWriter;
+import com.yisan.audiodemo.core.io.SegmentedRecording;
+import com.yisan.audiodemo.core.io.SegmentedWavWriter;
+import com.yisan.audiodemo.core.io.WavHeader;
+import com.yisan.audiodemo.core.io.WavWriter;
+import com.yisan.audiodemo.core.upload.HttpChunkTransport;
+import com.yisan.audiodemo.core.upload.StreamingUploadSink;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -35,24 +67,142 @@ public class ByteRecorderActivity extends AppCompatActivity {
     private TextView tvRecorderByte;
 
     private Handler handler = new Handler(Looper.getMainLooper());
-    private ExecutorService executorService;
+    private AudioEngine audioEngine;
 
     //录音状态,volatile保证内存同步，避免出现问题
     private volatile boolean isRecordering = false;
 
     private long startRecorderTime, stopRecorderTime;
-    private File audioFile;
-    private byte[] buffer;
+    /**
+     * 最近一次录完的文件，录音线程写、主线程读
+     */
+    private volatile File audioFile;
     public static final int BUFFER_SIZE = 2048;
-    private FileOutputStream fos;
-    private AudioRecord audioRecord;
+    /**
+     * 写线程队列的槽位数，64 * 2048 字节约 1.5 秒的音频
+     */
+    private static final int WRITER_QUEUE_SLOTS = 64;
+    /**
+     * 录音和播放使用相同的格式：44100Hz、单声道、16bit，采集格式固定，不提供切换
+     */
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    /**
+     * 波形索引、频谱图、静音处理、降噪增益只支持16bit整数PCM，FORMAT换成其他编码时不做这些处理
+     */
+    private static final boolean PCM16 = !FORMAT.isFloat() && FORMAT.getBitsPerSample() == 16;
+    private volatile PcmPipeline pcmPipeline;
     private TextView tvPlay;
+    private TextView tvFormat;
+    private ProgressBar pbLevel;
+    /**
+     * 当前录音的运行指标，录音线程创建，主线程按帧率读取
+     */
+    private volatile CaptureMetrics captureMetrics;
+
+    /**
+     * 录音输出格式：wav、AAC封装成m4a、AAC裸流、分段wav、给语音识别用的16kHz wav、低码率上传用的Opus、无损压缩的FLAC
+     */
+    private static final int OUTPUT_WAV = 0;
+    private static final int OUTPUT_M4A = 1;
+    private static final int OUTPUT_AAC = 2;
+    private static final int OUTPUT_SEGMENTED = 3;
+    private static final int OUTPUT_SPEECH = 4;
+    private static final int OUTPUT_OPUS = 5;
+    private static final int OUTPUT_FLAC = 6;
+    private static final String[] OUTPUT_NAMES = {"WAV", "M4A", "AAC", "分段WAV", "16k WAV", "Opus", "FLAC"};
+    private static final String[] OUTPUT_EXTENSIONS = {".wav", ".m4a", ".aac", ".session", ".wav", ".opus",
+            ".flac"};
+    /**
+     * 语音识别要求的采样率
+     */
+    private static final int SPEECH_SAMPLE_RATE = 16000;
+    /**
+     * Opus语音的码率，16kHz编码
+     */
+    private static final int OPUS_BIT_RATE = 24000;
+    /**
+     * 分段录音每段的时长，崩溃时最多丢失这么长
+     */
+    private static final int SEGMENT_MILLIS = 10000;
+    /**
+     * AAC码率，和文件模式录音一致
+     */
+    private static final int AAC_BIT_RATE = 96000;
+    private volatile int outputFormat = OUTPUT_WAV;
+
+    /**
+     * 静音处理：关闭，或者 {@link VadPcmSink} 的丢弃、压缩、标记模式
+     */
+    private static final int VAD_OFF = -1;
+    private static final String[] VAD_NAMES = {"关闭", "丢弃", "压缩", "标记"};
+    /**
+     * 压缩模式下每段静音保留的时长
+     */
+    private static final int VAD_MAX_SILENCE_MILLIS = 300;
+    /**
+     * 高通截止频率，低于语音基频
+     */
+    private static final float HIGH_PASS_HZ = 80f;
+    private volatile int vadMode = VAD_OFF;
+    private TextView tvVad;
+    /**
+     * 采集线程上原地做高通、噪声门和自动增益，录完不需要再处理一遍文件
+     */
+    private volatile boolean dspEnabled;
+    private TextView tvDsp;
+    /**
+     * 录音时同时生成频谱图，每帧都要做一次FFT，默认关闭
+     */
+    private volatile boolean spectrogramEnabled;
+    private TextView tvSpectrogram;
 
     /**
      * 必须使用volatile保证主线程和子线程改变变量时候、一致。
      */
     private volatile boolean isPlaying = false;
-    private AudioTrack audioTrack;
+    private volatile PcmPipeline playPipeline;
+    private SeekBar sbPosition;
+    /**
+     * 从录音的哪个位置开始播放，0~1
+     */
+    private volatile float playStartFraction = 0;
+
+    /**
+     * 拆分完成后在主线程显示结果
+     */
+    private final Recordings.SplitListener splitListener = new Recordings.SplitListener() {
+        @Override
+        public void onSplitFinished(final File first, final File second, final Exception error) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    tvDesc_.setText(error == null ? "已拆分为 " + first.getName() + " 和 " + second.getName()
+                            : "拆分失败：" + error.getMessage());
+                }
+            });
+        }
+    };
+    /**
+     * 播放中拖动了位置，当前播放结束后从新位置重新开始
+     */
+    private volatile boolean restartPlay = false;
+    /**
+     * 预读队列的槽位数，16 * 2048 字节约 370ms 的音频
+     */
+    private static final int READ_AHEAD_SLOTS = 16;
+    /**
+     * 写给AudioTrack多少数据后开始播放，2048 字节约 23ms
+     */
+    private static final int PREFETCH_BYTES = BUFFER_SIZE;
+    /**
+     * 拖动时预览的缓冲区个数，3 * 2048 字节约 70ms
+     */
+    private static final int SCRUB_BUFFERS = 3;
+    /**
+     * 拖动到的位置，0~1，播放线程只预览最新的位置
+     */
+    private volatile float scrubFraction;
+    private final AtomicBoolean scrubPending = new AtomicBoolean();
 
     public static void show(Context context) {
         context.startActivity(new Intent(context, ByteRecorderActivity.class));
@@ -67,11 +217,29 @@ public class ByteRecorderActivity extends AppCompatActivity {
         tvDesc_ = findViewById(R.id.tv_desc_);
         tvRecorderByte = findViewById(R.id.tv_recorder_byte);
         tvPlay = findViewById(R.id.tv_play);
-
-        //读写音频数据的缓冲区
-        buffer = new byte[BUFFER_SIZE];
-        //线程池单线程（不能使用多线程）、防止播放的Jni函数奔溃
-        executorService = Executors.newSingleThreadExecutor();
+        tvFormat = findViewById(R.id.tv_format);
+        sbPosition = findViewById(R.id.sb_position);
+        pbLevel = findViewById(R.id.pb_level);
+        tvVad = findViewById(R.id.tv_vad);
+        tvDsp = findViewById(R.id.tv_dsp);
+        tvSpectrogram = findViewById(R.id.tv_capture_spectrogram);
+
+        //录音、播放各自一个线程，每个jni对象只在一个线程上使用，防止奔溃，录音时也能播放
+        audioEngine = new AudioEngine();
+        //上次没有正常结束的分段录音，在录音线程上修复，修复完之前不会开始新的录音
+        audioEngine.submitCapture(new Runnable() {
+            @Override
+            public void run() {
+                recoverSessions();
+            }
+        });
+        //还没有录音时播放目录里最近的一条，包括在主页压缩成FLAC的录音
+        Recordings.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadLatestRecording();
+            }
+        });
 
         //开始、停止录制
         tvRecorderByte.setOnClickListener(new View.OnClickListener() {
@@ -84,13 +252,18 @@ public class ByteRecorderActivity extends AppCompatActivity {
                     tvRecorderByte.setText("开始录音");
                     //修改录音状态
                     isRecordering = false;
+                    //通知管线退出循环
+                    PcmPipeline pipeline = pcmPipeline;
+                    if (pipeline != null) {
+                        pipeline.stop();
+                    }
                 } else {
                     //改变UI状态
                     tvRecorderByte.setText("停止录音");
                     //修改录音状态
                     isRecordering = true;
-                    //放到后台执行耗时操作
-                    executorService.submit(new Runnable() {
+                    //放到录音线程执行耗时操作
+                    audioEngine.submitCapture(new Runnable() {
                         @Override
                         public void run() {
                             //开始录音
@@ -104,29 +277,159 @@ public class ByteRecorderActivity extends AppCompatActivity {
             }
         });
 
+        //切换输出格式，录音过程中不能切换
+        tvFormat.setText("输出格式：" + OUTPUT_NAMES[outputFormat]);
+        tvFormat.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!isRecordering) {
+                    outputFormat = (outputFormat + 1) % OUTPUT_NAMES.length;
+                    //系统的Opus编码器需要Android 10
+                    if (outputFormat == OUTPUT_OPUS && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                        outputFormat = OUTPUT_FLAC;
+                    }
+                    tvFormat.setText("输出格式：" + OUTPUT_NAMES[outputFormat]);
+                }
+            }
+        });
+
+        //切换静音处理模式，录音过程中不能切换
+        tvVad.setText("静音处理：" + VAD_NAMES[vadMode + 1]);
+        tvVad.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!isRecordering && PCM16) {
+                    vadMode = (vadMode + 2) % VAD_NAMES.length - 1;
+                    tvVad.setText("静音处理：" + VAD_NAMES[vadMode + 1]);
+                }
+            }
+        });
+
+        //切换录音处理，录音过程中不能切换
+        tvDsp.setText("降噪增益：" + (dspEnabled ? "开" : "关"));
+        tvDsp.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!isRecordering && PCM16) {
+                    dspEnabled = !dspEnabled;
+                    tvDsp.setText("降噪增益：" + (dspEnabled ? "开" : "关"));
+                }
+            }
+        });
+
+        //切换录音频谱图，录音过程中不能切换
+        tvSpectrogram.setText("录音频谱图：" + (spectrogramEnabled ? "开" : "关"));
+        tvSpectrogram.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!isRecordering && PCM16) {
+                    spectrogramEnabled = !spectrogramEnabled;
+                    tvSpectrogram.setText("录音频谱图：" + (spectrogramEnabled ? "开" : "关"));
+                }
+            }
+        });
+
+        //在拖动条选择的位置拆分最近一次的录音，不解码
+        findViewById(R.id.tv_split).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                File file = audioFile;
+                if (file != null && !isRecordering) {
+                    Recordings.split(file, FORMAT, playStartFraction, splitListener);
+                }
+            }
+        });
+
         //播放录音
         tvPlay.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                startPlay();
+            }
+        });
 
-                if (audioFile != null && !isPlaying) {
-                    //播放状态
-                    isPlaying = true;
-                    //修改UI
-                    tvPlay.setText("正在播放");
-                    //后台处理
-                    executorService.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            //播放录音
-                            doPlay(audioFile);
-                        }
-                    });
+        //拖动选择播放位置，正在播放时从新位置重新开始，没有播放时预览拖到的位置
+        sbPosition.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    scrub((float) progress / seekBar.getMax());
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                playStartFraction = (float) seekBar.getProgress() / seekBar.getMax();
+                PcmPipeline play = playPipeline;
+                if (isPlaying && play != null) {
+                    //停止当前播放，播放线程结束后从新位置开始
+                    restartPlay = true;
+                    play.stop();
                 }
             }
         });
     }
 
+    /**
+     * 录音时每一帧刷新电平和采集指标，只读原子变量，不会阻塞录音线程
+     */
+    private final Choreographer.FrameCallback meterCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            CaptureMetrics metrics = captureMetrics;
+            if (metrics == null) {
+                pbLevel.setProgress(0);
+                return;
+            }
+            float rmsDb = metrics.getLevelMeter().getRmsDb();
+            //-96dB ~ 0dB 对应 0 ~ 96
+            pbLevel.setProgress((int) (rmsDb + 96));
+            tvDesc_.setText(String.format(Locale.US,
+                    "电平 %.1f dB，峰值 %.1f dB\n读取 %d 次，耗时 p50 %d us，p99 %d us，最大 %d us\n"
+                            + "读取长度 %d（%d~%d），短读 %d 次\n写队列 %d/%d（最大 %d），溢出 %d 次，已写 %d KB",
+                    rmsDb, metrics.getLevelMeter().getPeakDb(),
+                    metrics.getReadCount(), metrics.getReadLatencyPercentileMicros(0.5),
+                    metrics.getReadLatencyPercentileMicros(0.99), metrics.getMaxReadLatencyMicros(),
+                    metrics.getLastReadSize(), metrics.getMinReadSize(), metrics.getMaxReadSize(),
+                    metrics.getShortReadCount(),
+                    metrics.getWriterQueueDepth(), WRITER_QUEUE_SLOTS, metrics.getWriterQueueMaxDepth(),
+                    metrics.getOverrunCount(), metrics.getBytesWritten() / 1024));
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    /**
+     * 开始播放最近一次的录音
+     */
+    private void startPlay() {
+        //录音线程随时可能更新audioFile，先取出来
+        final File file = compactedFile(audioFile);
+        if (file != null && !isPlayable(file)) {
+            //AudioTrack只能播放PCM数据，AAC、FLAC先解码
+            Toast.makeText(ByteRecorderActivity.this, "只能播放WAV、AAC和FLAC格式的录音", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (file != null && !isPlaying && audioEngine != null) {
+            //播放状态
+            isPlaying = true;
+            //修改UI
+            tvPlay.setText("正在播放");
+            final long requestTime = System.nanoTime();
+            //在播放线程处理，不用等正在进行的录音结束
+            audioEngine.submitRender(new Runnable() {
+                @Override
+                public void run() {
+                    //播放录音
+                    doPlay(file, requestTime);
+                }
+            });
+        }
+    }
+
 
     /**
      * 开始录音
@@ -134,93 +437,331 @@ public class ByteRecorderActivity extends AppCompatActivity {
      * @return boolean
      */
     private boolean startRecorder() {
+        //读音频数据的缓冲区，从缓冲区池借出，不和播放共用
+        byte[] buffer = AudioBuffers.PCM.acquire();
         try {
-            //创建录音文件
-            audioFile = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/audioDemo/"
-                    + System.currentTimeMillis() + ".pcm");
-            audioFile.getParentFile().mkdirs();
-            boolean result = audioFile.createNewFile();
-            if (!result) {
-                Log.e(TAG, "audioFile make dir fail !! ");
-            }
-            //创建文件输出流
-            fos = new FileOutputStream(audioFile);
+            int format = outputFormat;
+            int vad = vadMode;
+            //创建录音文件，录完之前不能播放，分段录音是一个目录，由SegmentedWavWriter创建
+            File file = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/audioDemo/"
+                    + System.currentTimeMillis() + OUTPUT_EXTENSIONS[format]);
+            file.getParentFile().mkdirs();
+            if (format != OUTPUT_SEGMENTED) {
+                boolean result = file.createNewFile();
+                if (!result) {
+                    Log.e(TAG, "audioFile make dir fail !! ");
+                }
+            }
             //配置AudioRecorder
             //从麦克风采集
             int audioSource = MediaRecorder.AudioSource.MIC;
-            //所有安卓系统都支持的频率
-            int sampleRate = 44100;
-            //单声道输入
-            int channelConfig = AudioFormat.CHANNEL_IN_MONO;
-            //pcm 16是所有安卓系统都支持的
-            int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
-            //最小的缓存数据
-            int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
-            //buffer不能小于最低要求，也不能小于我们每次读取的大小
-            audioRecord = new AudioRecord(audioSource, sampleRate, channelConfig, audioFormat,
-                    Math.max(minBufferSize, BUFFER_SIZE));
-
-            //开始录音
-            audioRecord.startRecording();
+            //采样率、声道、编码都由FORMAT决定
+            int sampleRate = FORMAT.getSampleRate();
+            int channelConfig = AudioFormats.channelInMask(FORMAT);
+            int audioFormat = AudioFormats.encoding(FORMAT);
+            //写文件、编码放到独立的写线程，存储或编码器卡顿时采集线程只往环形缓冲区复制数据
+            PcmSink recordingSink = createRecordingSink(file, format, vad);
+            AsyncPcmSink sink = new AsyncPcmSink(recordingSink, WRITER_QUEUE_SLOTS, AudioBuffers.PCM);
+            //配置了上传地址时边录边上传原始PCM，上传线程独立于写线程，网络不通不影响写文件
+            PcmSink captureSink = sink;
+            if (!BuildConfig.UPLOAD_URL.isEmpty()) {
+                try {
+                    captureSink = new TeePcmSink(sink, createUploadSink(file));
+                } catch (IOException | RuntimeException e) {
+                    //上传地址写错等情况，写线程和已经打开的文件都要关掉，不能等管线来关
+                    try {
+                        sink.close();
+                    } catch (IOException closeError) {
+                        Log.e(TAG, "close recording sink fail", closeError);
+                    }
+                    throw e;
+                }
+            }
+            //麦克风 -> 文件输出流 的录音管线，AudioRecord在管线线程里创建和释放
+            PcmPipeline pipeline = new PcmPipeline(
+                    new AudioRecordSource(audioSource, sampleRate, channelConfig, audioFormat, BUFFER_SIZE),
+                    captureSink, buffer);
+            //读到数据后先去掉直流和低频、压住底噪、拉平音量，再交给写线程
+            DspChain dsp = null;
+            if (dspEnabled && PCM16) {
+                dsp = new DspChain(FORMAT, BiquadFilter.highPass(FORMAT, HIGH_PASS_HZ), new NoiseGate(FORMAT),
+                        new AutomaticGainControl(FORMAT));
+                pipeline.setProcessor(dsp);
+            }
+            //记录读取耗时、长度和电平，主线程按帧率显示
+            final CaptureMetrics metrics = new CaptureMetrics();
+            metrics.setWriterQueue(sink);
+            pipeline.setMetrics(metrics);
+            captureMetrics = metrics;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Choreographer.getInstance().postFrameCallback(meterCallback);
+                }
+            });
+            pcmPipeline = pipeline;
+            //创建管线之前用户可能已经点了停止
+            if (!isRecordering) {
+                pipeline.stop();
+            }
+
             //记录开始录音时间，用于统计时长
             startRecorderTime = System.currentTimeMillis();
-            //循环读取数据，写入输入流中
-            while (isRecordering) {
-                //只要还在录音状态，就一直读取数据
-                int read = audioRecord.read(buffer, 0, BUFFER_SIZE);
-                if (read > 0) {
-                    fos.write(buffer, 0, read);
-                } else {
-                    //读取失败，返回false提示用户
-                    return false;
-                }
+            //循环读取数据写入文件，直到停止录音
+            pipeline.run();
+            //先停止电平表，再显示录音结果，避免结果被下一帧覆盖
+            captureMetrics = null;
+            File recorded = format == OUTPUT_SEGMENTED ? finishSession(file) : file;
+            audioFile = recorded;
+            //登记到录音目录，时长按实际写进文件的数据计算：静音丢弃、压缩后比采集的短，写线程溢出时也会丢数据
+            long writtenBytes = recordingSink instanceof VadPcmSink
+                    ? ((VadPcmSink) recordingSink).getOutputBytes() : sink.getBytesWritten();
+            Recordings.add(recorded, OUTPUT_NAMES[format] + " " + FORMAT, FORMAT.bytesToMillis(writtenBytes),
+                    metrics.getMaxPeak(), startRecorderTime);
+            if (sink.getOverrunCount() > 0) {
+                Log.w(TAG, "writer overrun " + sink.getOverrunCount() + " times, dropped "
+                        + sink.getDroppedBytes() + " bytes");
+            }
+            Log.d(TAG, "capture reads " + metrics.getReadCount() + ", short " + metrics.getShortReadCount()
+                    + ", latency p99 " + metrics.getReadLatencyPercentileMicros(0.99) + " us, max "
+                    + metrics.getMaxReadLatencyMicros() + " us, writer max depth "
+                    + metrics.getWriterQueueMaxDepth());
+            if (dsp != null) {
+                Log.d(TAG, "dsp mean " + dsp.getMeanNanos() / 1000 + " us, max " + dsp.getMaxNanos() / 1000
+                        + " us per " + BUFFER_SIZE + " bytes");
             }
-            //退出循环、停止录音、释放资源
+            //退出循环、统计录音时长
             return stopRecorder();
 
         } catch (IOException | RuntimeException e) {
             e.printStackTrace();
-            recorderFail();
             return false;
         } finally {
-            if (audioRecord != null) {
-                audioRecord.release();
-                audioRecord = null;
+            pcmPipeline = null;
+            //录音失败时电平表也在下一帧停止刷新
+            captureMetrics = null;
+            AudioBuffers.PCM.release(buffer);
+        }
+    }
+
+
+    /**
+     * 录音文件加上同名的波形索引文件，显示时不需要重新读整个录音；打开录音频谱图时再加上同名的频谱图
+     * <p>
+     * 打开静音处理时，在写线程上先做语音检测，语音段写入同名的 .vad 索引文件
+     */
+    private PcmSink createRecordingSink(File file, int format, int vad) throws IOException {
+        PcmSink fileSink = createSink(file, format);
+        if (!PCM16) {
+            return fileSink;
+        }
+        PcmSink sink;
+        PcmSink peaks = null;
+        try {
+            peaks = PeakIndexWriter.open(PeakFile.forRecording(file), FORMAT);
+            if (spectrogramEnabled) {
+                sink = new TeePcmSink(fileSink, peaks,
+                        SpectrogramWriter.open(SpectrogramFile.forRecording(file), FORMAT));
+            } else {
+                sink = new TeePcmSink(fileSink, peaks);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (peaks != null) {
+                peaks.close();
             }
+            fileSink.close();
+            throw e;
+        }
+        if (vad == VAD_OFF) {
+            return sink;
+        }
+        try {
+            return new VadPcmSink(FORMAT, sink, vad, VAD_MAX_SILENCE_MILLIS,
+                    SegmentIndexWriter.open(SegmentIndexWriter.forRecording(file)));
+        } catch (IOException | RuntimeException e) {
+            sink.close();
+            throw e;
         }
     }
 
+    /**
+     * 上传地址后面加上录音文件名，每个录音一个上传会话，网络不通时暂存到缓存目录
+     */
+    private StreamingUploadSink createUploadSink(File file) throws IOException {
+        HttpChunkTransport transport = new HttpChunkTransport(new URL(BuildConfig.UPLOAD_URL + "/" + file.getName()));
+        transport.setHeader("X-Audio-Format", FORMAT.toString());
+        File spool = new File(getCacheDir(), file.getName() + ".upload");
+        return new StreamingUploadSink(transport, spool, new StreamingUploadSink.Listener() {
+            @Override
+            public void onUploadFinished(StreamingUploadSink sink, IOException error) {
+                if (error != null) {
+                    Log.e(TAG, "upload fail " + sink, error);
+                } else {
+                    Log.d(TAG, "upload done " + sink);
+                }
+            }
+        });
+    }
 
     /**
-     * 停止录音
+     * 根据输出格式创建写文件的sink
      */
-    private boolean stopRecorder() {
+    private PcmSink createSink(File file, int format) throws IOException {
+        switch (format) {
+            case OUTPUT_M4A: {
+                //MediaCodec编码，MediaMuxer封装
+                Mp4AacOutput output = new Mp4AacOutput(file, FORMAT.getSampleRate(), FORMAT.getChannelCount());
+                try {
+                    return new AacEncoderSink(FORMAT, AAC_BIT_RATE, output);
+                } catch (IOException e) {
+                    output.close();
+                    throw e;
+                }
+            }
+            case OUTPUT_AAC: {
+                //每一帧带ADTS头，中途崩溃也能播放已经写入的部分
+                AdtsWriter output = new AdtsWriter(PcmFileWriter.open(file, AudioBuffers.BLOCKS),
+                        FORMAT.getSampleRate(), FORMAT.getChannelCount());
+                try {
+                    return new AacEncoderSink(FORMAT, AAC_BIT_RATE, output);
+                } catch (IOException e) {
+                    output.close();
+                    throw e;
+                }
+            }
+            case OUTPUT_SPEECH: {
+                //边录边重采样，录完不需要再离线转换
+                WavWriter output = WavWriter.open(file, FORMAT.withSampleRate(SPEECH_SAMPLE_RATE), AudioBuffers.BLOCKS);
+                try {
+                    return new ResamplerSink(FORMAT, SPEECH_SAMPLE_RATE, output);
+                } catch (RuntimeException e) {
+                    output.close();
+                    throw e;
+                }
+            }
+            case OUTPUT_OPUS:
+                //重采样到16kHz后编码，页最长1秒，边录边写
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                    throw new IOException("opus encoder needs Android 10");
+                }
+                return OpusEncoderSink.open(file, FORMAT, SPEECH_SAMPLE_RATE, OPUS_BIT_RATE);
+            case OUTPUT_FLAC:
+                //写线程上边录边压缩，大约是wav的一半，采样逐位不变
+                return FlacWriter.open(file, FORMAT, AudioBuffers.BLOCKS);
+            case OUTPUT_SEGMENTED:
+                //每段写满后落盘并记日志，进程被杀最多丢失最后一段
+                return new SegmentedWavWriter(file, FORMAT, SEGMENT_MILLIS, AudioBuffers.BLOCKS);
+            default:
+                //WavWriter边录边写，关闭时回填文件头，录完就是可以直接播放的wav文件
+                return WavWriter.open(file, FORMAT, AudioBuffers.BLOCKS);
+        }
+    }
+
+
+    /**
+     * 把分段录音合并成同名的wav文件，合并成功后删除分段
+     *
+     * @return 合并后的wav文件
+     */
+    private static File finishSession(File session) throws IOException {
+        SegmentedRecording recording = SegmentedRecording.open(session);
+        String name = session.getName();
+        File wav = new File(session.getParentFile(), name.substring(0, name.lastIndexOf('.')) + ".wav");
+        recording.mergeTo(wav);
+        recording.delete();
+        return wav;
+    }
+
+    private static boolean isPlayable(File file) {
+        String name = file.getName();
+        return name.endsWith(".wav") || name.endsWith(".aac") || name.endsWith(".flac");
+    }
+
+    /**
+     * 录音在主页被压缩成FLAC后原文件已经删除，换成同名的 .flac
+     */
+    private static File compactedFile(File file) {
+        if (file == null || file.exists()) {
+            return file;
+        }
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        File flac = new File(file.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + ".flac");
+        return flac.isFile() ? flac : file;
+    }
+
+    /**
+     * 目录线程：没有录音时把录音目录里最近一条能播放的录音作为播放对象
+     */
+    private void loadLatestRecording() {
         try {
-            isRecordering = false;
-            //停止录音，关闭文件输出流
-            audioRecord.stop();
-            audioRecord.release();
-            audioRecord = null;
-
-            fos.close();
-            //记录结束时间，统计录音时长
-            stopRecorderTime = System.currentTimeMillis();
-            //大于3秒才算成功，在主线程改变UI显示
-            final int second = (int) ((stopRecorderTime - startRecorderTime) / 1000);
-            if (second > 3) {
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        tvDesc_.setText("录音成功 " + second + " 秒");
+            for (RecordingEntry entry : Recordings.catalog().query(null, RecordingEntry.NEWEST_FIRST)) {
+                File file = new File(entry.getPath());
+                if (isPlayable(file) && file.isFile()) {
+                    if (audioFile == null) {
+                        audioFile = file;
                     }
-                });
+                    return;
+                }
             }
+        } catch (IOException e) {
+            Log.w(TAG, "load recordings fail", e);
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+    /**
+     * 录音线程：修复并合并上次崩溃留下的分段录音
+     */
+    private void recoverSessions() {
+        File[] files = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/audioDemo/")
+                .listFiles();
+        if (files == null) {
+            return;
+        }
+        int count = 0;
+        for (File file : files) {
+            if (!file.isDirectory() || !SegmentedRecording.isSession(file)) {
+                continue;
+            }
+            try {
+                Log.d(TAG, "recover " + file.getName());
+                File wav = finishSession(file);
+                Recordings.add(wav, OUTPUT_NAMES[OUTPUT_SEGMENTED] + " " + FORMAT,
+                        FORMAT.bytesToMillis(wav.length() - WavHeader.HEADER_SIZE), -1, file.lastModified());
+                count++;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
         }
+        if (count > 0) {
+            final int recovered = count;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(ByteRecorderActivity.this, "恢复了 " + recovered + " 个未完成的录音",
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    }
 
+    /**
+     * 停止录音
+     */
+    private boolean stopRecorder() {
+        isRecordering = false;
+        //记录结束时间，统计录音时长
+        stopRecorderTime = System.currentTimeMillis();
+        //大于3秒才算成功，在主线程改变UI显示
+        final int second = (int) ((stopRecorderTime - startRecorderTime) / 1000);
+        if (second > 3) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    tvDesc_.setText("录音成功 " + second + " 秒");
+                }
+            });
+        }
         return true;
     }
 
@@ -241,102 +782,158 @@ public class ByteRecorderActivity extends AppCompatActivity {
 
     /**
      * 播放录音
+     * <p>
+     * 读线程提前把文件读进内存，播放线程写够一小段数据就开始播放，不等整个文件写完
+     *
+     * @param requestTime 点击播放的时间，用于统计首帧延迟
      */
-    private void doPlay(File audioFile) {
-        //配置播放器
-        //音乐类型，扬声器播放
-        int streamType = AudioManager.STREAM_MUSIC;
-        //录音时财通的采样频率，所以播放时候使用相同的采样频率
-        int sampleRate = 44100;
-        //MoNO表示单声道，录音输入单声道
-        int channelConfig = AudioFormat.CHANNEL_OUT_MONO;
-        //录音时使用16bit，所有播放时使用相同的格式
-        int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
-        //流模式
-        int mode = AudioTrack.MODE_STREAM;
-        //计算最小buffer大小
-        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, audioFormat);
-        //构造AudioTrack
-        audioTrack = new AudioTrack(streamType, sampleRate, channelConfig, audioFormat,
-                Math.max(minBufferSize, BUFFER_SIZE), mode);
-
-        //从文件流读取数据
-        FileInputStream is = null;
-
+    private void doPlay(File audioFile, long requestTime) {
+        //播放用的缓冲区，和录音的缓冲区分开
+        byte[] buffer = AudioBuffers.PCM.acquire();
         try {
-            //循环读数据，写到播放器去播放
-            int read;
-            is = new FileInputStream(audioFile);
-            while ((read = is.read(buffer)) > 0) {
-                int ret = audioTrack.write(buffer, 0, read);
-                //检查write返回值，错误处理
-                switch (ret) {
-                    case AudioTrack.ERROR_INVALID_OPERATION:
-                    case AudioTrack.ERROR_BAD_VALUE:
-                    case AudioTrack.ERROR_DEAD_OBJECT:
-                        playFail();
-                        return;
-                    default:
-                        break;
+            PcmSource reader;
+            AudioFormatSpec fileFormat;
+            if (audioFile.getName().endsWith(".aac")) {
+                //按帧索引跳到开始播放的那一帧，从那里开始解码
+                AdtsPcmSource aac = AdtsPcmSource.open(audioFile);
+                aac.seekToFraction(playStartFraction);
+                reader = aac;
+                fileFormat = aac.getFormat();
+            } else if (audioFile.getName().endsWith(".flac")) {
+                //按SEEKTABLE跳到开始播放的那一帧附近，往后解码到目标位置
+                FlacReader flac = FlacReader.open(audioFile);
+                try {
+                    flac.seekToFrame((long) (flac.getFrameCount() * (double) playStartFraction));
+                } catch (IOException e) {
+                    flac.close();
+                    throw e;
+                }
+                reader = flac;
+                fileFormat = flac.getFormat();
+            } else {
+                //按wav文件头换算位置，直接跳到开始播放的地方，不需要从头读文件
+                SeekablePcmReader pcm = SeekablePcmReader.open(audioFile, FORMAT);
+                try {
+                    pcm.seekToFraction(playStartFraction);
+                } catch (IOException e) {
+                    pcm.close();
+                    throw e;
                 }
+                reader = pcm;
+                fileFormat = pcm.getFormat();
             }
-            audioTrack.play();
+            AudioTrackSink sink;
+            PcmSink output;
+            try {
+                //按文件头里的格式播放，AudioTrack不能直接播放的格式先转成16bit
+                AudioFormatSpec playFormat = AudioFormats.isPlayable(fileFormat) ? fileFormat
+                        : fileFormat.withEncoding(16, AudioFormatSpec.ENCODING_PCM_INT)
+                                .withChannelCount(fileFormat.getChannelCount() > 2 ? 1 : fileFormat.getChannelCount());
+                sink = new AudioTrackSink(playFormat, PREFETCH_BYTES, requestTime);
+                output = playFormat.equals(fileFormat) ? sink : new FormatConverterSink(fileFormat, playFormat, sink);
+            } catch (IOException | RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+            ReadAheadPcmSource source = new ReadAheadPcmSource(reader, READ_AHEAD_SLOTS, AudioBuffers.PCM);
+            PcmPipeline pipeline = new PcmPipeline(source, output, buffer);
+            playPipeline = pipeline;
+            pipeline.run();
+
+            final String stats = "首帧 " + sink.getTimeToFirstSampleMillis() + " ms，读取卡顿 "
+                    + source.getUnderrunCount() + " 次，播放卡顿 " + sink.getUnderrunCount() + " 次";
+            Log.d(TAG, "play " + audioFile.getName() + ": " + stats);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    tvDesc_.setText(stats);
+                }
+            });
 
-        } catch (Exception e) {
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
             //错误处理，防止闪退
             playFail();
 
         } finally {
+            playPipeline = null;
+            AudioBuffers.PCM.release(buffer);
             isPlaying = false;
-            if (is != null) {
-                closeQuietly(is);
-            }
-            //释放播放器
-            if (audioFile != null) {
-                resetQuietly(audioTrack);
-            }
-
-
+            final boolean restart = restartPlay;
+            restartPlay = false;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    tvPlay.setText("播放");
+                    if (restart) {
+                        //拖动了播放位置，从新位置重新播放
+                        startPlay();
+                    }
+                }
+            });
         }
 
     }
 
     /**
-     * 关闭资源
-     *
+     * 拖动拖动条时预览拖到的位置，只在没有播放、没有录音时预览wav录音
+     * <p>
+     * 拖动事件比播放快得多，播放线程上只保留一个预览任务，它执行时取最新的位置
      */
-    private void closeQuietly(FileInputStream fileInputStream) {
-        try {
-            fileInputStream.close();
-            fileInputStream = null;
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void scrub(float fraction) {
+        final File file = audioFile;
+        if (file == null || isPlaying || isRecordering || audioEngine == null || !file.getName().endsWith(".wav")) {
+            return;
+        }
+        scrubFraction = fraction;
+        if (scrubPending.compareAndSet(false, true)) {
+            audioEngine.submitRender(new Runnable() {
+                @Override
+                public void run() {
+                    scrubPending.set(false);
+                    doScrub(file, scrubFraction);
+                }
+            });
         }
     }
 
     /**
-     * 释放资源
+     * 从拖到的位置读一小段播放，{@link SeekablePcmReader#readAt} 直接按帧号读，不需要从头读文件
      */
-    private void resetQuietly(AudioTrack audioTrack) {
+    private void doScrub(File file, float fraction) {
+        byte[] buffer = AudioBuffers.PCM.acquire();
         try {
-            audioTrack.stop();
-            audioTrack.release();
-            audioTrack = null;
-
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    tvPlay.setText("播放");
+            SeekablePcmReader reader = SeekablePcmReader.open(file, FORMAT);
+            try {
+                AudioFormatSpec format = reader.getFormat();
+                if (!AudioFormats.isPlayable(format)) {
+                    return;
                 }
-            });
-
-        } catch (Exception e) {
-            e.printStackTrace();
+                AudioTrackSink sink = new AudioTrackSink(format, PREFETCH_BYTES, System.nanoTime());
+                try {
+                    long frame = (long) (reader.getFrameCount() * (double) fraction);
+                    for (int i = 0; i < SCRUB_BUFFERS; i++) {
+                        int read = reader.readAt(frame, buffer, 0, buffer.length);
+                        if (read <= 0) {
+                            break;
+                        }
+                        sink.write(buffer, 0, read);
+                        frame += read / format.getBytesPerFrame();
+                    }
+                } finally {
+                    sink.close();
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            //预览失败不影响播放
+            Log.w(TAG, "scrub " + file.getName() + " fail", e);
+        } finally {
+            AudioBuffers.PCM.release(buffer);
         }
     }
 
-
     /**
      * 播放录音失败
      */
@@ -360,14 +957,25 @@ public class ByteRecorderActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
 
-        if (audioTrack!=null){
-            resetQuietly(audioTrack);
+        //退出页面时停止录音管线，否则后台线程会一直占用麦克风
+        isRecordering = false;
+        PcmPipeline pipeline = pcmPipeline;
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+
+        Choreographer.getInstance().removeFrameCallback(meterCallback);
+
+        //停止播放，AudioTrack在播放线程里释放
+        PcmPipeline play = playPipeline;
+        if (play != null) {
+            play.stop();
         }
 
 
-        if (executorService != null) {
-            executorService.shutdownNow();
-            executorService = null;
+        if (audioEngine != null) {
+            audioEngine.shutdownNow();
+            audioEngine = null;
         }
 
 
@@ -3,45 +3,79 @@ package com.yisan.audiodemo.recorder;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
+import android.media.AudioFormat;
 import android.media.MediaPlayer;
 import android.media.MediaRecorder;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
+import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.yisan.audiodemo.R;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmPipeline;
+import com.yisan.audiodemo.core.PreRollPcmSink;
+import com.yisan.audiodemo.core.RecorderStateMachine;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 文件模式录音
+ * <p>
+ * 预热模式下页面显示期间麦克风一直在采集，只保留最近 {@link #PRE_ROLL_MILLIS} 毫秒，
+ * 下一次录音的文件和编码器也提前准备好，按下时把预录数据和之后的数据交给编码器，
+ * 开头的话不会被截掉。关闭预热时每次按下再创建 MediaRecorder。
+ * <p>
+ * 录音的启动、停止由 {@link RecorderStateMachine} 在控制线程上执行，主线程只发命令、按状态刷新界面，
+ * MediaRecorder 也只在控制线程上使用。
  */
 public class FileRecorderActivity extends AppCompatActivity {
 
 
     private static final String TAG = "FileRecorderActivity";
+    private static final int AAC_BIT_RATE = 96000;
+    /**
+     * 预热模式的采集格式，和 MediaRecorder 的配置一致
+     */
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    /**
+     * 保留按下之前多长时间的数据
+     */
+    private static final int PRE_ROLL_MILLIS = 500;
 
     private TextView mTvRecorderFile;
     private TextView mTvDesc;
     private TextView mTvPlay;
+    private TextView mTvPrewarm;
+    /**
+     * 录音线程和播放线程
+     */
+    private AudioEngine audioEngine;
     /**
-     * 线程池
+     * 录音的启动、停止命令
      */
-    private ExecutorService executorService;
+    private RecorderStateMachine recorderState;
     private MediaRecorder mediaRecorder;
-    private File audioFile;
+    /**
+     * 最近一次录音的文件，控制线程、recorderWorker 写，主线程、播放线程读
+     */
+    private volatile File audioFile;
     private long startRecorderTime, stopRecorderTime;
     /**
      * 住线程Handler
@@ -56,6 +90,53 @@ public class FileRecorderActivity extends AppCompatActivity {
      * 播放声音
      */
     private MediaPlayer mediaPlayer;
+    private SeekBar mSbPosition;
+    /**
+     * 从录音的哪个位置开始播放，0~1
+     */
+    private volatile float playStartFraction = 0;
+
+    /**
+     * 拆分完成后在主线程显示结果
+     */
+    private final Recordings.SplitListener splitListener = new Recordings.SplitListener() {
+        @Override
+        public void onSplitFinished(final File first, final File second, final Exception error) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mTvDesc.setText(error == null ? "已拆分为 " + first.getName() + " 和 " + second.getName()
+                            : "拆分失败：" + error.getMessage());
+                }
+            });
+        }
+    };
+
+    /**
+     * 是否使用预热模式，只在主线程修改
+     */
+    private boolean prewarm = true;
+    /**
+     * 预热模式的采集管线和预录输出端，采集失败或关闭预热时为null
+     */
+    private volatile PcmPipeline warmPipeline;
+    private volatile PreRollPcmSink preRoll;
+    /**
+     * 正在进行的预热录音，只在控制线程访问
+     */
+    private PreRollPcmSink.Session session;
+    /**
+     * 下一次录音的输出，在 recorderWorker 上创建
+     */
+    private final AtomicReference<PreparedRecording> prepared = new AtomicReference<>();
+    /**
+     * 创建和收尾录音文件、编码器的线程，采集线程不做耗时的准备工作
+     */
+    private ExecutorService recorderWorker;
+    /**
+     * 按下录音键的时间，用于统计按下到开始采集的延迟
+     */
+    private volatile long pressNanos;
 
     public static void show(Context context) {
         context.startActivity(new Intent(context, FileRecorderActivity.class));
@@ -71,29 +152,77 @@ public class FileRecorderActivity extends AppCompatActivity {
         mTvDesc = findViewById(R.id.tv_desc);
         mTvRecorderFile = findViewById(R.id.tv_recorder_file);
         mTvPlay = findViewById(R.id.tv_recorder_play);
+        mSbPosition = findViewById(R.id.sb_position);
+        mTvPrewarm = findViewById(R.id.tv_prewarm);
 
 
-        //单线程、Android系统录音的api是线程不安全的,多少线程调用jni的录音方法会发生奔溃。所以用单线程
-        executorService = Executors.newSingleThreadExecutor();
+        //Android系统录音的api是线程不安全的,多个线程调用jni的录音方法会发生奔溃。
+        //所以MediaRecorder只在录音线程使用，MediaPlayer只在播放线程使用
+        audioEngine = new AudioEngine();
+        recorderWorker = Executors.newSingleThreadExecutor();
+        recorderState = new RecorderStateMachine(audioEngine.controlExecutor(), new RecorderStateMachine.Driver() {
+            @Override
+            public void start() throws IOException {
+                Trace.beginSection("FileRecorder.start");
+                try {
+                    startRecorder();
+                } finally {
+                    Trace.endSection();
+                }
+            }
+
+            @Override
+            public void stop() {
+                Trace.beginSection("FileRecorder.stop");
+                try {
+                    stopRecorder();
+                } finally {
+                    Trace.endSection();
+                }
+            }
+        }, new RecorderStateMachine.Listener() {
+            @Override
+            public void onStateChanged(final int state, Exception error) {
+                if (error != null) {
+                    Log.e(TAG, "recorder state " + state, error);
+                    recorderFail();
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        showRecorderState(state);
+                    }
+                });
+            }
+        });
 
         //按下说话，释放发送，所以我们不要OnClickListener
         mTvRecorderFile.setOnTouchListener(new OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
 
-                int action = event.getAction();
-                switch (action) {
-                    case MotionEvent.ACTION_DOWN:
-                        //开始录音
-                        startRecorder();
-                        break;
-                    case MotionEvent.ACTION_UP:
-                    case MotionEvent.ACTION_CANCEL:
-                        //停止录音
-                        stopRecorder();
-                        break;
-                    default:
-                        break;
+                //主线程只发命令，不调用录音器，trace里这一段应该远小于一帧
+                Trace.beginSection("FileRecorder.onTouch");
+                try {
+                    int action = event.getAction();
+                    switch (action) {
+                        case MotionEvent.ACTION_DOWN:
+                            //按下的时间换算成nanoTime，包含事件分发到这里的延迟
+                            long eventDelayMillis = SystemClock.uptimeMillis() - event.getEventTime();
+                            pressNanos = System.nanoTime() - eventDelayMillis * 1000000L;
+                            //开始录音
+                            recorderState.requestStart();
+                            break;
+                        case MotionEvent.ACTION_UP:
+                        case MotionEvent.ACTION_CANCEL:
+                            //停止录音
+                            recorderState.requestStop();
+                            break;
+                        default:
+                            break;
+                    }
+                } finally {
+                    Trace.endSection();
                 }
                 return true;
             }
@@ -102,18 +231,19 @@ public class FileRecorderActivity extends AppCompatActivity {
         mTvPlay.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-
-                if (!isPlaying && audioFile != null) {
+                //只读一次，播放线程执行时可能已经开始了新的录音
+                final File file = audioFile;
+                if (!isPlaying && file != null) {
                     //修改播放状态
                     isPlaying = true;
                     mTvPlay.setText("正在播放........");
-                    //在后台操作耗时事务
-                    executorService.submit(new Runnable() {
+                    //在播放线程操作耗时事务
+                    audioEngine.submitRender(new Runnable() {
                         @Override
                         public void run() {
 
                             //播放录音
-                            doPlay(audioFile);
+                            doPlay(file);
 
                         }
                     });
@@ -123,60 +253,316 @@ public class FileRecorderActivity extends AppCompatActivity {
             }
         });
 
+        mTvPrewarm.setText(prewarm ? "预热录音：开" : "预热录音：关");
+        mTvPrewarm.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //录音中不能切换
+                if (recorderState.getState() != RecorderStateMachine.STATE_IDLE) {
+                    return;
+                }
+                prewarm = !prewarm;
+                mTvPrewarm.setText(prewarm ? "预热录音：开" : "预热录音：关");
+                if (prewarm) {
+                    startWarmCapture();
+                } else {
+                    stopWarmCapture();
+                }
+            }
+        });
+
+        //在拖动条选择的位置拆分最近一次的录音，只复制AAC帧，不重新编码
+        findViewById(R.id.tv_split).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                File file = audioFile;
+                if (file != null && recorderState.getState() == RecorderStateMachine.STATE_IDLE) {
+                    Recordings.split(file, FORMAT, playStartFraction, splitListener);
+                }
+            }
+        });
+
+        //拖动选择播放位置，正在播放时直接跳过去
+        mSbPosition.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                playStartFraction = (float) seekBar.getProgress() / seekBar.getMax();
+                if (isPlaying) {
+                    //MediaPlayer只在播放线程使用
+                    audioEngine.submitRender(new Runnable() {
+                        @Override
+                        public void run() {
+                            seekPlay();
+                        }
+                    });
+                }
+            }
+        });
+
+    }
+
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (prewarm) {
+            startWarmCapture();
+        }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        //离开页面时结束录音、释放麦克风，预热录音由预录输出端结束
+        recorderState.requestStop();
+        stopWarmCapture();
+    }
 
     /**
-     * 开始录音
+     * 启动预热采集：麦克风 -> 预录输出端，同时准备下一次录音的文件和编码器
      */
-    private void startRecorder() {
-        //改变UI
-        mTvRecorderFile.setText("正在录音");
-        mTvRecorderFile.setBackgroundColor(getResources().getColor(R.color.colorPrimary));
-        //交给后台录音、执行录音逻辑
-        executorService.submit(new Runnable() {
+    private void startWarmCapture() {
+        if (warmPipeline != null) {
+            return;
+        }
+        final PreRollPcmSink sink = new PreRollPcmSink(FORMAT, PRE_ROLL_MILLIS, new PreRollPcmSink.Listener() {
+            @Override
+            public void onSessionEnd(PreRollPcmSink.Session session) {
+                finishWarmRecording(session);
+            }
+        });
+        final byte[] buffer = AudioBuffers.PCM.acquire();
+        final PcmPipeline pipeline = new PcmPipeline(new AudioRecordSource(MediaRecorder.AudioSource.MIC,
+                FORMAT.getSampleRate(), AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                ByteRecorderActivity.BUFFER_SIZE), sink, buffer);
+        preRoll = sink;
+        warmPipeline = pipeline;
+        prepareNextRecording();
+        audioEngine.submitCapture(new Runnable() {
             @Override
             public void run() {
-                //释放之前的 recorder
-                releaseRecorder();
-                //执行录音逻辑
-                if (!doStart()) {
+                try {
+                    //一直采集到离开页面或关闭预热
+                    pipeline.run();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
                     recorderFail();
+                } finally {
+                    AudioBuffers.PCM.release(buffer);
+                    //失败时按下录音键退回冷启动模式
+                    if (warmPipeline == pipeline) {
+                        warmPipeline = null;
+                        preRoll = null;
+                    }
                 }
+            }
+        });
+    }
 
+    /**
+     * 停止预热采集，释放没有用上的编码器
+     */
+    private void stopWarmCapture() {
+        PcmPipeline pipeline = warmPipeline;
+        warmPipeline = null;
+        preRoll = null;
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        executeRecorderTask(new Runnable() {
+            @Override
+            public void run() {
+                PreparedRecording unused = prepared.getAndSet(null);
+                if (unused != null) {
+                    unused.discard();
+                }
             }
         });
     }
 
     /**
-     * 停止录音
+     * 在 recorderWorker 上执行，页面销毁后在当前线程执行，保证录音文件能写完
      */
-    private void stopRecorder() {
-        //改变UI
-        mTvRecorderFile.setText("按住说话");
-        mTvRecorderFile.setBackgroundColor(getResources().getColor(R.color.colorAccent));
-        //执行后台任务，执行停止逻辑
-        if (!doStop()) {
-            recorderFail();
+    private void executeRecorderTask(Runnable task) {
+        try {
+            recorderWorker.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * 在后台创建下一次录音的文件和编码器，按下时直接使用
+     */
+    private void prepareNextRecording() {
+        executeRecorderTask(new Runnable() {
+            @Override
+            public void run() {
+                if (prepared.get() != null || warmPipeline == null) {
+                    return;
+                }
+                try {
+                    PreparedRecording recording = PreparedRecording.create(newRecordingFile(), FORMAT, AAC_BIT_RATE);
+                    if (!prepared.compareAndSet(null, recording)) {
+                        recording.discard();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "prepare recording fail", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 预热录音结束，在采集线程回调，收尾交给 recorderWorker
+     */
+    private void finishWarmRecording(final PreRollPcmSink.Session finished) {
+        executeRecorderTask(new Runnable() {
+            @Override
+            public void run() {
+                PreparedRecording recording = (PreparedRecording) finished.getTarget();
+                try {
+                    recording.close();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    recorderFail();
+                    recording.getFile().delete();
+                    prepareNextRecording();
+                    return;
+                }
+                //文件和编码器是在按下之前准备的，时间和文件名都要用按下的时间
+                long pressedTime = System.currentTimeMillis()
+                        - (System.nanoTime() - finished.getPressNanos()) / 1000000;
+                File file = recordingFile(pressedTime);
+                if (!recording.getFile().renameTo(file)) {
+                    Log.w(TAG, "rename " + recording.getFile() + " to " + file.getName() + " fail");
+                    file = recording.getFile();
+                }
+                audioFile = file;
+                final long durationMillis = FORMAT.bytesToMillis(finished.getBytesWritten());
+                final long latencyMillis = finished.getPressToFirstSampleNanos() / 1000000;
+                final long preRollMillis = FORMAT.bytesToMillis(finished.getPreRollBytes());
+                Log.d(TAG, "prewarm press to first sample " + latencyMillis + " ms, pre-roll " + preRollMillis
+                        + " ms, duration " + durationMillis + " ms");
+                Recordings.add(file, "M4A AAC 44100Hz " + (AAC_BIT_RATE / 1000) + "kbps",
+                        durationMillis, -1, pressedTime);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mTvDesc.setText("录音成功 " + durationMillis / 1000 + " 秒\n按下到写入 " + latencyMillis
+                                + " ms，包含按下前 " + preRollMillis + " ms");
+                    }
+                });
+                prepareNextRecording();
+            }
+        });
+    }
+
+    /**
+     * 按录音状态显示录音键，在主线程调用
+     */
+    private void showRecorderState(int state) {
+        switch (state) {
+            case RecorderStateMachine.STATE_STARTING:
+                mTvRecorderFile.setText("准备录音");
+                mTvRecorderFile.setBackgroundColor(getResources().getColor(R.color.colorPrimary));
+                break;
+            case RecorderStateMachine.STATE_RECORDING:
+                mTvRecorderFile.setText("正在录音");
+                mTvRecorderFile.setBackgroundColor(getResources().getColor(R.color.colorPrimary));
+                break;
+            case RecorderStateMachine.STATE_STOPPING:
+                mTvRecorderFile.setText("正在保存");
+                mTvRecorderFile.setBackgroundColor(getResources().getColor(R.color.colorAccent));
+                break;
+            default:
+                mTvRecorderFile.setText("按住说话");
+                mTvRecorderFile.setBackgroundColor(getResources().getColor(R.color.colorAccent));
+                break;
+        }
+    }
+
+    /**
+     * 开始录音，在控制线程执行
+     */
+    private void startRecorder() throws IOException {
+        PreRollPcmSink sink = preRoll;
+        if (sink != null) {
+            PreparedRecording recording = prepared.getAndSet(null);
+            if (recording == null) {
+                //刚进入页面或上一次录音刚结束，编码器还没准备好，只能现在创建
+                Log.w(TAG, "recording not prepared");
+                recording = PreparedRecording.create(newRecordingFile(), FORMAT, AAC_BIT_RATE);
+            }
+            //只启动写线程，交给采集线程下一次写入时开始
+            PreparedRecording opened = recording.open();
+            try {
+                session = sink.start(opened, pressNanos);
+            } catch (IllegalStateException e) {
+                //停止、开始落在采集线程的同一次写入之间，上一次录音还没被接手，这次的写线程和文件要释放
+                opened.discard();
+                prepareNextRecording();
+                throw new IOException("previous recording not started yet", e);
+            }
+            prepareNextRecording();
+            return;
         }
-        //释放Recorder
+        //释放之前的 recorder
         releaseRecorder();
+        //执行录音逻辑
+        doStart();
+    }
+
+    /**
+     * 停止录音，在控制线程执行
+     */
+    private void stopRecorder() {
+        if (session != null) {
+            //只设置标记，由采集线程结束，收尾在 recorderWorker 上完成
+            session.stop();
+            session = null;
+            return;
+        }
+        try {
+            //执行停止逻辑
+            doStop();
+        } finally {
+            //释放Recorder
+            releaseRecorder();
+        }
+    }
+
+    private static File newRecordingFile() {
+        return recordingFile(System.currentTimeMillis());
+    }
+
+    /**
+     * 录音文件以开始录音的时间命名
+     */
+    private static File recordingFile(long millis) {
+        return new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/audioDemo/"
+                + millis + ".m4a");
     }
 
 
     /**
      * 开始录音
-     *
-     * @return
      */
-    private boolean doStart() {
+    private void doStart() throws IOException {
 
         try {
             //创建MediaRecorder
             mediaRecorder = new MediaRecorder();
             //创建录音文件
-            audioFile = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/audioDemo/"
-                    + System.currentTimeMillis() + ".m4a");
+            audioFile = newRecordingFile();
             //6.0以上需要动态读写权限
             audioFile.getParentFile().mkdirs();
             boolean result = audioFile.createNewFile();
@@ -192,54 +578,55 @@ public class FileRecorderActivity extends AppCompatActivity {
             //设置通用的AAC编码格式
             mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
             //音质比较好的频率
-            mediaRecorder.setAudioEncodingBitRate(96000);
+            mediaRecorder.setAudioEncodingBitRate(AAC_BIT_RATE);
             //设置录音文件保存的位置
             mediaRecorder.setOutputFile(audioFile.getAbsolutePath());
 
             //开始录音
             mediaRecorder.prepare();
             mediaRecorder.start();
-
-            //记录开始录音的时间，用于统计时长
-            startRecorderTime = System.currentTimeMillis();
-            //录音成功
         } catch (IOException | RuntimeException e) {
-            e.printStackTrace();
-            recorderFail();
-            stopRecorder();
-            return false;
+            releaseRecorder();
+            throw new IOException("MediaRecorder start fail", e);
         }
-        return true;
+
+        //记录开始录音的时间，用于统计时长
+        startRecorderTime = System.currentTimeMillis();
+        final long latencyMillis = (System.nanoTime() - pressNanos) / 1000000;
+        Log.d(TAG, "cold press to first sample " + latencyMillis + " ms");
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                mTvDesc.setText("按下到开始录音 " + latencyMillis + " ms");
+            }
+        });
     }
 
 
     /**
-     * 停止录音
-     *
-     * @return boolean
+     * 停止录音，录音太短时 MediaRecorder.stop 会抛出RuntimeException
      */
-    private boolean doStop() {
-        try {
-            //停止录音
-            mediaRecorder.stop();
-            //记录停止时间，统计时长
-            stopRecorderTime = System.currentTimeMillis();
-            //只接受超过3秒的录音，在UI上显示出来
-            final int second = (int) (stopRecorderTime - startRecorderTime) / 1000;
-            if (second > 3) {
-                //在主线程改UI，显示出来
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        mTvDesc.setText("录音成功 " + second + " 秒");
-                    }
-                });
-            }
-
-        } catch (RuntimeException e) {
-            return false;
+    private void doStop() {
+        //上次调用以来的最大振幅，整个录音只在这里调用一次
+        int amplitude = mediaRecorder.getMaxAmplitude();
+        //停止录音
+        mediaRecorder.stop();
+        //记录停止时间，统计时长
+        stopRecorderTime = System.currentTimeMillis();
+        //登记到录音目录，在目录线程上写入
+        Recordings.add(audioFile, "M4A AAC 44100Hz " + (AAC_BIT_RATE / 1000) + "kbps",
+                stopRecorderTime - startRecorderTime, amplitude / 32767f, startRecorderTime);
+        //只接受超过3秒的录音，在UI上显示出来
+        final int second = (int) (stopRecorderTime - startRecorderTime) / 1000;
+        if (second > 3) {
+            //在主线程改UI，显示出来
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mTvDesc.setText("录音成功 " + second + " 秒");
+                }
+            });
         }
-        return true;
     }
 
     /**
@@ -305,6 +692,8 @@ public class FileRecorderActivity extends AppCompatActivity {
 
             //准备开始
             mediaPlayer.prepare();
+            //从选择的位置开始播放
+            seekPlay();
             mediaPlayer.start();
 
         } catch (Exception e) {
@@ -316,6 +705,19 @@ public class FileRecorderActivity extends AppCompatActivity {
 
     }
 
+    /**
+     * 跳到选择的播放位置，MediaPlayer按m4a的索引定位，不需要从头解码
+     */
+    private void seekPlay() {
+        if (mediaPlayer == null) {
+            return;
+        }
+        int duration = mediaPlayer.getDuration();
+        if (duration > 0) {
+            mediaPlayer.seekTo((int) (duration * playStartFraction));
+        }
+    }
+
     /**
      * 播放错误
      */
@@ -363,11 +765,12 @@ public class FileRecorderActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
 
-        //销毁线程池、避免内存泄漏
-        executorService.shutdownNow();
-        executorService = null;
-
-        releaseRecorder();
+        //销毁线程、避免内存泄漏
+        audioEngine.shutdownNow();
+        audioEngine = null;
+        //等待收尾的录音写完
+        recorderWorker.shutdown();
+        //MediaRecorder在onPause的停止命令里由控制线程释放
 
 
         stopPlay();
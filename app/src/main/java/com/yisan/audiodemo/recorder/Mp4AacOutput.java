@@ -0,0 +1,59 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import com.yisan.audiodemo.core.codec.AacOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 用 {@link MediaMuxer} 把AAC封装成 .m4a
+ */
+public class Mp4AacOutput implements AacOutput {
+
+    private final MediaMuxer muxer;
+    private final int sampleRate;
+    private final int channelCount;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private int trackIndex = -1;
+
+    public Mp4AacOutput(File file, int sampleRate, int channelCount) throws IOException {
+        this.muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    @Override
+    public void configure(byte[] audioSpecificConfig) {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channelCount);
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(audioSpecificConfig));
+        trackIndex = muxer.addTrack(format);
+        muxer.start();
+    }
+
+    @Override
+    public void writeAccessUnit(ByteBuffer accessUnit, long presentationTimeUs) throws IOException {
+        if (trackIndex < 0) {
+            throw new IOException("muxer not configured");
+        }
+        bufferInfo.set(accessUnit.position(), accessUnit.remaining(), presentationTimeUs,
+                MediaCodec.BUFFER_FLAG_KEY_FRAME);
+        muxer.writeSampleData(trackIndex, accessUnit, bufferInfo);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (trackIndex >= 0) {
+                //写入moov，文件才能播放
+                muxer.stop();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("muxer stop fail", e);
+        } finally {
+            muxer.release();
+        }
+    }
+}
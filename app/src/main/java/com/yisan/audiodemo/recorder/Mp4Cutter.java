@@ -0,0 +1,162 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 不解码的 .m4a 截取和拆分：{@link MediaExtractor} 读出AAC帧，原样交给 {@link MediaMuxer} 写入新文件
+ * <p>
+ * AAC相邻的帧用重叠的窗口编码，一帧要和前一帧重叠相加才能还原，没有前一帧时解码出来的第一帧不对。
+ * 所以截取时往前多复制一帧作为预热帧，解码器用它补齐第一帧的重叠部分。{@link MediaMuxer} 没有写编辑列表(elst)的接口，
+ * 预热帧留在输出里：输出比截取范围早一帧开始（1024个采样，44.1kHz时约23ms），时间戳从预热帧算起，
+ * 需要和原录音精确对齐的播放方跳过开头一帧。从录音开头截取时前面没有帧，不加预热帧。
+ * <p>
+ * 截取位置向下取整到帧，和 {@link com.yisan.audiodemo.core.io.RecordingCutter} 的规则一致，
+ * 拆分的后一部分开头重复前一部分的最后一帧。范围是空的时候输出空文件，和 RecordingCutter 一样。
+ * 只复制截取范围内的帧，没有编解码的CPU开销。
+ */
+public final class Mp4Cutter {
+
+    /**
+     * 轨道格式里没有最大帧长度时使用，AAC一帧远小于这个值
+     */
+    private static final int DEFAULT_MAX_SAMPLE_SIZE = 64 * 1024;
+
+    private Mp4Cutter() {
+    }
+
+    /**
+     * 复制 [startMillis, endMillis) 这一段音频到 output，前面带一个预热帧
+     *
+     * @param endMillis 超过录音长度时截到末尾
+     * @return 输出的字节数，范围是空的时候为0
+     */
+    public static long cut(File input, long startMillis, long endMillis, File output) throws IOException {
+        if (startMillis < 0 || endMillis < startMillis) {
+            throw new IllegalArgumentException("range: " + startMillis + " ~ " + endMillis);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(input.getAbsolutePath());
+            int track = findAudioTrack(extractor);
+            MediaFormat format = extractor.getTrackFormat(track);
+            extractor.selectTrack(track);
+            long durationMillis = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) / 1000 : Long.MAX_VALUE;
+            //结束位置也取到所在帧的开头，和下一段的开始位置相同
+            long endUs = Long.MAX_VALUE;
+            if (endMillis < durationMillis) {
+                extractor.seekTo(endMillis * 1000, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                endUs = extractor.getSampleTime();
+            }
+            long startUs = -1;
+            if (startMillis < durationMillis) {
+                extractor.seekTo(startMillis * 1000, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                startUs = extractor.getSampleTime();
+            }
+            if (startUs < 0 || startUs >= endUs) {
+                //MediaMuxer不能写没有帧的文件
+                new FileOutputStream(temp).close();
+            } else {
+                seekToPrimingFrame(extractor, startUs);
+                int maxSampleSize = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)
+                        ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : DEFAULT_MAX_SAMPLE_SIZE;
+                copy(extractor, format, ByteBuffer.allocateDirect(maxSampleSize), endUs, temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            extractor.release();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        return output.length();
+    }
+
+    /**
+     * 在 atMillis 处拆成两个文件，原文件不变；atMillis 是0或者超过录音长度时其中一个是空文件
+     */
+    public static void split(File input, long atMillis, File first, File second) throws IOException {
+        cut(input, 0, atMillis, first);
+        try {
+            cut(input, atMillis, Long.MAX_VALUE, second);
+        } catch (IOException | RuntimeException e) {
+            first.delete();
+            throw e;
+        }
+    }
+
+    private static int findAudioTrack(MediaExtractor extractor) throws IOException {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                return i;
+            }
+        }
+        throw new IOException("no audio track");
+    }
+
+    /**
+     * 定位到 startUs 所在帧的前一帧，AAC每一帧都是同步帧；startUs 是第一帧时停在第一帧
+     */
+    private static void seekToPrimingFrame(MediaExtractor extractor, long startUs) {
+        if (startUs == 0) {
+            return;
+        }
+        extractor.seekTo(startUs - 1, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        long timeUs = extractor.getSampleTime();
+        if (timeUs < 0 || timeUs > startUs) {
+            extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        }
+    }
+
+    /**
+     * 从当前位置复制到 endUs 之前，时间戳从0开始
+     */
+    private static void copy(MediaExtractor extractor, MediaFormat format, ByteBuffer buffer, long endUs,
+            File output) throws IOException {
+        MediaMuxer muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            int track = muxer.addTrack(format);
+            muxer.start();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            long firstUs = -1;
+            int samples = 0;
+            while (true) {
+                int size = extractor.readSampleData(buffer, 0);
+                long timeUs = extractor.getSampleTime();
+                if (size < 0 || timeUs >= endUs) {
+                    break;
+                }
+                if (firstUs < 0) {
+                    firstUs = timeUs;
+                }
+                int flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                        ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                info.set(0, size, timeUs - firstUs, flags);
+                muxer.writeSampleData(track, buffer, info);
+                samples++;
+                extractor.advance();
+            }
+            if (samples == 0) {
+                throw new IOException("no audio in range");
+            }
+            //写入moov，文件才能播放
+            muxer.stop();
+        } catch (IllegalStateException e) {
+            throw new IOException("muxer fail", e);
+        } finally {
+            muxer.release();
+        }
+    }
+}
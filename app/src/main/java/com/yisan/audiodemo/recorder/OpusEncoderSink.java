@@ -0,0 +1,179 @@
+package com.yisan.audiodemo.recorder;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import androidx.annotation.RequiresApi;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.codec.OggOpusWriter;
+import com.yisan.audiodemo.core.codec.OpusHeader;
+import com.yisan.audiodemo.core.codec.PcmFramer;
+import com.yisan.audiodemo.core.dsp.ResamplerSink;
+import com.yisan.audiodemo.core.io.PcmFileWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 边录边编码：把PCM数据按20ms一帧送进 {@link MediaCodec} 编码成Opus，写成 .opus
+ * <p>
+ * 系统的Opus编码器从Android 10开始提供，只支持 8/12/16/24/48kHz 的16bit输入，
+ * 其他采样率先经过 {@link com.yisan.audiodemo.core.dsp.ResamplerSink}。
+ * 语音用16~32kbps就足够清晰，数据量是96kbps AAC的1/3到1/6。
+ * 和 {@link AacEncoderSink} 一样要放在写线程后面，不是线程安全的。
+ */
+public class OpusEncoderSink implements PcmSink {
+
+    private static final String MIME = MediaFormat.MIMETYPE_AUDIO_OPUS;
+    private static final int FRAME_MILLIS = 20;
+    /**
+     * 等待编码器缓冲区的超时时间
+     */
+    private static final long TIMEOUT_US = 10000;
+
+    private final MediaCodec codec;
+    private final OggOpusWriter output;
+    private final PcmFramer framer;
+    private final int bytesPerFrame;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private long inputBytes;
+    private boolean closed;
+
+    /**
+     * 创建写 .opus 文件的完整链路：采样率不同时先重采样，再编码、封装成Ogg写入文件
+     *
+     * @param encodeRate 编码的采样率，必须是Opus支持的，语音用16kHz
+     */
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    public static PcmSink open(File file, AudioFormatSpec format, int encodeRate, int bitRate) throws IOException {
+        AudioFormatSpec encodeFormat = format.withSampleRate(encodeRate);
+        OggOpusWriter output = new OggOpusWriter(PcmFileWriter.open(file, AudioBuffers.BLOCKS),
+                encodeFormat.getChannelCount(), encodeRate, (int) System.nanoTime());
+        PcmSink encoder;
+        try {
+            encoder = new OpusEncoderSink(encodeFormat, bitRate, output);
+        } catch (IOException | RuntimeException e) {
+            output.close();
+            throw e;
+        }
+        return encodeRate == format.getSampleRate() ? encoder : new ResamplerSink(format, encodeRate, encoder);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    public OpusEncoderSink(AudioFormatSpec format, int bitRate, OggOpusWriter output) throws IOException {
+        if (!OpusHeader.isSupportedSampleRate(format.getSampleRate()) || format.getBitsPerSample() != 16
+                || format.isFloat()) {
+            throw new IOException("opus encoder does not support " + format);
+        }
+        this.output = output;
+        this.bytesPerFrame = format.getBytesPerFrame();
+        int samplesPerFrame = format.getSampleRate() * FRAME_MILLIS / 1000;
+        MediaFormat mediaFormat = MediaFormat.createAudioFormat(MIME, format.getSampleRate(),
+                format.getChannelCount());
+        mediaFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        mediaFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, samplesPerFrame * bytesPerFrame);
+        codec = MediaCodec.createEncoderByType(MIME);
+        try {
+            codec.configure(mediaFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+        } catch (RuntimeException e) {
+            codec.release();
+            throw new IOException("opus encoder init fail", e);
+        }
+        framer = new PcmFramer(format, samplesPerFrame, new PcmFramer.FrameSink() {
+            @Override
+            public void writeFrame(byte[] frame, int length, long presentationTimeUs) throws IOException {
+                queueInput(frame, length, presentationTimeUs, 0);
+            }
+
+            @Override
+            public void close() throws IOException {
+                //通知编码器数据结束，把剩余的输出取完
+                queueInput(null, 0, framer.getPresentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            }
+        });
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        framer.write(buffer, offset, length);
+        inputBytes += length;
+    }
+
+    private void queueInput(byte[] frame, int length, long presentationTimeUs, int flags) throws IOException {
+        try {
+            int index;
+            //没有空闲的输入缓冲区时先取输出，让编码器腾出位置
+            while ((index = codec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+                drainOutput(false);
+            }
+            if (length > 0) {
+                ByteBuffer input = codec.getInputBuffer(index);
+                input.clear();
+                input.put(frame, 0, length);
+            }
+            codec.queueInputBuffer(index, 0, length, presentationTimeUs, flags);
+            drainOutput((flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0);
+        } catch (IllegalStateException e) {
+            throw new IOException("opus encode fail", e);
+        }
+    }
+
+    /**
+     * 取出编码结果
+     *
+     * @param endOfStream true时一直等到编码器输出结束标记
+     */
+    private void drainOutput(boolean endOfStream) throws IOException {
+        while (true) {
+            int index = codec.dequeueOutputBuffer(bufferInfo, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                //csd-1 是编码器延迟，单位纳秒，换算成48kHz的 pre-skip
+                ByteBuffer delay = codec.getOutputFormat().getByteBuffer("csd-1");
+                if (delay != null && delay.remaining() >= 8 && output.getPacketCount() == 0) {
+                    long delayNs = delay.order(ByteOrder.LITTLE_ENDIAN).getLong(delay.position());
+                    output.setPreSkip((int) (delayNs * OpusHeader.GRANULE_RATE / 1000000000L));
+                }
+            } else if (index >= 0) {
+                ByteBuffer data = codec.getOutputBuffer(index);
+                data.position(bufferInfo.offset);
+                data.limit(bufferInfo.offset + bufferInfo.size);
+                //OpusHead由 OggOpusWriter 自己生成，编码器的配置数据不写入
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && bufferInfo.size > 0) {
+                    output.writePacket(data);
+                }
+                codec.releaseOutputBuffer(index, false);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            framer.close();
+        } finally {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+            codec.release();
+            //最后一页按实际输入长度截断
+            output.setInputFrames(inputBytes / bytesPerFrame);
+            output.close();
+        }
+    }
+}
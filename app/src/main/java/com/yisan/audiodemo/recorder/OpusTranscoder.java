@@ -0,0 +1,87 @@
+package com.yisan.audiodemo.recorder;
+
+import android.os.Build;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.batch.Transcoder;
+import com.yisan.audiodemo.core.io.SeekablePcmReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 批量转换：把裸PCM或wav录音编码成 .opus，用于低带宽上传
+ * <p>
+ * 需要Android 10以上的系统Opus编码器。输出先写到临时文件，完成后改名。
+ */
+public class OpusTranscoder implements Transcoder {
+
+    private final File outputDirectory;
+    private final AudioFormatSpec rawFormat;
+    private final int encodeRate;
+    private final int bitRate;
+
+    /**
+     * @param encodeRate 编码的采样率，语音用16kHz
+     * @param bitRate    码率，语音一般16~32kbps
+     */
+    public OpusTranscoder(File outputDirectory, AudioFormatSpec rawFormat, int encodeRate, int bitRate) {
+        this.outputDirectory = outputDirectory;
+        this.rawFormat = rawFormat;
+        this.encodeRate = encodeRate;
+        this.bitRate = bitRate;
+    }
+
+    @Override
+    public boolean accepts(File input) {
+        String name = input.getName();
+        return name.endsWith(".pcm") || name.endsWith(".wav");
+    }
+
+    @Override
+    public File outputFor(File input) {
+        String name = input.getName();
+        return new File(outputDirectory, name.substring(0, name.lastIndexOf('.')) + ".opus");
+    }
+
+    @Override
+    public long transcode(File input, File output, byte[] buffer) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            throw new IOException("opus encoder needs Android 10");
+        }
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs() && !outputDirectory.isDirectory()) {
+            throw new IOException("can not create " + outputDirectory);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        SeekablePcmReader reader = SeekablePcmReader.open(input, rawFormat);
+        try {
+            AudioFormatSpec format = reader.getFormat();
+            if (format.isFloat() || format.getBitsPerSample() != 16 || format.getChannelCount() > 2) {
+                throw new IOException("opus encoder needs 16bit mono or stereo pcm: " + format);
+            }
+            PcmSink encoder = OpusEncoderSink.open(temp, format, encodeRate, bitRate);
+            try {
+                int length = buffer.length - buffer.length % format.getBytesPerFrame();
+                int read;
+                while ((read = reader.read(buffer, 0, length)) > 0) {
+                    encoder.write(buffer, 0, read);
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    encoder.close();
+                } catch (IOException ignored) {
+                    //已经失败了
+                }
+                temp.delete();
+                throw e;
+            }
+            encoder.close();
+        } finally {
+            reader.close();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        return output.length();
+    }
+}
@@ -0,0 +1,92 @@
+package com.yisan.audiodemo.recorder;
+
+import android.util.Log;
+import com.yisan.audiodemo.core.AsyncPcmSink;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 提前准备好的录音输出：文件、MediaMuxer、AAC编码器在按下录音键之前就创建好
+ * <p>
+ * 按下时 {@link #open()} 只启动写线程，不创建native对象，主线程上几乎没有耗时。
+ * 没有用上的在 {@link #discard()} 里释放并删除文件。
+ * 文件名是准备时的时间，录音结束后由调用方按按下录音键的时间改名。
+ */
+final class PreparedRecording implements PcmSink {
+
+    private static final String TAG = "PreparedRecording";
+    /**
+     * 预录数据一次写入，写线程队列要能放下预录时长再加上编码器启动的时间
+     */
+    private static final int WRITER_QUEUE_SLOTS = 64;
+
+    private final File file;
+    private final AacEncoderSink encoder;
+    private AsyncPcmSink writer;
+
+    private PreparedRecording(File file, AacEncoderSink encoder) {
+        this.file = file;
+        this.encoder = encoder;
+    }
+
+    /**
+     * 创建文件和编码器，比较耗时，不能在主线程和采集线程调用
+     */
+    static PreparedRecording create(File file, AudioFormatSpec format, int bitRate) throws IOException {
+        file.getParentFile().mkdirs();
+        AacEncoderSink encoder = new AacEncoderSink(format, bitRate,
+                new Mp4AacOutput(file, format.getSampleRate(), format.getChannelCount()));
+        return new PreparedRecording(file, encoder);
+    }
+
+    /**
+     * 启动写线程，编码和写文件都在写线程上执行
+     */
+    PreparedRecording open() {
+        writer = new AsyncPcmSink(encoder, WRITER_QUEUE_SLOTS, AudioBuffers.PCM);
+        return this;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        writer.write(buffer, offset, length);
+    }
+
+    /**
+     * 等待写线程写完，结束编码，写入moov
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        if (writer.getOverrunCount() > 0) {
+            Log.w(TAG, "writer overrun " + writer.getOverrunCount() + " times, dropped "
+                    + writer.getDroppedBytes() + " bytes");
+        }
+    }
+
+    /**
+     * 没有用上，释放编码器并删除文件，已经 {@link #open()} 时先结束写线程
+     */
+    void discard() {
+        try {
+            if (writer != null) {
+                //关闭写线程时会关闭编码器
+                writer.close();
+            } else {
+                encoder.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            //没有写入数据时MediaMuxer结束会失败，文件本来就要删除
+            Log.d(TAG, "discard " + file.getName() + ": " + e);
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "delete " + file + " fail");
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,162 @@
+package com.yisan.audiodemo.recorder;
+
+import android.os.Environment;
+import android.util.Log;
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.catalog.RecordingCatalog;
+import com.yisan.audiodemo.core.catalog.RecordingEntry;
+import com.yisan.audiodemo.core.io.RecordingCutter;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 进程内唯一的录音目录
+ * <p>
+ * 目录文件放在 audioDemo/.catalog，在单独的线程上打开和写入，
+ * 录音线程、主线程只提交任务，不会等待存储同步。
+ */
+public final class Recordings {
+
+    private static final String TAG = "Recordings";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "recording-catalog");
+        }
+    });
+
+    private static RecordingCatalog catalog;
+
+    /**
+     * 拆分的结果，在目录线程上回调
+     */
+    public interface SplitListener {
+
+        /**
+         * @param error 成功时为null
+         */
+        void onSplitFinished(File first, File second, Exception error);
+    }
+
+    private Recordings() {
+    }
+
+    /**
+     * 录音目录，第一次调用时打开，只能在 {@link #execute} 提交的任务里调用
+     */
+    public static RecordingCatalog catalog() throws IOException {
+        if (catalog == null) {
+            catalog = RecordingCatalog.open(new File(Environment.getExternalStorageDirectory().getAbsolutePath()
+                    + "/audioDemo/.catalog"));
+        }
+        return catalog;
+    }
+
+    /**
+     * 在目录线程上执行
+     */
+    public static void execute(Runnable task) {
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * 登记一个录完的文件，文件大小在目录线程上读取
+     *
+     * @param format    格式说明
+     * @param peakLevel 峰值，0~1，未知时传-1
+     */
+    public static void add(final File file, final String format, final long durationMillis, final float peakLevel,
+            final long createdTime) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    catalog().put(new RecordingEntry(file.getAbsolutePath(), format, durationMillis,
+                            file.length(), peakLevel, createdTime));
+                } catch (IOException e) {
+                    //登记失败不影响录音本身
+                    Log.e(TAG, "add " + file + " fail", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 文件被转换成新格式、原文件已经删除时，把登记换成新文件，时长、峰值和创建时间不变
+     */
+    public static void replace(final File oldFile, final File newFile, final String format) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RecordingCatalog catalog = catalog();
+                    RecordingEntry entry = catalog.get(oldFile.getAbsolutePath());
+                    if (entry == null) {
+                        return;
+                    }
+                    catalog.remove(entry.getPath());
+                    catalog.put(new RecordingEntry(newFile.getAbsolutePath(), format, entry.getDurationMillis(),
+                            newFile.length(), entry.getPeakLevel(), entry.getCreatedTime()));
+                } catch (IOException e) {
+                    Log.e(TAG, "replace " + oldFile + " fail", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在录音的 fraction 处拆成两个文件并登记，原文件保留，时长从目录里读取，没有登记的录音不能拆分
+     * <p>
+     * 不解码：.m4a 复制AAC帧，wav、裸PCM、.aac 直接复制字节，耗时只和文件大小有关
+     *
+     * @param rawFormat 裸PCM文件的格式，由录音页面传入，wav按文件头的格式
+     */
+    public static void split(final File file, final AudioFormatSpec rawFormat, final float fraction,
+                             final SplitListener listener) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                File first = partOf(file, 1);
+                File second = partOf(file, 2);
+                try {
+                    RecordingCatalog catalog = catalog();
+                    RecordingEntry entry = catalog.get(file.getAbsolutePath());
+                    if (entry == null) {
+                        throw new IOException("not in catalog: " + file);
+                    }
+                    long at = (long) (entry.getDurationMillis() * fraction);
+                    String name = file.getName();
+                    if (name.endsWith(".m4a")) {
+                        Mp4Cutter.split(file, at, first, second);
+                    } else if (name.endsWith(".wav") || name.endsWith(".pcm") || name.endsWith(".aac")) {
+                        RecordingCutter.split(file, rawFormat, at, first, second);
+                    } else {
+                        throw new IOException("split not supported: " + name);
+                    }
+                    catalog.put(new RecordingEntry(first.getAbsolutePath(), entry.getFormat(), at, first.length(),
+                            entry.getPeakLevel(), entry.getCreatedTime()));
+                    catalog.put(new RecordingEntry(second.getAbsolutePath(), entry.getFormat(),
+                            entry.getDurationMillis() - at, second.length(), entry.getPeakLevel(),
+                            entry.getCreatedTime() + at));
+                    listener.onSplitFinished(first, second, null);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "split " + file + " fail", e);
+                    listener.onSplitFinished(first, second, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 拆分出的第 part 部分：文件名后面加 _part
+     */
+    private static File partOf(File file, int part) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), name.substring(0, dot) + "_" + part + name.substring(dot));
+    }
+}
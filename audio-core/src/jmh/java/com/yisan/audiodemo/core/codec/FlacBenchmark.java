@@ -0,0 +1,126 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 单核编码、解码10秒录音的耗时，每次读写2048字节
+ * <p>
+ * 10秒录音耗时200ms是50倍实时，播放FLAC录音时解码至少要有这个速度。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlacBenchmark {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int SECONDS = 10;
+    private static final int BUFFER_SIZE = 2048;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] pcm;
+    private File encoded;
+    private File output;
+
+    @Setup
+    public void setUp() throws IOException {
+        pcm = speechLike();
+        encoded = File.createTempFile("bench", ".flac");
+        output = File.createTempFile("bench-out", ".flac");
+        encodeTo(encoded);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoded.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        encodeTo(output);
+        return output.length();
+    }
+
+    /**
+     * 从头解码并校验MD5，和压缩后校验、从头播放的路径一样
+     */
+    @Benchmark
+    public long decode() throws IOException {
+        long total = 0;
+        FlacReader reader = FlacReader.open(encoded);
+        try {
+            reader.setVerify(true);
+            int read;
+            while ((read = reader.read(buffer, 0, buffer.length)) >= 0) {
+                total += read;
+            }
+        } finally {
+            reader.close();
+        }
+        return total;
+    }
+
+    /**
+     * 播放时拖到中间：按SEEKTABLE定位再解码一个缓冲区。
+     * 定位点间隔10秒，拖到两个定位点正中间要先解码5秒，是平均情况
+     */
+    @Benchmark
+    public int seekAndRead() throws IOException {
+        FlacReader reader = FlacReader.open(encoded);
+        try {
+            reader.seekToMillis(SECONDS * 1000 / 2);
+            return reader.read(buffer, 0, buffer.length);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void encodeTo(File target) throws IOException {
+        FlacWriter writer = FlacWriter.open(target, FORMAT);
+        try {
+            for (int offset = 0; offset < pcm.length; offset += BUFFER_SIZE) {
+                writer.write(pcm, offset, Math.min(BUFFER_SIZE, pcm.length - offset));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * 几个谐波叠加再加上噪声，压缩比接近真实的人声录音
+     */
+    private static byte[] speechLike() {
+        Random random = new Random(3);
+        int rate = FORMAT.getSampleRate();
+        byte[] pcm = new byte[SECONDS * rate * 2];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            double envelope = Math.abs(Math.sin(2 * Math.PI * 3 * i / rate));
+            double value = 0;
+            for (int harmonic = 1; harmonic <= 6; harmonic++) {
+                value += Math.sin(2 * Math.PI * 140 * harmonic * i / rate) / harmonic;
+            }
+            short sample = (short) (6000 * envelope * value + 60 * random.nextGaussian());
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,89 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 录音页面的处理链处理一个2048字节缓冲区（约23ms音频）的耗时，
+ * 采集线程上的处理要远小于缓冲区时长的1%（232us）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DspChainBenchmark {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int BUFFER_SIZE = 2048;
+
+    /**
+     * 单个环节或者录音页面的完整处理链（高通、噪声门、自动增益）
+     */
+    @Param({"highpass", "gate", "agc", "chain"})
+    public String stages;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] source;
+    private DspChain chain;
+
+    @Setup
+    public void setUp() {
+        source = speechLike(BUFFER_SIZE);
+        switch (stages) {
+            case "highpass":
+                chain = new DspChain(FORMAT, BiquadFilter.highPass(FORMAT, 80));
+                break;
+            case "gate":
+                chain = new DspChain(FORMAT, new NoiseGate(FORMAT));
+                break;
+            case "agc":
+                chain = new DspChain(FORMAT, new AutomaticGainControl(FORMAT));
+                break;
+            case "chain":
+                chain = new DspChain(FORMAT, BiquadFilter.highPass(FORMAT, 80), new NoiseGate(FORMAT),
+                        new AutomaticGainControl(FORMAT));
+                break;
+            default:
+                throw new IllegalArgumentException(stages);
+        }
+    }
+
+    @Benchmark
+    public byte[] process() {
+        //处理是原地的，每次都从同一份输入开始
+        System.arraycopy(source, 0, buffer, 0, BUFFER_SIZE);
+        chain.process(buffer, 0, BUFFER_SIZE);
+        return buffer;
+    }
+
+    /**
+     * 一段有起伏的正弦加噪声，让噪声门和增益都在动作
+     */
+    private static byte[] speechLike(int length) {
+        Random random = new Random(2);
+        byte[] pcm = new byte[length];
+        for (int i = 0; i < length / 2; i++) {
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * i / 700.0);
+            double value = 6000 * envelope * Math.sin(2 * Math.PI * 220 * i / FORMAT.getSampleRate())
+                    + 200 * random.nextGaussian();
+            short sample = (short) value;
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
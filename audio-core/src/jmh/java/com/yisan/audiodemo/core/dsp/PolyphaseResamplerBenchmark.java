@@ -0,0 +1,59 @@
+package com.yisan.audiodemo.core.dsp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 采样率转换的吞吐量，每次输入1024帧（录音页面一次读取的2048字节）
+ * <p>
+ * 结果是每秒处理的次数，乘以1024帧再除以输入采样率就是实时倍数。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolyphaseResamplerBenchmark {
+
+    private static final int FRAMES = 1024;
+
+    /**
+     * 输入采样率:输出采样率:声道数
+     */
+    @Param({"44100:16000:1", "48000:44100:1", "48000:44100:2"})
+    public String conversion;
+
+    private PolyphaseResampler resampler;
+    private float[] in;
+    private float[] out;
+
+    @Setup
+    public void setUp() {
+        String[] fields = conversion.split(":");
+        int channels = Integer.parseInt(fields[2]);
+        resampler = new PolyphaseResampler(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), channels);
+        in = new float[FRAMES * channels];
+        out = new float[resampler.getMaxOutputFrames(FRAMES) * channels];
+        Random random = new Random(1);
+        for (int i = 0; i < in.length; i++) {
+            in[i] = random.nextFloat() - 0.5f;
+        }
+    }
+
+    @Benchmark
+    public int process() {
+        return resampler.process(in, 0, FRAMES, out, 0);
+    }
+}
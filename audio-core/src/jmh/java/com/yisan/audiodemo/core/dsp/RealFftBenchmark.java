@@ -0,0 +1,54 @@
+package com.yisan.audiodemo.core.dsp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 频谱图用的实数FFT计算一帧功率谱的耗时
+ * <p>
+ * 44.1kHz下1024点是23.2ms的音频，按不重叠的帧算，100倍实时对应每次不超过232us；
+ * 频谱图的跳步不小于半帧，最多再慢一倍。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RealFftBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    private RealFft fft;
+    private float[] input;
+    private float[] power;
+
+    @Setup
+    public void setUp() {
+        fft = new RealFft(size);
+        input = new float[size];
+        power = new float[fft.getBinCount()];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            input[i] = random.nextFloat() - 0.5f;
+        }
+    }
+
+    @Benchmark
+    public float[] powerSpectrum() {
+        fft.powerSpectrum(input, power);
+        return power;
+    }
+}
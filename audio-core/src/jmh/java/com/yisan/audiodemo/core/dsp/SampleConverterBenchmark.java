@@ -0,0 +1,112 @@
+package com.yisan.audiodemo.core.dsp;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 格式转换内核处理一个2048字节缓冲区（1024个16bit采样）的耗时
+ * <p>
+ * 44.1kHz单声道下这是23.2ms的音频，100倍实时对应每次不超过232us。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleConverterBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    private final byte[] bytes = new byte[SAMPLES * 2];
+    private final short[] shorts = new short[SAMPLES];
+    private final float[] floats = new float[SAMPLES];
+    private final float[] left = new float[SAMPLES / 2];
+    private final float[] right = new float[SAMPLES / 2];
+    private final short[] halfShorts = new short[SAMPLES / 2];
+    private ShortBuffer directShorts;
+    private FloatBuffer directFloats;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        random.nextBytes(bytes);
+        for (int i = 0; i < SAMPLES; i++) {
+            shorts[i] = (short) random.nextInt();
+            floats[i] = random.nextFloat() * 2.4f - 1.2f;
+        }
+        directShorts = ByteBuffer.allocateDirect(SAMPLES * 2).asShortBuffer();
+        directShorts.put(shorts).clear();
+        directFloats = ByteBuffer.allocateDirect(SAMPLES * 4).asFloatBuffer();
+    }
+
+    @Benchmark
+    public float[] bytesToFloat() {
+        SampleConverter.bytesToFloat(bytes, 0, floats, 0, SAMPLES);
+        return floats;
+    }
+
+    @Benchmark
+    public byte[] floatToBytes() {
+        SampleConverter.floatToBytes(floats, 0, bytes, 0, SAMPLES);
+        return bytes;
+    }
+
+    @Benchmark
+    public float[] int16ToFloat() {
+        SampleConverter.int16ToFloat(shorts, 0, floats, 0, SAMPLES);
+        return floats;
+    }
+
+    @Benchmark
+    public short[] floatToInt16() {
+        SampleConverter.floatToInt16(floats, 0, shorts, 0, SAMPLES);
+        return shorts;
+    }
+
+    /**
+     * 直接缓冲区没有底层数组，走逐个读写的路径
+     */
+    @Benchmark
+    public FloatBuffer int16ToFloatDirect() {
+        SampleConverter.int16ToFloat(directShorts, directFloats, SAMPLES);
+        return directFloats;
+    }
+
+    @Benchmark
+    public float[] deinterleave() {
+        SampleConverter.deinterleave(floats, 0, left, right, 0, SAMPLES / 2);
+        return left;
+    }
+
+    @Benchmark
+    public float[] interleave() {
+        SampleConverter.interleave(left, right, 0, floats, 0, SAMPLES / 2);
+        return floats;
+    }
+
+    @Benchmark
+    public float[] downmixStereoFloat() {
+        SampleConverter.downmixStereo(floats, 0, left, 0, SAMPLES / 2);
+        return left;
+    }
+
+    @Benchmark
+    public short[] downmixStereoInt16() {
+        SampleConverter.downmixStereo(shorts, 0, halfShorts, 0, SAMPLES / 2);
+        return halfShorts;
+    }
+}
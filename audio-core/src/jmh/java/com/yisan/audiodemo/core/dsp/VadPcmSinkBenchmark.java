@@ -0,0 +1,97 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 静音检测环节处理一个2048字节缓冲区（约23ms音频）的耗时
+ * <p>
+ * 输入是循环播放的一分钟合成录音，1秒音节状的语音、2秒背景噪声交替，
+ * 语音段和静音段的开始、结束都会经过。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VadPcmSinkBenchmark {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int BUFFER_SIZE = 2048;
+    private static final int SECONDS = 60;
+
+    /**
+     * {@link VadPcmSink} 的丢弃、压缩、标记模式
+     */
+    @Param({"0", "1", "2"})
+    public int mode;
+
+    private byte[] pcm;
+    private int position;
+    private VadPcmSink sink;
+
+    @Setup
+    public void setUp() {
+        pcm = speechAndSilence();
+        sink = new VadPcmSink(FORMAT, new PcmSink() {
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void close() {
+            }
+        }, mode, 200, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sink.close();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        sink.write(pcm, position, BUFFER_SIZE);
+        position += BUFFER_SIZE;
+        if (position + BUFFER_SIZE > pcm.length) {
+            position = 0;
+        }
+    }
+
+    private static byte[] speechAndSilence() {
+        Random random = new Random(5);
+        int rate = FORMAT.getSampleRate();
+        byte[] pcm = new byte[SECONDS * rate * 2];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            boolean speech = i / rate % 3 == 0;
+            //背景噪声大约 -50dBFS
+            double value = 100 * random.nextGaussian();
+            if (speech) {
+                //基频和共振峰，每秒4个音节
+                double syllable = Math.max(0, Math.sin(2 * Math.PI * 4 * i / rate));
+                value += 8000 * syllable * (Math.sin(2 * Math.PI * 150 * i / rate)
+                        + 0.5 * Math.sin(2 * Math.PI * 700 * i / rate));
+            }
+            short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
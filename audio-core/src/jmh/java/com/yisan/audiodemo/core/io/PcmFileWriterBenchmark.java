@@ -0,0 +1,83 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.OutputStreamPcmSink;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 原来的 FileOutputStream、合并缓冲区+FileChannel、内存映射三种写法写完整的
+ * 1小时44.1kHz单声道录音，每次写2048字节（录音页面的 BUFFER_SIZE）；
+ * 耗时包含打开和关闭，不包含 fsync
+ */
+@State(Scope.Thread)
+@Fork(1)
+public class PcmFileWriterBenchmark {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int BUFFER_SIZE = 2048;
+    private static final long SESSION_BYTES = FORMAT.millisToBytes(60 * 60 * 1000);
+
+    @Param({"stream", "channel", "mapped"})
+    public String writer;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(buffer);
+        file = File.createTempFile("pcm-writer", ".pcm");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public long session() throws IOException {
+        PcmSink session = open();
+        try {
+            for (long written = 0; written + BUFFER_SIZE <= SESSION_BYTES; written += BUFFER_SIZE) {
+                session.write(buffer, 0, BUFFER_SIZE);
+            }
+        } finally {
+            session.close();
+        }
+        return file.length();
+    }
+
+    private PcmSink open() throws IOException {
+        switch (writer) {
+            case "stream":
+                return new OutputStreamPcmSink(new FileOutputStream(file));
+            case "channel":
+                return PcmFileWriter.open(file);
+            case "mapped":
+                return PcmFileWriter.openMapped(file, PcmFileWriter.DEFAULT_MAP_CHUNK_SIZE);
+            default:
+                throw new IllegalArgumentException(writer);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 录音时同步计算波形峰值，每个2048字节缓冲区（约23ms音频）的耗时，包含写峰值文件
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeakIndexWriterBenchmark {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int BUFFER_SIZE = 2048;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private File file;
+    private PeakIndexWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(buffer);
+        file = File.createTempFile("peaks", ".peaks");
+        writer = PeakIndexWriter.open(file, FORMAT);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writer.write(buffer, 0, BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,218 @@
+package com.yisan.audiodemo.core;
+
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import com.yisan.audiodemo.core.buffer.PcmRingBuffer;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步输出端：采集线程只把数据复制进环形缓冲区，由独立的写线程写到下游
+ * <p>
+ * 下游的写入卡顿（fsync、闪存GC、SD卡）不会再阻塞 AudioRecord.read。
+ * 缓冲区写满时丢弃数据并计入溢出次数，采集线程永远不会等待。
+ * 下游 sink 的写入和关闭都在写线程上执行。
+ */
+public class AsyncPcmSink implements PcmSink {
+
+    /**
+     * 写线程空闲时的最长等待时间，正常情况下由采集线程唤醒
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final PcmSink downstream;
+    private final PcmRingBuffer ring;
+    private final Thread writerThread;
+
+    private volatile boolean closed = false;
+    private volatile Throwable failure;
+    private final AtomicBoolean slotsReleased = new AtomicBoolean();
+
+    private volatile long overrunCount;
+    private volatile long droppedBytes;
+    private volatile int maxQueueDepth;
+    private volatile long bytesWritten;
+
+    /**
+     * 创建后写线程立即启动
+     *
+     * @param slotCount 缓冲区槽位数量，决定能扛住多长时间的写入卡顿
+     * @param slotSize  每个槽位的字节数，一般等于每次读取的大小
+     */
+    public AsyncPcmSink(PcmSink downstream, int slotCount, int slotSize) {
+        this(downstream, new PcmRingBuffer(slotCount, slotSize));
+    }
+
+    /**
+     * 槽位从缓冲区池借出，关闭时归还
+     *
+     * @param slotCount 缓冲区槽位数量
+     * @param slotPool  槽位缓冲区池，槽位大小就是池里缓冲区的大小
+     */
+    public AsyncPcmSink(PcmSink downstream, int slotCount, BufferPool<byte[]> slotPool) {
+        this(downstream, new PcmRingBuffer(slotCount, slotPool));
+    }
+
+    private AsyncPcmSink(PcmSink downstream, PcmRingBuffer ring) {
+        this.downstream = downstream;
+        this.ring = ring;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "pcm-writer");
+        writerThread.start();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        checkFailure();
+        if (closed) {
+            throw new IOException("sink closed");
+        }
+        int slotSize = ring.slotSize();
+        while (length > 0) {
+            int chunk = Math.min(length, slotSize);
+            if (!ring.offer(buffer, offset, chunk)) {
+                //写线程跟不上，丢弃这段数据，只有采集线程会修改计数
+                overrunCount++;
+                droppedBytes += chunk;
+            }
+            offset += chunk;
+            length -= chunk;
+        }
+        int depth = ring.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        LockSupport.unpark(writerThread);
+    }
+
+    /**
+     * 等待缓冲区的数据全部写完，再关闭下游
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            //写线程还在写剩余的数据，由它退出时归还槽位
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for writer");
+        }
+        //写线程已经退出，可以安全归还槽位
+        releaseSlots();
+        checkFailure();
+    }
+
+    /**
+     * 只能在生产者和消费者都停止后调用，两个线程都可能调用，只归还一次
+     */
+    private void releaseSlots() {
+        if (slotsReleased.compareAndSet(false, true)) {
+            ring.release();
+        }
+    }
+
+    private void drainLoop() {
+        try {
+            while (true) {
+                if (ring.drainTo(countingSink)) {
+                    continue;
+                }
+                if (closed) {
+                    //closed之后生产者不会再写，把剩余的数据写完
+                    while (ring.drainTo(countingSink)) {
+                        //继续写
+                    }
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            downstream.close();
+        } catch (Throwable e) {
+            failure = e;
+            PcmPipeline.closeQuietly(downstream);
+        } finally {
+            //closed之后生产者已经停止；没有closed时生产者可能还在写，由close()归还
+            if (closed) {
+                releaseSlots();
+            }
+        }
+    }
+
+    /**
+     * 写线程写给下游时顺便统计字节数
+     */
+    private final PcmSink countingSink = new PcmSink() {
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            downstream.write(buffer, offset, length);
+            //只有写线程修改
+            bytesWritten += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            downstream.close();
+        }
+    };
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure;
+        if (e == null) {
+            return;
+        }
+        if (e instanceof IOException) {
+            throw new IOException("writer failed", e);
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new IOException(e);
+    }
+
+    /**
+     * 缓冲区写满导致丢数据的次数
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * 当前排队等待写入的槽位数量
+     */
+    public int getQueueDepth() {
+        return ring.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * 已经写给下游的字节数
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getCapacity() {
+        return ring.capacity();
+    }
+}
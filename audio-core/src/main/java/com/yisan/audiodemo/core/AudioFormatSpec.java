@@ -0,0 +1,170 @@
+package com.yisan.audiodemo.core;
+
+/**
+ * PCM数据格式：采样率、声道数、采样位数、整数或浮点
+ * <p>
+ * 多声道数据按帧交错存放，都是小端。8bit整数是无符号的（和wav一致），16bit整数有符号，浮点是32bit，范围-1~1。
+ */
+public final class AudioFormatSpec {
+
+    /**
+     * 整数采样
+     */
+    public static final int ENCODING_PCM_INT = 1;
+    /**
+     * 32bit浮点采样
+     */
+    public static final int ENCODING_PCM_FLOAT = 2;
+
+    /**
+     * 所有安卓系统都支持的格式：44100Hz、单声道、16bit
+     */
+    public static final AudioFormatSpec MONO_16BIT_44100 = new AudioFormatSpec(44100, 1, 16);
+    public static final AudioFormatSpec STEREO_16BIT_44100 = new AudioFormatSpec(44100, 2, 16);
+    public static final AudioFormatSpec MONO_16BIT_48000 = new AudioFormatSpec(48000, 1, 16);
+    /**
+     * 语音识别常用的格式：16000Hz、单声道、16bit
+     */
+    public static final AudioFormatSpec MONO_16BIT_16000 = new AudioFormatSpec(16000, 1, 16);
+
+    private final int sampleRate;
+    private final int channelCount;
+    private final int bitsPerSample;
+    private final int encoding;
+
+    /**
+     * 整数PCM
+     */
+    public AudioFormatSpec(int sampleRate, int channelCount, int bitsPerSample) {
+        this(sampleRate, channelCount, bitsPerSample, ENCODING_PCM_INT);
+    }
+
+    public AudioFormatSpec(int sampleRate, int channelCount, int bitsPerSample, int encoding) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate: " + sampleRate);
+        }
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("channelCount: " + channelCount);
+        }
+        if (bitsPerSample <= 0 || bitsPerSample % 8 != 0) {
+            throw new IllegalArgumentException("bitsPerSample: " + bitsPerSample);
+        }
+        if (encoding != ENCODING_PCM_INT && encoding != ENCODING_PCM_FLOAT
+                || encoding == ENCODING_PCM_FLOAT && bitsPerSample != 32) {
+            throw new IllegalArgumentException("encoding: " + encoding + ", bitsPerSample: " + bitsPerSample);
+        }
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.bitsPerSample = bitsPerSample;
+        this.encoding = encoding;
+    }
+
+    /**
+     * 32bit浮点PCM
+     */
+    public static AudioFormatSpec pcmFloat(int sampleRate, int channelCount) {
+        return new AudioFormatSpec(sampleRate, channelCount, 32, ENCODING_PCM_FLOAT);
+    }
+
+    /**
+     * 采样率不同，其他相同的格式
+     */
+    public AudioFormatSpec withSampleRate(int sampleRate) {
+        return new AudioFormatSpec(sampleRate, channelCount, bitsPerSample, encoding);
+    }
+
+    /**
+     * 声道数不同，其他相同的格式
+     */
+    public AudioFormatSpec withChannelCount(int channelCount) {
+        return new AudioFormatSpec(sampleRate, channelCount, bitsPerSample, encoding);
+    }
+
+    /**
+     * 采样位数和编码不同，其他相同的格式
+     */
+    public AudioFormatSpec withEncoding(int bitsPerSample, int encoding) {
+        return new AudioFormatSpec(sampleRate, channelCount, bitsPerSample, encoding);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public boolean isFloat() {
+        return encoding == ENCODING_PCM_FLOAT;
+    }
+
+    /**
+     * 每个采样的字节数
+     */
+    public int getBytesPerSample() {
+        return bitsPerSample / 8;
+    }
+
+    /**
+     * 一帧（所有声道各一个采样）的字节数
+     */
+    public int getBytesPerFrame() {
+        return channelCount * bitsPerSample / 8;
+    }
+
+    /**
+     * 每秒的字节数
+     */
+    public int getByteRate() {
+        return sampleRate * getBytesPerFrame();
+    }
+
+    public long bytesToMillis(long bytes) {
+        return bytes / getBytesPerFrame() * 1000 / sampleRate;
+    }
+
+    /**
+     * 毫秒换算成字节数，按帧对齐
+     */
+    public long millisToBytes(long millis) {
+        return millis * sampleRate / 1000 * getBytesPerFrame();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AudioFormatSpec)) {
+            return false;
+        }
+        AudioFormatSpec that = (AudioFormatSpec) o;
+        return sampleRate == that.sampleRate
+                && channelCount == that.channelCount
+                && bitsPerSample == that.bitsPerSample
+                && encoding == that.encoding;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = sampleRate;
+        result = 31 * result + channelCount;
+        result = 31 * result + bitsPerSample;
+        result = 31 * result + encoding;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return sampleRate + "Hz/" + channelCount + "ch/" + bitsPerSample + "bit" + (isFloat() ? " float" : "");
+    }
+}
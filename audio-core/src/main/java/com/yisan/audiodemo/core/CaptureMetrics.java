@@ -0,0 +1,187 @@
+package com.yisan.audiodemo.core;
+
+import com.yisan.audiodemo.core.dsp.LevelMeter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 录音管线的运行指标，用于排查录音断断续续的问题
+ * <p>
+ * 采集线程通过 {@link PcmPipeline} 记录，全部使用原子变量，不加锁，
+ * UI线程可以按帧率读取，不会和采集线程互相等待。
+ * 写线程队列的深度、溢出和写入字节数来自 {@link #setWriterQueue} 关联的 {@link AsyncPcmSink}。
+ */
+public class CaptureMetrics {
+
+    /**
+     * 读取耗时直方图的桶数，第 i 个桶统计 [2^i, 2^(i+1)) 微秒
+     */
+    public static final int LATENCY_BUCKETS = 24;
+
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong shortReads = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile int lastReadSize;
+    private volatile int minReadSize = Integer.MAX_VALUE;
+    private volatile int maxReadSize;
+
+    private final LevelMeter levelMeter = new LevelMeter();
+    private volatile float maxPeak;
+    private volatile AsyncPcmSink writerQueue;
+
+    /**
+     * 采集线程：记录一次读取
+     *
+     * @param latencyNanos 这次 read 阻塞的时间
+     * @param requested    请求读取的字节数
+     * @param read         实际返回的字节数
+     */
+    public void recordRead(long latencyNanos, int requested, int read) {
+        reads.incrementAndGet();
+        latencyHistogram.incrementAndGet(bucketOf(latencyNanos / 1000));
+        if (latencyNanos > maxLatencyNanos.get()) {
+            maxLatencyNanos.lazySet(latencyNanos);
+        }
+        if (read <= 0) {
+            return;
+        }
+        bytesRead.addAndGet(read);
+        if (read < requested) {
+            shortReads.incrementAndGet();
+        }
+        lastReadSize = read;
+        //只有采集线程写，不需要CAS
+        if (read < minReadSize) {
+            minReadSize = read;
+        }
+        if (read > maxReadSize) {
+            maxReadSize = read;
+        }
+    }
+
+    /**
+     * 采集线程：更新电平
+     */
+    public void recordLevel(byte[] buffer, int offset, int length) {
+        levelMeter.process(buffer, offset, length);
+        float peak = levelMeter.getPeak();
+        //只有采集线程写
+        if (peak > maxPeak) {
+            maxPeak = peak;
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * 关联写线程队列，之后可以读取队列深度、溢出次数、写入字节数
+     */
+    public void setWriterQueue(AsyncPcmSink writerQueue) {
+        this.writerQueue = writerQueue;
+    }
+
+    public LevelMeter getLevelMeter() {
+        return levelMeter;
+    }
+
+    /**
+     * 整个录音过程中的最大峰值，0~1
+     */
+    public float getMaxPeak() {
+        return maxPeak;
+    }
+
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * 返回的字节数少于请求字节数的次数
+     */
+    public long getShortReadCount() {
+        return shortReads.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public int getLastReadSize() {
+        return lastReadSize;
+    }
+
+    public int getMinReadSize() {
+        int min = minReadSize;
+        return min == Integer.MAX_VALUE ? 0 : min;
+    }
+
+    public int getMaxReadSize() {
+        return maxReadSize;
+    }
+
+    public long getMaxReadLatencyMicros() {
+        return maxLatencyNanos.get() / 1000;
+    }
+
+    /**
+     * 读取耗时直方图第 i 个桶的次数
+     */
+    public long getLatencyBucket(int bucket) {
+        return latencyHistogram.get(bucket);
+    }
+
+    /**
+     * 按直方图估算读取耗时的百分位，返回所在桶的上限，单位微秒
+     *
+     * @param percentile 0~1
+     */
+    public long getReadLatencyPercentileMicros(double percentile) {
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            total += latencyHistogram.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += latencyHistogram.get(i);
+            if (seen >= target) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << LATENCY_BUCKETS;
+    }
+
+    public int getWriterQueueDepth() {
+        AsyncPcmSink queue = writerQueue;
+        return queue == null ? 0 : queue.getQueueDepth();
+    }
+
+    public int getWriterQueueMaxDepth() {
+        AsyncPcmSink queue = writerQueue;
+        return queue == null ? 0 : queue.getMaxQueueDepth();
+    }
+
+    public long getOverrunCount() {
+        AsyncPcmSink queue = writerQueue;
+        return queue == null ? 0 : queue.getOverrunCount();
+    }
+
+    /**
+     * 写线程已经交给下游的字节数
+     */
+    public long getBytesWritten() {
+        AsyncPcmSink queue = writerQueue;
+        return queue == null ? bytesRead.get() : queue.getBytesWritten();
+    }
+}
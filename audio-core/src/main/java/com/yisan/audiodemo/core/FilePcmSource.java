@@ -0,0 +1,36 @@
+package com.yisan.audiodemo.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * 从裸PCM文件读取数据，用于回放和离线测试
+ */
+public class FilePcmSource implements PcmSource {
+
+    private final File file;
+    private FileInputStream in;
+
+    public FilePcmSource(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void start() throws IOException {
+        in = new FileInputStream(file);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return in.read(buffer, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
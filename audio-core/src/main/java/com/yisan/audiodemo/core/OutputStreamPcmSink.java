@@ -0,0 +1,26 @@
+package com.yisan.audiodemo.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 把PCM数据写到输出流
+ */
+public class OutputStreamPcmSink implements PcmSink {
+
+    private final OutputStream out;
+
+    public OutputStreamPcmSink(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.yisan.audiodemo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 录音管线：循环从 {@link PcmSource} 读取数据写入 {@link PcmSink}
+ * <p>
+ * {@link #run()} 在调用线程上阻塞执行，直到 {@link #stop()} 或数据源读完；
+ * {@link #stop()} 可以在任意线程调用。
+ */
+public class PcmPipeline {
+
+    private final PcmSource source;
+    private final PcmSink sink;
+    private final byte[] buffer;
+
+    //运行状态，volatile保证其他线程调用stop后循环能及时退出
+    private volatile boolean running = true;
+    private volatile long bytesTransferred;
+    private CaptureMetrics metrics;
+    private PcmProcessor processor;
+
+    public PcmPipeline(PcmSource source, PcmSink sink, byte[] buffer) {
+        if (buffer.length == 0) {
+            throw new IllegalArgumentException("buffer is empty");
+        }
+        this.source = source;
+        this.sink = sink;
+        this.buffer = buffer;
+    }
+
+    /**
+     * 记录每次读取的耗时、长度和电平，必须在 {@link #run()} 之前设置
+     */
+    public void setMetrics(CaptureMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 读到数据后、写入输出端之前原地处理，电平按处理后的数据统计，必须在 {@link #run()} 之前设置
+     */
+    public void setProcessor(PcmProcessor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * 执行管线，结束时关闭数据源和输出端
+     *
+     * @return 传输的字节数
+     */
+    public long run() throws IOException {
+        boolean completed = false;
+        try {
+            CaptureMetrics metrics = this.metrics;
+            PcmProcessor processor = this.processor;
+            source.start();
+            while (running) {
+                long begin = metrics != null ? System.nanoTime() : 0;
+                int read = source.read(buffer, 0, buffer.length);
+                if (metrics != null) {
+                    metrics.recordRead(System.nanoTime() - begin, buffer.length, read);
+                }
+                if (read < 0) {
+                    //数据读完
+                    break;
+                }
+                if (read > 0) {
+                    if (processor != null) {
+                        processor.process(buffer, 0, read);
+                    }
+                    if (metrics != null) {
+                        metrics.recordLevel(buffer, 0, read);
+                    }
+                    sink.write(buffer, 0, read);
+                    bytesTransferred += read;
+                }
+            }
+            completed = true;
+        } finally {
+            //先停止采集，再关闭输出端
+            closeQuietly(source);
+            if (completed) {
+                //正常结束时关闭失败要抛出去，否则文件可能不完整
+                sink.close();
+            } else {
+                closeQuietly(sink);
+            }
+        }
+        return bytesTransferred;
+    }
+
+    /**
+     * 停止管线，当前这次读写完成后退出循环
+     */
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
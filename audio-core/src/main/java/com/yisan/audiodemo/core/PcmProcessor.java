@@ -0,0 +1,14 @@
+package com.yisan.audiodemo.core;
+
+/**
+ * 在管线读到的缓冲区上原地处理数据，例如滤波、增益，在 {@link PcmSink#write} 之前调用
+ * <p>
+ * 只会被管线所在的线程调用，处理过程中不能阻塞
+ */
+public interface PcmProcessor {
+
+    /**
+     * 原地处理，处理后的数据写回同一段 buffer
+     */
+    void process(byte[] buffer, int offset, int length);
+}
@@ -0,0 +1,17 @@
+package com.yisan.audiodemo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * PCM数据的输出端，例如文件、编码器、播放器
+ * <p>
+ * 只会被管线所在的线程调用，实现类不需要考虑线程安全
+ */
+public interface PcmSink extends Closeable {
+
+    /**
+     * 写入数据，返回后调用方可以复用 buffer
+     */
+    void write(byte[] buffer, int offset, int length) throws IOException;
+}
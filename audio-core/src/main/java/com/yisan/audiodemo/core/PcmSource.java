@@ -0,0 +1,24 @@
+package com.yisan.audiodemo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * PCM数据源，录音管线的输入端
+ * <p>
+ * 只会被管线所在的线程调用，实现类不需要考虑线程安全
+ */
+public interface PcmSource extends Closeable {
+
+    /**
+     * 打开底层资源，开始产生数据
+     */
+    void start() throws IOException;
+
+    /**
+     * 读取数据
+     *
+     * @return 读到的字节数，0 表示暂时没有数据，-1 表示数据已经读完
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+}
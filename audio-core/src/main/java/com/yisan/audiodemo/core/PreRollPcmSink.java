@@ -0,0 +1,231 @@
+package com.yisan.audiodemo.core;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 预录输出端：采集一直在运行，没有录音时只在环形缓冲区里保留最近 N 毫秒的数据
+ * <p>
+ * 按下录音键时调用 {@link #start}，采集线程下一次写入时先把预录数据交给会话的输出端，
+ * 再直接写后面的数据，按下之前的那段话不会被截掉，按下之后也不需要等待创建、准备录音器。
+ * 松开时调用 {@link Session#stop}，采集线程写完当前这块数据后把会话交给 {@link Listener}，
+ * 输出端的关闭由监听器在其他线程完成，采集线程不会被编码器、文件的收尾阻塞。
+ * <p>
+ * {@link #write} 和 {@link #close} 只在采集线程调用，{@link #start}、{@link Session#stop} 可以在任意线程调用，
+ * 之间只通过原子引用和volatile交接，不加锁。同一时间只能有一个等待开始的会话。
+ */
+public class PreRollPcmSink implements PcmSink {
+
+    /**
+     * 会话结束的回调，在采集线程上执行，不能做耗时操作
+     */
+    public interface Listener {
+
+        /**
+         * 会话的数据已经全部交给输出端，需要由监听器关闭输出端
+         */
+        void onSessionEnd(Session session);
+    }
+
+    /**
+     * 一次录音，记录从按下到第一块数据写入的延迟
+     */
+    public static final class Session {
+
+        private final PcmSink target;
+        private final long pressNanos;
+        private volatile boolean stopRequested;
+        private volatile long firstSampleNanos;
+        private volatile long preRollBytes;
+        private volatile long bytesWritten;
+
+        Session(PcmSink target, long pressNanos) {
+            this.target = target;
+            this.pressNanos = pressNanos;
+        }
+
+        /**
+         * 结束录音，采集线程写完当前这块数据后回调 {@link Listener#onSessionEnd}
+         */
+        public void stop() {
+            stopRequested = true;
+        }
+
+        public PcmSink getTarget() {
+            return target;
+        }
+
+        /**
+         * 按下录音键的时间，{@link System#nanoTime()}
+         */
+        public long getPressNanos() {
+            return pressNanos;
+        }
+
+        /**
+         * 从按下到预录数据和第一块实时数据写给输出端的时间，还没开始写时返回-1
+         */
+        public long getPressToFirstSampleNanos() {
+            long first = firstSampleNanos;
+            return first == 0 ? -1 : first - pressNanos;
+        }
+
+        /**
+         * 按下之前的预录数据的字节数
+         */
+        public long getPreRollBytes() {
+            return preRollBytes;
+        }
+
+        /**
+         * 写给输出端的字节数，包括预录数据
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public boolean isStarted() {
+            return firstSampleNanos != 0;
+        }
+    }
+
+    private final AudioFormatSpec format;
+    private final Listener listener;
+    private final byte[] ring;
+    private int ringPosition;
+    private int ringFilled;
+
+    private final AtomicReference<Session> pending = new AtomicReference<>();
+    /**
+     * 正在写入的会话，只有采集线程访问
+     */
+    private Session active;
+    private boolean closed;
+
+    /**
+     * @param preRollMillis 保留按下之前多长时间的数据
+     */
+    public PreRollPcmSink(AudioFormatSpec format, int preRollMillis, Listener listener) {
+        if (preRollMillis <= 0) {
+            throw new IllegalArgumentException("preRollMillis: " + preRollMillis);
+        }
+        this.format = format;
+        this.listener = listener;
+        this.ring = new byte[(int) format.millisToBytes(preRollMillis)];
+    }
+
+    /**
+     * 开始一次录音，预录数据和之后的数据都写给 target
+     *
+     * @param pressNanos 按下录音键的时间，{@link System#nanoTime()}
+     */
+    public Session start(PcmSink target, long pressNanos) {
+        Session session = new Session(target, pressNanos);
+        if (!pending.compareAndSet(null, session)) {
+            throw new IllegalStateException("session already pending");
+        }
+        return session;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (pending.get() != null) {
+            Session next = pending.getAndSet(null);
+            if (active != null) {
+                end();
+            }
+            begin(next);
+        }
+        Session session = active;
+        if (session == null) {
+            keep(buffer, offset, length);
+            return;
+        }
+        session.target.write(buffer, offset, length);
+        session.bytesWritten += length;
+        if (session.firstSampleNanos == 0) {
+            session.firstSampleNanos = System.nanoTime();
+        }
+        if (session.stopRequested) {
+            end();
+        }
+    }
+
+    /**
+     * 先把预录数据按时间顺序写给新会话，清空环形缓冲区
+     */
+    private void begin(Session session) throws IOException {
+        active = session;
+        int filled = ringFilled;
+        if (filled > 0) {
+            int start = ringPosition - filled;
+            if (start < 0) {
+                //数据绕回了数组开头，先写旧的一段
+                session.target.write(ring, start + ring.length, -start);
+                session.target.write(ring, 0, ringPosition);
+            } else {
+                session.target.write(ring, start, filled);
+            }
+        }
+        session.preRollBytes = filled;
+        session.bytesWritten = filled;
+        ringPosition = 0;
+        ringFilled = 0;
+    }
+
+    private void end() {
+        Session session = active;
+        active = null;
+        listener.onSessionEnd(session);
+    }
+
+    /**
+     * 没有录音时只保留最近的数据，旧数据被覆盖
+     */
+    private void keep(byte[] buffer, int offset, int length) {
+        int capacity = ring.length;
+        if (length >= capacity) {
+            System.arraycopy(buffer, offset + length - capacity, ring, 0, capacity);
+            ringPosition = 0;
+            ringFilled = capacity;
+            return;
+        }
+        int first = Math.min(length, capacity - ringPosition);
+        System.arraycopy(buffer, offset, ring, ringPosition, first);
+        System.arraycopy(buffer, offset + first, ring, 0, length - first);
+        ringPosition = (ringPosition + length) % capacity;
+        ringFilled = Math.min(capacity, ringFilled + length);
+    }
+
+    /**
+     * 采集停止时结束正在写入和等待开始的会话，没有会话时预录数据直接丢弃
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            end();
+        }
+        Session next = pending.getAndSet(null);
+        if (next != null) {
+            //还没来得及开始，把预录数据写进去再结束
+            begin(next);
+            next.firstSampleNanos = System.nanoTime();
+            end();
+        }
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    /**
+     * 当前缓冲区里预录数据的时长，只在采集线程调用
+     */
+    public long getPreRollMillis() {
+        return format.bytesToMillis(ringFilled);
+    }
+}
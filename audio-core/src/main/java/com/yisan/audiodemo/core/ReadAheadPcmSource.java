@@ -0,0 +1,188 @@
+package com.yisan.audiodemo.core;
+
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import com.yisan.audiodemo.core.buffer.PcmRingBuffer;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 预读数据源：独立的读线程提前把数据读进环形缓冲区，播放线程只从内存取数据
+ * <p>
+ * 播放不用等整个文件读完，读文件的卡顿也不会直接变成播放卡顿。
+ * 上游数据源的打开、读取、关闭都在读线程上执行。
+ * {@link #read} 每次返回一个槽位的数据，length 不能小于槽位大小。
+ */
+public class ReadAheadPcmSource implements PcmSource {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final PcmSource upstream;
+    private final PcmRingBuffer ring;
+    private Thread readerThread;
+    private Thread consumerThread;
+
+    private volatile boolean closed = false;
+    private volatile boolean endOfStream = false;
+    private volatile Throwable failure;
+    private final AtomicBoolean slotsReleased = new AtomicBoolean();
+
+    /**
+     * 已经取到过数据，之后缓冲区空了才算卡顿
+     */
+    private boolean delivered;
+    private boolean starving;
+    private volatile long underrunCount;
+
+    public ReadAheadPcmSource(PcmSource upstream, int slotCount, int slotSize) {
+        this.upstream = upstream;
+        this.ring = new PcmRingBuffer(slotCount, slotSize);
+    }
+
+    /**
+     * 槽位从缓冲区池借出，关闭时归还
+     */
+    public ReadAheadPcmSource(PcmSource upstream, int slotCount, BufferPool<byte[]> slotPool) {
+        this.upstream = upstream;
+        this.ring = new PcmRingBuffer(slotCount, slotPool);
+    }
+
+    /**
+     * 启动读线程，调用 start 的线程就是之后调用 read 的线程
+     */
+    @Override
+    public void start() {
+        consumerThread = Thread.currentThread();
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop();
+            }
+        }, "pcm-read-ahead");
+        readerThread.start();
+    }
+
+    private void readLoop() {
+        try {
+            upstream.start();
+            while (!closed) {
+                int read = ring.offerFrom(upstream);
+                if (read < 0) {
+                    break;
+                }
+                if (read > 0) {
+                    LockSupport.unpark(consumerThread);
+                } else {
+                    //缓冲区满了，等播放线程取走数据
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            PcmPipeline.closeQuietly(upstream);
+            endOfStream = true;
+            LockSupport.unpark(consumerThread);
+            //close() 等待时被中断，由读线程退出时归还槽位
+            if (closed) {
+                releaseSlots();
+            }
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        while (true) {
+            int read = ring.poll(buffer, offset, length);
+            if (read > 0) {
+                delivered = true;
+                starving = false;
+                LockSupport.unpark(readerThread);
+                return read;
+            }
+            checkFailure();
+            if (endOfStream) {
+                //读线程结束之前写入的数据要取完
+                read = ring.poll(buffer, offset, length);
+                return read > 0 ? read : -1;
+            }
+            if (closed) {
+                return -1;
+            }
+            if (delivered && !starving) {
+                //播放过程中缓冲区空了，读文件跟不上
+                starving = true;
+                underrunCount++;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("interrupted while waiting for data");
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure;
+        if (e == null) {
+            return;
+        }
+        if (e instanceof IOException) {
+            throw new IOException("read ahead failed", e);
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new IOException(e);
+    }
+
+    /**
+     * 播放过程中缓冲区被取空的次数
+     */
+    public long getUnderrunCount() {
+        return underrunCount;
+    }
+
+    /**
+     * 当前预读好的槽位数量
+     */
+    public int getBufferedSlots() {
+        return ring.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (readerThread != null) {
+            LockSupport.unpark(readerThread);
+            try {
+                readerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                //先设置closed再检查endOfStream，和读线程的顺序相反，两边至少有一边会归还
+                if (endOfStream) {
+                    releaseSlots();
+                }
+                throw new InterruptedIOException("interrupted while waiting for reader");
+            }
+        }
+        //读线程已经退出，可以安全归还槽位
+        releaseSlots();
+    }
+
+    /**
+     * 只能在读线程和播放线程都不再访问缓冲区后调用，两个线程都可能调用，只归还一次
+     */
+    private void releaseSlots() {
+        if (slotsReleased.compareAndSet(false, true)) {
+            ring.release();
+        }
+    }
+}
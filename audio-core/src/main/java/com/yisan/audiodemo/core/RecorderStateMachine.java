@@ -0,0 +1,150 @@
+package com.yisan.audiodemo.core;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 录音生命周期状态机：空闲 -> 启动中 -> 录音中 -> 停止中 -> 空闲
+ * <p>
+ * {@link #requestStart()}、{@link #requestStop()} 可以在任意线程调用，只记录期望的状态，
+ * 真正的启动、停止都在构造时传入的线程上串行执行，调用方不会被录音器阻塞。
+ * 命令会合并：执行之前连续的按下、松开只看最后一次，快速点按不会创建录音器；
+ * 停止过程中再次按下，停止完成后马上重新开始。
+ * <p>
+ * 状态变化通过 {@link Listener} 在执行线程上通知，界面只根据状态刷新。
+ */
+public class RecorderStateMachine {
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_STARTING = 1;
+    public static final int STATE_RECORDING = 2;
+    public static final int STATE_STOPPING = 3;
+
+    /**
+     * 真正的启动、停止，在状态机的执行线程上调用
+     */
+    public interface Driver {
+
+        void start() throws IOException;
+
+        /**
+         * 只有 {@link #start()} 成功后才会调用
+         */
+        void stop() throws IOException;
+    }
+
+    public interface Listener {
+
+        /**
+         * @param error 启动或停止失败的原因，没有失败时为null
+         */
+        void onStateChanged(int state, Exception error);
+    }
+
+    private final Executor executor;
+    private final Driver driver;
+    private final Listener listener;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean wantRecording;
+    private volatile int state = STATE_IDLE;
+    private volatile long requestCount;
+    private volatile long transitionCount;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param executor 执行启动、停止的线程，必须是单线程
+     */
+    public RecorderStateMachine(Executor executor, Driver driver, Listener listener) {
+        this.executor = executor;
+        this.driver = driver;
+        this.listener = listener;
+    }
+
+    public void requestStart() {
+        request(true);
+    }
+
+    public void requestStop() {
+        request(false);
+    }
+
+    private synchronized void request(boolean start) {
+        wantRecording = start;
+        requestCount++;
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                //执行线程已经退出，不再响应命令
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 一直转换到期望的状态，转换过程中收到的新命令在下一轮处理
+     */
+    private void drain() {
+        //先清除标记再读取期望状态，之后的命令会重新调度，不会丢失
+        scheduled.set(false);
+        while (true) {
+            boolean want = wantRecording;
+            if (want && state == STATE_IDLE) {
+                setState(STATE_STARTING, null);
+                try {
+                    driver.start();
+                } catch (IOException | RuntimeException e) {
+                    //启动失败不再重试，等下一次按下
+                    wantRecording = false;
+                    setState(STATE_IDLE, e);
+                    continue;
+                }
+                setState(STATE_RECORDING, null);
+            } else if (!want && state == STATE_RECORDING) {
+                setState(STATE_STOPPING, null);
+                Exception failure = null;
+                try {
+                    driver.stop();
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+                setState(STATE_IDLE, failure);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void setState(int state, Exception error) {
+        this.state = state;
+        transitionCount++;
+        listener.onStateChanged(state, error);
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * 收到的命令数量
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * 实际发生的状态转换次数，和命令数量对比可以看出合并了多少命令
+     */
+    public long getTransitionCount() {
+        return transitionCount;
+    }
+}
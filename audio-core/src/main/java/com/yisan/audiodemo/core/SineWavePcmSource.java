@@ -0,0 +1,65 @@
+package com.yisan.audiodemo.core;
+
+import java.io.IOException;
+
+/**
+ * 合成的正弦波数据源，16bit 小端单声道
+ * <p>
+ * 不依赖麦克风，可以在普通JVM上做单元测试和基准测试
+ */
+public class SineWavePcmSource implements PcmSource {
+
+    private final double phaseStep;
+    private final double amplitude;
+    private final long totalFrames;
+
+    private double phase;
+    private long framesRead;
+
+    /**
+     * @param sampleRate  采样率
+     * @param frequency   正弦波频率
+     * @param amplitude   幅度，0~1
+     * @param totalFrames 总帧数，小于0表示无限长
+     */
+    public SineWavePcmSource(int sampleRate, double frequency, double amplitude, long totalFrames) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate: " + sampleRate);
+        }
+        this.phaseStep = 2 * Math.PI * frequency / sampleRate;
+        this.amplitude = Math.max(0, Math.min(1, amplitude)) * Short.MAX_VALUE;
+        this.totalFrames = totalFrames;
+    }
+
+    @Override
+    public void start() {
+        phase = 0;
+        framesRead = 0;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int frames = length / 2;
+        if (totalFrames >= 0) {
+            if (framesRead >= totalFrames) {
+                return -1;
+            }
+            frames = (int) Math.min(frames, totalFrames - framesRead);
+        }
+        for (int i = 0; i < frames; i++) {
+            int sample = (int) Math.round(Math.sin(phase) * amplitude);
+            buffer[offset++] = (byte) sample;
+            buffer[offset++] = (byte) (sample >> 8);
+            phase += phaseStep;
+            if (phase > 2 * Math.PI) {
+                phase -= 2 * Math.PI;
+            }
+        }
+        framesRead += frames;
+        return frames * 2;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,48 @@
+package com.yisan.audiodemo.core;
+
+import java.io.IOException;
+
+/**
+ * 把同一份数据依次写给多个输出端，例如录音文件和波形索引
+ */
+public class TeePcmSink implements PcmSink {
+
+    private final PcmSink[] sinks;
+
+    public TeePcmSink(PcmSink... sinks) {
+        if (sinks.length == 0) {
+            throw new IllegalArgumentException("no sinks");
+        }
+        this.sinks = sinks.clone();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        for (PcmSink sink : sinks) {
+            sink.write(buffer, offset, length);
+        }
+    }
+
+    /**
+     * 关闭所有输出端，某一个关闭失败（包括运行时异常）也会继续关闭其他的，最后抛出第一个异常
+     */
+    @Override
+    public void close() throws IOException {
+        Exception failure = null;
+        for (PcmSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.yisan.audiodemo.core.batch;
+
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量转换目录里的录音
+ * <p>
+ * 用一个和CPU核数一样大的 {@link ForkJoinPool} 并行转换，空闲线程会从忙的线程偷任务。
+ * 同时在处理的文件数不超过 maxInFlight，扫描线程拿不到许可就等待，
+ * 几千个文件也不会一次全部排进队列，每个任务的缓冲区也从固定大小的池里借出。
+ * <p>
+ * 每转换完一个文件就在进度文件里追加一行（文件名、长度和输出位置），中途退出后再次运行会跳过已完成的文件。
+ * 同一个目录换一种转换、换一个输出目录时输出位置不同，不会被之前的进度跳过。
+ * 输出已经存在的文件也会跳过。
+ */
+public class BatchTranscoder {
+
+    /**
+     * 转换进度
+     */
+    public interface Listener {
+
+        /**
+         * 在转换线程上回调，需要自己切换线程
+         */
+        void onFileDone(TranscodeResult result, int completed, int total);
+    }
+
+    public static final String PROGRESS_NAME = ".transcode-progress";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final Transcoder transcoder;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final File progressFile;
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile int total;
+    private long elapsedNanos;
+
+    /**
+     * 默认使用所有核，同时处理的文件数是核数的两倍
+     */
+    public BatchTranscoder(File directory, Transcoder transcoder) {
+        this(directory, transcoder, Runtime.getRuntime().availableProcessors(),
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchTranscoder(File directory, Transcoder transcoder, int parallelism, int maxInFlight) {
+        if (parallelism <= 0 || maxInFlight < parallelism) {
+            throw new IllegalArgumentException("parallelism " + parallelism + ", maxInFlight " + maxInFlight);
+        }
+        this.directory = directory;
+        this.transcoder = transcoder;
+        this.parallelism = parallelism;
+        this.maxInFlight = maxInFlight;
+        this.progressFile = new File(directory, PROGRESS_NAME);
+    }
+
+    /**
+     * 扫描目录并转换，所有文件处理完才返回
+     *
+     * @param listener 可以为null
+     */
+    public void run(final Listener listener) throws IOException, InterruptedException {
+        long begin = System.nanoTime();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("can not list " + directory);
+        }
+        Arrays.sort(files);
+        Set<String> done = readProgress();
+        total = files.length;
+
+        final FileOutputStream progress = new FileOutputStream(progressFile, true);
+        final BufferPool<byte[]> buffers = BufferPool.heap(BUFFER_SIZE, maxInFlight, false);
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (final File input : files) {
+                if (cancelled) {
+                    break;
+                }
+                if (!input.isFile() || !transcoder.accepts(input) || done.contains(progressKey(input))
+                        || transcoder.outputFor(input).exists()) {
+                    skip(listener);
+                    continue;
+                }
+                //背压：同时处理的文件太多时等待
+                inFlight.acquire();
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!cancelled) {
+                                TranscodeResult result = transcodeOne(input, buffers);
+                                if (result.isSuccess()) {
+                                    appendProgress(progress, input);
+                                }
+                                notifyDone(listener, result);
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                });
+            }
+            //拿到全部许可说明所有任务都结束了
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } finally {
+            pool.shutdown();
+            progress.close();
+            elapsedNanos = System.nanoTime() - begin;
+        }
+    }
+
+    private TranscodeResult transcodeOne(File input, BufferPool<byte[]> buffers) {
+        File output = transcoder.outputFor(input);
+        long length = input.length();
+        byte[] buffer = buffers.acquire();
+        long start = System.nanoTime();
+        try {
+            long written = transcoder.transcode(input, output, buffer);
+            completed.incrementAndGet();
+            inputBytes.addAndGet(length);
+            outputBytes.addAndGet(written);
+            return new TranscodeResult(input, output, length, written, System.nanoTime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            return new TranscodeResult(input, output, length, 0, System.nanoTime() - start, e);
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    private void skip(Listener listener) {
+        skipped.incrementAndGet();
+        if (listener != null) {
+            listener.onFileDone(null, getProcessedCount(), total);
+        }
+    }
+
+    private void notifyDone(Listener listener, TranscodeResult result) {
+        if (listener != null) {
+            listener.onFileDone(result, getProcessedCount(), total);
+        }
+    }
+
+    /**
+     * 进度文件的一行：文件名、长度和输出位置，文件被改写后长度不同会重新转换
+     */
+    private String progressKey(File input) {
+        return input.getName() + "\t" + input.length() + "\t" + transcoder.outputFor(input).getAbsolutePath();
+    }
+
+    private Set<String> readProgress() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!progressFile.isFile()) {
+            return done;
+        }
+        RandomAccessFile file = new RandomAccessFile(progressFile, "r");
+        try {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            //最后一行可能只写了一半
+            int complete = data.length;
+            while (complete > 0 && data[complete - 1] != '\n') {
+                complete--;
+            }
+            for (String line : new String(data, 0, complete, UTF_8).split("\n")) {
+                if (!line.isEmpty()) {
+                    done.add(line);
+                }
+            }
+        } finally {
+            file.close();
+        }
+        return done;
+    }
+
+    private void appendProgress(FileOutputStream progress, File input) {
+        byte[] line = (progressKey(input) + "\n").getBytes(UTF_8);
+        //多个转换线程共用一个进度文件，一行一次写完
+        synchronized (progress) {
+            try {
+                progress.write(line);
+            } catch (IOException e) {
+                //进度写失败只会导致下次重复转换
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 停止提交新文件，正在转换的文件会做完
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public int getTotalCount() {
+        return total;
+    }
+
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * 不需要转换或者已经转换过的文件数
+     */
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+
+    public int getProcessedCount() {
+        return completed.get() + failed.get() + skipped.get();
+    }
+
+    public long getInputBytes() {
+        return inputBytes.get();
+    }
+
+    public long getOutputBytes() {
+        return outputBytes.get();
+    }
+
+    /**
+     * 整批的吞吐量，每秒处理的输入字节数，{@link #run} 返回后有效
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : inputBytes.get() * 1e9 / elapsedNanos;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+}
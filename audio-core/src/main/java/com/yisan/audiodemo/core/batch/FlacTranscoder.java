@@ -0,0 +1,101 @@
+package com.yisan.audiodemo.core.batch;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.codec.FlacReader;
+import com.yisan.audiodemo.core.codec.FlacWriter;
+import com.yisan.audiodemo.core.io.SeekablePcmReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 把裸PCM或wav录音无损压缩成FLAC，解码后和原始采样逐位相同
+ * <p>
+ * 写完后完整解码一遍，和编码时记录的MD5比较，一致后才改名。
+ * 打开 deleteInput 时校验通过就删除原始文件，作为后台的空间回收，输出可以放在录音目录本身。
+ */
+public class FlacTranscoder implements Transcoder {
+
+    private final File outputDirectory;
+    private final AudioFormatSpec rawFormat;
+    private final boolean deleteInput;
+
+    /**
+     * @param rawFormat   裸PCM文件的格式
+     * @param deleteInput 校验通过后删除原始文件
+     */
+    public FlacTranscoder(File outputDirectory, AudioFormatSpec rawFormat, boolean deleteInput) {
+        this.outputDirectory = outputDirectory;
+        this.rawFormat = rawFormat;
+        this.deleteInput = deleteInput;
+    }
+
+    @Override
+    public boolean accepts(File input) {
+        String name = input.getName();
+        return name.endsWith(".pcm") || name.endsWith(".wav");
+    }
+
+    @Override
+    public File outputFor(File input) {
+        String name = input.getName();
+        return new File(outputDirectory, name.substring(0, name.lastIndexOf('.')) + ".flac");
+    }
+
+    @Override
+    public long transcode(File input, File output, byte[] buffer) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs() && !outputDirectory.isDirectory()) {
+            throw new IOException("can not create " + outputDirectory);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        SeekablePcmReader reader = SeekablePcmReader.open(input, rawFormat);
+        try {
+            FlacWriter writer = FlacWriter.open(temp, reader.getFormat());
+            try {
+                //整帧读取
+                int length = buffer.length - buffer.length % reader.getFormat().getBytesPerFrame();
+                int read;
+                while ((read = reader.read(buffer, 0, length)) > 0) {
+                    writer.write(buffer, 0, read);
+                }
+                writer.close();
+                verify(temp, reader.getFrameCount(), buffer);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    //已经失败了
+                }
+                temp.delete();
+                throw e;
+            }
+        } finally {
+            reader.close();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        if (deleteInput && !input.delete()) {
+            throw new IOException("can not delete " + input);
+        }
+        return output.length();
+    }
+
+    /**
+     * 完整解码一遍，MD5不一致时 {@link FlacReader} 抛出异常
+     */
+    private static void verify(File flac, long frameCount, byte[] buffer) throws IOException {
+        FlacReader reader = FlacReader.open(flac);
+        try {
+            reader.setVerify(true);
+            while (reader.read(buffer, 0, buffer.length) > 0) {
+                //只校验
+            }
+            if (reader.getFrameCount() != frameCount) {
+                throw new IOException("frame count " + reader.getFrameCount() + " != " + frameCount);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.yisan.audiodemo.core.batch;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.io.SeekablePcmReader;
+import com.yisan.audiodemo.core.io.SpectrogramFile;
+import com.yisan.audiodemo.core.io.SpectrogramWriter;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 给已有的裸PCM或wav录音生成频谱图，边读边算，内存只有一块频谱图和读取缓冲区，和录音长度无关
+ * <p>
+ * 边录边生成的录音已经有频谱图，会被跳过。
+ */
+public class SpectrogramTranscoder implements Transcoder {
+
+    private final File outputDirectory;
+    private final AudioFormatSpec rawFormat;
+
+    /**
+     * @param rawFormat 裸PCM文件的格式
+     */
+    public SpectrogramTranscoder(File outputDirectory, AudioFormatSpec rawFormat) {
+        this.outputDirectory = outputDirectory;
+        this.rawFormat = rawFormat;
+    }
+
+    @Override
+    public boolean accepts(File input) {
+        String name = input.getName();
+        return name.endsWith(".pcm") || name.endsWith(".wav");
+    }
+
+    @Override
+    public File outputFor(File input) {
+        return SpectrogramFile.forRecording(new File(outputDirectory, input.getName()));
+    }
+
+    @Override
+    public long transcode(File input, File output, byte[] buffer) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs() && !outputDirectory.isDirectory()) {
+            throw new IOException("can not create " + outputDirectory);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        SeekablePcmReader reader = SeekablePcmReader.open(input, rawFormat);
+        try {
+            SpectrogramWriter writer = SpectrogramWriter.open(temp, reader.getFormat());
+            try {
+                int read;
+                while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+                    writer.write(buffer, 0, read);
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    //已经失败了
+                }
+                temp.delete();
+                throw e;
+            }
+            writer.close();
+        } finally {
+            reader.close();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        return output.length();
+    }
+}
@@ -0,0 +1,73 @@
+package com.yisan.audiodemo.core.batch;
+
+import java.io.File;
+
+/**
+ * 单个文件的转换结果和耗时
+ */
+public final class TranscodeResult {
+
+    private final File input;
+    private final File output;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final long elapsedNanos;
+    private final Throwable error;
+
+    TranscodeResult(File input, File output, long inputBytes, long outputBytes, long elapsedNanos,
+            Throwable error) {
+        this.input = input;
+        this.output = output;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+    }
+
+    public File getInput() {
+        return input;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * 每秒处理的输入字节数
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : inputBytes * 1e9 / elapsedNanos;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * 失败原因，成功时为null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) {
+            return input.getName() + " failed: " + error;
+        }
+        return input.getName() + " -> " + output.getName() + ", " + inputBytes + " -> " + outputBytes
+                + " bytes, " + getElapsedMillis() + " ms, " + (long) (getBytesPerSecond() / 1024) + " KB/s";
+    }
+}
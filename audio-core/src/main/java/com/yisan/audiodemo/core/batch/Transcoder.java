@@ -0,0 +1,28 @@
+package com.yisan.audiodemo.core.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 批量转换中对单个文件的转换，会在多个线程上同时调用，实现不能保存每个文件的状态
+ */
+public interface Transcoder {
+
+    /**
+     * 是否处理这个文件
+     */
+    boolean accepts(File input);
+
+    /**
+     * 输出文件的位置，已经存在时认为转换过了
+     */
+    File outputFor(File input);
+
+    /**
+     * 转换一个文件，应该先写临时文件再改名，中途失败不能留下看起来完整的输出
+     *
+     * @param buffer 这次转换可以使用的缓冲区，由调用方借出和归还
+     * @return 输出的字节数
+     */
+    long transcode(File input, File output, byte[] buffer) throws IOException;
+}
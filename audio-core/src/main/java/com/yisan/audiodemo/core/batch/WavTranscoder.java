@@ -0,0 +1,140 @@
+package com.yisan.audiodemo.core.batch;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.dsp.ResamplerSink;
+import com.yisan.audiodemo.core.io.SeekablePcmReader;
+import com.yisan.audiodemo.core.io.WavWriter;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 把裸PCM或wav录音转换成wav，可以同时重采样和归一化音量
+ * <p>
+ * 归一化需要读两遍：第一遍找峰值，第二遍乘上增益写出。输出先写到临时文件，完成后改名。
+ */
+public class WavTranscoder implements Transcoder {
+
+    /**
+     * 归一化时的最大增益，避免把底噪放大太多
+     */
+    private static final float MAX_GAIN = 20f;
+
+    private final File outputDirectory;
+    private final AudioFormatSpec rawFormat;
+    private final int outputRate;
+    private final float targetPeak;
+
+    /**
+     * @param rawFormat  裸PCM文件的格式
+     * @param outputRate 输出采样率，0表示不变
+     * @param targetPeak 归一化后的峰值，0~1，0表示不归一化，只支持16bit
+     */
+    public WavTranscoder(File outputDirectory, AudioFormatSpec rawFormat, int outputRate, float targetPeak) {
+        if (targetPeak < 0 || targetPeak > 1) {
+            throw new IllegalArgumentException("targetPeak: " + targetPeak);
+        }
+        this.outputDirectory = outputDirectory;
+        this.rawFormat = rawFormat;
+        this.outputRate = outputRate;
+        this.targetPeak = targetPeak;
+    }
+
+    @Override
+    public boolean accepts(File input) {
+        String name = input.getName();
+        return name.endsWith(".pcm") || name.endsWith(".wav");
+    }
+
+    @Override
+    public File outputFor(File input) {
+        String name = input.getName();
+        return new File(outputDirectory, name.substring(0, name.lastIndexOf('.')) + ".wav");
+    }
+
+    @Override
+    public long transcode(File input, File output, byte[] buffer) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs() && !outputDirectory.isDirectory()) {
+            throw new IOException("can not create " + outputDirectory);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        SeekablePcmReader reader = SeekablePcmReader.open(input, rawFormat);
+        try {
+            AudioFormatSpec format = reader.getFormat();
+            float gain = 1f;
+            if (targetPeak > 0) {
+                if (format.isFloat() || format.getBitsPerSample() != 16) {
+                    throw new IOException("normalize only supports 16bit: " + format);
+                }
+                int peak = findPeak(reader, buffer);
+                gain = peak == 0 ? 1f : Math.min(MAX_GAIN, targetPeak * 32767f / peak);
+                reader.seekToFrame(0);
+            }
+
+            int rate = outputRate > 0 ? outputRate : format.getSampleRate();
+            PcmSink sink = WavWriter.open(temp, format.withSampleRate(rate));
+            if (rate != format.getSampleRate()) {
+                try {
+                    sink = new ResamplerSink(format, rate, sink);
+                } catch (RuntimeException e) {
+                    sink.close();
+                    throw e;
+                }
+            }
+            try {
+                //整帧读取，增益按采样处理
+                int length = buffer.length - buffer.length % format.getBytesPerFrame();
+                int read;
+                while ((read = reader.read(buffer, 0, length)) > 0) {
+                    if (gain != 1f) {
+                        applyGain(buffer, read, gain);
+                    }
+                    sink.write(buffer, 0, read);
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    sink.close();
+                } catch (IOException ignored) {
+                    //已经失败了
+                }
+                temp.delete();
+                throw e;
+            }
+            sink.close();
+        } finally {
+            reader.close();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        return output.length();
+    }
+
+    private static int findPeak(SeekablePcmReader reader, byte[] buffer) throws IOException {
+        int peak = 0;
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length & ~1)) > 0) {
+            for (int i = 0; i + 1 < read; i += 2) {
+                int sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+                int abs = sample < 0 ? -sample : sample;
+                if (abs > peak) {
+                    peak = abs;
+                }
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * 16bit小端数据原地乘增益，超出范围的截断
+     */
+    private static void applyGain(byte[] buffer, int length, float gain) {
+        for (int i = 0; i + 1 < length; i += 2) {
+            float value = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8)) * gain;
+            int sample = value > 32767f ? 32767 : value < -32768f ? -32768 : (int) value;
+            buffer[i] = (byte) sample;
+            buffer[i + 1] = (byte) (sample >> 8);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.yisan.audiodemo.core.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 音频缓冲区池，录音会话之间复用缓冲区，避免每次录音都重新分配
+ * <p>
+ * 借出 {@link #acquire()}、归还 {@link #release}，可以在任意线程调用。
+ * 空闲缓冲区放在预先分配的数组里，借还过程本身不产生对象。
+ * 打开泄漏检测时会记录每次借出的调用栈（会产生对象，只在debug版本打开）。
+ */
+public abstract class BufferPool<T> {
+
+    private final Object[] free;
+    private int freeCount;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicInteger leased = new AtomicInteger();
+
+    /**
+     * 借出未归还的缓冲区和借出时的调用栈，不检测泄漏时为null
+     */
+    private final Map<T, Throwable> outstanding;
+
+    /**
+     * @param maxPooled  最多保留的空闲缓冲区数量，超过的直接丢弃
+     * @param trackLeaks 是否记录借出的调用栈
+     */
+    protected BufferPool(int maxPooled, boolean trackLeaks) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("maxPooled: " + maxPooled);
+        }
+        this.free = new Object[maxPooled];
+        this.outstanding = trackLeaks ? new IdentityHashMap<T, Throwable>() : null;
+    }
+
+    /**
+     * 固定长度的 byte[] 缓冲区池
+     */
+    public static BufferPool<byte[]> heap(final int bufferSize, int maxPooled, boolean trackLeaks) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        }
+        return new BufferPool<byte[]>(maxPooled, trackLeaks) {
+            @Override
+            protected byte[] allocate() {
+                return new byte[bufferSize];
+            }
+
+            @Override
+            protected boolean accepts(byte[] buffer) {
+                return buffer.length == bufferSize;
+            }
+
+            @Override
+            public int getBufferSize() {
+                return bufferSize;
+            }
+        };
+    }
+
+    /**
+     * 固定容量的直接内存 {@link ByteBuffer} 池，借出时已经 clear
+     */
+    public static BufferPool<ByteBuffer> direct(final int bufferSize, int maxPooled, boolean trackLeaks) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        }
+        return new BufferPool<ByteBuffer>(maxPooled, trackLeaks) {
+            @Override
+            protected ByteBuffer allocate() {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+
+            @Override
+            protected boolean accepts(ByteBuffer buffer) {
+                return buffer.isDirect() && buffer.capacity() == bufferSize;
+            }
+
+            @Override
+            protected void reset(ByteBuffer buffer) {
+                buffer.clear();
+            }
+
+            @Override
+            public int getBufferSize() {
+                return bufferSize;
+            }
+        };
+    }
+
+    /**
+     * 分配一个新的缓冲区
+     */
+    protected abstract T allocate();
+
+    /**
+     * 检查归还的缓冲区是否属于这个池的规格
+     */
+    protected abstract boolean accepts(T buffer);
+
+    /**
+     * 缓冲区的字节数
+     */
+    public abstract int getBufferSize();
+
+    /**
+     * 借出前重置缓冲区状态
+     */
+    protected void reset(T buffer) {
+    }
+
+    /**
+     * 预先分配缓冲区，让第一次录音也不需要分配
+     */
+    public void prefill(int count) {
+        for (int i = 0; i < count; i++) {
+            T buffer = allocate();
+            synchronized (this) {
+                if (freeCount == free.length) {
+                    return;
+                }
+                free[freeCount++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * 借出一个缓冲区，池里没有空闲的就新分配
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        T buffer = null;
+        synchronized (this) {
+            if (freeCount > 0) {
+                buffer = (T) free[--freeCount];
+                free[freeCount] = null;
+            }
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            buffer = allocate();
+        } else {
+            hits.incrementAndGet();
+        }
+        reset(buffer);
+        leased.incrementAndGet();
+        if (outstanding != null) {
+            synchronized (outstanding) {
+                outstanding.put(buffer, new Throwable("buffer leased here"));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，归还后调用方不能再使用它
+     */
+    public void release(T buffer) {
+        if (!accepts(buffer)) {
+            throw new IllegalArgumentException("buffer does not belong to this pool");
+        }
+        if (outstanding != null) {
+            synchronized (outstanding) {
+                if (outstanding.remove(buffer) == null) {
+                    throw new IllegalStateException("buffer released twice or not leased from this pool");
+                }
+            }
+        }
+        leased.decrementAndGet();
+        synchronized (this) {
+            if (freeCount < free.length) {
+                free[freeCount++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * 从池里直接借到的次数
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * 池里没有空闲、新分配的次数
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * 借出未归还的数量
+     */
+    public int getLeasedCount() {
+        return leased.get();
+    }
+
+    public synchronized int getFreeCount() {
+        return freeCount;
+    }
+
+    /**
+     * 借出未归还的缓冲区的借出调用栈，没有打开泄漏检测时返回空列表
+     */
+    public List<Throwable> getOutstandingLeases() {
+        if (outstanding == null) {
+            return new ArrayList<>();
+        }
+        synchronized (outstanding) {
+            return new ArrayList<>(outstanding.values());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{size=" + getBufferSize()
+                + ", hits=" + hits.get()
+                + ", misses=" + misses.get()
+                + ", leased=" + leased.get()
+                + ", free=" + getFreeCount()
+                + '}';
+    }
+}
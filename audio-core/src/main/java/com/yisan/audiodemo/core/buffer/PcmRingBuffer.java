@@ -0,0 +1,209 @@
+package com.yisan.audiodemo.core.buffer;
+
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.PcmSource;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者、单消费者的无锁环形缓冲区，每个槽位保存一段PCM数据
+ * <p>
+ * 所有槽位在构造时预先分配，读写过程不产生任何对象。
+ * 生产者方法（{@link #offer}、{@link #offerFrom}）只能由一个线程调用，
+ * 消费者方法（{@link #poll}、{@link #drainTo}）只能由另一个线程调用。
+ */
+public class PcmRingBuffer {
+
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final int mask;
+    private final int slotSize;
+    /**
+     * 槽位来自的缓冲区池，自己分配时为null
+     */
+    private final BufferPool<byte[]> pool;
+    private boolean released;
+
+    /**
+     * 消费者下一个要读的位置
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * 生产者下一个要写的位置
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    //各自线程缓存对方的进度，减少对volatile变量的读取
+    private long cachedHead;
+    private long cachedTail;
+
+    /**
+     * @param capacity 槽位数量，会向上取整到2的幂
+     * @param slotSize 每个槽位的字节数
+     */
+    public PcmRingBuffer(int capacity, int slotSize) {
+        if (slotSize <= 0) {
+            throw new IllegalArgumentException("slotSize: " + slotSize);
+        }
+        int size = roundCapacity(capacity);
+        this.mask = size - 1;
+        this.slotSize = slotSize;
+        this.slots = new byte[size][slotSize];
+        this.lengths = new int[size];
+        this.pool = null;
+    }
+
+    /**
+     * 槽位从缓冲区池借出，用完后调用 {@link #release()} 归还
+     *
+     * @param capacity 槽位数量，会向上取整到2的幂
+     */
+    public PcmRingBuffer(int capacity, BufferPool<byte[]> pool) {
+        int size = roundCapacity(capacity);
+        this.mask = size - 1;
+        this.slotSize = pool.getBufferSize();
+        this.slots = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            slots[i] = pool.acquire();
+        }
+        this.lengths = new int[size];
+        this.pool = pool;
+    }
+
+    private static int roundCapacity(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * 生产者线程：复制一段数据到缓冲区
+     *
+     * @return 缓冲区已满时返回false，数据不会写入
+     */
+    public boolean offer(byte[] src, int offset, int length) {
+        if (length > slotSize) {
+            throw new IllegalArgumentException("length " + length + " > slotSize " + slotSize);
+        }
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                return false;
+            }
+        }
+        int index = (int) t & mask;
+        System.arraycopy(src, offset, slots[index], 0, length);
+        lengths[index] = length;
+        //lazySet 保证槽位数据先于新的tail对消费者可见
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * 生产者线程：直接从数据源读到下一个空闲槽位，省去一次复制
+     *
+     * @return 读到的字节数，缓冲区已满或数据源暂时没有数据时返回0，数据源读完返回-1
+     */
+    public int offerFrom(PcmSource source) throws IOException {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                return 0;
+            }
+        }
+        int index = (int) t & mask;
+        int read = source.read(slots[index], 0, slotSize);
+        if (read <= 0) {
+            return read;
+        }
+        lengths[index] = read;
+        tail.lazySet(t + 1);
+        return read;
+    }
+
+    /**
+     * 消费者线程：取出一个槽位复制到 dst
+     *
+     * @param length dst 的可用长度，不能小于槽位里的数据长度
+     * @return 复制的字节数，缓冲区为空时返回0
+     */
+    public int poll(byte[] dst, int offset, int length) {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) {
+                return 0;
+            }
+        }
+        int index = (int) h & mask;
+        int count = lengths[index];
+        if (count > length) {
+            throw new IllegalArgumentException("length " + length + " < slot data " + count);
+        }
+        System.arraycopy(slots[index], 0, dst, offset, count);
+        head.lazySet(h + 1);
+        return count;
+    }
+
+    /**
+     * 消费者线程：取出一个槽位写到 sink
+     *
+     * @return 缓冲区为空时返回false
+     */
+    public boolean drainTo(PcmSink sink) throws IOException {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) {
+                return false;
+            }
+        }
+        int index = (int) h & mask;
+        sink.write(slots[index], 0, lengths[index]);
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * 当前排队的槽位数量，任意线程都可以调用
+     */
+    public int size() {
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0, t - h);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int slotSize() {
+        return slotSize;
+    }
+
+    /**
+     * 把槽位归还给缓冲区池，之后不能再使用这个环形缓冲区。
+     * 调用时生产者和消费者都必须已经停止。
+     */
+    public void release() {
+        if (pool == null || released) {
+            return;
+        }
+        released = true;
+        for (int i = 0; i < slots.length; i++) {
+            pool.release(slots[i]);
+            slots[i] = null;
+        }
+    }
+}
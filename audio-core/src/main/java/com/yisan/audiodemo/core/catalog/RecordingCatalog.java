@@ -0,0 +1,389 @@
+package com.yisan.audiodemo.core.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 录音目录：只追加的日志文件加内存索引
+ * <p>
+ * 每次增加、删除录音都在日志末尾追加一条记录并同步到存储设备，记录带长度和CRC，
+ * 写到一半崩溃的记录打开时会被截掉，所以每次更新要么完整生效，要么不生效。
+ * 打开时顺序读一遍日志重建内存索引，列出、排序、筛选都在内存里完成，不需要遍历目录、解析文件头。
+ * 日志里被覆盖、删除的记录超过一半时重写一次（先写临时文件再改名），
+ * 重写在记录已经同步、内存索引已经更新之后进行，失败只打印日志，不影响这次更新，下次更新时再试。
+ * <p>
+ * 所有方法都是线程安全的。
+ */
+public class RecordingCatalog implements Closeable {
+
+    /**
+     * 录音条件
+     */
+    public interface Filter {
+
+        boolean accept(RecordingEntry entry);
+    }
+
+    private static final int MAGIC = 0x52434154; // "RCAT"
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    /**
+     * 记录头：长度、CRC
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_COMPACT_RECORDS = 64;
+
+    private final File file;
+    private final Map<String, RecordingEntry> entries = new LinkedHashMap<>();
+    private FileOutputStream log;
+    private int recordCount;
+    private boolean closed;
+    /**
+     * 写失败后没能截掉写了一半的记录，之后的记录会在重新打开时被一起截掉，不能再写
+     */
+    private boolean broken;
+    /**
+     * 日志文件的长度上限，超过时和写满磁盘一样只写进一部分然后失败，只在测试里修改
+     */
+    long maxLogLength = Long.MAX_VALUE;
+
+    private RecordingCatalog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 打开目录文件，不存在时创建
+     */
+    public static RecordingCatalog open(File file) throws IOException {
+        RecordingCatalog catalog = new RecordingCatalog(file);
+        catalog.load();
+        return catalog;
+    }
+
+    /**
+     * 顺序读一遍日志，截掉末尾不完整的记录
+     */
+    private void load() throws IOException {
+        long valid = 4;
+        if (file.isFile() && file.length() >= 4) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("not a recording catalog: " + file);
+                }
+                CRC32 crc = new CRC32();
+                byte[] record = new byte[256];
+                while (true) {
+                    int length;
+                    int checksum;
+                    try {
+                        length = in.readInt();
+                        checksum = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length <= 0 || length > 1024 * 1024) {
+                        break;
+                    }
+                    if (record.length < length) {
+                        record = new byte[Math.max(length, record.length * 2)];
+                    }
+                    try {
+                        in.readFully(record, 0, length);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    apply(record, length);
+                    recordCount++;
+                    valid += RECORD_HEADER_SIZE + length;
+                }
+            } finally {
+                in.close();
+            }
+            if (valid < file.length()) {
+                //去掉崩溃时写了一半的记录
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(valid);
+                } finally {
+                    raf.close();
+                }
+            }
+            log = new FileOutputStream(file, true);
+        } else {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("can not create " + parent);
+            }
+            log = new FileOutputStream(file, false);
+            DataOutputStream out = new DataOutputStream(log);
+            out.writeInt(MAGIC);
+            out.flush();
+            log.getFD().sync();
+        }
+    }
+
+    private void apply(byte[] record, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 0, length));
+        byte op = in.readByte();
+        String path = in.readUTF();
+        if (op == OP_REMOVE) {
+            entries.remove(path);
+            return;
+        }
+        String format = in.readUTF();
+        long duration = in.readLong();
+        long size = in.readLong();
+        float peak = in.readFloat();
+        long created = in.readLong();
+        //重新放到末尾，保持按写入顺序
+        entries.remove(path);
+        entries.put(path, new RecordingEntry(path, format, duration, size, peak, created));
+    }
+
+    /**
+     * 增加或更新一条录音，返回时已经写入存储设备
+     */
+    public synchronized void put(RecordingEntry entry) throws IOException {
+        append(encode(entry));
+        entries.remove(entry.getPath());
+        entries.put(entry.getPath(), entry);
+        tryCompact();
+    }
+
+    private static byte[] encode(RecordingEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_PUT);
+        out.writeUTF(entry.getPath());
+        out.writeUTF(entry.getFormat());
+        out.writeLong(entry.getDurationMillis());
+        out.writeLong(entry.getSizeBytes());
+        out.writeFloat(entry.getPeakLevel());
+        out.writeLong(entry.getCreatedTime());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 删除一条录音的记录，不删除文件
+     */
+    public synchronized boolean remove(String path) throws IOException {
+        if (!entries.containsKey(path)) {
+            return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(path);
+        append(bytes.toByteArray());
+        entries.remove(path);
+        tryCompact();
+        return true;
+    }
+
+    /**
+     * 写入一条记录并同步到存储设备
+     */
+    private void append(byte[] record) throws IOException {
+        if (closed) {
+            throw new IOException("catalog closed");
+        }
+        if (broken) {
+            throw new IOException("catalog broken by a failed write");
+        }
+        FileChannel channel = log.getChannel();
+        long previous = channel.size();
+        try {
+            byte[] data = frame(record);
+            if (previous + data.length > maxLogLength) {
+                log.write(data, 0, (int) Math.max(0, maxLogLength - previous));
+                throw new IOException("no space left on device");
+            }
+            log.write(data);
+            log.getFD().sync();
+        } catch (IOException e) {
+            //写满磁盘等情况会留下半条记录，重新打开时从这里截断，后面成功的记录也会丢，所以先截回去
+            try {
+                channel.truncate(previous);
+                log.getFD().sync();
+            } catch (IOException truncateError) {
+                broken = true;
+            }
+            throw e;
+        }
+        recordCount++;
+    }
+
+    /**
+     * 加上记录头，记录头和内容一次写入
+     */
+    private static byte[] frame(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        byte[] data = new byte[RECORD_HEADER_SIZE + record.length];
+        putInt(data, 0, record.length);
+        putInt(data, 4, (int) crc.getValue());
+        System.arraycopy(record, 0, data, RECORD_HEADER_SIZE, record.length);
+        return data;
+    }
+
+    private static void putInt(byte[] b, int off, int value) {
+        //和DataInputStream.readInt一致，大端
+        b[off] = (byte) (value >> 24);
+        b[off + 1] = (byte) (value >> 16);
+        b[off + 2] = (byte) (value >> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    /**
+     * 这次更新已经写入，重写失败时旧日志仍然完整，不能让调用方以为更新失败
+     */
+    private void tryCompact() {
+        try {
+            compactIfNeeded();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 无效记录超过一半时，只写当前的录音重建日志
+     */
+    private void compactIfNeeded() throws IOException {
+        if (recordCount < MIN_COMPACT_RECORDS || recordCount < 2 * entries.size()) {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp, false);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.writeInt(MAGIC);
+            for (RecordingEntry entry : entries.values()) {
+                out.write(frame(encode(entry)));
+            }
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            stream.close();
+            temp.delete();
+            throw e;
+        }
+        stream.close();
+        //改名之前旧日志仍然完整，改名之后新日志完整
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("can not rename " + temp);
+        }
+        //改名记录在目录里，目录也要同步，否则掉电后可能还是旧日志
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+        //旧的文件描述符指向已经被替换掉的文件，新日志打不开时不能再写
+        FileOutputStream newLog;
+        try {
+            newLog = new FileOutputStream(file, true);
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+        log.close();
+        log = newLog;
+        recordCount = entries.size();
+    }
+
+    /**
+     * 尽量同步目录，Android 8.0以下没有 java.nio.file，打不开目录时跳过，改名本身仍然是原子的
+     */
+    private static void syncDirectory(File directory) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException | LinkageError e) {
+            //不支持目录同步
+        }
+    }
+
+    public synchronized RecordingEntry get(String path) {
+        return entries.get(path);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 全部录音，按写入顺序
+     */
+    public synchronized List<RecordingEntry> list() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * 筛选并排序
+     *
+     * @param filter     可以为null
+     * @param comparator 可以为null，表示按写入顺序
+     */
+    public synchronized List<RecordingEntry> query(Filter filter, Comparator<RecordingEntry> comparator) {
+        List<RecordingEntry> result = new ArrayList<>(entries.size());
+        for (RecordingEntry entry : entries.values()) {
+            if (filter == null || filter.accept(entry)) {
+                result.add(entry);
+            }
+        }
+        if (comparator != null) {
+            Collections.sort(result, comparator);
+        }
+        return result;
+    }
+
+    /**
+     * 所有录音的总时长
+     */
+    public synchronized long getTotalDurationMillis() {
+        long total = 0;
+        for (RecordingEntry entry : entries.values()) {
+            total += entry.getDurationMillis();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        log.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.yisan.audiodemo.core.catalog;
+
+import java.util.Comparator;
+
+/**
+ * 录音目录里的一条记录：路径、格式、时长、大小、峰值、创建时间
+ */
+public final class RecordingEntry {
+
+    /**
+     * 按创建时间从新到旧
+     */
+    public static final Comparator<RecordingEntry> NEWEST_FIRST = new Comparator<RecordingEntry>() {
+        @Override
+        public int compare(RecordingEntry a, RecordingEntry b) {
+            return a.createdTime < b.createdTime ? 1 : a.createdTime > b.createdTime ? -1 : 0;
+        }
+    };
+
+    /**
+     * 按时长从长到短
+     */
+    public static final Comparator<RecordingEntry> LONGEST_FIRST = new Comparator<RecordingEntry>() {
+        @Override
+        public int compare(RecordingEntry a, RecordingEntry b) {
+            return a.durationMillis < b.durationMillis ? 1 : a.durationMillis > b.durationMillis ? -1 : 0;
+        }
+    };
+
+    private final String path;
+    private final String format;
+    private final long durationMillis;
+    private final long sizeBytes;
+    private final float peakLevel;
+    private final long createdTime;
+
+    /**
+     * @param format    格式说明，例如 "wav 44100Hz/1ch/16bit"
+     * @param peakLevel 峰值，0~1，未知时传-1
+     */
+    public RecordingEntry(String path, String format, long durationMillis, long sizeBytes, float peakLevel,
+            long createdTime) {
+        if (path == null || format == null) {
+            throw new NullPointerException("path and format are required");
+        }
+        this.path = path;
+        this.format = format;
+        this.durationMillis = durationMillis;
+        this.sizeBytes = sizeBytes;
+        this.peakLevel = peakLevel;
+        this.createdTime = createdTime;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public float getPeakLevel() {
+        return peakLevel;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    @Override
+    public String toString() {
+        return path + " [" + format + ", " + durationMillis + " ms, " + sizeBytes + " bytes, peak " + peakLevel
+                + ", created " + createdTime + "]";
+    }
+}
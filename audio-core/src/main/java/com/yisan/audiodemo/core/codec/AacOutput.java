@@ -0,0 +1,23 @@
+package com.yisan.audiodemo.core.codec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * AAC编码结果的输出，例如ADTS裸流或者MP4封装
+ */
+public interface AacOutput extends Closeable {
+
+    /**
+     * 编码器输出 AudioSpecificConfig 时调用一次，在第一帧数据之前
+     */
+    void configure(byte[] audioSpecificConfig) throws IOException;
+
+    /**
+     * 写入一个AAC访问单元（一帧原始AAC数据，不带ADTS头）
+     *
+     * @param accessUnit position 到 limit 之间是帧数据
+     */
+    void writeAccessUnit(ByteBuffer accessUnit, long presentationTimeUs) throws IOException;
+}
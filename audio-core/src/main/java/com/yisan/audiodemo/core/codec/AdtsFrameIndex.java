@@ -0,0 +1,124 @@
+package com.yisan.audiodemo.core.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * ADTS(.aac)文件的帧索引：第几帧在文件的哪个位置
+ * <p>
+ * 建索引时只读每一帧的帧头，按帧长度跳过帧数据。
+ * 每帧固定1024个采样，时间直接换算成帧号，定位是常数时间。
+ */
+public final class AdtsFrameIndex {
+
+    private final long[] offsets;
+    private final int frameCount;
+    /**
+     * 最后一个完整帧的末尾
+     */
+    private final long endOffset;
+    private final int sampleRate;
+    private final int channelCount;
+
+    private AdtsFrameIndex(long[] offsets, int frameCount, long endOffset, int sampleRate, int channelCount) {
+        this.offsets = offsets;
+        this.frameCount = frameCount;
+        this.endOffset = endOffset;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    /**
+     * 扫描文件建立索引，遇到损坏的帧（例如录音中途崩溃留下的半帧）就停止
+     */
+    public static AdtsFrameIndex build(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(AdtsHeader.SIZE);
+            byte[] bytes = header.array();
+            long[] offsets = new long[1024];
+            int count = 0;
+            int sampleRate = 0;
+            int channelCount = 0;
+            long position = 0;
+            while (position + AdtsHeader.SIZE <= size) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, position + header.position()) < 0) {
+                        break;
+                    }
+                }
+                if (!AdtsHeader.isSync(bytes, 0)) {
+                    break;
+                }
+                int frameLength = AdtsHeader.frameLength(bytes, 0);
+                if (frameLength < AdtsHeader.headerLength(bytes, 0) || position + frameLength > size) {
+                    break;
+                }
+                if (count == 0) {
+                    sampleRate = AdtsHeader.sampleRate(AdtsHeader.sampleRateIndex(bytes, 0));
+                    channelCount = AdtsHeader.channelCount(bytes, 0);
+                }
+                if (count == offsets.length) {
+                    long[] grown = new long[count * 2];
+                    System.arraycopy(offsets, 0, grown, 0, count);
+                    offsets = grown;
+                }
+                offsets[count++] = position;
+                position += frameLength;
+            }
+            return new AdtsFrameIndex(offsets, count, position, sampleRate, channelCount);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public long getDurationMillis() {
+        return sampleRate == 0 ? 0 : (long) frameCount * AdtsHeader.SAMPLES_PER_FRAME * 1000 / sampleRate;
+    }
+
+    /**
+     * 包含指定时间的帧号
+     */
+    public int frameAtMillis(long millis) {
+        if (sampleRate == 0) {
+            return 0;
+        }
+        long frame = millis * sampleRate / 1000 / AdtsHeader.SAMPLES_PER_FRAME;
+        return (int) Math.max(0, Math.min(frame, frameCount));
+    }
+
+    /**
+     * 帧在文件中的起始位置，frame 等于帧数时返回有效数据的末尾
+     */
+    public long offsetOf(int frame) {
+        if (frame < 0 || frame > frameCount) {
+            throw new IndexOutOfBoundsException("frame " + frame + " of " + frameCount);
+        }
+        return frame == frameCount ? endOffset : offsets[frame];
+    }
+
+    /**
+     * 帧的时间戳，单位微秒
+     */
+    public long timeUsOf(int frame) {
+        return sampleRate == 0 ? 0 : (long) frame * AdtsHeader.SAMPLES_PER_FRAME * 1000000L / sampleRate;
+    }
+}
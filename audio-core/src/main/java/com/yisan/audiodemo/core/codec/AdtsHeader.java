@@ -0,0 +1,111 @@
+package com.yisan.audiodemo.core.codec;
+
+/**
+ * ADTS帧头（7字节，无CRC）的生成和解析
+ */
+public final class AdtsHeader {
+
+    public static final int SIZE = 7;
+
+    /**
+     * AAC LC 的 audio object type
+     */
+    public static final int OBJECT_TYPE_AAC_LC = 2;
+
+    private static final int[] SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    /**
+     * 一帧AAC包含的采样数
+     */
+    public static final int SAMPLES_PER_FRAME = 1024;
+
+    private AdtsHeader() {
+    }
+
+    /**
+     * 采样率在ADTS/AudioSpecificConfig中的索引
+     */
+    public static int sampleRateIndex(int sampleRate) {
+        for (int i = 0; i < SAMPLE_RATES.length; i++) {
+            if (SAMPLE_RATES[i] == sampleRate) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unsupported sample rate: " + sampleRate);
+    }
+
+    public static int sampleRate(int sampleRateIndex) {
+        if (sampleRateIndex < 0 || sampleRateIndex >= SAMPLE_RATES.length) {
+            throw new IllegalArgumentException("sampleRateIndex: " + sampleRateIndex);
+        }
+        return SAMPLE_RATES[sampleRateIndex];
+    }
+
+    /**
+     * 生成 AudioSpecificConfig，也就是MP4里的 csd-0
+     */
+    public static byte[] audioSpecificConfig(int objectType, int sampleRate, int channelCount) {
+        int index = sampleRateIndex(sampleRate);
+        return new byte[]{
+                (byte) ((objectType << 3) | (index >> 1)),
+                (byte) (((index & 1) << 7) | (channelCount << 3))
+        };
+    }
+
+    /**
+     * 写入ADTS帧头
+     *
+     * @param payloadLength 帧数据长度，不包含帧头
+     */
+    public static void write(byte[] dst, int offset, int objectType, int sampleRate, int channelCount,
+                             int payloadLength) {
+        int frameLength = payloadLength + SIZE;
+        if (frameLength > 0x1FFF) {
+            throw new IllegalArgumentException("frame too large: " + frameLength);
+        }
+        int index = sampleRateIndex(sampleRate);
+        int profile = objectType - 1;
+        //syncword 0xFFF, MPEG-4, layer 0, 无CRC
+        dst[offset] = (byte) 0xFF;
+        dst[offset + 1] = (byte) 0xF1;
+        dst[offset + 2] = (byte) ((profile << 6) | (index << 2) | (channelCount >> 2));
+        dst[offset + 3] = (byte) (((channelCount & 3) << 6) | (frameLength >> 11));
+        dst[offset + 4] = (byte) ((frameLength >> 3) & 0xFF);
+        //buffer fullness 0x7FF 表示可变码率
+        dst[offset + 5] = (byte) (((frameLength & 7) << 5) | 0x1F);
+        dst[offset + 6] = (byte) 0xFC;
+    }
+
+    /**
+     * 检查是否是ADTS帧头的同步字
+     */
+    public static boolean isSync(byte[] src, int offset) {
+        return (src[offset] & 0xFF) == 0xFF && (src[offset + 1] & 0xF0) == 0xF0;
+    }
+
+    /**
+     * 整个ADTS帧的长度，包含帧头
+     */
+    public static int frameLength(byte[] src, int offset) {
+        return ((src[offset + 3] & 0x03) << 11)
+                | ((src[offset + 4] & 0xFF) << 3)
+                | ((src[offset + 5] & 0xE0) >> 5);
+    }
+
+    /**
+     * 帧头长度，有CRC时是9字节
+     */
+    public static int headerLength(byte[] src, int offset) {
+        return (src[offset + 1] & 0x01) == 0 ? SIZE + 2 : SIZE;
+    }
+
+    public static int sampleRateIndex(byte[] src, int offset) {
+        return (src[offset + 2] >> 2) & 0x0F;
+    }
+
+    public static int channelCount(byte[] src, int offset) {
+        return ((src[offset + 2] & 0x01) << 2) | ((src[offset + 3] & 0xC0) >> 6);
+    }
+}
@@ -0,0 +1,56 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 把AAC访问单元加上ADTS帧头写成 .aac 裸流
+ * <p>
+ * ADTS每一帧都能独立解码，写到一半进程被杀也不会影响已经写入的部分。
+ */
+public class AdtsWriter implements AacOutput {
+
+    private final PcmSink out;
+    private final int sampleRate;
+    private final int channelCount;
+    private int objectType = AdtsHeader.OBJECT_TYPE_AAC_LC;
+
+    /**
+     * 帧头加帧数据的缓冲区，不够时才扩大
+     */
+    private byte[] scratch = new byte[AdtsHeader.SIZE + 2048];
+
+    /**
+     * @param out 接收字节数据的输出端，例如 {@link com.yisan.audiodemo.core.io.PcmFileWriter}
+     */
+    public AdtsWriter(PcmSink out, int sampleRate, int channelCount) {
+        AdtsHeader.sampleRateIndex(sampleRate);
+        this.out = out;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    @Override
+    public void configure(byte[] audioSpecificConfig) {
+        if (audioSpecificConfig.length > 0) {
+            objectType = (audioSpecificConfig[0] & 0xFF) >> 3;
+        }
+    }
+
+    @Override
+    public void writeAccessUnit(ByteBuffer accessUnit, long presentationTimeUs) throws IOException {
+        int length = accessUnit.remaining();
+        if (scratch.length < AdtsHeader.SIZE + length) {
+            scratch = new byte[AdtsHeader.SIZE + length];
+        }
+        AdtsHeader.write(scratch, 0, objectType, sampleRate, channelCount, length);
+        accessUnit.get(scratch, AdtsHeader.SIZE, length);
+        out.write(scratch, 0, AdtsHeader.SIZE + length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,123 @@
+package com.yisan.audiodemo.core.codec;
+
+/**
+ * 按位写入，高位在前，写到可以增长的字节数组里，编码一帧的过程中不分配对象
+ */
+final class FlacBitWriter {
+
+    private byte[] buffer;
+    private int position;
+    private long cache;
+    private int cacheBits;
+
+    FlacBitWriter(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    void reset() {
+        position = 0;
+        cache = 0;
+        cacheBits = 0;
+    }
+
+    /**
+     * 写入 value 的低 bits 位，bits 不超过32
+     */
+    void writeBits(int value, int bits) {
+        if (bits == 0) {
+            return;
+        }
+        cache = (cache << bits) | (value & (0xFFFFFFFFL >>> (32 - bits)));
+        cacheBits += bits;
+        while (cacheBits >= 8) {
+            if (position == buffer.length) {
+                grow();
+            }
+            cacheBits -= 8;
+            buffer[position++] = (byte) (cache >>> cacheBits);
+        }
+    }
+
+    void writeLong(long value, int bits) {
+        if (bits > 32) {
+            writeBits((int) (value >>> 32), bits - 32);
+            writeBits((int) value, 32);
+        } else {
+            writeBits((int) value, bits);
+        }
+    }
+
+    /**
+     * Rice编码：先把有符号数映射成无符号数，高位用一元码（q个0加一个1），低 k 位原样写
+     */
+    void writeRice(int value, int k) {
+        int u = (value << 1) ^ (value >> 31);
+        int q = u >>> k;
+        if (q + 1 + k <= 32) {
+            writeBits((1 << k) | (u & ((1 << k) - 1)), q + 1 + k);
+            return;
+        }
+        while (q >= 32) {
+            writeBits(0, 32);
+            q -= 32;
+        }
+        writeBits(1, q + 1);
+        writeBits(u, k);
+    }
+
+    /**
+     * 帧号的变长编码，规则和UTF-8相同，最长36位
+     */
+    void writeUtf8(long value) {
+        if (value < 0x80) {
+            writeBits((int) value, 8);
+            return;
+        }
+        int bytes;
+        if (value < 0x800) {
+            bytes = 2;
+        } else if (value < 0x10000) {
+            bytes = 3;
+        } else if (value < 0x200000) {
+            bytes = 4;
+        } else if (value < 0x4000000) {
+            bytes = 5;
+        } else if (value < 0x80000000L) {
+            bytes = 6;
+        } else {
+            bytes = 7;
+        }
+        int shift = 6 * (bytes - 1);
+        writeBits((0xFF00 >> bytes) & 0xFF | (int) (value >>> shift), 8);
+        while (shift > 0) {
+            shift -= 6;
+            writeBits(0x80 | (int) (value >>> shift) & 0x3F, 8);
+        }
+    }
+
+    /**
+     * 补0到整字节
+     */
+    void alignToByte() {
+        if (cacheBits > 0) {
+            writeBits(0, 8 - cacheBits);
+        }
+    }
+
+    /**
+     * 已经写满的字节数，对齐之后就是全部数据的长度
+     */
+    int length() {
+        return position;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    private void grow() {
+        byte[] larger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, larger, 0, position);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,115 @@
+package com.yisan.audiodemo.core.codec;
+
+/**
+ * FLAC格式的常量、编号表和校验（https://xiph.org/flac/format.html）
+ */
+final class FlacFormat {
+
+    static final byte[] MARKER = {'f', 'L', 'a', 'C'};
+
+    static final int BLOCK_STREAMINFO = 0;
+    static final int BLOCK_SEEKTABLE = 3;
+    static final int STREAMINFO_SIZE = 34;
+    static final int SEEK_POINT_SIZE = 18;
+    /**
+     * 元数据块头：最后一块标记1位、类型7位、长度24位
+     */
+    static final int BLOCK_HEADER_SIZE = 4;
+
+    /**
+     * 帧同步码14位，后面跟保留位0和固定块大小标记0
+     */
+    static final int FRAME_SYNC = 0xFFF8;
+
+    static final int CHANNEL_LEFT_SIDE = 8;
+    static final int CHANNEL_RIGHT_SIDE = 9;
+    static final int CHANNEL_MID_SIDE = 10;
+
+    static final int SUBFRAME_CONSTANT = 0;
+    static final int SUBFRAME_VERBATIM = 1;
+    /**
+     * 固定预测 001xxx，xxx是阶数
+     */
+    static final int SUBFRAME_FIXED = 8;
+    /**
+     * 线性预测 1xxxxx，xxxxx是阶数减1
+     */
+    static final int SUBFRAME_LPC = 32;
+
+    static final int MAX_FIXED_ORDER = 4;
+    static final int MAX_LPC_ORDER = 32;
+    static final int MAX_PARTITION_ORDER = 15;
+
+    /**
+     * 帧头采样率编号对应的采样率，0表示使用STREAMINFO里的
+     */
+    private static final int[] SAMPLE_RATES = {0, 88200, 176400, 192000, 8000, 16000, 22050, 24000, 32000, 44100,
+            48000, 96000};
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8_TABLE[i] = crc8 & 0xFF;
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private FlacFormat() {
+    }
+
+    /**
+     * 帧头里的采样率编号，不在表里时返回0，解码器从STREAMINFO读取
+     */
+    static int sampleRateCode(int sampleRate) {
+        for (int i = 1; i < SAMPLE_RATES.length; i++) {
+            if (SAMPLE_RATES[i] == sampleRate) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 帧头里的采样位数编号，不支持时返回-1
+     */
+    static int sampleSizeCode(int bitsPerSample) {
+        switch (bitsPerSample) {
+            case 8:
+                return 1;
+            case 12:
+                return 2;
+            case 16:
+                return 4;
+            case 20:
+                return 5;
+            case 24:
+                return 6;
+            default:
+                return -1;
+        }
+    }
+
+    static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC8_TABLE[crc ^ (data[i] & 0xFF)];
+        }
+        return crc;
+    }
+
+    static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[(crc >>> 8) ^ (data[i] & 0xFF)]) & 0xFFFF;
+        }
+        return crc;
+    }
+}
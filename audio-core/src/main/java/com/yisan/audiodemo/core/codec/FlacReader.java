@@ -0,0 +1,650 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSource;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * FLAC文件的解码，输出交错的小端PCM，可以直接作为管线的数据源
+ * <p>
+ * 每帧校验CRC，打开 {@link #setVerify} 时从头读完后再比较 STREAMINFO 里的MD5，
+ * 压缩归档在删除原始录音之前用它确认逐位相同。
+ * 有 SEEKTABLE 时定位先跳到最近的定位点，再往后解码到目标位置，不需要从头解码。
+ * <p>
+ * 文件按块读进内存，位读取、残差和预测都在这个数组上完成，解码过程中不分配对象。
+ * 只支持固定块大小、16bit或24bit的流。不是线程安全的。
+ */
+public class FlacReader implements PcmSource {
+
+    private static final int INPUT_SIZE = 64 * 1024;
+    /**
+     * 位缓存一次最多多读8个字节，输入数组留出余量
+     */
+    private static final int INPUT_SLACK = 8;
+
+    private final RandomAccessFile file;
+    private final long fileLength;
+    private final AudioFormatSpec format;
+    private final int channelCount;
+    private final int bitsPerSample;
+    private final int bytesPerFrame;
+    private final int blockSize;
+    private final long totalSamples;
+    private final byte[] streamMd5;
+    private final long audioOffset;
+    private final long[] seekSamples;
+    private final long[] seekOffsets;
+
+    private final byte[] input;
+    /**
+     * 读进来的最长的帧也要放得下
+     */
+    private final int maxFrameBytes;
+    private long inputFileOffset;
+    private int inputLimit;
+    private int bytePosition;
+    private long cache;
+    private int cacheBits;
+
+    private final int[][] channels;
+    private final int[] coefficients = new int[FlacFormat.MAX_LPC_ORDER];
+    private final byte[] output;
+    private int outputPosition;
+    private int outputLimit;
+    /**
+     * 下一帧的第一个采样
+     */
+    private long nextFrameSample;
+
+    private MessageDigest md5;
+    private boolean verify;
+    private boolean verifying;
+
+    private FlacReader(RandomAccessFile file, AudioFormatSpec format, int blockSize, int maxFrameSize,
+                       long totalSamples, byte[] streamMd5, long audioOffset, long[] seekSamples,
+                       long[] seekOffsets) throws IOException {
+        this.file = file;
+        this.fileLength = file.length();
+        this.format = format;
+        this.channelCount = format.getChannelCount();
+        this.bitsPerSample = format.getBitsPerSample();
+        this.bytesPerFrame = format.getBytesPerFrame();
+        this.blockSize = blockSize;
+        this.totalSamples = totalSamples;
+        this.streamMd5 = streamMd5;
+        this.audioOffset = audioOffset;
+        this.seekSamples = seekSamples;
+        this.seekOffsets = seekOffsets;
+        //没有记录最长帧时按原样保存的大小估算
+        this.maxFrameBytes = maxFrameSize > 0 ? maxFrameSize
+                : blockSize * channelCount * (bitsPerSample / 8 + 1) + 64;
+        this.input = new byte[Math.max(INPUT_SIZE, maxFrameBytes * 2) + INPUT_SLACK];
+        this.channels = new int[channelCount][blockSize];
+        this.output = new byte[blockSize * bytesPerFrame];
+        seekInput(audioOffset);
+    }
+
+    public static FlacReader open(File target) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "r");
+        try {
+            return open(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static FlacReader open(RandomAccessFile file) throws IOException {
+        byte[] marker = new byte[FlacFormat.MARKER.length];
+        file.readFully(marker);
+        if (!Arrays.equals(marker, FlacFormat.MARKER)) {
+            throw new IOException("not a flac file");
+        }
+        byte[] info = null;
+        long[] seekSamples = new long[0];
+        long[] seekOffsets = new long[0];
+        boolean last = false;
+        while (!last) {
+            int header = file.readInt();
+            last = (header & 0x80000000) != 0;
+            int type = (header >>> 24) & 0x7F;
+            int length = header & 0xFFFFFF;
+            if (type == FlacFormat.BLOCK_STREAMINFO && length == FlacFormat.STREAMINFO_SIZE) {
+                info = new byte[length];
+                file.readFully(info);
+            } else if (type == FlacFormat.BLOCK_SEEKTABLE) {
+                int points = length / FlacFormat.SEEK_POINT_SIZE;
+                long[] samples = new long[points];
+                long[] offsets = new long[points];
+                int count = 0;
+                for (int i = 0; i < points; i++) {
+                    long sample = file.readLong();
+                    long offset = file.readLong();
+                    file.readShort();
+                    //跳过占位点
+                    if (sample != -1L) {
+                        samples[count] = sample;
+                        offsets[count] = offset;
+                        count++;
+                    }
+                }
+                file.skipBytes(length - points * FlacFormat.SEEK_POINT_SIZE);
+                seekSamples = Arrays.copyOf(samples, count);
+                seekOffsets = Arrays.copyOf(offsets, count);
+            } else {
+                file.seek(file.getFilePointer() + length);
+            }
+        }
+        if (info == null) {
+            throw new IOException("missing STREAMINFO");
+        }
+        int minBlockSize = (info[0] & 0xFF) << 8 | info[1] & 0xFF;
+        int maxBlockSize = (info[2] & 0xFF) << 8 | info[3] & 0xFF;
+        int maxFrameSize = (info[7] & 0xFF) << 16 | (info[8] & 0xFF) << 8 | info[9] & 0xFF;
+        int sampleRate = (info[10] & 0xFF) << 12 | (info[11] & 0xFF) << 4 | (info[12] & 0xFF) >> 4;
+        int channelCount = ((info[12] >> 1) & 0x07) + 1;
+        int bitsPerSample = ((info[12] & 0x01) << 4 | (info[13] & 0xFF) >> 4) + 1;
+        long totalSamples = (info[13] & 0x0FL) << 32 | ((info[14] & 0xFF) << 24 | (info[15] & 0xFF) << 16
+                | (info[16] & 0xFF) << 8 | info[17] & 0xFF) & 0xFFFFFFFFL;
+        if (minBlockSize != maxBlockSize) {
+            throw new IOException("variable block size not supported");
+        }
+        if (bitsPerSample != 16 && bitsPerSample != 24) {
+            throw new IOException("unsupported bits per sample: " + bitsPerSample);
+        }
+        AudioFormatSpec format = new AudioFormatSpec(sampleRate, channelCount, bitsPerSample);
+        return new FlacReader(file, format, maxBlockSize, maxFrameSize, totalSamples,
+                Arrays.copyOfRange(info, 18, 34), file.getFilePointer(), seekSamples, seekOffsets);
+    }
+
+    /**
+     * 从头读完时比较MD5，不一致时 {@link #read} 抛出异常；定位之后不再校验
+     */
+    public void setVerify(boolean verify) throws IOException {
+        if (verify && md5 == null) {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+        this.verify = verify;
+        verifying = verify && nextFrameSample == 0 && outputLimit == 0;
+        if (verifying) {
+            md5.reset();
+        }
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    public long getFrameCount() {
+        return totalSamples;
+    }
+
+    public long getDurationMillis() {
+        return totalSamples * 1000 / format.getSampleRate();
+    }
+
+    public long getPositionFrames() {
+        return nextFrameSample - (outputLimit - outputPosition) / bytesPerFrame;
+    }
+
+    public int getSeekPointCount() {
+        return seekSamples.length;
+    }
+
+    /**
+     * 文件已经在 {@link #open} 时打开，这里什么都不做
+     */
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (outputPosition == outputLimit && !decodeNextFrame()) {
+            return -1;
+        }
+        int count = Math.min(length, outputLimit - outputPosition);
+        System.arraycopy(output, outputPosition, buffer, offset, count);
+        outputPosition += count;
+        return count;
+    }
+
+    /**
+     * 跳到指定帧，超出范围时取边界
+     */
+    public void seekToFrame(long frame) throws IOException {
+        frame = Math.max(0, Math.min(frame, totalSamples));
+        int point = -1;
+        for (int i = 0; i < seekSamples.length && seekSamples[i] <= frame; i++) {
+            point = i;
+        }
+        if (point >= 0) {
+            seekInput(audioOffset + seekOffsets[point]);
+            nextFrameSample = seekSamples[point];
+        } else {
+            seekInput(audioOffset);
+            nextFrameSample = 0;
+        }
+        outputPosition = 0;
+        outputLimit = 0;
+        verifying = verify && frame == 0;
+        if (verifying) {
+            md5.reset();
+        }
+        //往后解码到包含目标位置的帧
+        while (true) {
+            long frameStart = nextFrameSample;
+            if (!decodeNextFrame()) {
+                return;
+            }
+            if (nextFrameSample > frame) {
+                outputPosition = (int) (frame - frameStart) * bytesPerFrame;
+                return;
+            }
+        }
+    }
+
+    public void seekToMillis(long millis) throws IOException {
+        seekToFrame(millis * format.getSampleRate() / 1000);
+    }
+
+    private void seekInput(long position) {
+        inputFileOffset = position;
+        inputLimit = 0;
+        bytePosition = 0;
+        cache = 0;
+        cacheBits = 0;
+    }
+
+    /**
+     * 保证输入数组里至少有一个最长帧的数据，不够时把剩余的移到开头再读
+     */
+    private void fillInput() throws IOException {
+        if (inputLimit - bytePosition >= maxFrameBytes) {
+            return;
+        }
+        int remaining = inputLimit - bytePosition;
+        System.arraycopy(input, bytePosition, input, 0, remaining);
+        inputFileOffset += bytePosition;
+        bytePosition = 0;
+        inputLimit = remaining;
+        file.seek(inputFileOffset + inputLimit);
+        int capacity = input.length - INPUT_SLACK;
+        while (inputLimit < capacity) {
+            int read = file.read(input, inputLimit, capacity - inputLimit);
+            if (read < 0) {
+                break;
+            }
+            inputLimit += read;
+        }
+    }
+
+    private boolean decodeNextFrame() throws IOException {
+        outputPosition = 0;
+        outputLimit = 0;
+        if (nextFrameSample >= totalSamples && totalSamples > 0
+                || inputFileOffset + bytePosition >= fileLength) {
+            finishVerify();
+            return false;
+        }
+        fillInput();
+        int frameStart = bytePosition;
+        cacheBits = 0;
+        try {
+            int n = decodeFrame(frameStart);
+            interleave(n);
+            nextFrameSample += n;
+            return true;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("corrupt flac frame at " + (inputFileOffset + frameStart), e);
+        }
+    }
+
+    private int decodeFrame(int frameStart) throws IOException {
+        int sync = readBits(16);
+        if ((sync & 0xFFFE) != FlacFormat.FRAME_SYNC) {
+            throw new IOException("lost frame sync at " + (inputFileOffset + frameStart));
+        }
+        int blockSizeCode = readBits(4);
+        int sampleRateCode = readBits(4);
+        int assignment = readBits(4);
+        readBits(4);
+        readUtf8();
+        int n;
+        if (blockSizeCode == 1) {
+            n = 192;
+        } else if (blockSizeCode >= 2 && blockSizeCode <= 5) {
+            n = 576 << (blockSizeCode - 2);
+        } else if (blockSizeCode == 6) {
+            n = readBits(8) + 1;
+        } else if (blockSizeCode == 7) {
+            n = readBits(16) + 1;
+        } else if (blockSizeCode >= 8) {
+            n = 256 << (blockSizeCode - 8);
+        } else {
+            throw new IOException("reserved block size");
+        }
+        if (sampleRateCode == 12) {
+            readBits(8);
+        } else if (sampleRateCode == 13 || sampleRateCode == 14) {
+            readBits(16);
+        }
+        int headerEnd = bytePosition - (cacheBits >> 3);
+        int crc8 = readBits(8);
+        if (crc8 != FlacFormat.crc8(input, frameStart, headerEnd - frameStart)) {
+            throw new IOException("frame header crc mismatch at " + (inputFileOffset + frameStart));
+        }
+        if (n > blockSize) {
+            throw new IOException("block size " + n + " > " + blockSize);
+        }
+        int expectedChannels = assignment < 8 ? assignment + 1 : 2;
+        if (expectedChannels != channelCount || assignment > FlacFormat.CHANNEL_MID_SIDE) {
+            throw new IOException("bad channel assignment " + assignment);
+        }
+        for (int c = 0; c < channelCount; c++) {
+            boolean sideChannel = assignment == FlacFormat.CHANNEL_LEFT_SIDE && c == 1
+                    || assignment == FlacFormat.CHANNEL_RIGHT_SIDE && c == 0
+                    || assignment == FlacFormat.CHANNEL_MID_SIDE && c == 1;
+            decodeSubframe(channels[c], n, sideChannel ? bitsPerSample + 1 : bitsPerSample);
+        }
+        //对齐到字节后是CRC-16
+        cacheBits -= cacheBits & 7;
+        int frameEnd = bytePosition - (cacheBits >> 3);
+        int crc16 = readBits(16);
+        if (frameEnd + 2 > inputLimit) {
+            throw new EOFException("truncated flac frame at " + (inputFileOffset + frameStart));
+        }
+        if (crc16 != FlacFormat.crc16(input, frameStart, frameEnd - frameStart)) {
+            throw new IOException("frame crc mismatch at " + (inputFileOffset + frameStart));
+        }
+        //位缓存里多读的字节退回去，下一帧从整字节开始
+        bytePosition = frameEnd + 2;
+        cacheBits = 0;
+        decorrelate(assignment, n);
+        return n;
+    }
+
+    private void decodeSubframe(int[] x, int n, int sampleBits) throws IOException {
+        int header = readBits(8);
+        if ((header & 0x80) != 0) {
+            throw new IOException("bad subframe padding");
+        }
+        int type = header >> 1;
+        int wasted = 0;
+        if ((header & 1) != 0) {
+            wasted = readUnary() + 1;
+            sampleBits -= wasted;
+        }
+        if (type == FlacFormat.SUBFRAME_CONSTANT) {
+            Arrays.fill(x, 0, n, readSigned(sampleBits));
+        } else if (type == FlacFormat.SUBFRAME_VERBATIM) {
+            for (int i = 0; i < n; i++) {
+                x[i] = readSigned(sampleBits);
+            }
+        } else if (type >= FlacFormat.SUBFRAME_FIXED && type <= FlacFormat.SUBFRAME_FIXED + 4) {
+            int order = type - FlacFormat.SUBFRAME_FIXED;
+            for (int i = 0; i < order; i++) {
+                x[i] = readSigned(sampleBits);
+            }
+            decodeResidual(x, n, order);
+            restoreFixed(x, n, order);
+        } else if (type >= FlacFormat.SUBFRAME_LPC) {
+            int order = type - FlacFormat.SUBFRAME_LPC + 1;
+            for (int i = 0; i < order; i++) {
+                x[i] = readSigned(sampleBits);
+            }
+            int precision = readBits(4) + 1;
+            int shift = readSigned(5);
+            if (precision == 16 || shift < 0) {
+                throw new IOException("bad lpc precision " + precision + " shift " + shift);
+            }
+            int[] coefficients = this.coefficients;
+            for (int i = 0; i < order; i++) {
+                coefficients[i] = readSigned(precision);
+            }
+            decodeResidual(x, n, order);
+            restoreLpc(x, n, order, coefficients, shift, precision + sampleBits);
+        } else {
+            throw new IOException("reserved subframe type " + type);
+        }
+        if (wasted > 0) {
+            for (int i = 0; i < n; i++) {
+                x[i] <<= wasted;
+            }
+        }
+    }
+
+    /**
+     * Rice编码的残差直接解到采样数组里，预测时再原地加上预测值
+     */
+    private void decodeResidual(int[] x, int n, int order) throws IOException {
+        int method = readBits(2);
+        if (method > 1) {
+            throw new IOException("reserved residual coding " + method);
+        }
+        int parameterBits = method == 0 ? 4 : 5;
+        int escape = (1 << parameterBits) - 1;
+        int partitionOrder = readBits(4);
+        int partitions = 1 << partitionOrder;
+        int size = n >> partitionOrder;
+        if ((size << partitionOrder) != n || size < order) {
+            throw new IOException("bad partition order " + partitionOrder);
+        }
+        int index = order;
+        for (int p = 0; p < partitions; p++) {
+            int end = (p + 1) * size;
+            int k = readBits(parameterBits);
+            if (k == escape) {
+                int rawBits = readBits(5);
+                for (; index < end; index++) {
+                    x[index] = rawBits == 0 ? 0 : readSigned(rawBits);
+                }
+                continue;
+            }
+            for (; index < end; index++) {
+                int u = (readUnary() << k) | readBits(k);
+                x[index] = (u >>> 1) ^ -(u & 1);
+            }
+        }
+    }
+
+    private static void restoreFixed(int[] x, int n, int order) {
+        switch (order) {
+            case 1:
+                for (int i = 1; i < n; i++) {
+                    x[i] += x[i - 1];
+                }
+                break;
+            case 2:
+                for (int i = 2; i < n; i++) {
+                    x[i] += 2 * x[i - 1] - x[i - 2];
+                }
+                break;
+            case 3:
+                for (int i = 3; i < n; i++) {
+                    x[i] += 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                }
+                break;
+            case 4:
+                for (int i = 4; i < n; i++) {
+                    x[i] += 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param productBits 系数和采样相乘需要的位数，加上阶数放得进32位时用int累加，更快
+     */
+    private static void restoreLpc(int[] x, int n, int order, int[] coefficients, int shift, int productBits) {
+        if (productBits + 32 - Integer.numberOfLeadingZeros(order) <= 32) {
+            for (int i = order; i < n; i++) {
+                int sum = 0;
+                for (int j = 0; j < order; j++) {
+                    sum += coefficients[j] * x[i - 1 - j];
+                }
+                x[i] += sum >> shift;
+            }
+        } else {
+            for (int i = order; i < n; i++) {
+                long sum = 0;
+                for (int j = 0; j < order; j++) {
+                    sum += (long) coefficients[j] * x[i - 1 - j];
+                }
+                x[i] += (int) (sum >> shift);
+            }
+        }
+    }
+
+    private void decorrelate(int assignment, int n) {
+        if (assignment < FlacFormat.CHANNEL_LEFT_SIDE) {
+            return;
+        }
+        int[] a = channels[0];
+        int[] b = channels[1];
+        switch (assignment) {
+            case FlacFormat.CHANNEL_LEFT_SIDE:
+                //a是左，b是差
+                for (int i = 0; i < n; i++) {
+                    b[i] = a[i] - b[i];
+                }
+                break;
+            case FlacFormat.CHANNEL_RIGHT_SIDE:
+                //a是差，b是右
+                for (int i = 0; i < n; i++) {
+                    a[i] += b[i];
+                }
+                break;
+            default:
+                //a是中，b是差
+                for (int i = 0; i < n; i++) {
+                    int side = b[i];
+                    int mid = (a[i] << 1) | (side & 1);
+                    a[i] = (mid + side) >> 1;
+                    b[i] = (mid - side) >> 1;
+                }
+                break;
+        }
+    }
+
+    private void interleave(int n) {
+        int position = 0;
+        if (bitsPerSample == 16) {
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < channelCount; c++) {
+                    int sample = channels[c][i];
+                    output[position] = (byte) sample;
+                    output[position + 1] = (byte) (sample >> 8);
+                    position += 2;
+                }
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < channelCount; c++) {
+                    int sample = channels[c][i];
+                    output[position] = (byte) sample;
+                    output[position + 1] = (byte) (sample >> 8);
+                    output[position + 2] = (byte) (sample >> 16);
+                    position += 3;
+                }
+            }
+        }
+        outputLimit = position;
+        if (verifying) {
+            md5.update(output, 0, position);
+        }
+    }
+
+    private void finishVerify() throws IOException {
+        if (!verifying) {
+            return;
+        }
+        verifying = false;
+        byte[] digest = md5.digest();
+        boolean unset = true;
+        for (byte b : streamMd5) {
+            if (b != 0) {
+                unset = false;
+                break;
+            }
+        }
+        //编码器没有计算MD5时全是0，不比较
+        if (!unset && !Arrays.equals(digest, streamMd5)) {
+            throw new IOException("md5 mismatch, decoded data differs from the original");
+        }
+    }
+
+    private int readBits(int n) {
+        if (cacheBits < n) {
+            refill();
+        }
+        cacheBits -= n;
+        return (int) ((cache >>> cacheBits) & ((1L << n) - 1));
+    }
+
+    private int readSigned(int n) {
+        int value = readBits(n);
+        return (value << (32 - n)) >> (32 - n);
+    }
+
+    /**
+     * 一元码：数0的个数直到遇到1，整段64位一起找，不逐位读取
+     */
+    private int readUnary() {
+        int zeros = 0;
+        while (true) {
+            if (cacheBits == 0) {
+                refill();
+            }
+            long window = cache << (64 - cacheBits);
+            if (window == 0) {
+                zeros += cacheBits;
+                cacheBits = 0;
+                continue;
+            }
+            int leading = Long.numberOfLeadingZeros(window);
+            cacheBits -= leading + 1;
+            return zeros + leading;
+        }
+    }
+
+    private long readUtf8() throws IOException {
+        int first = readBits(8);
+        if (first < 0x80) {
+            return first;
+        }
+        int bytes = Integer.numberOfLeadingZeros(~(first << 24));
+        if (bytes < 2 || bytes > 7) {
+            throw new IOException("bad utf8 frame number");
+        }
+        long value = first & (0x7F >> bytes);
+        for (int i = 1; i < bytes; i++) {
+            value = (value << 6) | (readBits(8) & 0x3F);
+        }
+        return value;
+    }
+
+    private void refill() {
+        while (cacheBits <= 56) {
+            cache = (cache << 8) | (input[bytePosition++] & 0xFF);
+            cacheBits += 8;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,927 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import com.yisan.audiodemo.core.io.PcmFileWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 流式写入FLAC文件：线性预测加Rice编码的无损压缩，解码后和原始数据逐位相同
+ * <p>
+ * 按固定块大小分帧，每个声道分别尝试常数、固定预测（0~4阶）和线性预测，取估算最短的一种；
+ * 立体声再比较左右、左/差、右/差、中/差四种组合。残差分区，每个分区单独选Rice参数。
+ * <p>
+ * 开头预留 STREAMINFO 和 SEEKTABLE，关闭时回填总长度、MD5、帧长度范围和定位点，
+ * 和 {@link com.yisan.audiodemo.core.io.WavWriter} 一样边录边写，不需要把录音放在内存里。
+ * 定位点每10秒一个，预留的位置用完后间隔加倍、去掉一半，内存占用固定。
+ * <p>
+ * 只支持16bit、24bit整数PCM，1~8声道。不是线程安全的。
+ */
+public class FlacWriter implements PcmSink {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    public static final int DEFAULT_MAX_LPC_ORDER = 8;
+    /**
+     * 默认预留的定位点数量，每10秒一个可以覆盖1小时
+     */
+    public static final int DEFAULT_SEEK_POINTS = 360;
+
+    private static final int SEEK_INTERVAL_SECONDS = 10;
+    private static final int MAX_PARTITION_ORDER = 8;
+    /**
+     * 4位Rice参数的最大值，15留给转义码
+     */
+    private static final int MAX_RICE_PARAMETER = 14;
+    /**
+     * 5位Rice参数的最大值，24bit的残差需要
+     */
+    private static final int MAX_RICE2_PARAMETER = 30;
+    private static final int SUBFRAME_HEADER_BITS = 8;
+
+    private final PcmFileWriter writer;
+    private final AudioFormatSpec format;
+    private final int channelCount;
+    private final int bitsPerSample;
+    private final int bytesPerSample;
+    private final int bytesPerFrame;
+    private final int blockSize;
+    private final int maxLpcOrder;
+    private final int qlpPrecision;
+    private final int sampleRateCode;
+    private final int sampleSizeCode;
+
+    /**
+     * 当前块按声道分开的采样
+     */
+    private final int[][] samples;
+    private int blockFill;
+    /**
+     * 跨两次写入的不完整的一帧
+     */
+    private final byte[] partial;
+    private int partialLength;
+
+    //立体声的中声道、差声道
+    private final int[] mid;
+    private final int[] side;
+    /**
+     * 每个候选声道的编码方案，立体声是左、右、中、差
+     */
+    private final Subframe[] subframes;
+    private final Subframe trial;
+    private final FlacBitWriter bits;
+    private final MessageDigest md5;
+
+    //线性预测分析的临时数组
+    private final double[] window;
+    private final double[] windowed;
+    private final double[] autocorrelation;
+    private final double[] lpc;
+    private final double[][] lpcCoefficients;
+    private final double[] lpcErrors;
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private final int[] trialParameters = new int[1 << MAX_PARTITION_ORDER];
+
+    private final long audioStart;
+    private long totalSamples;
+    private long frameNumber;
+    private int minFrameSize = Integer.MAX_VALUE;
+    private int maxFrameSize;
+
+    private final long seekTableOffset;
+    private final long[] seekSamples;
+    private final long[] seekOffsets;
+    private final int[] seekFrameSamples;
+    private int seekCount;
+    private long seekInterval;
+    private long nextSeekSample;
+    private boolean closed;
+
+    public FlacWriter(PcmFileWriter writer, AudioFormatSpec format) throws IOException {
+        this(writer, format, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_LPC_ORDER, DEFAULT_SEEK_POINTS);
+    }
+
+    /**
+     * @param blockSize   每帧的采样数，16~65535
+     * @param maxLpcOrder 线性预测的最高阶数，0表示只用固定预测，编码更快、压缩率稍差
+     * @param seekPoints  预留的定位点数量，0表示不写 SEEKTABLE
+     */
+    public FlacWriter(PcmFileWriter writer, AudioFormatSpec format, int blockSize, int maxLpcOrder, int seekPoints)
+            throws IOException {
+        if (format.isFloat() || (format.getBitsPerSample() != 16 && format.getBitsPerSample() != 24)) {
+            throw new IllegalArgumentException("flac needs 16 or 24 bit pcm: " + format);
+        }
+        if (format.getChannelCount() > 8) {
+            throw new IllegalArgumentException("too many channels: " + format);
+        }
+        if (blockSize < 16 || blockSize > 65535) {
+            throw new IllegalArgumentException("blockSize: " + blockSize);
+        }
+        if (maxLpcOrder < 0 || maxLpcOrder > FlacFormat.MAX_LPC_ORDER) {
+            throw new IllegalArgumentException("maxLpcOrder: " + maxLpcOrder);
+        }
+        if (seekPoints < 0 || seekPoints > 0xFFFFFF / FlacFormat.SEEK_POINT_SIZE) {
+            throw new IllegalArgumentException("seekPoints: " + seekPoints);
+        }
+        this.writer = writer;
+        this.format = format;
+        this.channelCount = format.getChannelCount();
+        this.bitsPerSample = format.getBitsPerSample();
+        this.bytesPerSample = format.getBytesPerSample();
+        this.bytesPerFrame = format.getBytesPerFrame();
+        this.blockSize = blockSize;
+        this.maxLpcOrder = maxLpcOrder;
+        this.qlpPrecision = precisionFor(blockSize);
+        this.sampleRateCode = FlacFormat.sampleRateCode(format.getSampleRate());
+        this.sampleSizeCode = FlacFormat.sampleSizeCode(bitsPerSample);
+
+        samples = new int[channelCount][blockSize];
+        partial = new byte[bytesPerFrame];
+        boolean stereo = channelCount == 2;
+        mid = stereo ? new int[blockSize] : null;
+        side = stereo ? new int[blockSize] : null;
+        subframes = new Subframe[stereo ? 4 : channelCount];
+        for (int i = 0; i < subframes.length; i++) {
+            subframes[i] = new Subframe(blockSize);
+        }
+        trial = new Subframe(blockSize);
+        //最坏情况是原样保存，再加上帧头
+        bits = new FlacBitWriter(blockSize * channelCount * (bytesPerSample + 1) + 64);
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        window = new double[blockSize];
+        fillWindow(window, blockSize);
+        windowed = new double[blockSize];
+        autocorrelation = new double[maxLpcOrder + 1];
+        lpc = new double[maxLpcOrder];
+        lpcCoefficients = new double[maxLpcOrder][maxLpcOrder];
+        lpcErrors = new double[maxLpcOrder];
+
+        seekSamples = new long[seekPoints];
+        seekOffsets = new long[seekPoints];
+        seekFrameSamples = new int[seekPoints];
+        seekInterval = (long) format.getSampleRate() * SEEK_INTERVAL_SECONDS;
+
+        //先写占位的元数据，关闭时回填
+        writer.write(FlacFormat.MARKER, 0, FlacFormat.MARKER.length);
+        byte[] header = new byte[FlacFormat.BLOCK_HEADER_SIZE + FlacFormat.STREAMINFO_SIZE];
+        putBlockHeader(header, seekPoints == 0, FlacFormat.BLOCK_STREAMINFO, FlacFormat.STREAMINFO_SIZE);
+        writer.write(header, 0, header.length);
+        seekTableOffset = writer.position();
+        if (seekPoints > 0) {
+            byte[] table = createSeekTable();
+            writer.write(table, 0, table.length);
+        }
+        audioStart = writer.position();
+    }
+
+    public static FlacWriter open(File target, AudioFormatSpec format) throws IOException {
+        return open(PcmFileWriter.open(target), format);
+    }
+
+    /**
+     * 写文件的合并缓冲区从缓冲区池借出
+     */
+    public static FlacWriter open(File target, AudioFormatSpec format, BufferPool<ByteBuffer> blockPool)
+            throws IOException {
+        return open(PcmFileWriter.open(target, blockPool), format);
+    }
+
+    private static FlacWriter open(PcmFileWriter writer, AudioFormatSpec format) throws IOException {
+        try {
+            return new FlacWriter(writer, format);
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 系数精度按块大小选，和libFLAC的默认值相同
+     */
+    private static int precisionFor(int blockSize) {
+        if (blockSize <= 192) {
+            return 7;
+        } else if (blockSize <= 384) {
+            return 8;
+        } else if (blockSize <= 576) {
+            return 9;
+        } else if (blockSize <= 1152) {
+            return 10;
+        } else if (blockSize <= 2304) {
+            return 11;
+        } else if (blockSize <= 4608) {
+            return 12;
+        }
+        return 13;
+    }
+
+    /**
+     * Welch窗，减少分析时块两端的截断误差
+     */
+    private static void fillWindow(double[] window, int n) {
+        double half = (n - 1) / 2.0;
+        for (int i = 0; i < n; i++) {
+            double x = (i - half) / half;
+            window[i] = 1 - x * x;
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+        //先补齐上次剩下的不完整的一帧
+        if (partialLength > 0) {
+            int count = Math.min(length, bytesPerFrame - partialLength);
+            System.arraycopy(buffer, offset, partial, partialLength, count);
+            partialLength += count;
+            offset += count;
+            length -= count;
+            if (partialLength < bytesPerFrame) {
+                return;
+            }
+            md5.update(partial, 0, bytesPerFrame);
+            deinterleave(partial, 0, 1);
+            partialLength = 0;
+        }
+        int frames = length / bytesPerFrame;
+        //MD5按原始的有符号小端数据计算，正好就是输入的字节
+        md5.update(buffer, offset, frames * bytesPerFrame);
+        while (frames > 0) {
+            int count = Math.min(frames, blockSize - blockFill);
+            deinterleave(buffer, offset, count);
+            offset += count * bytesPerFrame;
+            length -= count * bytesPerFrame;
+            frames -= count;
+        }
+        if (length > 0) {
+            System.arraycopy(buffer, offset, partial, 0, length);
+            partialLength = length;
+        }
+    }
+
+    /**
+     * 把交错的PCM拆到各个声道，块满了就编码一帧
+     */
+    private void deinterleave(byte[] buffer, int offset, int frames) throws IOException {
+        int end = blockFill + frames;
+        if (bytesPerSample == 2) {
+            for (int i = blockFill; i < end; i++) {
+                for (int c = 0; c < channelCount; c++) {
+                    samples[c][i] = (buffer[offset + 1] << 8) | (buffer[offset] & 0xFF);
+                    offset += 2;
+                }
+            }
+        } else {
+            for (int i = blockFill; i < end; i++) {
+                for (int c = 0; c < channelCount; c++) {
+                    samples[c][i] = (buffer[offset + 2] << 16) | (buffer[offset + 1] & 0xFF) << 8
+                            | (buffer[offset] & 0xFF);
+                    offset += 3;
+                }
+            }
+        }
+        blockFill = end;
+        if (blockFill == blockSize) {
+            encodeFrame(blockSize);
+            blockFill = 0;
+        }
+    }
+
+    private void encodeFrame(int n) throws IOException {
+        long frameOffset = writer.position() - audioStart;
+        int assignment;
+        if (channelCount == 2) {
+            int[] left = samples[0];
+            int[] right = samples[1];
+            for (int i = 0; i < n; i++) {
+                mid[i] = (left[i] + right[i]) >> 1;
+                side[i] = left[i] - right[i];
+            }
+            analyze(left, n, bitsPerSample, subframes[0]);
+            analyze(right, n, bitsPerSample, subframes[1]);
+            analyze(mid, n, bitsPerSample, subframes[2]);
+            analyze(side, n, bitsPerSample + 1, subframes[3]);
+            long independent = subframes[0].bits + subframes[1].bits;
+            long leftSide = subframes[0].bits + subframes[3].bits;
+            long rightSide = subframes[1].bits + subframes[3].bits;
+            long midSide = subframes[2].bits + subframes[3].bits;
+            long best = Math.min(Math.min(independent, leftSide), Math.min(rightSide, midSide));
+            if (best == independent) {
+                assignment = 1;
+            } else if (best == leftSide) {
+                assignment = FlacFormat.CHANNEL_LEFT_SIDE;
+            } else if (best == rightSide) {
+                assignment = FlacFormat.CHANNEL_RIGHT_SIDE;
+            } else {
+                assignment = FlacFormat.CHANNEL_MID_SIDE;
+            }
+        } else {
+            for (int c = 0; c < channelCount; c++) {
+                analyze(samples[c], n, bitsPerSample, subframes[c]);
+            }
+            assignment = channelCount - 1;
+        }
+
+        bits.reset();
+        writeFrameHeader(n, assignment);
+        switch (assignment) {
+            case FlacFormat.CHANNEL_LEFT_SIDE:
+                writeSubframe(subframes[0], n);
+                writeSubframe(subframes[3], n);
+                break;
+            case FlacFormat.CHANNEL_RIGHT_SIDE:
+                //差声道在前
+                writeSubframe(subframes[3], n);
+                writeSubframe(subframes[1], n);
+                break;
+            case FlacFormat.CHANNEL_MID_SIDE:
+                writeSubframe(subframes[2], n);
+                writeSubframe(subframes[3], n);
+                break;
+            default:
+                for (int c = 0; c < channelCount; c++) {
+                    writeSubframe(subframes[c], n);
+                }
+                break;
+        }
+        bits.alignToByte();
+        bits.writeBits(FlacFormat.crc16(bits.buffer(), 0, bits.length()), 16);
+
+        int frameSize = bits.length();
+        writer.write(bits.buffer(), 0, frameSize);
+        minFrameSize = Math.min(minFrameSize, frameSize);
+        maxFrameSize = Math.max(maxFrameSize, frameSize);
+        addSeekPoint(totalSamples, frameOffset, n);
+        totalSamples += n;
+        frameNumber++;
+    }
+
+    private void writeFrameHeader(int n, int assignment) {
+        bits.writeBits(FlacFormat.FRAME_SYNC, 16);
+        int blockSizeCode = blockSizeCode(n);
+        bits.writeBits(blockSizeCode, 4);
+        bits.writeBits(sampleRateCode, 4);
+        bits.writeBits(assignment, 4);
+        bits.writeBits(sampleSizeCode, 3);
+        bits.writeBits(0, 1);
+        bits.writeUtf8(frameNumber);
+        if (blockSizeCode == 6) {
+            bits.writeBits(n - 1, 8);
+        } else if (blockSizeCode == 7) {
+            bits.writeBits(n - 1, 16);
+        }
+        bits.writeBits(FlacFormat.crc8(bits.buffer(), 0, bits.length()), 8);
+    }
+
+    /**
+     * 帧头里的块大小编号，常用大小有固定编号，其他大小写在帧头末尾
+     */
+    private static int blockSizeCode(int n) {
+        if (n == 192) {
+            return 1;
+        }
+        for (int code = 2; code <= 5; code++) {
+            if (n == 576 << (code - 2)) {
+                return code;
+            }
+        }
+        for (int code = 8; code <= 15; code++) {
+            if (n == 256 << (code - 8)) {
+                return code;
+            }
+        }
+        return n <= 256 ? 6 : 7;
+    }
+
+    /**
+     * 为一个声道选择编码方式，结果写在 out 里
+     */
+    private void analyze(int[] x, int n, int sampleBits, Subframe out) {
+        out.samples = x;
+        out.sampleBits = sampleBits;
+        out.rice2 = sampleBits > 17;
+        //常数：静音或者直流
+        boolean constant = true;
+        for (int i = 1; i < n; i++) {
+            if (x[i] != x[0]) {
+                constant = false;
+                break;
+            }
+        }
+        if (constant) {
+            out.type = FlacFormat.SUBFRAME_CONSTANT;
+            out.order = 0;
+            out.bits = SUBFRAME_HEADER_BITS + sampleBits;
+            return;
+        }
+        out.type = FlacFormat.SUBFRAME_VERBATIM;
+        out.order = 0;
+        out.bits = SUBFRAME_HEADER_BITS + (long) n * sampleBits;
+
+        trial.samples = x;
+        trial.sampleBits = sampleBits;
+        trial.rice2 = out.rice2;
+        if (n > FlacFormat.MAX_FIXED_ORDER) {
+            analyzeFixed(x, n, sampleBits);
+            if (trial.bits < out.bits) {
+                out.takeFrom(trial);
+            }
+        }
+        if (maxLpcOrder > 0 && n > maxLpcOrder * 2 && analyzeLpc(x, n, sampleBits) && trial.bits < out.bits) {
+            out.takeFrom(trial);
+        }
+    }
+
+    /**
+     * 固定预测：一遍算出0~4阶残差绝对值的和，取最小的阶数
+     */
+    private void analyzeFixed(int[] x, int n, int sampleBits) {
+        long sum0 = 0;
+        long sum1 = 0;
+        long sum2 = 0;
+        long sum3 = 0;
+        long sum4 = 0;
+        for (int i = FlacFormat.MAX_FIXED_ORDER; i < n; i++) {
+            long e0 = x[i];
+            long e1 = e0 - x[i - 1];
+            long e2 = e1 - (x[i - 1] - x[i - 2]);
+            long e3 = e2 - (x[i - 1] - 2L * x[i - 2] + x[i - 3]);
+            long e4 = e3 - (x[i - 1] - 3L * x[i - 2] + 3L * x[i - 3] - x[i - 4]);
+            sum0 += Math.abs(e0);
+            sum1 += Math.abs(e1);
+            sum2 += Math.abs(e2);
+            sum3 += Math.abs(e3);
+            sum4 += Math.abs(e4);
+        }
+        int order = 0;
+        long best = sum0;
+        if (sum1 < best) {
+            best = sum1;
+            order = 1;
+        }
+        if (sum2 < best) {
+            best = sum2;
+            order = 2;
+        }
+        if (sum3 < best) {
+            best = sum3;
+            order = 3;
+        }
+        if (sum4 < best) {
+            order = 4;
+        }
+        int[] residual = trial.residual;
+        for (int i = order; i < n; i++) {
+            switch (order) {
+                case 0:
+                    residual[i] = x[i];
+                    break;
+                case 1:
+                    residual[i] = x[i] - x[i - 1];
+                    break;
+                case 2:
+                    residual[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+                    break;
+                case 3:
+                    residual[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                    break;
+                default:
+                    residual[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+                    break;
+            }
+        }
+        trial.type = FlacFormat.SUBFRAME_FIXED;
+        trial.order = order;
+        trial.bits = SUBFRAME_HEADER_BITS + (long) order * sampleBits + chooseRice(trial, n, order);
+    }
+
+    /**
+     * 线性预测：加窗求自相关，Levinson-Durbin递推出各阶系数，按预测误差估算选阶数，量化后算残差
+     *
+     * @return 信号不适合线性预测时返回false
+     */
+    private boolean analyzeLpc(int[] x, int n, int sampleBits) {
+        if (n == blockSize) {
+            for (int i = 0; i < n; i++) {
+                windowed[i] = x[i] * window[i];
+            }
+        } else {
+            //最后一帧比较短，窗单独计算
+            double half = (n - 1) / 2.0;
+            for (int i = 0; i < n; i++) {
+                double t = (i - half) / half;
+                windowed[i] = x[i] * (1 - t * t);
+            }
+        }
+        for (int lag = 0; lag <= maxLpcOrder; lag++) {
+            double sum = 0;
+            for (int i = lag; i < n; i++) {
+                sum += windowed[i] * windowed[i - lag];
+            }
+            autocorrelation[lag] = sum;
+        }
+        if (autocorrelation[0] == 0) {
+            return false;
+        }
+        int orders = levinsonDurbin();
+
+        //按预测误差估算每个残差的位数，选总长度最短的阶数
+        int order = 0;
+        double bestBits = Double.MAX_VALUE;
+        for (int i = 0; i < orders; i++) {
+            double error = lpcErrors[i];
+            double perResidual = error > 0 ? 0.5 * Math.log(0.5 * error / n) / Math.log(2) : 0;
+            if (perResidual < 0) {
+                perResidual = 0;
+            }
+            double total = perResidual * (n - i - 1) + (i + 1) * (qlpPrecision + sampleBits);
+            if (total < bestBits) {
+                bestBits = total;
+                order = i + 1;
+            }
+        }
+        if (!quantize(lpcCoefficients[order - 1], order)) {
+            return false;
+        }
+        int[] coefficients = trial.coefficients;
+        int shift = trial.shift;
+        int[] residual = trial.residual;
+        for (int i = order; i < n; i++) {
+            long sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += (long) coefficients[j] * x[i - 1 - j];
+            }
+            long e = x[i] - (sum >> shift);
+            if (e > Integer.MAX_VALUE || e < Integer.MIN_VALUE) {
+                //预测失败，残差放不下
+                return false;
+            }
+            residual[i] = (int) e;
+        }
+        trial.type = FlacFormat.SUBFRAME_LPC;
+        trial.order = order;
+        trial.precision = qlpPrecision;
+        trial.bits = SUBFRAME_HEADER_BITS + (long) order * sampleBits + 4 + 5 + (long) order * qlpPrecision
+                + chooseRice(trial, n, order);
+        return true;
+    }
+
+    /**
+     * Levinson-Durbin递推，和libFLAC的实现相同
+     *
+     * @return 算出的阶数，误差为0时提前结束
+     */
+    private int levinsonDurbin() {
+        double error = autocorrelation[0];
+        for (int i = 0; i < maxLpcOrder; i++) {
+            double r = -autocorrelation[i + 1];
+            for (int j = 0; j < i; j++) {
+                r -= lpc[j] * autocorrelation[i - j];
+            }
+            r /= error;
+            lpc[i] = r;
+            int j;
+            for (j = 0; j < (i >> 1); j++) {
+                double tmp = lpc[j];
+                lpc[j] += r * lpc[i - 1 - j];
+                lpc[i - 1 - j] += r * tmp;
+            }
+            if ((i & 1) != 0) {
+                lpc[j] += lpc[j] * r;
+            }
+            error *= 1.0 - r * r;
+            for (j = 0; j <= i; j++) {
+                lpcCoefficients[i][j] = -lpc[j];
+            }
+            lpcErrors[i] = error;
+            if (error == 0) {
+                return i + 1;
+            }
+        }
+        return maxLpcOrder;
+    }
+
+    /**
+     * 系数量化成 qlpPrecision 位的整数，量化误差累加到下一个系数
+     */
+    private boolean quantize(double[] coefficients, int order) {
+        int precision = qlpPrecision - 1;
+        int max = (1 << precision) - 1;
+        int min = -(1 << precision);
+        double cmax = 0;
+        for (int i = 0; i < order; i++) {
+            cmax = Math.max(cmax, Math.abs(coefficients[i]));
+        }
+        if (cmax <= 0 || Double.isNaN(cmax) || Double.isInfinite(cmax)) {
+            return false;
+        }
+        int shift = precision - Math.getExponent(cmax) - 1;
+        if (shift > 15) {
+            shift = 15;
+        } else if (shift < 0) {
+            //系数太大，负的移位解码器不支持，用固定预测
+            return false;
+        }
+        double scale = 1 << shift;
+        double error = 0;
+        for (int i = 0; i < order; i++) {
+            error += coefficients[i] * scale;
+            long q = Math.round(error);
+            if (q > max) {
+                q = max;
+            } else if (q < min) {
+                q = min;
+            }
+            error -= q;
+            trial.coefficients[i] = (int) q;
+        }
+        trial.shift = shift;
+        return true;
+    }
+
+    /**
+     * 选分区阶数和每个分区的Rice参数
+     *
+     * @return 残差部分的位数估算
+     */
+    private long chooseRice(Subframe frame, int n, int order) {
+        int[] residual = frame.residual;
+        int maxOrder = 0;
+        while (maxOrder < MAX_PARTITION_ORDER && (n & ((2 << maxOrder) - 1)) == 0
+                && (n >> (maxOrder + 1)) > order) {
+            maxOrder++;
+        }
+        //最细的分区先求和，再两两合并得到粗的分区
+        int partitions = 1 << maxOrder;
+        int partitionSize = n >> maxOrder;
+        int index = order;
+        for (int p = 0; p < partitions; p++) {
+            int end = (p + 1) * partitionSize;
+            long sum = 0;
+            for (; index < end; index++) {
+                int v = residual[index];
+                sum += ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+            }
+            partitionSums[p] = sum;
+        }
+        int parameterBits = frame.rice2 ? 5 : 4;
+        int maxParameter = frame.rice2 ? MAX_RICE2_PARAMETER : MAX_RICE_PARAMETER;
+        long bestBits = Long.MAX_VALUE;
+        for (int level = maxOrder; level >= 0; level--) {
+            int count = 1 << level;
+            int size = n >> level;
+            long total = 2 + 4;
+            for (int p = 0; p < count; p++) {
+                int samplesInPartition = p == 0 ? size - order : size;
+                long sum = partitionSums[p];
+                int k = 0;
+                if (samplesInPartition > 0 && sum > samplesInPartition) {
+                    k = 63 - Long.numberOfLeadingZeros(sum / samplesInPartition);
+                    if (k > maxParameter) {
+                        k = maxParameter;
+                    }
+                }
+                trialParameters[p] = k;
+                total += parameterBits + (long) samplesInPartition * (k + 1) + (sum >> k);
+            }
+            if (total < bestBits) {
+                bestBits = total;
+                frame.partitionOrder = level;
+                System.arraycopy(trialParameters, 0, frame.parameters, 0, count);
+            }
+            //合并成上一级
+            for (int p = 0; p < count / 2; p++) {
+                partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+            }
+        }
+        return bestBits;
+    }
+
+    private void writeSubframe(Subframe frame, int n) {
+        int[] x = frame.samples;
+        int sampleBits = frame.sampleBits;
+        switch (frame.type) {
+            case FlacFormat.SUBFRAME_CONSTANT:
+                bits.writeBits(FlacFormat.SUBFRAME_CONSTANT << 1, 8);
+                bits.writeBits(x[0], sampleBits);
+                return;
+            case FlacFormat.SUBFRAME_VERBATIM:
+                bits.writeBits(FlacFormat.SUBFRAME_VERBATIM << 1, 8);
+                for (int i = 0; i < n; i++) {
+                    bits.writeBits(x[i], sampleBits);
+                }
+                return;
+            case FlacFormat.SUBFRAME_FIXED:
+                bits.writeBits((FlacFormat.SUBFRAME_FIXED | frame.order) << 1, 8);
+                writeWarmup(x, frame.order, sampleBits);
+                break;
+            default:
+                bits.writeBits((FlacFormat.SUBFRAME_LPC | (frame.order - 1)) << 1, 8);
+                writeWarmup(x, frame.order, sampleBits);
+                bits.writeBits(frame.precision - 1, 4);
+                bits.writeBits(frame.shift, 5);
+                for (int i = 0; i < frame.order; i++) {
+                    bits.writeBits(frame.coefficients[i], frame.precision);
+                }
+                break;
+        }
+        writeResidual(frame, n);
+    }
+
+    private void writeWarmup(int[] x, int order, int sampleBits) {
+        for (int i = 0; i < order; i++) {
+            bits.writeBits(x[i], sampleBits);
+        }
+    }
+
+    private void writeResidual(Subframe frame, int n) {
+        bits.writeBits(frame.rice2 ? 1 : 0, 2);
+        bits.writeBits(frame.partitionOrder, 4);
+        int parameterBits = frame.rice2 ? 5 : 4;
+        int partitions = 1 << frame.partitionOrder;
+        int size = n >> frame.partitionOrder;
+        int[] residual = frame.residual;
+        int index = frame.order;
+        for (int p = 0; p < partitions; p++) {
+            int k = frame.parameters[p];
+            bits.writeBits(k, parameterBits);
+            int end = (p + 1) * size;
+            for (; index < end; index++) {
+                bits.writeRice(residual[index], k);
+            }
+        }
+    }
+
+    private void addSeekPoint(long sample, long offset, int frameSamples) {
+        if (seekSamples.length == 0 || sample < nextSeekSample) {
+            return;
+        }
+        if (seekCount == seekSamples.length) {
+            //预留的位置用完了，隔一个去掉一个，间隔加倍
+            int kept = 0;
+            for (int i = 0; i < seekCount; i += 2) {
+                seekSamples[kept] = seekSamples[i];
+                seekOffsets[kept] = seekOffsets[i];
+                seekFrameSamples[kept] = seekFrameSamples[i];
+                kept++;
+            }
+            seekCount = kept;
+            seekInterval *= 2;
+            if (sample < seekSamples[seekCount - 1] + seekInterval) {
+                nextSeekSample = seekSamples[seekCount - 1] + seekInterval;
+                return;
+            }
+        }
+        seekSamples[seekCount] = sample;
+        seekOffsets[seekCount] = offset;
+        seekFrameSamples[seekCount] = frameSamples;
+        seekCount++;
+        nextSeekSample = sample + seekInterval;
+    }
+
+    private byte[] createSeekTable() {
+        int points = seekSamples.length;
+        FlacBitWriter table = new FlacBitWriter(FlacFormat.BLOCK_HEADER_SIZE + points * FlacFormat.SEEK_POINT_SIZE);
+        table.writeBits(0x80 | FlacFormat.BLOCK_SEEKTABLE, 8);
+        table.writeBits(points * FlacFormat.SEEK_POINT_SIZE, 24);
+        for (int i = 0; i < points; i++) {
+            if (i < seekCount) {
+                table.writeLong(seekSamples[i], 64);
+                table.writeLong(seekOffsets[i], 64);
+                table.writeBits(seekFrameSamples[i], 16);
+            } else {
+                //没用到的位置写占位点
+                table.writeLong(-1L, 64);
+                table.writeLong(0, 64);
+                table.writeBits(0, 16);
+            }
+        }
+        return table.buffer();
+    }
+
+    private byte[] createStreamInfo() {
+        FlacBitWriter info = new FlacBitWriter(FlacFormat.STREAMINFO_SIZE);
+        info.writeBits(blockSize, 16);
+        info.writeBits(blockSize, 16);
+        info.writeBits(maxFrameSize == 0 ? 0 : minFrameSize, 24);
+        info.writeBits(maxFrameSize, 24);
+        info.writeBits(format.getSampleRate(), 20);
+        info.writeBits(channelCount - 1, 3);
+        info.writeBits(bitsPerSample - 1, 5);
+        info.writeLong(totalSamples, 36);
+        byte[] digest = md5.digest();
+        for (byte b : digest) {
+            info.writeBits(b, 8);
+        }
+        return info.buffer();
+    }
+
+    private static void putBlockHeader(byte[] header, boolean last, int type, int length) {
+        header[0] = (byte) ((last ? 0x80 : 0) | type);
+        header[1] = (byte) (length >> 16);
+        header[2] = (byte) (length >> 8);
+        header[3] = (byte) length;
+    }
+
+    /**
+     * 已经编码的采样帧数（每个声道的采样数）
+     */
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    /**
+     * 已经写入文件的字节数
+     */
+    public long getBytesWritten() {
+        return writer.position();
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    /**
+     * 编码剩下不满一块的数据，回填 STREAMINFO 和 SEEKTABLE
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            //不满一块的采样编码成最后一帧，不完整的采样帧丢弃
+            if (blockFill > 0) {
+                encodeFrame(blockFill);
+                blockFill = 0;
+            }
+            byte[] info = createStreamInfo();
+            writer.writeAt(FlacFormat.MARKER.length + FlacFormat.BLOCK_HEADER_SIZE, info, 0, info.length);
+            if (seekSamples.length > 0) {
+                byte[] table = createSeekTable();
+                writer.writeAt(seekTableOffset, table, 0, table.length);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * 一个声道的编码方案和残差
+     */
+    private static final class Subframe {
+
+        int type;
+        int order;
+        int precision;
+        int shift;
+        int[] coefficients = new int[FlacFormat.MAX_LPC_ORDER];
+        int[] residual;
+        int partitionOrder;
+        int[] parameters = new int[1 << MAX_PARTITION_ORDER];
+        boolean rice2;
+        long bits;
+        int[] samples;
+        int sampleBits;
+
+        Subframe(int blockSize) {
+            residual = new int[blockSize];
+        }
+
+        /**
+         * 采用另一个方案，数组交换而不是复制
+         */
+        void takeFrom(Subframe other) {
+            type = other.type;
+            order = other.order;
+            precision = other.precision;
+            shift = other.shift;
+            partitionOrder = other.partitionOrder;
+            rice2 = other.rice2;
+            bits = other.bits;
+            samples = other.samples;
+            sampleBits = other.sampleBits;
+            int[] swap = coefficients;
+            coefficients = other.coefficients;
+            other.coefficients = swap;
+            swap = residual;
+            residual = other.residual;
+            other.residual = swap;
+            swap = parameters;
+            parameters = other.parameters;
+            other.parameters = swap;
+        }
+    }
+}
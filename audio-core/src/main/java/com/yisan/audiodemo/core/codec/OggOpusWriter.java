@@ -0,0 +1,187 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 把Opus编码器输出的包封装成 .opus（Ogg Opus，RFC 7845）
+ * <p>
+ * 第一个包到来时写 OpusHead、OpusTags，各占一页。每个包的位置按TOC计算，加上 pre-skip。
+ * 最后一个包留到关闭时写，位置按实际输入长度截断，解码器会去掉编码器补齐的静音。
+ * 页最长1秒，边录边写时文件最多落后1秒。
+ */
+public class OggOpusWriter implements Closeable {
+
+    /**
+     * 编码器没有给出延迟时使用的 pre-skip，libopus 默认的前瞻是 6.5ms
+     */
+    public static final int DEFAULT_PRE_SKIP = 312;
+    private static final String VENDOR = "audioDemo";
+
+    private final OggPageWriter pages;
+    private final int channelCount;
+    private final int inputSampleRate;
+    private int preSkip = DEFAULT_PRE_SKIP;
+    private boolean headersWritten;
+
+    /**
+     * 已经写入的包的总时长，48kHz
+     */
+    private long granule;
+    /**
+     * 留到下一次写的包
+     */
+    private byte[] held = new byte[1500];
+    private int heldLength = -1;
+    private final byte[] toc = new byte[2];
+    private long heldGranule;
+    private long inputFrames = -1;
+    private long packetCount;
+    private boolean closed;
+
+    /**
+     * @param out 接收字节数据的输出端，例如 {@link com.yisan.audiodemo.core.io.PcmFileWriter}
+     */
+    public OggOpusWriter(PcmSink out, int channelCount, int inputSampleRate, int serialNumber) {
+        this.pages = new OggPageWriter(out, serialNumber, OggPageWriter.DEFAULT_PAGE_SIZE, OpusHeader.GRANULE_RATE);
+        this.channelCount = channelCount;
+        this.inputSampleRate = inputSampleRate;
+    }
+
+    /**
+     * 编码器的延迟，在第一个包之前设置
+     *
+     * @param preSkip 48kHz下的采样数
+     */
+    public void setPreSkip(int preSkip) {
+        if (headersWritten) {
+            throw new IllegalStateException("headers already written");
+        }
+        if (preSkip < 0 || preSkip > 0xFFFF) {
+            throw new IllegalArgumentException("preSkip: " + preSkip);
+        }
+        this.preSkip = preSkip;
+    }
+
+    /**
+     * 输入的总帧数（输入采样率下），关闭之前设置，最后一页的位置按它截断
+     */
+    public void setInputFrames(long inputFrames) {
+        this.inputFrames = inputFrames;
+    }
+
+    public void writePacket(byte[] packet, int offset, int length) throws IOException {
+        int samples = begin(packet, offset, length);
+        ensureHeld(length);
+        System.arraycopy(packet, offset, held, 0, length);
+        end(length, samples);
+    }
+
+    /**
+     * @param packet position 到 limit 之间是一个包，读完后 position 等于 limit
+     */
+    public void writePacket(ByteBuffer packet) throws IOException {
+        int length = packet.remaining();
+        //只需要开头的两个字节计算时长
+        int position = packet.position();
+        for (int i = 0; i < Math.min(length, toc.length); i++) {
+            toc[i] = packet.get(position + i);
+        }
+        int samples = begin(toc, 0, Math.min(length, toc.length));
+        ensureHeld(length);
+        packet.get(held, 0, length);
+        end(length, samples);
+    }
+
+    /**
+     * 写出上一个包，返回这个包的时长
+     */
+    private int begin(byte[] packet, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+        int samples = OpusHeader.getSampleCount(packet, offset, length);
+        if (samples < 0) {
+            throw new IOException("invalid opus packet, length " + length);
+        }
+        writeHeaders();
+        if (heldLength >= 0) {
+            pages.writePacket(held, 0, heldLength, heldGranule);
+            heldLength = -1;
+        }
+        return samples;
+    }
+
+    private void end(int length, int samples) {
+        heldLength = length;
+        granule += samples;
+        heldGranule = preSkip + granule;
+        packetCount++;
+    }
+
+    private void ensureHeld(int length) {
+        if (held.length < length) {
+            held = new byte[length];
+        }
+    }
+
+    private void writeHeaders() throws IOException {
+        if (headersWritten) {
+            return;
+        }
+        headersWritten = true;
+        byte[] head = OpusHeader.createIdentification(channelCount, preSkip, inputSampleRate);
+        pages.writePacket(head, 0, head.length, 0);
+        pages.flush();
+        byte[] tags = OpusHeader.createComment(VENDOR);
+        pages.writePacket(tags, 0, tags.length, 0);
+        pages.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeHeaders();
+            if (heldLength >= 0) {
+                long end = heldGranule;
+                if (inputFrames >= 0) {
+                    //去掉编码器为了凑满最后一帧补的静音
+                    long exact = preSkip + (inputFrames * OpusHeader.GRANULE_RATE + inputSampleRate - 1)
+                            / inputSampleRate;
+                    end = Math.max(heldGranule - getLastPacketSamples(), Math.min(end, exact));
+                }
+                int length = heldLength;
+                heldLength = -1;
+                //裁剪结尾的位置只能放在EOS页上
+                pages.writeLastPacket(held, 0, length, end);
+            }
+        } finally {
+            pages.close();
+        }
+    }
+
+    private int getLastPacketSamples() {
+        return OpusHeader.getSampleCount(held, 0, heldLength);
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * 已经写入的包的总时长，48kHz的采样数，不包含 pre-skip
+     */
+    public long getGranule() {
+        return granule;
+    }
+
+    public long getBytesWritten() {
+        return pages.getBytesWritten();
+    }
+}
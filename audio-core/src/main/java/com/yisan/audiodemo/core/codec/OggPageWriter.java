@@ -0,0 +1,226 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Ogg页写入（RFC 3533）：把数据包切成255字节的段，攒够一页再写出
+ * <p>
+ * 一页的数据达到 targetPageSize，或者距离上一页超过 maxPageGranules 时立即写出，
+ * 低码率时也能按固定的时间间隔落盘，边录边上传的一方不会长时间拿不到数据。
+ * 超过255个段的包跨页写入，后一页带续包标记。第一页带BOS标记，关闭时最后一页带EOS标记。
+ * <p>
+ * 页头和数据各一个数组，只分配一次，写入时不分配对象。不是线程安全的。
+ */
+public class OggPageWriter implements Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final int HEADER_SIZE = 27;
+    private static final int MAX_SEGMENTS = 255;
+    private static final int FLAG_CONTINUED = 0x01;
+    private static final int FLAG_BOS = 0x02;
+    private static final int FLAG_EOS = 0x04;
+
+    private static final int[] CRC_TABLE = createCrcTable();
+
+    private final PcmSink out;
+    private final int serialNumber;
+    private final int targetPageSize;
+    private final long maxPageGranules;
+
+    private final byte[] header = new byte[HEADER_SIZE + MAX_SEGMENTS];
+    private final byte[] body = new byte[MAX_SEGMENTS * 255];
+    private int segmentCount;
+    private int bodyLength;
+
+    /**
+     * 这一页最后一个完整的包的位置，没有包在这一页结束时是-1
+     */
+    private long pageGranule = -1;
+    private long lastGranule;
+    private long flushedGranule;
+    /**
+     * 上一页在包的中间结束，下一页以续包开始
+     */
+    private boolean continued;
+    private int sequence;
+    private long pageCount;
+    private long bytesWritten;
+    private boolean closed;
+
+    public OggPageWriter(PcmSink out, int serialNumber) {
+        this(out, serialNumber, DEFAULT_PAGE_SIZE, 0);
+    }
+
+    /**
+     * @param targetPageSize  一页数据达到这个字节数就写出，不超过 65025
+     * @param maxPageGranules 距离上一页的位置超过这个值就写出，0表示不限制
+     */
+    public OggPageWriter(PcmSink out, int serialNumber, int targetPageSize, long maxPageGranules) {
+        if (targetPageSize <= 0 || targetPageSize > MAX_SEGMENTS * 255) {
+            throw new IllegalArgumentException("targetPageSize: " + targetPageSize);
+        }
+        this.out = out;
+        this.serialNumber = serialNumber;
+        this.targetPageSize = targetPageSize;
+        this.maxPageGranules = maxPageGranules;
+        header[0] = 'O';
+        header[1] = 'g';
+        header[2] = 'g';
+        header[3] = 'S';
+    }
+
+    /**
+     * 写入一个完整的包
+     *
+     * @param granulePosition 这个包结束时的位置，含义由编码格式决定（Opus是48kHz的采样数）
+     */
+    public void writePacket(byte[] packet, int offset, int length, long granulePosition) throws IOException {
+        appendPacket(packet, offset, length, granulePosition);
+        if (bodyLength >= targetPageSize
+                || maxPageGranules > 0 && granulePosition - flushedGranule >= maxPageGranules) {
+            writePage(0);
+        }
+    }
+
+    /**
+     * 写入最后一个包并关闭，不会提前写出当前页，这个包的位置一定和EOS标记在同一页
+     * <p>
+     * Opus只允许在EOS页上用位置裁剪结尾（RFC 7845 4.4），最后一个包提前写出的话，裁剪的位置会落在普通页上。
+     */
+    public void writeLastPacket(byte[] packet, int offset, int length, long granulePosition) throws IOException {
+        appendPacket(packet, offset, length, granulePosition);
+        close();
+    }
+
+    private void appendPacket(byte[] packet, int offset, int length, long granulePosition) throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+        while (true) {
+            if (segmentCount == MAX_SEGMENTS) {
+                //段表满了，包的剩余部分放到下一页
+                writePage(0);
+                continued = true;
+            }
+            int segment = Math.min(length, 255);
+            header[HEADER_SIZE + segmentCount++] = (byte) segment;
+            System.arraycopy(packet, offset, body, bodyLength, segment);
+            bodyLength += segment;
+            offset += segment;
+            length -= segment;
+            //小于255的段表示包结束，长度正好是255的倍数时以0长度的段结束
+            if (segment < 255) {
+                break;
+            }
+        }
+        pageGranule = granulePosition;
+        lastGranule = granulePosition;
+    }
+
+    /**
+     * 立即写出当前页，例如头部的包要单独占一页
+     */
+    public void flush() throws IOException {
+        if (segmentCount > 0) {
+            writePage(0);
+        }
+    }
+
+    private void writePage(int flags) throws IOException {
+        if (continued) {
+            flags |= FLAG_CONTINUED;
+            continued = false;
+        }
+        if (pageCount == 0) {
+            flags |= FLAG_BOS;
+        }
+        header[4] = 0;
+        header[5] = (byte) flags;
+        putLong(header, 6, pageGranule);
+        putInt(header, 14, serialNumber);
+        putInt(header, 18, sequence);
+        putInt(header, 22, 0);
+        header[26] = (byte) segmentCount;
+        int headerLength = HEADER_SIZE + segmentCount;
+        int crc = crc(0, header, 0, headerLength);
+        crc = crc(crc, body, 0, bodyLength);
+        putInt(header, 22, crc);
+        out.write(header, 0, headerLength);
+        if (bodyLength > 0) {
+            out.write(body, 0, bodyLength);
+        }
+        bytesWritten += headerLength + bodyLength;
+        pageCount++;
+        sequence++;
+        if (pageGranule >= 0) {
+            flushedGranule = pageGranule;
+        }
+        pageGranule = -1;
+        segmentCount = 0;
+        bodyLength = 0;
+    }
+
+    /**
+     * 写出最后一页并带上EOS标记，没有剩余数据时写一个空的EOS页
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (segmentCount == 0) {
+                pageGranule = lastGranule;
+            }
+            writePage(FLAG_EOS);
+        } finally {
+            out.close();
+        }
+    }
+
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void putLong(byte[] buffer, int offset, long value) {
+        putInt(buffer, offset, (int) value);
+        putInt(buffer, offset + 4, (int) (value >> 32));
+    }
+
+    /**
+     * Ogg的CRC32：多项式 0x04c11db7，不反转，初值0，不取反
+     */
+    static int crc(int crc, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static int[] createCrcTable() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            }
+            table[i] = r;
+        }
+        return table;
+    }
+}
@@ -0,0 +1,116 @@
+package com.yisan.audiodemo.core.codec;
+
+import java.nio.charset.Charset;
+
+/**
+ * Ogg Opus 的头部包（RFC 7845）和Opus包的时长（RFC 6716 3.1节）
+ */
+public final class OpusHeader {
+
+    /**
+     * Ogg Opus 的位置总是按48kHz计算，和输入采样率无关
+     */
+    public static final int GRANULE_RATE = 48000;
+
+    /**
+     * 每个配置对应的帧长，单位是48kHz的采样数：SILK 10/20/40/60ms，混合 10/20ms，CELT 2.5/5/10/20ms
+     */
+    private static final int[] SILK_FRAME_SAMPLES = {480, 960, 1920, 2880};
+    private static final int[] HYBRID_FRAME_SAMPLES = {480, 960};
+    private static final int[] CELT_FRAME_SAMPLES = {120, 240, 480, 960};
+
+    private OpusHeader() {
+    }
+
+    /**
+     * OpusHead 标识头，单声道、立体声使用映射族0
+     *
+     * @param preSkip         解码后要丢弃的开头采样数（48kHz）
+     * @param inputSampleRate 原始采样率，只作为信息保存
+     */
+    public static byte[] createIdentification(int channelCount, int preSkip, int inputSampleRate) {
+        if (channelCount < 1 || channelCount > 2) {
+            throw new IllegalArgumentException("only mono and stereo supported: " + channelCount);
+        }
+        byte[] head = new byte[19];
+        putAscii(head, 0, "OpusHead");
+        head[8] = 1;
+        head[9] = (byte) channelCount;
+        head[10] = (byte) preSkip;
+        head[11] = (byte) (preSkip >> 8);
+        head[12] = (byte) inputSampleRate;
+        head[13] = (byte) (inputSampleRate >> 8);
+        head[14] = (byte) (inputSampleRate >> 16);
+        head[15] = (byte) (inputSampleRate >> 24);
+        //输出增益0，映射族0
+        return head;
+    }
+
+    /**
+     * OpusTags 注释头，只有编码器名称，没有用户注释
+     */
+    public static byte[] createComment(String vendor) {
+        byte[] vendorBytes = vendor.getBytes(Charset.forName("UTF-8"));
+        byte[] tags = new byte[8 + 4 + vendorBytes.length + 4];
+        putAscii(tags, 0, "OpusTags");
+        int length = vendorBytes.length;
+        tags[8] = (byte) length;
+        tags[9] = (byte) (length >> 8);
+        tags[10] = (byte) (length >> 16);
+        tags[11] = (byte) (length >> 24);
+        System.arraycopy(vendorBytes, 0, tags, 12, length);
+        return tags;
+    }
+
+    /**
+     * 按包开头的TOC字节计算包的时长
+     *
+     * @return 48kHz下的采样数，包不完整时返回-1
+     */
+    public static int getSampleCount(byte[] packet, int offset, int length) {
+        if (length < 1) {
+            return -1;
+        }
+        int toc = packet[offset] & 0xFF;
+        int config = toc >> 3;
+        int frameSamples;
+        if (config < 12) {
+            frameSamples = SILK_FRAME_SAMPLES[config & 3];
+        } else if (config < 16) {
+            frameSamples = HYBRID_FRAME_SAMPLES[config & 1];
+        } else {
+            frameSamples = CELT_FRAME_SAMPLES[config & 3];
+        }
+        int frames;
+        switch (toc & 3) {
+            case 0:
+                frames = 1;
+                break;
+            case 1:
+            case 2:
+                frames = 2;
+                break;
+            default:
+                if (length < 2) {
+                    return -1;
+                }
+                frames = packet[offset + 1] & 0x3F;
+                break;
+        }
+        return frames * frameSamples;
+    }
+
+    /**
+     * Opus编码器支持的输入采样率
+     */
+    public static boolean isSupportedSampleRate(int sampleRate) {
+        return sampleRate == 8000 || sampleRate == 12000 || sampleRate == 16000 || sampleRate == 24000
+                || sampleRate == GRANULE_RATE;
+    }
+
+    private static void putAscii(byte[] buffer, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[offset + i] = (byte) text.charAt(i);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.yisan.audiodemo.core.codec;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 把任意长度的PCM数据切成固定长度的帧，并给每一帧打上时间戳
+ * <p>
+ * 编码器按帧工作（AAC每帧1024个采样，Opus每帧20ms），录音读到的长度却不固定。
+ * 帧缓冲区只分配一次，最后不满一帧的数据在关闭时输出。
+ */
+public class PcmFramer implements PcmSink {
+
+    /**
+     * 接收完整帧的一方
+     */
+    public interface FrameSink extends Closeable {
+
+        /**
+         * 返回后调用方会复用 frame
+         *
+         * @param presentationTimeUs 这一帧第一个采样的时间戳，单位微秒
+         */
+        void writeFrame(byte[] frame, int length, long presentationTimeUs) throws IOException;
+    }
+
+    private final FrameSink frameSink;
+    private final byte[] frame;
+    private final int bytesPerFrame;
+    private final PresentationClock clock;
+    private int filled;
+    private boolean closed;
+
+    /**
+     * @param samplesPerFrame 每帧包含的采样帧数
+     */
+    public PcmFramer(AudioFormatSpec format, int samplesPerFrame, FrameSink frameSink) {
+        if (samplesPerFrame <= 0) {
+            throw new IllegalArgumentException("samplesPerFrame: " + samplesPerFrame);
+        }
+        this.frameSink = frameSink;
+        this.bytesPerFrame = format.getBytesPerFrame();
+        this.frame = new byte[samplesPerFrame * bytesPerFrame];
+        this.clock = new PresentationClock(format.getSampleRate());
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, frame.length - filled);
+            System.arraycopy(buffer, offset, frame, filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+            if (filled == frame.length) {
+                emit();
+            }
+        }
+    }
+
+    private void emit() throws IOException {
+        long timeUs = clock.advance(filled / bytesPerFrame);
+        frameSink.writeFrame(frame, filled, timeUs);
+        filled = 0;
+    }
+
+    /**
+     * 下一帧的时间戳，也就是已经输出的总时长
+     */
+    public long getPresentationTimeUs() {
+        return clock.getTimeUs();
+    }
+
+    public int getFrameSize() {
+        return frame.length;
+    }
+
+    /**
+     * 输出剩余不满一帧的数据，然后关闭 {@link FrameSink}
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (filled > 0) {
+                emit();
+            }
+        } finally {
+            frameSink.close();
+        }
+    }
+}
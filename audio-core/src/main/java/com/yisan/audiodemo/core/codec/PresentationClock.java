@@ -0,0 +1,49 @@
+package com.yisan.audiodemo.core.codec;
+
+/**
+ * 按采样帧数计算时间戳
+ * <p>
+ * 每次都从累计帧数换算，不累加每段的时长，长时间录音也不会产生漂移
+ */
+public class PresentationClock {
+
+    private final int sampleRate;
+    private long frames;
+
+    public PresentationClock(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 前进若干帧
+     *
+     * @return 这段数据开始的时间戳，单位微秒
+     */
+    public long advance(long frameCount) {
+        long timeUs = getTimeUs();
+        frames += frameCount;
+        return timeUs;
+    }
+
+    /**
+     * 当前时间戳，单位微秒
+     */
+    public long getTimeUs() {
+        return frames * 1000000L / sampleRate;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void reset() {
+        frames = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+
+/**
+ * 自动增益：把语音电平拉到目标值附近，离麦克风远近不同的录音音量一致
+ * <p>
+ * 按帧跟踪所有声道最大绝对值的包络（起音快、释放慢），期望增益是目标电平除以包络，
+ * 限制在 [minGainDb, maxGainDb] 之间。增益降低较快、升高很慢，避免句子之间把底噪放大；
+ * 包络低于 {@link #NOISE_FLOOR_DB} 时认为是静音，增益保持不变。
+ * 放大后超过 {@link #LIMIT} 的采样立即把增益压到刚好不削波，之后再慢慢恢复。
+ */
+public class AutomaticGainControl implements DspStage {
+
+    private static final float NOISE_FLOOR_DB = -45f;
+    private static final float LIMIT = 32000f;
+    private static final float ENVELOPE_ATTACK_MILLIS = 5f;
+    private static final float ENVELOPE_RELEASE_MILLIS = 300f;
+
+    private final int channelCount;
+    private final float target;
+    private final float minGain;
+    private final float maxGain;
+    private final float noiseFloor;
+    private final float decreaseCoefficient;
+    private final float increaseCoefficient;
+    private final float envelopeAttack;
+    private final float envelopeRelease;
+
+    private float envelope;
+    private float gain = 1;
+
+    /**
+     * 默认参数：目标峰值包络-12dBFS，增益-10dB~+20dB，降低时间50ms，升高时间2s
+     */
+    public AutomaticGainControl(AudioFormatSpec format) {
+        this(format, -12f, -10f, 20f, 50f, 2000f);
+    }
+
+    /**
+     * @param targetDb         包络的目标电平，单位dBFS
+     * @param decreaseMillis   增益降低的时间
+     * @param increaseMillis   增益升高的时间
+     */
+    public AutomaticGainControl(AudioFormatSpec format, float targetDb, float minGainDb, float maxGainDb,
+            float decreaseMillis, float increaseMillis) {
+        if (minGainDb > maxGainDb) {
+            throw new IllegalArgumentException("minGainDb " + minGainDb + " > maxGainDb " + maxGainDb);
+        }
+        int sampleRate = format.getSampleRate();
+        this.channelCount = format.getChannelCount();
+        this.target = NoiseGate.dbToSample(targetDb);
+        this.minGain = (float) Math.pow(10, minGainDb / 20);
+        this.maxGain = (float) Math.pow(10, maxGainDb / 20);
+        this.noiseFloor = NoiseGate.dbToSample(NOISE_FLOOR_DB);
+        this.decreaseCoefficient = NoiseGate.smoothing(decreaseMillis, sampleRate);
+        this.increaseCoefficient = NoiseGate.smoothing(increaseMillis, sampleRate);
+        this.envelopeAttack = NoiseGate.smoothing(ENVELOPE_ATTACK_MILLIS, sampleRate);
+        this.envelopeRelease = NoiseGate.smoothing(ENVELOPE_RELEASE_MILLIS, sampleRate);
+    }
+
+    @Override
+    public void process(short[] samples, int offset, int length) {
+        int end = offset + length;
+        float envelope = this.envelope;
+        float gain = this.gain;
+        for (int frame = offset; frame < end; frame += channelCount) {
+            int peak = 0;
+            for (int i = frame; i < frame + channelCount; i++) {
+                int abs = samples[i] < 0 ? -samples[i] : samples[i];
+                if (abs > peak) {
+                    peak = abs;
+                }
+            }
+            envelope += (peak - envelope) * (peak > envelope ? envelopeAttack : envelopeRelease);
+            if (envelope > noiseFloor) {
+                float desired = Math.max(minGain, Math.min(maxGain, target / envelope));
+                gain += (desired - gain) * (desired < gain ? decreaseCoefficient : increaseCoefficient);
+            }
+            //峰值限制，放大后不削波
+            if (peak * gain > LIMIT) {
+                gain = LIMIT / peak;
+            }
+            for (int i = frame; i < frame + channelCount; i++) {
+                samples[i] = BiquadFilter.clamp(samples[i] * gain);
+            }
+        }
+        this.envelope = envelope;
+        this.gain = gain;
+    }
+
+    @Override
+    public void reset() {
+        envelope = 0;
+        gain = 1;
+    }
+
+    /**
+     * 当前增益，单位dB，只在处理线程上读取
+     */
+    public float getGainDb() {
+        return (float) (20 * Math.log10(gain));
+    }
+}
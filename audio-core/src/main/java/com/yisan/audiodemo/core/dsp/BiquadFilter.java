@@ -0,0 +1,104 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+
+/**
+ * 二阶IIR滤波器，系数按 RBJ Audio EQ Cookbook 计算，用转置直接II型结构，每个声道一组状态
+ * <p>
+ * 录音里常用高通去掉直流偏移和风噪、桌面振动这类低频隆隆声。
+ */
+public class BiquadFilter implements DspStage {
+
+    /**
+     * 状态小于这个值时清零，避免静音时衰减成非规格化浮点数，部分CPU上会慢很多
+     */
+    private static final float DENORMAL_THRESHOLD = 1e-15f;
+
+    private final int channelCount;
+    private final float b0;
+    private final float b1;
+    private final float b2;
+    private final float a1;
+    private final float a2;
+    private final float[] z1;
+    private final float[] z2;
+
+    /**
+     * 系数已经除以 a0
+     */
+    public BiquadFilter(int channelCount, float b0, float b1, float b2, float a1, float a2) {
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("channelCount: " + channelCount);
+        }
+        this.channelCount = channelCount;
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+        this.z1 = new float[channelCount];
+        this.z2 = new float[channelCount];
+    }
+
+    /**
+     * 巴特沃斯高通，Q为0.707，通带内没有起伏
+     *
+     * @param cutoffHz 截止频率，语音录音一般用80Hz
+     */
+    public static BiquadFilter highPass(AudioFormatSpec format, float cutoffHz) {
+        return highPass(format, cutoffHz, (float) (1 / Math.sqrt(2)));
+    }
+
+    public static BiquadFilter highPass(AudioFormatSpec format, float cutoffHz, float q) {
+        if (cutoffHz <= 0 || cutoffHz >= format.getSampleRate() / 2f) {
+            throw new IllegalArgumentException("cutoffHz: " + cutoffHz);
+        }
+        double w0 = 2 * Math.PI * cutoffHz / format.getSampleRate();
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double a0 = 1 + alpha;
+        return new BiquadFilter(format.getChannelCount(),
+                (float) ((1 + cos) / 2 / a0), (float) (-(1 + cos) / a0), (float) ((1 + cos) / 2 / a0),
+                (float) (-2 * cos / a0), (float) ((1 - alpha) / a0));
+    }
+
+    @Override
+    public void process(short[] samples, int offset, int length) {
+        int end = offset + length;
+        for (int channel = 0; channel < channelCount; channel++) {
+            //状态放到局部变量，循环里不读写数组
+            float s1 = z1[channel];
+            float s2 = z2[channel];
+            for (int i = offset + channel; i < end; i += channelCount) {
+                float x = samples[i];
+                float y = b0 * x + s1;
+                s1 = b1 * x - a1 * y + s2;
+                s2 = b2 * x - a2 * y;
+                samples[i] = clamp(y);
+            }
+            z1[channel] = Math.abs(s1) < DENORMAL_THRESHOLD ? 0 : s1;
+            z2[channel] = Math.abs(s2) < DENORMAL_THRESHOLD ? 0 : s2;
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < channelCount; i++) {
+            z1[i] = 0;
+            z2[i] = 0;
+        }
+    }
+
+    /**
+     * 四舍五入并限制在16bit范围内
+     */
+    static short clamp(float value) {
+        if (value >= 32767f) {
+            return Short.MAX_VALUE;
+        }
+        if (value <= -32768f) {
+            return Short.MIN_VALUE;
+        }
+        return (short) (value >= 0 ? value + 0.5f : value - 0.5f);
+    }
+}
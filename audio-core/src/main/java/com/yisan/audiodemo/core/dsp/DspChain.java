@@ -0,0 +1,97 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmProcessor;
+
+/**
+ * 按顺序执行的 {@link DspStage}，作为 {@link com.yisan.audiodemo.core.PcmPipeline} 的处理环节在采集线程上原地运行
+ * <p>
+ * 每次最多处理 {@link #CHUNK_FRAMES} 帧：小端16bit数据解码到构造时分配的 short 数组，依次经过每个环节，再写回原缓冲区，
+ * 处理时不分配对象。每次调用的耗时用 volatile 字段发布，录音过程中和结束后都可以读取。
+ * 只支持16bit，调用方保证 length 是整帧，管线从 AudioRecord 读到的数据总是整帧。
+ */
+public class DspChain implements PcmProcessor {
+
+    static final int CHUNK_FRAMES = 1024;
+
+    private final DspStage[] stages;
+    private final short[] samples;
+    private final int bytesPerFrame;
+
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+    private volatile long totalNanos;
+    private volatile long calls;
+
+    public DspChain(AudioFormatSpec format, DspStage... stages) {
+        if (format.isFloat() || format.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("only 16bit pcm is supported: " + format);
+        }
+        this.stages = stages.clone();
+        this.samples = new short[CHUNK_FRAMES * format.getChannelCount()];
+        this.bytesPerFrame = format.getBytesPerFrame();
+    }
+
+    @Override
+    public void process(byte[] buffer, int offset, int length) {
+        long begin = System.nanoTime();
+        int end = offset + length - length % bytesPerFrame;
+        short[] samples = this.samples;
+        while (offset < end) {
+            int count = Math.min(end - offset, samples.length * 2) / 2;
+            for (int i = 0, j = offset; i < count; i++, j += 2) {
+                samples[i] = (short) ((buffer[j] & 0xFF) | (buffer[j + 1] << 8));
+            }
+            for (DspStage stage : stages) {
+                stage.process(samples, 0, count);
+            }
+            for (int i = 0, j = offset; i < count; i++, j += 2) {
+                short sample = samples[i];
+                buffer[j] = (byte) sample;
+                buffer[j + 1] = (byte) (sample >> 8);
+            }
+            offset += count * 2;
+        }
+        long elapsed = System.nanoTime() - begin;
+        //只有处理线程写
+        lastNanos = elapsed;
+        if (elapsed > maxNanos) {
+            maxNanos = elapsed;
+        }
+        totalNanos += elapsed;
+        calls++;
+    }
+
+    /**
+     * 清除所有环节的状态和耗时统计，不能和 {@link #process} 同时调用
+     */
+    public void reset() {
+        for (DspStage stage : stages) {
+            stage.reset();
+        }
+        lastNanos = 0;
+        maxNanos = 0;
+        totalNanos = 0;
+        calls = 0;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * 每次 {@link #process} 的平均耗时，单位纳秒
+     */
+    public long getMeanNanos() {
+        long count = calls;
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public long getCallCount() {
+        return calls;
+    }
+}
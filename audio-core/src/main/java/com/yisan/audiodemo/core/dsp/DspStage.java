@@ -0,0 +1,16 @@
+package com.yisan.audiodemo.core.dsp;
+
+/**
+ * {@link DspChain} 里的一个处理环节，在16bit采样数组上原地处理
+ * <p>
+ * 多声道数据是交错排列的，length 总是整帧。实现类在构造时分配好状态，处理时不分配对象。
+ */
+public interface DspStage {
+
+    void process(short[] samples, int offset, int length);
+
+    /**
+     * 清除滤波器、包络等内部状态，开始新的录音前调用
+     */
+    void reset();
+}
@@ -0,0 +1,128 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.IOException;
+
+/**
+ * 采样率相同的格式转换：8bit/16bit/浮点互转，单声道和多声道互转
+ * <p>
+ * 每次最多处理 {@link #CHUNK_FRAMES} 帧，先解码成浮点，转换声道，再编码成目标格式写给下游。
+ * 中间缓冲区在构造时分配，写入时不分配对象。写入长度不是整帧时，剩下的字节留到下一次。
+ */
+public class FormatConverterSink implements PcmSink {
+
+    static final int CHUNK_FRAMES = 1024;
+
+    private final AudioFormatSpec from;
+    private final AudioFormatSpec to;
+    private final PcmSink downstream;
+    private final float[] input;
+    private final float[] output;
+    private final byte[] encoded;
+    private final byte[] pending;
+    private int pendingLength;
+
+    /**
+     * 声道转换只支持：声道数相同、混成单声道、单声道复制到多声道
+     */
+    public FormatConverterSink(AudioFormatSpec from, AudioFormatSpec to, PcmSink downstream) {
+        if (from.getSampleRate() != to.getSampleRate()) {
+            throw new IllegalArgumentException("sample rate differs: " + from + " -> " + to);
+        }
+        if (from.getChannelCount() != to.getChannelCount() && to.getChannelCount() != 1
+                && from.getChannelCount() != 1) {
+            throw new IllegalArgumentException("unsupported channel conversion: " + from + " -> " + to);
+        }
+        checkSupported(from);
+        checkSupported(to);
+        this.from = from;
+        this.to = to;
+        this.downstream = downstream;
+        this.input = new float[CHUNK_FRAMES * from.getChannelCount()];
+        this.output = from.getChannelCount() == to.getChannelCount()
+                ? input : new float[CHUNK_FRAMES * to.getChannelCount()];
+        this.encoded = new byte[CHUNK_FRAMES * to.getBytesPerFrame()];
+        this.pending = new byte[from.getBytesPerFrame()];
+    }
+
+    private static void checkSupported(AudioFormatSpec format) {
+        int bits = format.getBitsPerSample();
+        if (!format.isFloat() && bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("unsupported format: " + format);
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int bytesPerFrame = pending.length;
+        if (pendingLength > 0) {
+            int count = Math.min(length, bytesPerFrame - pendingLength);
+            System.arraycopy(buffer, offset, pending, pendingLength, count);
+            pendingLength += count;
+            offset += count;
+            length -= count;
+            if (pendingLength < bytesPerFrame) {
+                return;
+            }
+            convert(pending, 0, 1);
+            pendingLength = 0;
+        }
+        while (length >= bytesPerFrame) {
+            int frames = Math.min(length / bytesPerFrame, CHUNK_FRAMES);
+            convert(buffer, offset, frames);
+            offset += frames * bytesPerFrame;
+            length -= frames * bytesPerFrame;
+        }
+        if (length > 0) {
+            System.arraycopy(buffer, offset, pending, 0, length);
+            pendingLength = length;
+        }
+    }
+
+    private void convert(byte[] buffer, int offset, int frames) throws IOException {
+        int inSamples = frames * from.getChannelCount();
+        if (from.isFloat()) {
+            SampleConverter.float32BytesToFloat(buffer, offset, input, 0, inSamples);
+        } else if (from.getBitsPerSample() == 16) {
+            SampleConverter.bytesToFloat(buffer, offset, input, 0, inSamples);
+        } else {
+            SampleConverter.uint8ToFloat(buffer, offset, input, 0, inSamples);
+        }
+
+        if (from.getChannelCount() != to.getChannelCount()) {
+            if (to.getChannelCount() == 1) {
+                SampleConverter.downmix(input, 0, from.getChannelCount(), output, 0, frames);
+            } else {
+                SampleConverter.upmix(input, 0, to.getChannelCount(), output, 0, frames);
+            }
+        }
+
+        int outSamples = frames * to.getChannelCount();
+        if (to.isFloat()) {
+            SampleConverter.floatToFloat32Bytes(output, 0, encoded, 0, outSamples);
+        } else if (to.getBitsPerSample() == 16) {
+            SampleConverter.floatToBytes(output, 0, encoded, 0, outSamples);
+        } else {
+            SampleConverter.floatToUint8(output, 0, encoded, 0, outSamples);
+        }
+        downstream.write(encoded, 0, frames * to.getBytesPerFrame());
+    }
+
+    public AudioFormatSpec getInputFormat() {
+        return from;
+    }
+
+    public AudioFormatSpec getOutputFormat() {
+        return to;
+    }
+
+    /**
+     * 不完整的最后一帧丢弃
+     */
+    @Override
+    public void close() throws IOException {
+        pendingLength = 0;
+        downstream.close();
+    }
+}
@@ -0,0 +1,78 @@
+package com.yisan.audiodemo.core.dsp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 电平表：计算每段16bit PCM数据的峰值和RMS
+ * <p>
+ * 采集线程调用 {@link #process}，结果打包成一个 long 用 lazySet 发布，
+ * UI线程按帧率读取，不加锁，不会和采集线程互相等待，峰值和RMS总是同一段数据的结果。
+ */
+public class LevelMeter {
+
+    /**
+     * 高32位峰值、低32位RMS，都是 float 的位模式，范围0~1
+     */
+    private final AtomicLong level = new AtomicLong();
+
+    /**
+     * 采集线程：计算一段小端16bit数据的电平
+     */
+    public void process(byte[] buffer, int offset, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return;
+        }
+        int peak = 0;
+        long sumSquares = 0;
+        int end = offset + samples * 2;
+        for (int i = offset; i < end; i += 2) {
+            int sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > peak) {
+                peak = abs;
+            }
+            sumSquares += sample * sample;
+        }
+        float peakLevel = peak / 32768f;
+        float rmsLevel = (float) Math.sqrt((double) sumSquares / samples) / 32768f;
+        level.lazySet(((long) Float.floatToRawIntBits(peakLevel) << 32)
+                | (Float.floatToRawIntBits(rmsLevel) & 0xFFFFFFFFL));
+    }
+
+    /**
+     * 最近一段数据的峰值，0~1
+     */
+    public float getPeak() {
+        return Float.intBitsToFloat((int) (level.get() >>> 32));
+    }
+
+    /**
+     * 最近一段数据的RMS，0~1
+     */
+    public float getRms() {
+        return Float.intBitsToFloat((int) level.get());
+    }
+
+    /**
+     * 最近一段数据的RMS，单位dBFS，静音时返回 -96
+     */
+    public float getRmsDb() {
+        return toDb(getRms());
+    }
+
+    public float getPeakDb() {
+        return toDb(getPeak());
+    }
+
+    public void reset() {
+        level.set(0);
+    }
+
+    private static float toDb(float value) {
+        if (value <= 0) {
+            return -96f;
+        }
+        return Math.max(-96f, (float) (20 * Math.log10(value)));
+    }
+}
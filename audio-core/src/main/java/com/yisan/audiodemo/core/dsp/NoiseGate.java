@@ -0,0 +1,123 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+
+/**
+ * 噪声门：电平低于阈值时把增益降到 floorDb，说话时恢复
+ * <p>
+ * 按帧取所有声道的最大绝对值跟踪峰值包络，包络超过开门阈值时打开，
+ * 低于关门阈值（开门阈值减去 {@link #HYSTERESIS_DB}）并且保持 holdMillis 后关闭，避免在阈值附近来回开关。
+ * 增益按起音、释放时间平滑变化，不会产生咔哒声。多声道共用一个增益，声像不变。
+ */
+public class NoiseGate implements DspStage {
+
+    private static final float HYSTERESIS_DB = 6f;
+    /**
+     * 峰值包络的下降时间
+     */
+    private static final float ENVELOPE_DECAY_MILLIS = 10f;
+
+    private final int channelCount;
+    private final float openThreshold;
+    private final float closeThreshold;
+    private final float floorGain;
+    private final int holdFrames;
+    private final float attackCoefficient;
+    private final float releaseCoefficient;
+    private final float envelopeDecay;
+
+    private float envelope;
+    private float gain;
+    private boolean open;
+    private int holdRemaining;
+
+    /**
+     * 默认参数：-50dBFS开门，关门后衰减30dB，起音5ms，保持200ms，释放150ms
+     */
+    public NoiseGate(AudioFormatSpec format) {
+        this(format, -50f, -30f, 5f, 200f, 150f);
+    }
+
+    /**
+     * @param thresholdDb 开门阈值，单位dBFS
+     * @param floorDb     关门时的增益，单位dB，不完全静音听起来更自然
+     */
+    public NoiseGate(AudioFormatSpec format, float thresholdDb, float floorDb, float attackMillis,
+            float holdMillis, float releaseMillis) {
+        if (floorDb > 0) {
+            throw new IllegalArgumentException("floorDb: " + floorDb);
+        }
+        int sampleRate = format.getSampleRate();
+        this.channelCount = format.getChannelCount();
+        this.openThreshold = dbToSample(thresholdDb);
+        this.closeThreshold = dbToSample(thresholdDb - HYSTERESIS_DB);
+        this.floorGain = (float) Math.pow(10, floorDb / 20);
+        this.holdFrames = (int) (holdMillis * sampleRate / 1000);
+        this.attackCoefficient = smoothing(attackMillis, sampleRate);
+        this.releaseCoefficient = smoothing(releaseMillis, sampleRate);
+        this.envelopeDecay = 1 - smoothing(ENVELOPE_DECAY_MILLIS, sampleRate);
+        reset();
+    }
+
+    @Override
+    public void process(short[] samples, int offset, int length) {
+        int end = offset + length;
+        float envelope = this.envelope;
+        float gain = this.gain;
+        for (int frame = offset; frame < end; frame += channelCount) {
+            int peak = 0;
+            for (int i = frame; i < frame + channelCount; i++) {
+                int abs = samples[i] < 0 ? -samples[i] : samples[i];
+                if (abs > peak) {
+                    peak = abs;
+                }
+            }
+            envelope = peak > envelope ? peak : envelope * envelopeDecay;
+            if (envelope >= openThreshold) {
+                open = true;
+                holdRemaining = holdFrames;
+            } else if (open && envelope < closeThreshold && --holdRemaining <= 0) {
+                open = false;
+            }
+            if (open) {
+                gain += (1 - gain) * attackCoefficient;
+            } else {
+                gain += (floorGain - gain) * releaseCoefficient;
+            }
+            for (int i = frame; i < frame + channelCount; i++) {
+                samples[i] = BiquadFilter.clamp(samples[i] * gain);
+            }
+        }
+        this.envelope = envelope;
+        this.gain = gain;
+    }
+
+    @Override
+    public void reset() {
+        envelope = 0;
+        gain = floorGain;
+        open = false;
+        holdRemaining = 0;
+    }
+
+    /**
+     * 门当前是否打开，只在处理线程上读取
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    static float dbToSample(float db) {
+        return (float) (32768 * Math.pow(10, db / 20));
+    }
+
+    /**
+     * 一阶平滑系数，经过 millis 后走完约63%
+     */
+    static float smoothing(float millis, int sampleRate) {
+        if (millis <= 0) {
+            return 1;
+        }
+        return (float) (1 - Math.exp(-1000.0 / (millis * sampleRate)));
+    }
+}
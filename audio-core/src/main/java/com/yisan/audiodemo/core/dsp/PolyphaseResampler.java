@@ -0,0 +1,250 @@
+package com.yisan.audiodemo.core.dsp;
+
+import java.util.Arrays;
+
+/**
+ * 流式多相重采样，采样率按有理数 L/M 转换，例如 44100 -> 16000 是 160/441，48000 -> 44100 是 147/160
+ * <p>
+ * 原型低通滤波器是Kaiser窗的sinc，截止频率取两个采样率中较低一个的奈奎斯特频率再留一点余量，
+ * 按相位拆成 L 组系数。每输入一帧只计算落在这一帧上的输出，一次乘加 taps 次。
+ * 延迟线写两份，窗口总是连续的一段数组，内循环没有取模。
+ * <p>
+ * 状态大小只和滤波器长度有关，可以处理任意长度的输入，调用时不分配对象。
+ * 第一个输出从滤波器中心开始计算，抵消群延迟，输出和输入在时间上精确对齐；
+ * 结束时调用 {@link #flush} 输出剩下的部分。
+ * 多声道数据按帧交错。不是线程安全的。
+ */
+public class PolyphaseResampler {
+
+    /**
+     * 默认每边的过零点数，越大过渡带越窄
+     */
+    public static final int DEFAULT_ZERO_CROSSINGS = 16;
+    /**
+     * 截止频率相对奈奎斯特频率的比例
+     */
+    private static final double ROLLOFF = 0.91;
+    private static final double KAISER_BETA = 9.0;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int upFactor;
+    private final int downFactor;
+    private final int channelCount;
+    private final int taps;
+    /**
+     * 按相位存放的系数，每组 taps 个，已经按延迟线的顺序（旧到新）反转
+     */
+    private final float[] coefficients;
+    /**
+     * 每个声道一条延迟线，长度 2 * taps
+     */
+    private final float[][] delay;
+    /**
+     * 原型滤波器的中心，也就是上采样后的群延迟
+     */
+    private final int center;
+
+    private int position;
+    /**
+     * 下一个输出在上采样时间轴上相对最新输入的位置，小于 L 时输出
+     */
+    private int phase;
+    private long inputFrames;
+    private long outputFrames;
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channelCount) {
+        this(inputRate, outputRate, channelCount, DEFAULT_ZERO_CROSSINGS);
+    }
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channelCount, int zeroCrossings) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("rate: " + inputRate + " -> " + outputRate);
+        }
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("channelCount: " + channelCount);
+        }
+        if (zeroCrossings <= 0) {
+            throw new IllegalArgumentException("zeroCrossings: " + zeroCrossings);
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.upFactor = outputRate / gcd;
+        this.downFactor = inputRate / gcd;
+        this.channelCount = channelCount;
+
+        //上采样后的采样率下，截止频率（每采样周期）
+        int maxFactor = Math.max(upFactor, downFactor);
+        double cutoff = ROLLOFF * 0.5 / maxFactor;
+        //每边 zeroCrossings 个过零点，换算成每个相位的系数个数
+        this.taps = (int) Math.ceil(2.0 * zeroCrossings * maxFactor / (ROLLOFF * upFactor));
+        this.center = upFactor * taps / 2;
+        this.coefficients = design(upFactor, taps, center, cutoff);
+        this.delay = new float[channelCount][2 * taps];
+        reset();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * 生成原型滤波器并拆成多相系数，直流增益归一化为 L
+     */
+    private static float[] design(int phases, int taps, int center, double cutoff) {
+        int length = phases * taps;
+        double[] prototype = new double[length];
+        double sum = 0;
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int n = 0; n < length; n++) {
+            double x = n - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double r = x / (center + 1);
+            double window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            prototype[n] = sinc * window;
+            sum += prototype[n];
+        }
+        double gain = phases / sum;
+        float[] result = new float[length];
+        for (int phase = 0; phase < phases; phase++) {
+            for (int j = 0; j < taps; j++) {
+                //延迟线窗口里第 j 个是第 taps-1-j 新的采样
+                result[phase * taps + j] = (float) (prototype[phase + (taps - 1 - j) * phases] * gain);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 第一类零阶修正贝塞尔函数，级数展开
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double half = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 处理 inFrames 帧交错数据，输出写到 out
+     *
+     * @param out 至少能放下 {@link #getMaxOutputFrames(int)} 帧
+     * @return 输出的帧数
+     */
+    public int process(float[] in, int inOffset, int inFrames, float[] out, int outOffset) {
+        int produced = 0;
+        for (int i = 0; i < inFrames; i++) {
+            produced += push(in, inOffset + i * channelCount, out, outOffset + produced * channelCount);
+        }
+        inputFrames += inFrames;
+        return produced;
+    }
+
+    /**
+     * 输入结束后补零，把滤波器里剩下的数据输出，总输出帧数和输入时长对应
+     *
+     * @param out 至少能放下 {@link #getMaxOutputFrames(int)}(taps) 帧
+     * @return 输出的帧数
+     */
+    public int flush(float[] out, int outOffset) {
+        long expected = (inputFrames * upFactor + downFactor - 1) / downFactor;
+        int produced = 0;
+        for (int i = 0; i < taps && outputFrames < expected; i++) {
+            int count = push(null, 0, out, outOffset + produced * channelCount);
+            if (outputFrames > expected) {
+                //只保留到应有的长度
+                count -= (int) (outputFrames - expected);
+                outputFrames = expected;
+            }
+            produced += count;
+        }
+        return produced;
+    }
+
+    /**
+     * 推入一帧，in 为null时推入静音
+     */
+    private int push(float[] in, int inIndex, float[] out, int outIndex) {
+        int pos = position;
+        for (int c = 0; c < channelCount; c++) {
+            float value = in == null ? 0f : in[inIndex + c];
+            float[] line = delay[c];
+            line[pos] = value;
+            line[pos + taps] = value;
+        }
+        //窗口是 pos+1 .. pos+taps，最后一个是刚写入的
+        int start = pos + 1;
+        position = start == taps ? 0 : start;
+
+        int produced = 0;
+        while (phase < upFactor) {
+            int base = phase * taps;
+            for (int c = 0; c < channelCount; c++) {
+                float[] line = delay[c];
+                float sum = 0;
+                for (int j = 0; j < taps; j++) {
+                    sum += coefficients[base + j] * line[start + j];
+                }
+                out[outIndex + produced * channelCount + c] = sum;
+            }
+            produced++;
+            phase += downFactor;
+        }
+        phase -= upFactor;
+        outputFrames += produced;
+        return produced;
+    }
+
+    /**
+     * 输入 inFrames 帧时最多输出多少帧
+     */
+    public int getMaxOutputFrames(int inFrames) {
+        return (int) (((long) inFrames * upFactor + upFactor) / downFactor) + 1;
+    }
+
+    /**
+     * 清空延迟线，重新开始
+     */
+    public void reset() {
+        for (float[] line : delay) {
+            Arrays.fill(line, 0f);
+        }
+        position = 0;
+        //第一个输出对准第一个输入，要等滤波器中心那个输入到了才计算
+        phase = center;
+        inputFrames = 0;
+        outputFrames = 0;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * 每个相位的系数个数，也就是每个输出采样的乘加次数
+     */
+    public int getTaps() {
+        return taps;
+    }
+}
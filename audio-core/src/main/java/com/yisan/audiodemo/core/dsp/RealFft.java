@@ -0,0 +1,146 @@
+package com.yisan.audiodemo.core.dsp;
+
+/**
+ * 实数FFT：N 个实数采样打包成 N/2 个复数做一次复数FFT，再拆分出 N/2+1 个频点
+ * <p>
+ * 旋转因子、位反转表和工作数组在构造时分配，之后每次变换不分配对象。
+ * 复数FFT用的旋转因子 e^(-2πij/(N/2)) 就是拆分用的 e^(-2πik/N) 取偶数下标，两者共用一张表。
+ * 同一个对象只能在一个线程上使用。
+ */
+public class RealFft {
+
+    private final int size;
+    private final int half;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReverse;
+    private final float[] workRe;
+    private final float[] workIm;
+
+    /**
+     * @param size 2的幂，至少为4
+     */
+    public RealFft(int size) {
+        if (size < 4 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        cos = new float[half];
+        sin = new float[half];
+        for (int k = 0; k < half; k++) {
+            double angle = 2 * Math.PI * k / size;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        workRe = new float[half];
+        workIm = new float[half];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 频点个数 N/2+1，从直流到奈奎斯特频率
+     */
+    public int getBinCount() {
+        return half + 1;
+    }
+
+    /**
+     * 正变换，不修改 input
+     *
+     * @param input 长度至少为 N
+     * @param re    实部，长度至少为 N/2+1
+     * @param im    虚部，长度至少为 N/2+1
+     */
+    public void forward(float[] input, float[] re, float[] im) {
+        transformPacked(input);
+        float[] zr = workRe;
+        float[] zi = workIm;
+        //X[k] = E[k] + W^k * O[k]，E、O 由 Z[k] 和 Z[N/2-k] 的共轭得到
+        re[0] = zr[0] + zi[0];
+        im[0] = 0;
+        re[half] = zr[0] - zi[0];
+        im[half] = 0;
+        for (int k = 1; k < half; k++) {
+            float a = zr[k];
+            float b = zi[k];
+            float c = zr[half - k];
+            float d = zi[half - k];
+            float er = (a + c) * 0.5f;
+            float ei = (b - d) * 0.5f;
+            float or = (b + d) * 0.5f;
+            float oi = (c - a) * 0.5f;
+            float wr = cos[k];
+            float wi = sin[k];
+            re[k] = er + wr * or + wi * oi;
+            im[k] = ei + wr * oi - wi * or;
+        }
+    }
+
+    /**
+     * 功率谱 |X[k]|^2，不修改 input
+     *
+     * @param power 长度至少为 N/2+1
+     */
+    public void powerSpectrum(float[] input, float[] power) {
+        transformPacked(input);
+        float[] zr = workRe;
+        float[] zi = workIm;
+        float dc = zr[0] + zi[0];
+        float nyquist = zr[0] - zi[0];
+        power[0] = dc * dc;
+        power[half] = nyquist * nyquist;
+        for (int k = 1; k < half; k++) {
+            float a = zr[k];
+            float b = zi[k];
+            float c = zr[half - k];
+            float d = zi[half - k];
+            float or = (b + d) * 0.5f;
+            float oi = (c - a) * 0.5f;
+            float wr = cos[k];
+            float wi = sin[k];
+            float r = (a + c) * 0.5f + wr * or + wi * oi;
+            float i = (b - d) * 0.5f + wr * oi - wi * or;
+            power[k] = r * r + i * i;
+        }
+    }
+
+    /**
+     * 偶数下标作实部、奇数下标作虚部，按位反转顺序装入工作数组，做 N/2 点的基2复数FFT
+     */
+    private void transformPacked(float[] input) {
+        float[] zr = workRe;
+        float[] zi = workIm;
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            zr[j] = input[2 * i];
+            zi[j] = input[2 * i + 1];
+        }
+        for (int length = 2, step = size / 2; length <= half; length <<= 1, step >>= 1) {
+            int span = length / 2;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0, t = 0; j < span; j++, t += step) {
+                    //旋转因子 e^(-2πij/length)，下标换算到 N 点的表
+                    float wr = cos[t];
+                    float wi = -sin[t];
+                    int p = start + j;
+                    int q = p + span;
+                    float xr = zr[q] * wr - zi[q] * wi;
+                    float xi = zr[q] * wi + zi[q] * wr;
+                    zr[q] = zr[p] - xr;
+                    zi[q] = zi[p] - xi;
+                    zr[p] += xr;
+                    zi[p] += xi;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.IOException;
+
+/**
+ * 重采样环节：把16bit或浮点PCM转换成另一个采样率再写给下游，格式的其他部分不变
+ * <p>
+ * 可以接在录音管线后面（例如给语音识别输出16kHz），也可以用在导出时。
+ * 每次最多处理 {@link FormatConverterSink#CHUNK_FRAMES} 帧，缓冲区在构造时分配，写入时不分配对象。
+ * 关闭时输出滤波器里剩下的数据，再关闭下游。
+ */
+public class ResamplerSink implements PcmSink {
+
+    private static final int CHUNK_FRAMES = FormatConverterSink.CHUNK_FRAMES;
+
+    private final AudioFormatSpec inputFormat;
+    private final AudioFormatSpec outputFormat;
+    private final PcmSink downstream;
+    private final PolyphaseResampler resampler;
+    private final float[] input;
+    private final float[] output;
+    private final byte[] encoded;
+    private final byte[] pending;
+    private int pendingLength;
+    private boolean closed;
+
+    public ResamplerSink(AudioFormatSpec inputFormat, int outputRate, PcmSink downstream) {
+        if (!inputFormat.isFloat() && inputFormat.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("unsupported format: " + inputFormat);
+        }
+        this.inputFormat = inputFormat;
+        this.outputFormat = inputFormat.withSampleRate(outputRate);
+        this.downstream = downstream;
+        int channels = inputFormat.getChannelCount();
+        this.resampler = new PolyphaseResampler(inputFormat.getSampleRate(), outputRate, channels);
+        this.input = new float[CHUNK_FRAMES * channels];
+        int maxOutput = Math.max(resampler.getMaxOutputFrames(CHUNK_FRAMES),
+                resampler.getMaxOutputFrames(resampler.getTaps()));
+        this.output = new float[maxOutput * channels];
+        this.encoded = new byte[maxOutput * outputFormat.getBytesPerFrame()];
+        this.pending = new byte[inputFormat.getBytesPerFrame()];
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int bytesPerFrame = pending.length;
+        if (pendingLength > 0) {
+            int count = Math.min(length, bytesPerFrame - pendingLength);
+            System.arraycopy(buffer, offset, pending, pendingLength, count);
+            pendingLength += count;
+            offset += count;
+            length -= count;
+            if (pendingLength < bytesPerFrame) {
+                return;
+            }
+            resample(pending, 0, 1);
+            pendingLength = 0;
+        }
+        while (length >= bytesPerFrame) {
+            int frames = Math.min(length / bytesPerFrame, CHUNK_FRAMES);
+            resample(buffer, offset, frames);
+            offset += frames * bytesPerFrame;
+            length -= frames * bytesPerFrame;
+        }
+        if (length > 0) {
+            System.arraycopy(buffer, offset, pending, 0, length);
+            pendingLength = length;
+        }
+    }
+
+    private void resample(byte[] buffer, int offset, int frames) throws IOException {
+        int samples = frames * inputFormat.getChannelCount();
+        if (inputFormat.isFloat()) {
+            SampleConverter.float32BytesToFloat(buffer, offset, input, 0, samples);
+        } else {
+            SampleConverter.bytesToFloat(buffer, offset, input, 0, samples);
+        }
+        output(resampler.process(input, 0, frames, output, 0));
+    }
+
+    private void output(int frames) throws IOException {
+        if (frames == 0) {
+            return;
+        }
+        int samples = frames * outputFormat.getChannelCount();
+        if (outputFormat.isFloat()) {
+            SampleConverter.floatToFloat32Bytes(output, 0, encoded, 0, samples);
+        } else {
+            SampleConverter.floatToBytes(output, 0, encoded, 0, samples);
+        }
+        downstream.write(encoded, 0, frames * outputFormat.getBytesPerFrame());
+    }
+
+    public AudioFormatSpec getOutputFormat() {
+        return outputFormat;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            output(resampler.flush(output, 0));
+        } finally {
+            downstream.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.yisan.audiodemo.core.dsp;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * 采样格式转换的批量内核：16bit整数和浮点互转、8bit无符号、小端字节、交错和解交错、混成单声道
+ * <p>
+ * 每个方法都是对基本类型数组的简单计数循环，循环体里没有方法调用和对象分配，
+ * 方便JIT展开和向量化。Buffer版本有底层数组时直接转成数组版本，否则按绝对位置逐个读写。
+ * 浮点采样范围是-1~1，转回整数时超出范围的截断。
+ */
+public final class SampleConverter {
+
+    private static final float SHORT_SCALE = 1f / 32768f;
+
+    private SampleConverter() {
+    }
+
+    // ---------------- 16bit整数 <-> 浮点 ----------------
+
+    public static void int16ToFloat(short[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = src[srcOffset + i] * SHORT_SCALE;
+        }
+    }
+
+    public static void floatToInt16(float[] src, int srcOffset, short[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            float value = src[srcOffset + i] * 32768f;
+            //先截断再转换，NaN转成0
+            if (value > 32767f) {
+                value = 32767f;
+            } else if (value < -32768f) {
+                value = -32768f;
+            }
+            dst[dstOffset + i] = (short) value;
+        }
+    }
+
+    /**
+     * 从各自的 position 开始转换 count 个采样，不改变 position
+     */
+    public static void int16ToFloat(ShortBuffer src, FloatBuffer dst, int count) {
+        checkRemaining(src.remaining(), dst.remaining(), count);
+        if (src.hasArray() && dst.hasArray()) {
+            int16ToFloat(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), count);
+            return;
+        }
+        int srcPosition = src.position();
+        int dstPosition = dst.position();
+        for (int i = 0; i < count; i++) {
+            dst.put(dstPosition + i, src.get(srcPosition + i) * SHORT_SCALE);
+        }
+    }
+
+    /**
+     * 从各自的 position 开始转换 count 个采样，不改变 position
+     */
+    public static void floatToInt16(FloatBuffer src, ShortBuffer dst, int count) {
+        checkRemaining(src.remaining(), dst.remaining(), count);
+        if (src.hasArray() && dst.hasArray()) {
+            floatToInt16(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), count);
+            return;
+        }
+        int srcPosition = src.position();
+        int dstPosition = dst.position();
+        for (int i = 0; i < count; i++) {
+            float value = src.get(srcPosition + i) * 32768f;
+            if (value > 32767f) {
+                value = 32767f;
+            } else if (value < -32768f) {
+                value = -32768f;
+            }
+            dst.put(dstPosition + i, (short) value);
+        }
+    }
+
+    private static void checkRemaining(int srcRemaining, int dstRemaining, int count) {
+        if (count < 0 || count > srcRemaining || count > dstRemaining) {
+            throw new IndexOutOfBoundsException("count " + count + ", src " + srcRemaining + ", dst " + dstRemaining);
+        }
+    }
+
+    // ---------------- 小端字节 <-> 采样 ----------------
+
+    /**
+     * 小端16bit字节转成采样，src 中需要 count * 2 个字节
+     */
+    public static void bytesToInt16(byte[] src, int srcOffset, short[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = srcOffset + i * 2;
+            dst[dstOffset + i] = (short) ((src[b] & 0xFF) | (src[b + 1] << 8));
+        }
+    }
+
+    public static void int16ToBytes(short[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = dstOffset + i * 2;
+            short value = src[srcOffset + i];
+            dst[b] = (byte) value;
+            dst[b + 1] = (byte) (value >> 8);
+        }
+    }
+
+    /**
+     * 小端16bit字节直接转成浮点，src 中需要 count * 2 个字节
+     */
+    public static void bytesToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = srcOffset + i * 2;
+            dst[dstOffset + i] = (short) ((src[b] & 0xFF) | (src[b + 1] << 8)) * SHORT_SCALE;
+        }
+    }
+
+    /**
+     * 浮点直接转成小端16bit字节
+     */
+    public static void floatToBytes(float[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            float value = src[srcOffset + i] * 32768f;
+            if (value > 32767f) {
+                value = 32767f;
+            } else if (value < -32768f) {
+                value = -32768f;
+            }
+            int sample = (int) value;
+            int b = dstOffset + i * 2;
+            dst[b] = (byte) sample;
+            dst[b + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * 小端32bit浮点字节转成浮点，src 中需要 count * 4 个字节
+     */
+    public static void float32BytesToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = srcOffset + i * 4;
+            dst[dstOffset + i] = Float.intBitsToFloat((src[b] & 0xFF) | (src[b + 1] & 0xFF) << 8
+                    | (src[b + 2] & 0xFF) << 16 | src[b + 3] << 24);
+        }
+    }
+
+    public static void floatToFloat32Bytes(float[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int bits = Float.floatToRawIntBits(src[srcOffset + i]);
+            int b = dstOffset + i * 4;
+            dst[b] = (byte) bits;
+            dst[b + 1] = (byte) (bits >> 8);
+            dst[b + 2] = (byte) (bits >> 16);
+            dst[b + 3] = (byte) (bits >> 24);
+        }
+    }
+
+    /**
+     * 8bit无符号字节转成浮点
+     */
+    public static void uint8ToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = ((src[srcOffset + i] & 0xFF) - 128) * (1f / 128f);
+        }
+    }
+
+    public static void floatToUint8(float[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            float value = src[srcOffset + i] * 128f;
+            if (value > 127f) {
+                value = 127f;
+            } else if (value < -128f) {
+                value = -128f;
+            }
+            dst[dstOffset + i] = (byte) ((int) value + 128);
+        }
+    }
+
+    // ---------------- 交错 <-> 分声道 ----------------
+
+    /**
+     * 两个声道交错成 LRLR...
+     */
+    public static void interleave(float[] left, float[] right, int srcOffset, float[] dst, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[dstOffset + 2 * i] = left[srcOffset + i];
+            dst[dstOffset + 2 * i + 1] = right[srcOffset + i];
+        }
+    }
+
+    /**
+     * LRLR... 拆成两个声道
+     */
+    public static void deinterleave(float[] src, int srcOffset, float[] left, float[] right, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            left[dstOffset + i] = src[srcOffset + 2 * i];
+            right[dstOffset + i] = src[srcOffset + 2 * i + 1];
+        }
+    }
+
+    public static void interleave(short[] left, short[] right, int srcOffset, short[] dst, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[dstOffset + 2 * i] = left[srcOffset + i];
+            dst[dstOffset + 2 * i + 1] = right[srcOffset + i];
+        }
+    }
+
+    public static void deinterleave(short[] src, int srcOffset, short[] left, short[] right, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            left[dstOffset + i] = src[srcOffset + 2 * i];
+            right[dstOffset + i] = src[srcOffset + 2 * i + 1];
+        }
+    }
+
+    /**
+     * 任意声道数：取出交错数据中的一个声道
+     */
+    public static void extractChannel(float[] src, int srcOffset, int channelCount, int channel,
+            float[] dst, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[dstOffset + i] = src[srcOffset + i * channelCount + channel];
+        }
+    }
+
+    // ---------------- 混音 ----------------
+
+    /**
+     * 立体声取平均混成单声道
+     */
+    public static void downmixStereo(float[] src, int srcOffset, float[] dst, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[dstOffset + i] = (src[srcOffset + 2 * i] + src[srcOffset + 2 * i + 1]) * 0.5f;
+        }
+    }
+
+    /**
+     * 立体声取平均混成单声道，不会溢出
+     */
+    public static void downmixStereo(short[] src, int srcOffset, short[] dst, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[dstOffset + i] = (short) ((src[srcOffset + 2 * i] + src[srcOffset + 2 * i + 1]) >> 1);
+        }
+    }
+
+    /**
+     * 任意声道数取平均混成单声道
+     */
+    public static void downmix(float[] src, int srcOffset, int channelCount, float[] dst, int dstOffset, int frames) {
+        if (channelCount == 2) {
+            downmixStereo(src, srcOffset, dst, dstOffset, frames);
+            return;
+        }
+        float scale = 1f / channelCount;
+        for (int i = 0; i < frames; i++) {
+            int base = srcOffset + i * channelCount;
+            float sum = 0;
+            for (int c = 0; c < channelCount; c++) {
+                sum += src[base + c];
+            }
+            dst[dstOffset + i] = sum * scale;
+        }
+    }
+
+    /**
+     * 单声道复制到所有声道
+     */
+    public static void upmix(float[] src, int srcOffset, int channelCount, float[] dst, int dstOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            float value = src[srcOffset + i];
+            int base = dstOffset + i * channelCount;
+            for (int c = 0; c < channelCount; c++) {
+                dst[base + c] = value;
+            }
+        }
+    }
+}
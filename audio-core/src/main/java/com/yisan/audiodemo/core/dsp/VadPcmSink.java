@@ -0,0 +1,180 @@
+package com.yisan.audiodemo.core.dsp;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.codec.PcmFramer;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 语音活动检测环节：按10ms分段判断语音和静音，静音按模式丢弃、压缩或只做标记
+ * <p>
+ * 每段先放进固定的帧缓冲区，判断完再决定写不写给下游，所以不会把静音开头写出去。
+ * 每个语音段结束时回调 {@link SegmentListener}，时间是原始录音的时间，另外给出在输出中的位置。
+ * 放在 {@link com.yisan.audiodemo.core.AsyncPcmSink} 后面，在写线程上运行。
+ */
+public class VadPcmSink implements PcmSink {
+
+    /**
+     * 静音全部丢弃
+     */
+    public static final int MODE_DROP = 0;
+    /**
+     * 每段静音最多保留 maxSilenceMillis，保留停顿的感觉
+     */
+    public static final int MODE_COMPRESS = 1;
+    /**
+     * 数据全部写出，只输出语音段索引
+     */
+    public static final int MODE_MARK = 2;
+
+    /**
+     * 接收语音段
+     */
+    public interface SegmentListener extends Closeable {
+
+        /**
+         * @param startUs      语音段在原始录音中的开始时间，单位微秒
+         * @param endUs        语音段在原始录音中的结束时间，单位微秒
+         * @param outputOffset 语音段在输出数据中的字节位置
+         */
+        void onSegment(long startUs, long endUs, long outputOffset) throws IOException;
+    }
+
+    private final PcmSink downstream;
+    private final SegmentListener listener;
+    private final VoiceActivityDetector detector;
+    private final PcmFramer framer;
+    private final int mode;
+    private final long maxSilenceBytes;
+
+    private boolean inSpeech;
+    private long segmentStartUs;
+    private long segmentOutputOffset;
+    private long silenceWritten;
+    private long inputBytes;
+    private long outputBytes;
+    private int segmentCount;
+
+    /**
+     * @param listener         可以为null
+     * @param maxSilenceMillis {@link #MODE_COMPRESS} 时每段静音保留的时长
+     */
+    public VadPcmSink(AudioFormatSpec format, PcmSink downstream, int mode, int maxSilenceMillis,
+            SegmentListener listener) {
+        if (format.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("only 16bit pcm is supported: " + format);
+        }
+        if (mode < MODE_DROP || mode > MODE_MARK) {
+            throw new IllegalArgumentException("mode: " + mode);
+        }
+        this.downstream = downstream;
+        this.listener = listener;
+        this.mode = mode;
+        this.maxSilenceBytes = format.millisToBytes(maxSilenceMillis);
+        this.detector = new VoiceActivityDetector(format.getChannelCount());
+        //10ms一段
+        this.framer = new PcmFramer(format, format.getSampleRate() / 100, new PcmFramer.FrameSink() {
+            @Override
+            public void writeFrame(byte[] frame, int length, long presentationTimeUs) throws IOException {
+                processFrame(frame, length, presentationTimeUs);
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+        });
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        framer.write(buffer, offset, length);
+    }
+
+    private void processFrame(byte[] frame, int length, long timeUs) throws IOException {
+        inputBytes += length;
+        if (detector.process(frame, 0, length)) {
+            if (!inSpeech) {
+                inSpeech = true;
+                segmentStartUs = timeUs;
+                segmentOutputOffset = outputBytes;
+            }
+            silenceWritten = 0;
+            output(frame, length);
+            return;
+        }
+        if (inSpeech) {
+            inSpeech = false;
+            endSegment(timeUs);
+        }
+        switch (mode) {
+            case MODE_MARK:
+                output(frame, length);
+                break;
+            case MODE_COMPRESS: {
+                int count = (int) Math.min(length, maxSilenceBytes - silenceWritten);
+                if (count > 0) {
+                    output(frame, count);
+                    silenceWritten += count;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private void output(byte[] frame, int length) throws IOException {
+        downstream.write(frame, 0, length);
+        outputBytes += length;
+    }
+
+    private void endSegment(long endUs) throws IOException {
+        segmentCount++;
+        if (listener != null) {
+            listener.onSegment(segmentStartUs, endUs, segmentOutputOffset);
+        }
+    }
+
+    /**
+     * 结束最后一个语音段，关闭下游和语音段接收方
+     */
+    private void finish() throws IOException {
+        try {
+            if (inSpeech) {
+                inSpeech = false;
+                endSegment(framer.getPresentationTimeUs());
+            }
+        } finally {
+            try {
+                downstream.close();
+            } finally {
+                if (listener != null) {
+                    listener.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        framer.close();
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public VoiceActivityDetector getDetector() {
+        return detector;
+    }
+}
@@ -0,0 +1,196 @@
+package com.yisan.audiodemo.core.dsp;
+
+/**
+ * 语音活动检测：短时能量 + 过零率，带拖尾
+ * <p>
+ * 每次处理一小段16bit PCM（通常10ms），能量超过噪声底一定幅度判为语音；
+ * 清辅音能量低但过零率高，能量稍低时用过零率补判。
+ * 噪声底在静音段跟踪，另外用最近约2秒（10ms一段时）能量的最小值兜底：
+ * 背景噪声比初始噪声底高很多时，每一段都会判成语音，只靠静音段永远追不上，
+ * 而最小值统计不管判成什么都更新，连续说话时也会落在字间停顿上，说话时噪声底按它慢慢上升。
+ * 语音结束后继续保持 hangoverFrames 段，避免把字之间的短停顿和尾音切掉。
+ * 只有几个基本类型字段，处理过程中不分配内存。
+ */
+public class VoiceActivityDetector {
+
+    private static final float MIN_DB = -96f;
+    /**
+     * 最小值统计分成 MIN_WINDOWS 个子窗口，每个 SUB_WINDOW_FRAMES 段
+     */
+    private static final int SUB_WINDOW_FRAMES = 50;
+    private static final int MIN_WINDOWS = 4;
+    /**
+     * 第一个子窗口满之前，攒够这么多段（10ms一段时200ms）就开始用最小值
+     */
+    private static final int SEED_FRAMES = 20;
+    /**
+     * 判为语音时噪声底向最小值靠近的比例
+     */
+    private static final float ACTIVE_RISE = 0.05f;
+
+    private final int channelCount;
+    private final float marginDb;
+    private final float minSpeechDb;
+    private final int hangoverFrames;
+
+    private float noiseFloorDb = -60f;
+    private float lastEnergyDb = MIN_DB;
+    private float lastZeroCrossingRate;
+    private int hangover;
+    private boolean speech;
+
+    private final float[] windowMinima = new float[MIN_WINDOWS];
+    private int windowIndex;
+    private int windowsFilled;
+    private float currentMinimum = Float.MAX_VALUE;
+    private int currentFrames;
+
+    /**
+     * 默认参数：高于噪声底10dB，最低-50dBFS，拖尾30段（10ms一段时为300ms）
+     */
+    public VoiceActivityDetector(int channelCount) {
+        this(channelCount, 10f, -50f, 30);
+    }
+
+    /**
+     * @param marginDb       能量高出噪声底多少dB判为语音
+     * @param minSpeechDb    低于这个能量（dBFS）一定判为静音
+     * @param hangoverFrames 语音结束后继续判为语音的段数
+     */
+    public VoiceActivityDetector(int channelCount, float marginDb, float minSpeechDb, int hangoverFrames) {
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("channelCount: " + channelCount);
+        }
+        if (hangoverFrames < 0) {
+            throw new IllegalArgumentException("hangoverFrames: " + hangoverFrames);
+        }
+        this.channelCount = channelCount;
+        this.marginDb = marginDb;
+        this.minSpeechDb = minSpeechDb;
+        this.hangoverFrames = hangoverFrames;
+    }
+
+    /**
+     * 处理一段小端16bit数据，多声道只分析第一个声道
+     *
+     * @return 这一段是否算作语音（包括拖尾）
+     */
+    public boolean process(byte[] buffer, int offset, int length) {
+        int stride = channelCount * 2;
+        int samples = length / stride;
+        if (samples == 0) {
+            return speech;
+        }
+        long sumSquares = 0;
+        int crossings = 0;
+        int previous = 0;
+        int end = offset + samples * stride;
+        for (int i = offset; i < end; i += stride) {
+            int sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+            sumSquares += sample * sample;
+            if ((sample ^ previous) < 0) {
+                crossings++;
+            }
+            previous = sample;
+        }
+        double meanSquare = (double) sumSquares / samples;
+        float energyDb = meanSquare <= 0 ? MIN_DB
+                : Math.max(MIN_DB, (float) (10 * Math.log10(meanSquare / (32768.0 * 32768.0))));
+        float zcr = (float) crossings / samples;
+        lastEnergyDb = energyDb;
+        lastZeroCrossingRate = zcr;
+
+        float threshold = Math.max(noiseFloorDb + marginDb, minSpeechDb);
+        boolean active = energyDb > threshold
+                //清辅音：能量略低，过零率高
+                || (energyDb > threshold - 6f && energyDb > minSpeechDb && zcr > 0.25f && zcr < 0.6f);
+
+        float minimum = trackMinimum(energyDb);
+        if (active) {
+            hangover = hangoverFrames;
+            speech = true;
+            if (minimum > noiseFloorDb) {
+                noiseFloorDb += (minimum - noiseFloorDb) * ACTIVE_RISE;
+            }
+        } else {
+            //静音段才跟踪噪声底，下降快、上升慢
+            if (energyDb < noiseFloorDb) {
+                noiseFloorDb = noiseFloorDb * 0.7f + energyDb * 0.3f;
+            } else {
+                noiseFloorDb = noiseFloorDb * 0.98f + energyDb * 0.02f;
+            }
+            if (hangover > 0) {
+                hangover--;
+                speech = true;
+            } else {
+                speech = false;
+            }
+        }
+        return speech;
+    }
+
+    /**
+     * 更新最小值统计
+     *
+     * @return 最近几个子窗口里的最小能量，数据还不够时返回 MIN_DB
+     */
+    private float trackMinimum(float energyDb) {
+        if (energyDb < currentMinimum) {
+            currentMinimum = energyDb;
+        }
+        if (++currentFrames == SUB_WINDOW_FRAMES) {
+            windowMinima[windowIndex] = currentMinimum;
+            windowIndex = (windowIndex + 1) % MIN_WINDOWS;
+            if (windowsFilled < MIN_WINDOWS) {
+                windowsFilled++;
+            }
+            currentMinimum = Float.MAX_VALUE;
+            currentFrames = 0;
+        }
+        if (windowsFilled == 0) {
+            return currentFrames >= SEED_FRAMES ? currentMinimum : MIN_DB;
+        }
+        float minimum = currentFrames > 0 ? currentMinimum : Float.MAX_VALUE;
+        for (int i = 0; i < windowsFilled; i++) {
+            minimum = Math.min(minimum, windowMinima[i]);
+        }
+        return minimum;
+    }
+
+    /**
+     * 最近一段是否算作语音
+     */
+    public boolean isSpeech() {
+        return speech;
+    }
+
+    /**
+     * 最近一段的能量，单位dBFS
+     */
+    public float getLastEnergyDb() {
+        return lastEnergyDb;
+    }
+
+    /**
+     * 最近一段的过零率，每个采样的过零次数
+     */
+    public float getLastZeroCrossingRate() {
+        return lastZeroCrossingRate;
+    }
+
+    public float getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    public void reset() {
+        noiseFloorDb = -60f;
+        lastEnergyDb = MIN_DB;
+        lastZeroCrossingRate = 0;
+        hangover = 0;
+        speech = false;
+        windowIndex = 0;
+        windowsFilled = 0;
+        currentMinimum = Float.MAX_VALUE;
+        currentFrames = 0;
+    }
+}
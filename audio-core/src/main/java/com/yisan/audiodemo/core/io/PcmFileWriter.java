@@ -0,0 +1,242 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于 {@link FileChannel} 的PCM文件写入
+ * <p>
+ * 普通模式：先把小块数据合并到直接内存的 ByteBuffer，攒满一个块再调用一次 write，
+ * 2048 字节一次的写入合并成 64KB 一次，系统调用次数降低到原来的 1/32。
+ * <p>
+ * 映射模式：按大块扩展 {@link MappedByteBuffer} 映射，写入只是内存复制，
+ * 由系统负责回写，关闭时把文件截断到实际长度。
+ * <p>
+ * 不是线程安全的，只能在一个线程里使用。
+ */
+public class PcmFileWriter implements PcmSink {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAP_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    /**
+     * 普通模式的合并缓冲区，映射模式为null
+     */
+    private final ByteBuffer block;
+    /**
+     * 合并缓冲区来自的缓冲区池，自己分配时为null
+     */
+    private final BufferPool<ByteBuffer> blockPool;
+    /**
+     * 映射模式每次扩展的大小，普通模式为0
+     */
+    private final int mapChunkSize;
+    private MappedByteBuffer mapped;
+    private long mappedStart;
+
+    /**
+     * 已经写入的字节数，也是下一次写入的文件位置
+     */
+    private long position;
+    /**
+     * 普通模式下已经交给系统的字节数，也就是合并缓冲区在文件里的起始位置
+     */
+    private long flushedPosition;
+    private boolean closed;
+
+    private PcmFileWriter(File target, ByteBuffer block, BufferPool<ByteBuffer> blockPool, int mapChunkSize)
+            throws IOException {
+        this.file = new RandomAccessFile(target, "rw");
+        try {
+            //清空旧内容
+            file.setLength(0);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        this.channel = file.getChannel();
+        this.block = block;
+        this.blockPool = blockPool;
+        this.mapChunkSize = mapChunkSize;
+    }
+
+    /**
+     * 默认块大小的普通模式
+     */
+    public static PcmFileWriter open(File target) throws IOException {
+        return open(target, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * 普通模式
+     *
+     * @param blockSize 合并写入的块大小
+     */
+    public static PcmFileWriter open(File target, int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize: " + blockSize);
+        }
+        return new PcmFileWriter(target, ByteBuffer.allocateDirect(blockSize), null, 0);
+    }
+
+    /**
+     * 普通模式，合并缓冲区从缓冲区池借出，关闭时归还，块大小就是池里缓冲区的大小
+     */
+    public static PcmFileWriter open(File target, BufferPool<ByteBuffer> blockPool) throws IOException {
+        ByteBuffer block = blockPool.acquire();
+        try {
+            return new PcmFileWriter(target, block, blockPool, 0);
+        } catch (IOException e) {
+            blockPool.release(block);
+            throw e;
+        }
+    }
+
+    /**
+     * 映射模式
+     *
+     * @param chunkSize 每次扩展映射的大小
+     */
+    public static PcmFileWriter openMapped(File target, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        return new PcmFileWriter(target, null, null, chunkSize);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        if (block != null) {
+            writeBlock(buffer, offset, length);
+        } else {
+            writeMapped(buffer, offset, length);
+        }
+        position += length;
+    }
+
+    private void writeBlock(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, block.remaining());
+            block.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+            if (!block.hasRemaining()) {
+                flushBlock();
+            }
+        }
+    }
+
+    private void writeMapped(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (mapped == null || !mapped.hasRemaining()) {
+                mapNextChunk();
+            }
+            int count = Math.min(length, mapped.remaining());
+            mapped.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void mapNextChunk() throws IOException {
+        //映射会把文件扩展到映射的末尾，关闭时再截断
+        mappedStart = mapped == null ? 0 : mappedStart + mapChunkSize;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, mappedStart, mapChunkSize);
+    }
+
+    private void flushBlock() throws IOException {
+        block.flip();
+        while (block.hasRemaining()) {
+            flushedPosition += channel.write(block, flushedPosition);
+        }
+        block.clear();
+    }
+
+    /**
+     * 在指定位置覆盖写入，不改变当前写入位置，用于回填文件头
+     */
+    public void writeAt(long filePosition, byte[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        if (filePosition < 0 || filePosition + length > position) {
+            throw new IllegalArgumentException("position " + filePosition + " out of written range " + position);
+        }
+        flush();
+        if (mapped != null && filePosition >= mappedStart) {
+            //还在当前映射里，直接改内存
+            for (int i = 0; i < length; i++) {
+                mapped.put((int) (filePosition - mappedStart) + i, buffer[offset + i]);
+            }
+            return;
+        }
+        ByteBuffer src = ByteBuffer.wrap(buffer, offset, length);
+        while (src.hasRemaining()) {
+            filePosition += channel.write(src, filePosition);
+        }
+    }
+
+    /**
+     * 把合并缓冲区的数据交给系统
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        if (block != null && block.position() > 0) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * 把数据同步到存储设备
+     */
+    public void sync() throws IOException {
+        flush();
+        if (mapped != null) {
+            mapped.force();
+        }
+        channel.force(false);
+    }
+
+    /**
+     * 已经写入的字节数
+     */
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            if (mapped != null) {
+                mapped.force();
+                mapped = null;
+                //去掉映射多出来的部分
+                channel.truncate(position);
+            }
+        } finally {
+            closed = true;
+            if (blockPool != null) {
+                blockPool.release(block);
+            }
+            file.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+    }
+}
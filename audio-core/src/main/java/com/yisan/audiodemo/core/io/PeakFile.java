@@ -0,0 +1,193 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 读取 {@link PeakIndexWriter} 生成的多级波形索引
+ * <p>
+ * 文件格式（小端）：
+ * <pre>
+ * "PEAK" 版本(int) 采样率(int) 声道数(int) 第0级每个峰值的采样数(int) 级间倍数(int) 级数(int) 总帧数(long)
+ * 每一级：数据偏移(long) 峰值个数(long)
+ * 每个峰值：最小值(short) 最大值(short) RMS(short)
+ * </pre>
+ */
+public class PeakFile {
+
+    public static final int BASE_SAMPLES_PER_PEAK = 256;
+    public static final int REDUCTION = 16;
+    public static final int LEVEL_COUNT = 4;
+
+    static final int ENTRY_SHORTS = 3;
+    static final int ENTRY_SIZE = ENTRY_SHORTS * 2;
+    static final int HEADER_SIZE = 36 + LEVEL_COUNT * 16;
+
+    private static final int MAGIC = 0x4B414550;
+    private static final int VERSION = 1;
+
+    private final RandomAccessFile file;
+    private final int sampleRate;
+    private final int channelCount;
+    private final int baseSamplesPerPeak;
+    private final int reduction;
+    private final long frameCount;
+    private final long[] offsets;
+    private final long[] counts;
+
+    private PeakFile(RandomAccessFile file, ByteBuffer header) throws IOException {
+        this.file = file;
+        if (header.getInt() != MAGIC) {
+            throw new IOException("not a peak file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported peak file version: " + version);
+        }
+        sampleRate = header.getInt();
+        channelCount = header.getInt();
+        baseSamplesPerPeak = header.getInt();
+        reduction = header.getInt();
+        int levels = header.getInt();
+        if (levels <= 0 || levels > LEVEL_COUNT) {
+            throw new IOException("bad level count: " + levels);
+        }
+        frameCount = header.getLong();
+        offsets = new long[levels];
+        counts = new long[levels];
+        for (int i = 0; i < levels; i++) {
+            offsets[i] = header.getLong();
+            counts[i] = header.getLong();
+        }
+    }
+
+    public static PeakFile open(File target) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            FileChannel channel = file.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("peak file truncated");
+                }
+            }
+            header.flip();
+            return new PeakFile(file, header);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 录音文件对应的峰值文件：同一个目录，扩展名换成 .peaks
+     */
+    public static File forRecording(File recording) {
+        String name = recording.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(recording.getParentFile(), name + ".peaks");
+    }
+
+    static byte[] createHeader(AudioFormatSpec format, long frameCount, long[] offsets, long[] counts) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(format.getSampleRate());
+        header.putInt(format.getChannelCount());
+        header.putInt(BASE_SAMPLES_PER_PEAK);
+        header.putInt(REDUCTION);
+        header.putInt(LEVEL_COUNT);
+        header.putLong(frameCount);
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            header.putLong(offsets[i]);
+            header.putLong(counts[i]);
+        }
+        return header.array();
+    }
+
+    static void putEntry(byte[] dst, int offset, int min, int max, int rms) {
+        dst[offset] = (byte) min;
+        dst[offset + 1] = (byte) (min >> 8);
+        dst[offset + 2] = (byte) max;
+        dst[offset + 3] = (byte) (max >> 8);
+        dst[offset + 4] = (byte) rms;
+        dst[offset + 5] = (byte) (rms >> 8);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getLevelCount() {
+        return offsets.length;
+    }
+
+    /**
+     * 某一级每个峰值覆盖的帧数
+     */
+    public long getFramesPerPeak(int level) {
+        long samples = baseSamplesPerPeak;
+        for (int i = 0; i < level; i++) {
+            samples *= reduction;
+        }
+        return Math.max(1, samples / channelCount);
+    }
+
+    public long getPeakCount(int level) {
+        return counts[level];
+    }
+
+    /**
+     * 选择适合显示的级别：每个像素覆盖的帧数不小于峰值覆盖的帧数的最粗级别
+     */
+    public int chooseLevel(long framesPerPixel) {
+        int level = 0;
+        while (level + 1 < getLevelCount() && getFramesPerPeak(level + 1) <= framesPerPixel) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 读取一段峰值
+     *
+     * @return 实际读取的个数
+     */
+    public int read(int level, long start, int count, short[] min, short[] max, short[] rms) throws IOException {
+        count = (int) Math.max(0, Math.min(count, counts[level] - start));
+        if (count == 0) {
+            return 0;
+        }
+        ByteBuffer data = ByteBuffer.allocate(count * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long position = offsets[level] + start * ENTRY_SIZE;
+        FileChannel channel = file.getChannel();
+        while (data.hasRemaining()) {
+            if (channel.read(data, position + data.position()) < 0) {
+                throw new IOException("peak file truncated");
+            }
+        }
+        data.flip();
+        for (int i = 0; i < count; i++) {
+            min[i] = data.getShort();
+            max[i] = data.getShort();
+            rms[i] = data.getShort();
+        }
+        return count;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,214 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 边录音边生成多级波形索引（峰值文件）
+ * <p>
+ * 第0级每 {@link PeakFile#BASE_SAMPLES_PER_PEAK} 个采样一个峰值（最小值、最大值、RMS），
+ * 之后每一级把上一级的 {@link PeakFile#REDUCTION} 个峰值合成一个。
+ * 第0级直接追加写入文件，更粗的级别数据量小，放在内存里，关闭时追加到文件末尾并回填文件头。
+ * 显示任意缩放级别的波形只需要读对应级别的几KB数据，不用重新读整个录音。
+ * <p>
+ * 只支持16bit PCM，多声道时所有声道合在一起统计。每次写入的计算不分配对象。
+ */
+public class PeakIndexWriter implements PcmSink {
+
+    private final PcmFileWriter writer;
+    private final AudioFormatSpec format;
+
+    /**
+     * 每一级正在累计的峰值
+     */
+    private final int[] levelMin = new int[PeakFile.LEVEL_COUNT];
+    private final int[] levelMax = new int[PeakFile.LEVEL_COUNT];
+    private final double[] levelSumSquares = new double[PeakFile.LEVEL_COUNT];
+    private final long[] levelSamples = new long[PeakFile.LEVEL_COUNT];
+    /**
+     * 每一级已经累计了多少个下一级的输入（第0级是采样数，其他级是上一级的峰值数）
+     */
+    private final int[] levelInputs = new int[PeakFile.LEVEL_COUNT];
+    private final long[] levelCounts = new long[PeakFile.LEVEL_COUNT];
+
+    /**
+     * 第1级以上的峰值，按级别保存在内存里
+     */
+    private final short[][] coarsePeaks = new short[PeakFile.LEVEL_COUNT][];
+
+    /**
+     * 第0级峰值写文件前的缓冲
+     */
+    private final byte[] entry = new byte[PeakFile.ENTRY_SIZE * 256];
+    private int entryLength;
+
+    /**
+     * 写入长度是奇数时，留到下一次的低字节
+     */
+    private int pendingByte = -1;
+    private long totalSamples;
+    private boolean closed;
+
+    public PeakIndexWriter(PcmFileWriter writer, AudioFormatSpec format) throws IOException {
+        if (format.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("only 16bit pcm supported: " + format);
+        }
+        this.writer = writer;
+        this.format = format;
+        for (int level = 1; level < PeakFile.LEVEL_COUNT; level++) {
+            coarsePeaks[level] = new short[PeakFile.ENTRY_SHORTS * 64];
+        }
+        for (int level = 0; level < PeakFile.LEVEL_COUNT; level++) {
+            resetLevel(level);
+        }
+        //先写占位文件头，第0级数据紧跟在后面
+        byte[] header = PeakFile.createHeader(format, 0, new long[PeakFile.LEVEL_COUNT],
+                new long[PeakFile.LEVEL_COUNT]);
+        writer.write(header, 0, header.length);
+    }
+
+    public static PeakIndexWriter open(File target, AudioFormatSpec format) throws IOException {
+        PcmFileWriter writer = PcmFileWriter.open(target, 16 * 1024);
+        try {
+            return new PeakIndexWriter(writer, format);
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (pendingByte >= 0 && offset < end) {
+            addSample((short) (pendingByte | (buffer[offset++] << 8)));
+            pendingByte = -1;
+        }
+        //16bit小端
+        for (; offset + 1 < end; offset += 2) {
+            addSample((short) ((buffer[offset] & 0xFF) | (buffer[offset + 1] << 8)));
+        }
+        if (offset < end) {
+            pendingByte = buffer[offset] & 0xFF;
+        }
+    }
+
+    private void addSample(int sample) throws IOException {
+        totalSamples++;
+        if (sample < levelMin[0]) {
+            levelMin[0] = sample;
+        }
+        if (sample > levelMax[0]) {
+            levelMax[0] = sample;
+        }
+        levelSumSquares[0] += sample * sample;
+        levelSamples[0]++;
+        if (++levelInputs[0] == PeakFile.BASE_SAMPLES_PER_PEAK) {
+            emit(0);
+        }
+    }
+
+    /**
+     * 输出一级的峰值，并合并到下一级
+     */
+    private void emit(int level) throws IOException {
+        int min = levelMin[level];
+        int max = levelMax[level];
+        double sumSquares = levelSumSquares[level];
+        long samples = levelSamples[level];
+        int rms = (int) Math.min(Short.MAX_VALUE, Math.round(Math.sqrt(sumSquares / samples)));
+        if (level == 0) {
+            writeEntry(min, max, rms);
+        } else {
+            appendCoarseEntry(level, min, max, rms);
+        }
+        levelCounts[level]++;
+        resetLevel(level);
+
+        int next = level + 1;
+        if (next < PeakFile.LEVEL_COUNT) {
+            levelMin[next] = Math.min(levelMin[next], min);
+            levelMax[next] = Math.max(levelMax[next], max);
+            levelSumSquares[next] += sumSquares;
+            levelSamples[next] += samples;
+            if (++levelInputs[next] == PeakFile.REDUCTION) {
+                emit(next);
+            }
+        }
+    }
+
+    private void resetLevel(int level) {
+        levelMin[level] = Integer.MAX_VALUE;
+        levelMax[level] = Integer.MIN_VALUE;
+        levelSumSquares[level] = 0;
+        levelSamples[level] = 0;
+        levelInputs[level] = 0;
+    }
+
+    private void writeEntry(int min, int max, int rms) throws IOException {
+        PeakFile.putEntry(entry, entryLength, min, max, rms);
+        entryLength += PeakFile.ENTRY_SIZE;
+        if (entryLength == entry.length) {
+            writer.write(entry, 0, entryLength);
+            entryLength = 0;
+        }
+    }
+
+    private void appendCoarseEntry(int level, int min, int max, int rms) {
+        short[] peaks = coarsePeaks[level];
+        int index = (int) levelCounts[level] * PeakFile.ENTRY_SHORTS;
+        if (index + PeakFile.ENTRY_SHORTS > peaks.length) {
+            //粗级别的数据很少，翻倍扩容的次数可以忽略
+            short[] grown = new short[peaks.length * 2];
+            System.arraycopy(peaks, 0, grown, 0, peaks.length);
+            coarsePeaks[level] = peaks = grown;
+        }
+        peaks[index] = (short) min;
+        peaks[index + 1] = (short) max;
+        peaks[index + 2] = (short) rms;
+    }
+
+    /**
+     * 输出最后不满的峰值，写入粗级别数据，回填文件头
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (int level = 0; level < PeakFile.LEVEL_COUNT; level++) {
+                if (levelSamples[level] > 0) {
+                    //不满的部分也输出，同时会合并到下一级
+                    emit(level);
+                }
+            }
+            if (entryLength > 0) {
+                writer.write(entry, 0, entryLength);
+                entryLength = 0;
+            }
+            long[] offsets = new long[PeakFile.LEVEL_COUNT];
+            offsets[0] = PeakFile.HEADER_SIZE;
+            for (int level = 1; level < PeakFile.LEVEL_COUNT; level++) {
+                offsets[level] = writer.position();
+                short[] peaks = coarsePeaks[level];
+                int shorts = (int) levelCounts[level] * PeakFile.ENTRY_SHORTS;
+                for (int i = 0; i < shorts; i += PeakFile.ENTRY_SHORTS) {
+                    writeEntry(peaks[i], peaks[i + 1], peaks[i + 2]);
+                }
+                if (entryLength > 0) {
+                    writer.write(entry, 0, entryLength);
+                    entryLength = 0;
+                }
+            }
+            long frames = totalSamples / format.getChannelCount();
+            byte[] header = PeakFile.createHeader(format, frames, offsets, levelCounts);
+            writer.writeAt(0, header, 0, header.length);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.codec.AdtsFrameIndex;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 不解码的截取和拆分：PCM/WAV 和 ADTS(.aac) 录音
+ * <p>
+ * PCM每一帧长度固定，ADTS每一帧都有帧头，可以从任意一帧开始读，时间换算成文件里的一段字节，
+ * 用 {@link FileChannel#transferTo} 复制过去，wav只需要重新生成文件头。
+ * 耗时只和复制的字节数有关，系统支持时数据不经过Java堆。
+ * 截取位置向下取整到帧：PCM是一个采样帧，ADTS是1024个采样（44.1kHz时约23ms）。
+ * AAC一帧要和前一帧重叠相加才能还原，.aac 截取出来的第一帧解码不准，播放时开头约23ms会有一点渐入。
+ * 输出先写到临时文件，完成后改名。
+ */
+public final class RecordingCutter {
+
+    private RecordingCutter() {
+    }
+
+    /**
+     * 复制 [startMillis, endMillis) 这一段到 output，wav输出wav，裸PCM输出裸PCM，.aac输出.aac
+     *
+     * @param rawFormat 裸PCM文件的格式
+     * @param endMillis 超过录音长度时截到末尾
+     * @return 输出的字节数
+     */
+    public static long cut(File input, AudioFormatSpec rawFormat, long startMillis, long endMillis, File output)
+            throws IOException {
+        if (startMillis < 0 || endMillis < startMillis) {
+            throw new IllegalArgumentException("range: " + startMillis + " ~ " + endMillis);
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        RandomAccessFile source = new RandomAccessFile(input, "r");
+        try {
+            RandomAccessFile target = new RandomAccessFile(temp, "rw");
+            try {
+                target.setLength(0);
+                if (isAdts(input)) {
+                    cutAdts(input, source.getChannel(), startMillis, endMillis, target.getChannel());
+                } else {
+                    cutPcm(source.getChannel(), rawFormat, startMillis, endMillis, target.getChannel());
+                }
+            } catch (IOException | RuntimeException e) {
+                target.close();
+                temp.delete();
+                throw e;
+            }
+            target.close();
+        } finally {
+            source.close();
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("can not rename to " + output);
+        }
+        return output.length();
+    }
+
+    /**
+     * 在 atMillis 处拆成两个文件，原文件不变
+     */
+    public static void split(File input, AudioFormatSpec rawFormat, long atMillis, File first, File second)
+            throws IOException {
+        cut(input, rawFormat, 0, atMillis, first);
+        try {
+            cut(input, rawFormat, atMillis, Long.MAX_VALUE, second);
+        } catch (IOException | RuntimeException e) {
+            first.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * 原地去掉 endMillis 之后的部分，只截断文件、回填wav文件头，不复制数据
+     */
+    public static void truncate(File input, AudioFormatSpec rawFormat, long endMillis) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(input, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            if (isAdts(input)) {
+                AdtsFrameIndex index = AdtsFrameIndex.build(input);
+                channel.truncate(index.offsetOf(frameAt(index, endMillis)));
+            } else if (WavHeader.isWav(channel)) {
+                WavHeader header = WavHeader.read(channel);
+                if (header.getDataOffset() != WavHeader.HEADER_SIZE) {
+                    //其他程序写的wav文件头长度不同，不能原地回填
+                    throw new IOException("unsupported wav layout, use cut instead");
+                }
+                AudioFormatSpec format = header.getFormat();
+                long size = Math.min(header.getDataSize(), bytesAt(format, endMillis));
+                channel.truncate(header.getDataOffset() + size);
+                channel.write(ByteBuffer.wrap(WavHeader.create(format, size)), 0);
+            } else {
+                long size = file.length();
+                size -= size % rawFormat.getBytesPerFrame();
+                channel.truncate(Math.min(size, bytesAt(rawFormat, endMillis)));
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static boolean isAdts(File input) {
+        return input.getName().endsWith(".aac");
+    }
+
+    private static void cutPcm(FileChannel source, AudioFormatSpec rawFormat, long startMillis, long endMillis,
+            FileChannel target) throws IOException {
+        AudioFormatSpec format = rawFormat;
+        long dataOffset = 0;
+        long dataSize = source.size();
+        boolean wav = WavHeader.isWav(source);
+        if (wav) {
+            WavHeader header = WavHeader.read(source);
+            format = header.getFormat();
+            dataOffset = header.getDataOffset();
+            dataSize = header.getDataSize();
+        }
+        dataSize -= dataSize % format.getBytesPerFrame();
+        long start = Math.min(dataSize, bytesAt(format, startMillis));
+        long end = Math.min(dataSize, bytesAt(format, endMillis));
+        long size = end - start;
+        if (wav) {
+            target.write(ByteBuffer.wrap(WavHeader.create(format, size)));
+        }
+        transfer(source, dataOffset + start, size, target);
+        if (wav && (size & 1) != 0) {
+            //奇数长度的data块后面补一个字节
+            target.write(ByteBuffer.wrap(new byte[1]));
+        }
+    }
+
+    private static void cutAdts(File input, FileChannel source, long startMillis, long endMillis,
+            FileChannel target) throws IOException {
+        AdtsFrameIndex index = AdtsFrameIndex.build(input);
+        long start = index.offsetOf(frameAt(index, startMillis));
+        long end = index.offsetOf(frameAt(index, endMillis));
+        transfer(source, start, end - start, target);
+    }
+
+    /**
+     * 时间对应的帧号，超过录音长度时返回帧数
+     */
+    private static int frameAt(AdtsFrameIndex index, long millis) {
+        return millis >= index.getDurationMillis() ? index.getFrameCount() : index.frameAtMillis(millis);
+    }
+
+    /**
+     * 时间对应的字节数，整帧，很大的时间不会溢出
+     */
+    private static long bytesAt(AudioFormatSpec format, long millis) {
+        long seconds = millis / 1000;
+        if (seconds > Long.MAX_VALUE / format.getSampleRate() / format.getBytesPerFrame() / 2) {
+            return Long.MAX_VALUE;
+        }
+        long frames = seconds * format.getSampleRate() + millis % 1000 * format.getSampleRate() / 1000;
+        return frames * format.getBytesPerFrame();
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target)
+            throws IOException {
+        while (count > 0) {
+            long transferred = source.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+}
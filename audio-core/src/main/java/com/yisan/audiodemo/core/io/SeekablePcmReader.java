@@ -0,0 +1,151 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * 可以随机定位的PCM/WAV文件读取
+ * <p>
+ * PCM数据每一帧长度固定，采样位置直接换算成文件偏移，
+ * 跳到任意时间点都是常数时间，不需要从头读文件。
+ * 不是线程安全的，同一时间只能有一个线程调用。
+ */
+public class SeekablePcmReader implements PcmSource {
+
+    private final RandomAccessFile file;
+    private final AudioFormatSpec format;
+    private final long dataOffset;
+    private final long dataSize;
+    private final int bytesPerFrame;
+
+    /**
+     * 当前读取位置，相对于采样数据的开头
+     */
+    private long position;
+
+    private SeekablePcmReader(RandomAccessFile file, AudioFormatSpec format, long dataOffset, long dataSize) {
+        this.file = file;
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.bytesPerFrame = format.getBytesPerFrame();
+        this.dataSize = dataSize - dataSize % bytesPerFrame;
+    }
+
+    /**
+     * 打开文件，wav文件按文件头解析格式，否则当作裸PCM
+     *
+     * @param rawFormat 裸PCM文件的格式
+     */
+    public static SeekablePcmReader open(File target, AudioFormatSpec rawFormat) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "r");
+        try {
+            SeekablePcmReader reader;
+            if (WavHeader.isWav(file.getChannel())) {
+                WavHeader header = WavHeader.read(file.getChannel());
+                reader = new SeekablePcmReader(file, header.getFormat(), header.getDataOffset(),
+                        header.getDataSize());
+            } else {
+                reader = new SeekablePcmReader(file, rawFormat, 0, file.length());
+            }
+            reader.seekToFrame(0);
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    public long getFrameCount() {
+        return dataSize / bytesPerFrame;
+    }
+
+    public long getDurationMillis() {
+        return getFrameCount() * 1000 / format.getSampleRate();
+    }
+
+    public long getPositionFrames() {
+        return position / bytesPerFrame;
+    }
+
+    public long getPositionMillis() {
+        return getPositionFrames() * 1000 / format.getSampleRate();
+    }
+
+    /**
+     * 跳到指定帧，超出范围时取边界
+     */
+    public void seekToFrame(long frame) throws IOException {
+        frame = Math.max(0, Math.min(frame, getFrameCount()));
+        position = frame * bytesPerFrame;
+        file.seek(dataOffset + position);
+    }
+
+    /**
+     * 跳到指定时间
+     */
+    public void seekToMillis(long millis) throws IOException {
+        seekToFrame(millis * format.getSampleRate() / 1000);
+    }
+
+    /**
+     * 跳到总时长的某个比例，0~1
+     */
+    public void seekToFraction(float fraction) throws IOException {
+        seekToFrame((long) (getFrameCount() * (double) Math.max(0, Math.min(1, fraction))));
+    }
+
+    /**
+     * 文件已经在 {@link #open} 时打开，这里什么都不做
+     */
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long remaining = dataSize - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = file.read(buffer, offset, (int) Math.min(length, remaining));
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    /**
+     * 拖动预览：从指定帧读取一段数据，不改变当前读取位置
+     *
+     * @return 读到的字节数，超出文件末尾返回-1
+     */
+    public int readAt(long frame, byte[] buffer, int offset, int length) throws IOException {
+        long start = frame * bytesPerFrame;
+        if (frame < 0 || start >= dataSize) {
+            return -1;
+        }
+        ByteBuffer dst = ByteBuffer.wrap(buffer, offset, (int) Math.min(length, dataSize - start));
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int read = file.getChannel().read(dst, dataOffset + start + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.dsp.VadPcmSink;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 把语音段写成索引文件，和录音同名、扩展名为 .vad
+ * <p>
+ * 文件头8字节：魔数 "VADS"、版本号；之后每个语音段24字节：
+ * 原始录音中的开始时间、结束时间（微秒），输出数据中的字节位置，都是小端 long。
+ * 写入时复用同一个数组，不分配对象。
+ */
+public class SegmentIndexWriter implements VadPcmSink.SegmentListener {
+
+    private static final int MAGIC = 0x53444156; // "VADS"
+    private static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int ENTRY_SIZE = 24;
+
+    private final PcmFileWriter writer;
+    private final byte[] entry = new byte[ENTRY_SIZE];
+    private long segmentCount;
+
+    public SegmentIndexWriter(PcmFileWriter writer) throws IOException {
+        this.writer = writer;
+        putInt(entry, 0, MAGIC);
+        putInt(entry, 4, VERSION);
+        writer.write(entry, 0, HEADER_SIZE);
+    }
+
+    public static SegmentIndexWriter open(File target) throws IOException {
+        PcmFileWriter writer = PcmFileWriter.open(target, 4 * 1024);
+        try {
+            return new SegmentIndexWriter(writer);
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 录音文件对应的语音段索引文件
+     */
+    public static File forRecording(File recording) {
+        String name = recording.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(recording.getParentFile(), name + ".vad");
+    }
+
+    @Override
+    public void onSegment(long startUs, long endUs, long outputOffset) throws IOException {
+        putLong(entry, 0, startUs);
+        putLong(entry, 8, endUs);
+        putLong(entry, 16, outputOffset);
+        writer.write(entry, 0, ENTRY_SIZE);
+        segmentCount++;
+    }
+
+    public long getSegmentCount() {
+        return segmentCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * 读出全部语音段，每3个值一组：开始时间、结束时间、输出位置
+     */
+    public static long[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+            if (getInt(header, 0) != MAGIC) {
+                throw new IOException("not a segment index: " + file);
+            }
+            //崩溃时最后一个语音段可能只写了一半，忽略
+            int count = (int) ((raf.length() - HEADER_SIZE) / ENTRY_SIZE);
+            byte[] data = new byte[count * ENTRY_SIZE];
+            raf.readFully(data);
+            long[] segments = new long[count * 3];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = getLong(data, i * 8);
+            }
+            return segments;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void putInt(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+
+    private static void putLong(byte[] b, int off, long value) {
+        putInt(b, off, (int) value);
+        putInt(b, off + 4, (int) (value >>> 32));
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return (getInt(b, off) & 0xFFFFFFFFL) | ((long) getInt(b, off + 4) << 32);
+    }
+}
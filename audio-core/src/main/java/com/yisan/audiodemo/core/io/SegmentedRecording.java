@@ -0,0 +1,246 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读取 {@link SegmentedWavWriter} 写出的分段录音，必要时先修复
+ * <p>
+ * 只重放日志：正常结束的录音日志以 end 结尾，直接得到分段列表。
+ * 崩溃留下的录音，日志里最后一个分段只有 open 没有 close，
+ * 按文件实际长度回填它的文件头（文件头都没写完就丢掉这个分段），再补上 close 和 end。
+ * 修复的耗时只和日志长度有关，不需要读音频数据。
+ */
+public class SegmentedRecording {
+
+    private final File directory;
+    private final AudioFormatSpec format;
+    private final List<File> chunks;
+    private final List<Long> chunkSizes;
+    private final boolean recovered;
+
+    private SegmentedRecording(File directory, AudioFormatSpec format, List<File> chunks, List<Long> chunkSizes,
+            boolean recovered) {
+        this.directory = directory;
+        this.format = format;
+        this.chunks = chunks;
+        this.chunkSizes = chunkSizes;
+        this.recovered = recovered;
+    }
+
+    /**
+     * 目录是不是一个分段录音
+     */
+    public static boolean isSession(File directory) {
+        return new File(directory, SegmentedWavWriter.JOURNAL_NAME).isFile();
+    }
+
+    /**
+     * 重放日志打开分段录音，没有正常结束的录音会先修复
+     */
+    public static SegmentedRecording open(File directory) throws IOException {
+        File journalFile = new File(directory, SegmentedWavWriter.JOURNAL_NAME);
+        RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+        try {
+            byte[] data = new byte[(int) journal.length()];
+            journal.readFully(data);
+            //崩溃时最后一行可能只写了一半，只认换行结尾的行
+            int complete = data.length;
+            while (complete > 0 && data[complete - 1] != '\n') {
+                complete--;
+            }
+            String[] lines = new String(data, 0, complete, SegmentedWavWriter.UTF_8).split("\n");
+
+            AudioFormatSpec format = null;
+            List<File> chunks = new ArrayList<>();
+            List<Long> sizes = new ArrayList<>();
+            int openIndex = -1;
+            boolean ended = false;
+            for (String line : lines) {
+                String[] fields = line.split(" ");
+                if ("format".equals(fields[0]) && fields.length >= 4) {
+                    int encoding = fields.length >= 6 ? Integer.parseInt(fields[5]) : AudioFormatSpec.ENCODING_PCM_INT;
+                    format = new AudioFormatSpec(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), encoding);
+                } else if ("open".equals(fields[0]) && fields.length >= 2) {
+                    openIndex = Integer.parseInt(fields[1]);
+                } else if ("close".equals(fields[0]) && fields.length >= 3) {
+                    int index = Integer.parseInt(fields[1]);
+                    chunks.add(SegmentedWavWriter.chunkFile(directory, index));
+                    sizes.add(Long.parseLong(fields[2]));
+                    if (index == openIndex) {
+                        openIndex = -1;
+                    }
+                } else if ("end".equals(fields[0])) {
+                    ended = true;
+                }
+            }
+            if (format == null) {
+                throw new IOException("bad journal: " + journalFile);
+            }
+            if (ended) {
+                return new SegmentedRecording(directory, format, chunks, sizes, false);
+            }
+
+            //没有正常结束，修复最后一个分段，补全日志
+            StringBuilder append = new StringBuilder();
+            if (openIndex >= 0) {
+                File chunk = SegmentedWavWriter.chunkFile(directory, openIndex);
+                long size = repairChunk(chunk, format);
+                if (size >= 0) {
+                    chunks.add(chunk);
+                    sizes.add(size);
+                    append.append("close ").append(openIndex).append(' ').append(size).append('\n');
+                }
+            }
+            append.append("end\n");
+            journal.setLength(complete);
+            journal.seek(complete);
+            journal.write(append.toString().getBytes(SegmentedWavWriter.UTF_8));
+            journal.getFD().sync();
+            return new SegmentedRecording(directory, format, chunks, sizes, true);
+        } catch (NumberFormatException e) {
+            throw new IOException("bad journal: " + journalFile, e);
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * 按实际长度回填分段的文件头，去掉不完整的帧
+     *
+     * @return 采样数据长度，分段不可用时返回-1
+     */
+    private static long repairChunk(File chunk, AudioFormatSpec format) throws IOException {
+        if (!chunk.isFile() || chunk.length() < WavHeader.HEADER_SIZE) {
+            return -1;
+        }
+        RandomAccessFile file = new RandomAccessFile(chunk, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            WavHeader header;
+            try {
+                header = WavHeader.read(channel);
+            } catch (IOException e) {
+                //文件头都没写完
+                return -1;
+            }
+            long dataSize = header.getDataSize();
+            channel.truncate(header.getDataOffset() + dataSize);
+            file.seek(0);
+            file.write(WavHeader.create(format, dataSize));
+            channel.force(false);
+            return dataSize;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * 把所有分段首尾相接写成一个wav文件，先写临时文件再改名，合并中途崩溃不会留下坏文件
+     * <p>
+     * 采样数据用 {@link FileChannel#transferTo} 复制，不经过Java堆。合并失败时删除临时文件。
+     */
+    public void mergeTo(File target) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        boolean written = false;
+        try {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+            long dataSize = getDataSize();
+            out.write(WavHeader.create(format, dataSize));
+            long position = WavHeader.HEADER_SIZE;
+            for (int i = 0; i < chunks.size(); i++) {
+                FileInputStream in = new FileInputStream(chunks.get(i));
+                try {
+                    FileChannel inChannel = in.getChannel();
+                    long offset = WavHeader.HEADER_SIZE;
+                    long remaining = chunkSizes.get(i);
+                    while (remaining > 0) {
+                        long count = inChannel.transferTo(offset, remaining, outChannel.position(position));
+                        if (count <= 0) {
+                            throw new IOException("short chunk: " + chunks.get(i));
+                        }
+                        offset += count;
+                        position += count;
+                        remaining -= count;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            if ((dataSize & 1) != 0) {
+                out.seek(position);
+                out.write(0);
+            }
+            outChannel.force(false);
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                temp.delete();
+            }
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("can not rename to " + target);
+        }
+    }
+
+    /**
+     * 删除所有分段和日志
+     * <p>
+     * 先删日志，删到一半崩溃时目录已经不算分段录音，下次启动不会按日志去合并已经删掉的分段
+     */
+    public void delete() {
+        new File(directory, SegmentedWavWriter.JOURNAL_NAME).delete();
+        for (File chunk : chunks) {
+            chunk.delete();
+        }
+        File[] rest = directory.listFiles();
+        if (rest != null) {
+            for (File file : rest) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    public List<File> getChunks() {
+        return chunks;
+    }
+
+    public long getDataSize() {
+        long total = 0;
+        for (Long size : chunkSizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    public long getDurationMillis() {
+        return format.bytesToMillis(getDataSize());
+    }
+
+    /**
+     * 这次打开时是否做了修复，也就是录音没有正常结束
+     */
+    public boolean wasRecovered() {
+        return recovered;
+    }
+}
@@ -0,0 +1,155 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * 分段录音：按固定时长把录音切成多个wav文件，并记录一个很小的日志
+ * <p>
+ * 录音目录下有 chunk-00000.wav、chunk-00001.wav …… 和 journal。
+ * 每个分段写满后回填文件头、同步到存储设备，再在日志里追加一行，之后才打开下一个分段，
+ * 所以进程被杀时最多只有正在写的那个分段没有记录，由 {@link SegmentedRecording} 修复。
+ * <p>
+ * 分段在字节上首尾相接，切换时不丢数据。应该放在 {@link com.yisan.audiodemo.core.AsyncPcmSink} 后面，
+ * 切换分段的同步操作在写线程上进行，采集线程不会等待。
+ */
+public class SegmentedWavWriter implements PcmSink {
+
+    static final String JOURNAL_NAME = "journal";
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final AudioFormatSpec format;
+    private final long chunkBytes;
+    private final BufferPool<ByteBuffer> blockPool;
+    private final FileOutputStream journal;
+
+    private WavWriter current;
+    private int chunkIndex = -1;
+    private long chunkSize;
+    private long totalBytes;
+    private boolean closed;
+
+    /**
+     * @param chunkMillis 每个分段的时长
+     * @param blockPool   写文件的合并缓冲区，可以为null
+     */
+    public SegmentedWavWriter(File directory, AudioFormatSpec format, int chunkMillis,
+            BufferPool<ByteBuffer> blockPool) throws IOException {
+        long bytes = format.millisToBytes(chunkMillis);
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("chunkMillis: " + chunkMillis);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create " + directory);
+        }
+        this.directory = directory;
+        this.format = format;
+        this.chunkBytes = bytes;
+        this.blockPool = blockPool;
+        this.journal = new FileOutputStream(new File(directory, JOURNAL_NAME), true);
+        try {
+            appendJournal(String.format(Locale.US, "format %d %d %d %d %d", format.getSampleRate(),
+                    format.getChannelCount(), format.getBitsPerSample(), chunkMillis, format.getEncoding()));
+            openChunk();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 第几个分段的文件
+     */
+    static File chunkFile(File directory, int index) {
+        return new File(directory, String.format(Locale.US, "chunk-%05d.wav", index));
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (chunkSize == chunkBytes) {
+                //写满了才切换，最后不会留下空的分段
+                closeChunk();
+                openChunk();
+            }
+            int count = (int) Math.min(length, chunkBytes - chunkSize);
+            current.write(buffer, offset, count);
+            chunkSize += count;
+            totalBytes += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void openChunk() throws IOException {
+        chunkIndex++;
+        File file = chunkFile(directory, chunkIndex);
+        current = blockPool != null ? WavWriter.open(file, format, blockPool) : WavWriter.open(file, format);
+        chunkSize = 0;
+        appendJournal("open " + chunkIndex);
+    }
+
+    /**
+     * 先保证分段文件完整落盘，再记录日志
+     */
+    private void closeChunk() throws IOException {
+        WavWriter writer = current;
+        current = null;
+        try {
+            writer.sync();
+        } finally {
+            writer.close();
+        }
+        appendJournal("close " + chunkIndex + " " + chunkSize);
+    }
+
+    private void appendJournal(String line) throws IOException {
+        journal.write((line + "\n").getBytes(UTF_8));
+        journal.getFD().sync();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 已经写入的分段数，包括正在写的
+     */
+    public int getChunkCount() {
+        return chunkIndex + 1;
+    }
+
+    public long getDataSize() {
+        return totalBytes;
+    }
+
+    /**
+     * 关闭最后一个分段，日志以 end 结尾表示录音正常结束
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (current != null) {
+                closeChunk();
+            }
+            appendJournal("end");
+        } finally {
+            if (current != null) {
+                current.close();
+            }
+            journal.close();
+        }
+    }
+}
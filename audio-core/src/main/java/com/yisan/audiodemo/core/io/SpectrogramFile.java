@@ -0,0 +1,191 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 读取 {@link SpectrogramWriter} 生成的频谱图
+ * <p>
+ * 频谱图按固定大小的块（tile）保存，每块 tileColumns 列，每列 binCount 个频点，
+ * 每个频点一个字节，0~255 线性对应 minDb~0dBFS。列在块里连续存放，最后一块不满时补0。
+ * 显示时按块读取，内存只需要一块的大小，和录音长度无关。
+ * <p>
+ * 文件格式（小端）：
+ * <pre>
+ * "SPEC" 版本(int) 采样率(int) 声道数(int) FFT点数(int) 帧移(int) 每块列数(int) 频点数(int) minDb(float) 总列数(long)
+ * 之后是所有块
+ * </pre>
+ */
+public class SpectrogramFile {
+
+    static final int HEADER_SIZE = 44;
+
+    private static final int MAGIC = 0x43455053;
+    private static final int VERSION = 1;
+
+    private final RandomAccessFile file;
+    private final int sampleRate;
+    private final int fftSize;
+    private final int hopSize;
+    private final int tileColumns;
+    private final int binCount;
+    private final float minDb;
+    private final long columnCount;
+
+    private SpectrogramFile(RandomAccessFile file, ByteBuffer header) throws IOException {
+        this.file = file;
+        if (header.getInt() != MAGIC) {
+            throw new IOException("not a spectrogram file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported spectrogram file version: " + version);
+        }
+        sampleRate = header.getInt();
+        header.getInt();
+        fftSize = header.getInt();
+        hopSize = header.getInt();
+        tileColumns = header.getInt();
+        binCount = header.getInt();
+        minDb = header.getFloat();
+        columnCount = header.getLong();
+        if (sampleRate <= 0 || hopSize <= 0 || tileColumns <= 0 || binCount != fftSize / 2 + 1) {
+            throw new IOException("bad spectrogram header");
+        }
+    }
+
+    public static SpectrogramFile open(File target) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            FileChannel channel = file.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("spectrogram file truncated");
+                }
+            }
+            header.flip();
+            return new SpectrogramFile(file, header);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 录音文件对应的频谱图文件：同一个目录，扩展名换成 .spec
+     */
+    public static File forRecording(File recording) {
+        String name = recording.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(recording.getParentFile(), name + ".spec");
+    }
+
+    static byte[] createHeader(AudioFormatSpec format, int fftSize, int hopSize, int tileColumns, float minDb,
+            long columnCount) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(format.getSampleRate());
+        header.putInt(format.getChannelCount());
+        header.putInt(fftSize);
+        header.putInt(hopSize);
+        header.putInt(tileColumns);
+        header.putInt(fftSize / 2 + 1);
+        header.putFloat(minDb);
+        header.putLong(columnCount);
+        return header.array();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    public int getTileColumns() {
+        return tileColumns;
+    }
+
+    /**
+     * 一块的字节数，{@link #readTile} 的缓冲区至少要这么大
+     */
+    public int getTileSize() {
+        return tileColumns * binCount;
+    }
+
+    public long getColumnCount() {
+        return columnCount;
+    }
+
+    public int getTileCount() {
+        return (int) ((columnCount + tileColumns - 1) / tileColumns);
+    }
+
+    /**
+     * 第 column 列对应的FFT窗口开始的时间
+     */
+    public long getColumnTimeMillis(long column) {
+        return column * hopSize * 1000 / sampleRate;
+    }
+
+    /**
+     * 第 bin 个频点的中心频率
+     */
+    public float getBinFrequency(int bin) {
+        return (float) bin * sampleRate / fftSize;
+    }
+
+    /**
+     * 字节值0对应的电平
+     */
+    public float getMinDb() {
+        return minDb;
+    }
+
+    public float toDb(byte value) {
+        return minDb - minDb * (value & 0xFF) / 255f;
+    }
+
+    /**
+     * 读取一块，第 c 列第 b 个频点在 dst[c * binCount + b]
+     *
+     * @return 这一块的有效列数，最后一块可能不满
+     */
+    public int readTile(int tile, byte[] dst) throws IOException {
+        if (tile < 0 || tile >= getTileCount()) {
+            throw new IndexOutOfBoundsException("tile " + tile + " of " + getTileCount());
+        }
+        ByteBuffer data = ByteBuffer.wrap(dst, 0, getTileSize());
+        long position = HEADER_SIZE + (long) tile * getTileSize();
+        FileChannel channel = file.getChannel();
+        while (data.hasRemaining()) {
+            if (channel.read(data, position + data.position()) < 0) {
+                throw new IOException("spectrogram file truncated");
+            }
+        }
+        return (int) Math.min(tileColumns, columnCount - (long) tile * tileColumns);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,217 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.dsp.RealFft;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 边录音边生成频谱图，格式见 {@link SpectrogramFile}
+ * <p>
+ * 多声道先混成单声道，每 hopSize 帧取最近 fftSize 帧加汉宁窗做一次 {@link RealFft}，
+ * 功率换算成dBFS（满幅正弦波为0dB）后量化成一个字节，作为一列。
+ * 攒满一块就追加写入文件，关闭时补齐最后一块并回填文件头。
+ * 内存只有一块加上几个FFT长度的数组，和录音长度无关；每次写入的计算不分配对象。
+ * 只支持16bit PCM。
+ */
+public class SpectrogramWriter implements PcmSink {
+
+    public static final int DEFAULT_FFT_SIZE = 1024;
+    public static final int DEFAULT_HOP_SIZE = 512;
+    /**
+     * 默认每块256列，44.1kHz时约3秒，一块约130KB
+     */
+    public static final int DEFAULT_TILE_COLUMNS = 256;
+    /**
+     * 量化的下限，16bit的量化噪声加上FFT的处理增益在这附近
+     */
+    public static final float MIN_DB = -120f;
+
+    private final PcmFileWriter writer;
+    private final AudioFormatSpec format;
+    private final int fftSize;
+    private final int hopSize;
+    private final int tileColumns;
+    private final int binCount;
+    private final RealFft fft;
+    private final float[] window;
+    /**
+     * 最近 fftSize 个混成单声道的采样，已经除以32768
+     */
+    private final float[] history;
+    private final float[] windowed;
+    private final float[] power;
+    private final byte[] tile;
+    /**
+     * 功率换算成相对满幅正弦波的比例
+     */
+    private final float powerScale;
+
+    private int historyLength;
+    /**
+     * 上一列之后新到的帧数
+     */
+    private int framesSinceColumn;
+    private int tileColumn;
+    private long columnCount;
+
+    /**
+     * 正在混合的一帧
+     */
+    private int frameSum;
+    private int frameChannel;
+    /**
+     * 写入长度是奇数时，留到下一次的低字节
+     */
+    private int pendingByte = -1;
+    private boolean closed;
+
+    /**
+     * @param fftSize 2的幂
+     * @param hopSize 相邻两列相隔的帧数，不大于 fftSize
+     */
+    public SpectrogramWriter(PcmFileWriter writer, AudioFormatSpec format, int fftSize, int hopSize,
+            int tileColumns) throws IOException {
+        if (format.isFloat() || format.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("only 16bit pcm supported: " + format);
+        }
+        if (hopSize <= 0 || hopSize > fftSize) {
+            throw new IllegalArgumentException("hopSize: " + hopSize);
+        }
+        if (tileColumns <= 0) {
+            throw new IllegalArgumentException("tileColumns: " + tileColumns);
+        }
+        this.writer = writer;
+        this.format = format;
+        this.fft = new RealFft(fftSize);
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.tileColumns = tileColumns;
+        this.binCount = fft.getBinCount();
+        this.window = new float[fftSize];
+        double windowSum = 0;
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize));
+            windowSum += window[i];
+        }
+        //振幅为1的正弦波在所在频点的幅度是窗口和的一半
+        this.powerScale = (float) (4 / (windowSum * windowSum));
+        this.history = new float[fftSize];
+        this.windowed = new float[fftSize];
+        this.power = new float[binCount];
+        this.tile = new byte[tileColumns * binCount];
+        //先写占位文件头，块紧跟在后面
+        byte[] header = SpectrogramFile.createHeader(format, fftSize, hopSize, tileColumns, MIN_DB, 0);
+        writer.write(header, 0, header.length);
+    }
+
+    public static SpectrogramWriter open(File target, AudioFormatSpec format) throws IOException {
+        return open(target, format, DEFAULT_FFT_SIZE, DEFAULT_HOP_SIZE, DEFAULT_TILE_COLUMNS);
+    }
+
+    public static SpectrogramWriter open(File target, AudioFormatSpec format, int fftSize, int hopSize,
+            int tileColumns) throws IOException {
+        PcmFileWriter writer = PcmFileWriter.open(target, 16 * 1024);
+        try {
+            return new SpectrogramWriter(writer, format, fftSize, hopSize, tileColumns);
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (pendingByte >= 0 && offset < end) {
+            addSample((short) (pendingByte | (buffer[offset++] << 8)));
+            pendingByte = -1;
+        }
+        //16bit小端
+        for (; offset + 1 < end; offset += 2) {
+            addSample((short) ((buffer[offset] & 0xFF) | (buffer[offset + 1] << 8)));
+        }
+        if (offset < end) {
+            pendingByte = buffer[offset] & 0xFF;
+        }
+    }
+
+    private void addSample(int sample) throws IOException {
+        frameSum += sample;
+        if (++frameChannel < format.getChannelCount()) {
+            return;
+        }
+        float mixed = (float) frameSum / format.getChannelCount() / 32768f;
+        frameSum = 0;
+        frameChannel = 0;
+        if (historyLength == fftSize) {
+            //满了以后每列之间移动 hopSize 个采样，移动的次数和列数相同
+            System.arraycopy(history, hopSize, history, 0, fftSize - hopSize);
+            historyLength -= hopSize;
+        }
+        history[historyLength++] = mixed;
+        framesSinceColumn++;
+        //第一列要攒满 fftSize 帧，之后每 hopSize 帧攒满一次
+        if (historyLength == fftSize) {
+            emitColumn();
+        }
+    }
+
+    private void emitColumn() throws IOException {
+        for (int i = 0; i < fftSize; i++) {
+            windowed[i] = history[i] * window[i];
+        }
+        fft.powerSpectrum(windowed, power);
+        int base = tileColumn * binCount;
+        float scale = 255f / -MIN_DB;
+        for (int bin = 0; bin < binCount; bin++) {
+            float value = power[bin] * powerScale;
+            int level = 0;
+            if (value > 0) {
+                level = (int) ((10 * (float) Math.log10(value) - MIN_DB) * scale + 0.5f);
+                level = Math.max(0, Math.min(255, level));
+            }
+            tile[base + bin] = (byte) level;
+        }
+        framesSinceColumn = 0;
+        columnCount++;
+        if (++tileColumn == tileColumns) {
+            writer.write(tile, 0, tile.length);
+            tileColumn = 0;
+        }
+    }
+
+    /**
+     * 不够一列的尾部补0算作最后一列，补齐最后一块，回填文件头
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (framesSinceColumn > 0) {
+                Arrays.fill(history, historyLength, fftSize, 0f);
+                historyLength = fftSize;
+                emitColumn();
+            }
+            if (tileColumn > 0) {
+                Arrays.fill(tile, tileColumn * binCount, tile.length, (byte) 0);
+                writer.write(tile, 0, tile.length);
+                tileColumn = 0;
+            }
+            byte[] header = SpectrogramFile.createHeader(format, fftSize, hopSize, tileColumns, MIN_DB,
+                    columnCount);
+            writer.writeAt(0, header, 0, header.length);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public long getColumnCount() {
+        return columnCount;
+    }
+}
@@ -0,0 +1,200 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * WAV(RIFF/RF64)文件头
+ * <p>
+ * 写入时固定使用 {@link #HEADER_SIZE} 字节：RIFF头、预留给 ds64 的 JUNK 块、fmt 块、data 块头。
+ * 数据超过4GB时把 RIFF 改成 RF64、JUNK 改成 ds64，文件头长度不变，可以原地回填。
+ */
+public final class WavHeader {
+
+    public static final int HEADER_SIZE = 80;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_IEEE_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int DS64_SIZE = 28;
+    private static final long UINT32_MAX = 0xFFFFFFFFL;
+
+    private final AudioFormatSpec format;
+    private final long dataOffset;
+    private final long dataSize;
+
+    public WavHeader(AudioFormatSpec format, long dataOffset, long dataSize) {
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    /**
+     * 采样数据在文件中的起始位置
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * 采样数据的字节数
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * 生成文件头
+     *
+     * @param dataSize 采样数据的字节数，写入过程中的占位头传0
+     */
+    public static byte[] create(AudioFormatSpec format, long dataSize) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        //RIFF大小不包含开头的8个字节，奇数长度的data块后面有一个填充字节
+        long riffSize = HEADER_SIZE - 8 + dataSize + (dataSize & 1);
+        boolean rf64 = riffSize > UINT32_MAX;
+
+        putTag(header, rf64 ? "RF64" : "RIFF");
+        header.putInt(rf64 ? -1 : (int) riffSize);
+        putTag(header, "WAVE");
+
+        putTag(header, rf64 ? "ds64" : "JUNK");
+        header.putInt(DS64_SIZE);
+        if (rf64) {
+            header.putLong(riffSize);
+            header.putLong(dataSize);
+            header.putLong(dataSize / format.getBytesPerFrame());
+            //table length
+            header.putInt(0);
+        } else {
+            header.position(header.position() + DS64_SIZE);
+        }
+
+        putTag(header, "fmt ");
+        header.putInt(16);
+        header.putShort((short) (format.isFloat() ? FORMAT_IEEE_FLOAT : FORMAT_PCM));
+        header.putShort((short) format.getChannelCount());
+        header.putInt(format.getSampleRate());
+        header.putInt(format.getByteRate());
+        header.putShort((short) format.getBytesPerFrame());
+        header.putShort((short) format.getBitsPerSample());
+
+        putTag(header, "data");
+        header.putInt(rf64 ? -1 : (int) dataSize);
+        return header.array();
+    }
+
+    /**
+     * 文件开头是否是 RIFF/RF64 WAVE 文件头
+     */
+    public static boolean isWav(FileChannel channel) throws IOException {
+        if (channel.size() < 12) {
+            return false;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(12);
+        readFully(channel, chunk, 0);
+        String riff = getTag(chunk);
+        chunk.getInt();
+        return ("RIFF".equals(riff) || "RF64".equals(riff)) && "WAVE".equals(getTag(chunk));
+    }
+
+    /**
+     * 从文件开头解析文件头，支持 RIFF 和 RF64
+     * <p>
+     * data 块长度为0（录音中途崩溃留下的占位头）或超出文件末尾时，按文件实际长度计算
+     */
+    public static WavHeader read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer chunk = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, chunk, 0);
+        String riff = getTag(chunk);
+        chunk.getInt();
+        if (!"RIFF".equals(riff) && !"RF64".equals(riff) || !"WAVE".equals(getTag(chunk))) {
+            throw new IOException("not a wav file");
+        }
+
+        AudioFormatSpec format = null;
+        long ds64DataSize = -1;
+        long position = 12;
+        ByteBuffer body = ByteBuffer.allocate(DS64_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (position + 8 <= fileSize) {
+            chunk.clear().limit(8);
+            readFully(channel, chunk, position);
+            String tag = getTag(chunk);
+            long size = chunk.getInt() & UINT32_MAX;
+            long bodyStart = position + 8;
+            if ("ds64".equals(tag)) {
+                body.clear();
+                readFully(channel, body, bodyStart);
+                body.getLong();
+                ds64DataSize = body.getLong();
+            } else if ("fmt ".equals(tag)) {
+                body.clear().limit(size >= 26 ? 26 : 16);
+                readFully(channel, body, bodyStart);
+                int formatTag = body.getShort() & 0xFFFF;
+                int channels = body.getShort() & 0xFFFF;
+                int sampleRate = body.getInt();
+                body.getInt();
+                body.getShort();
+                int bits = body.getShort() & 0xFFFF;
+                if (formatTag == FORMAT_EXTENSIBLE && size >= 26) {
+                    //WAVE_FORMAT_EXTENSIBLE：子格式GUID的前两个字节就是格式代码
+                    formatTag = body.getShort(24) & 0xFFFF;
+                }
+                if (formatTag == FORMAT_PCM || formatTag == FORMAT_EXTENSIBLE) {
+                    format = new AudioFormatSpec(sampleRate, channels, bits);
+                } else if (formatTag == FORMAT_IEEE_FLOAT && bits == 32) {
+                    format = AudioFormatSpec.pcmFloat(sampleRate, channels);
+                } else {
+                    throw new IOException("unsupported wav format: " + formatTag + ", " + bits + "bit");
+                }
+            } else if ("data".equals(tag)) {
+                if (format == null) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                long available = fileSize - bodyStart;
+                long dataSize = size == UINT32_MAX && ds64DataSize >= 0 ? ds64DataSize : size;
+                if (dataSize == 0 || dataSize > available) {
+                    dataSize = available;
+                }
+                //去掉不完整的帧
+                dataSize -= dataSize % format.getBytesPerFrame();
+                return new WavHeader(format, bodyStart, dataSize);
+            }
+            position = bodyStart + size + (size & 1);
+        }
+        throw new IOException("data chunk not found");
+    }
+
+    private static void putTag(ByteBuffer buffer, String tag) {
+        for (int i = 0; i < 4; i++) {
+            buffer.put((byte) tag.charAt(i));
+        }
+    }
+
+    private static String getTag(ByteBuffer buffer) {
+        char[] tag = new char[4];
+        for (int i = 0; i < 4; i++) {
+            tag[i] = (char) (buffer.get() & 0xFF);
+        }
+        return new String(tag);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,93 @@
+package com.yisan.audiodemo.core.io;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 流式写入WAV文件
+ * <p>
+ * 先写一个占位文件头，采样数据直接追加到文件，关闭时按实际长度原地回填文件头，
+ * 不需要把整个录音放在内存里，也不需要录完再转换一遍。
+ */
+public class WavWriter implements PcmSink {
+
+    private final PcmFileWriter writer;
+    private final AudioFormatSpec format;
+    private boolean closed;
+
+    public WavWriter(PcmFileWriter writer, AudioFormatSpec format) throws IOException {
+        this.writer = writer;
+        this.format = format;
+        byte[] header = WavHeader.create(format, 0);
+        writer.write(header, 0, header.length);
+    }
+
+    public static WavWriter open(File target, AudioFormatSpec format) throws IOException {
+        return open(PcmFileWriter.open(target), format);
+    }
+
+    /**
+     * 写文件的合并缓冲区从缓冲区池借出
+     */
+    public static WavWriter open(File target, AudioFormatSpec format, BufferPool<ByteBuffer> blockPool)
+            throws IOException {
+        return open(PcmFileWriter.open(target, blockPool), format);
+    }
+
+    private static WavWriter open(PcmFileWriter writer, AudioFormatSpec format) throws IOException {
+        try {
+            return new WavWriter(writer, format);
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        writer.write(buffer, offset, length);
+    }
+
+    /**
+     * 已经写入的采样数据字节数
+     */
+    public long getDataSize() {
+        return writer.position() - WavHeader.HEADER_SIZE;
+    }
+
+    /**
+     * 按当前长度回填文件头并同步到存储设备，之后即使崩溃，已经写入的部分也是完整的wav文件
+     */
+    public void sync() throws IOException {
+        byte[] header = WavHeader.create(format, getDataSize());
+        writer.writeAt(0, header, 0, header.length);
+        writer.sync();
+    }
+
+    public AudioFormatSpec getFormat() {
+        return format;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long dataSize = getDataSize();
+            if ((dataSize & 1) != 0) {
+                //RIFF块要求偶数长度
+                writer.write(new byte[1], 0, 1);
+            }
+            byte[] header = WavHeader.create(format, dataSize);
+            writer.writeAt(0, header, 0, header.length);
+        } finally {
+            writer.close();
+        }
+    }
+}
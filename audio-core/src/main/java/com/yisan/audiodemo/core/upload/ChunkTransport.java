@@ -0,0 +1,25 @@
+package com.yisan.audiodemo.core.upload;
+
+import java.io.IOException;
+
+/**
+ * 把一段数据发给服务端，服务端按偏移量拼接，返回已经确认收到的总字节数
+ * <p>
+ * 只会被上传线程调用，实现类不需要考虑线程安全。
+ * 网络错误抛出 {@link IOException} 会重试，不能重试的错误抛出 {@link UploadException}。
+ */
+public interface ChunkTransport {
+
+    /**
+     * 查询服务端已经收到的字节数，用于失败后从断点继续
+     */
+    long queryOffset() throws IOException;
+
+    /**
+     * 从 offset 开始写入一段数据
+     *
+     * @param last 最后一段，服务端收到后结束这次上传，length 可以是0
+     * @return 服务端确认收到的总字节数，服务端的位置和 offset 不一致时返回服务端的位置
+     */
+    long upload(long offset, byte[] buffer, int bufferOffset, int length, boolean last) throws IOException;
+}
@@ -0,0 +1,167 @@
+package com.yisan.audiodemo.core.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基于 {@link HttpURLConnection} 的分块上传，每个录音对应一个URL
+ * <p>
+ * 协议：
+ * <ul>
+ * <li>HEAD：响应头 Upload-Offset 是服务端已经收到的字节数，404表示还没有数据</li>
+ * <li>PUT：请求头 Upload-Offset 是这段数据的起始位置，最后一段带 Upload-Complete: 1；
+ * 成功返回2xx，响应头 Upload-Offset 是收到后的总字节数</li>
+ * <li>起始位置和服务端不一致时返回409，响应头 Upload-Offset 是服务端的位置</li>
+ * </ul>
+ * 响应体读完后再关闭，连接可以复用，不用每一块都重新握手。
+ */
+public class HttpChunkTransport implements ChunkTransport {
+
+    public static final String HEADER_OFFSET = "Upload-Offset";
+    public static final String HEADER_COMPLETE = "Upload-Complete";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    /**
+     * 一块数据的最长等待时间，要小于上传队列能缓冲的时长
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+    private final URL url;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final byte[] drainBuffer = new byte[512];
+
+    public HttpChunkTransport(URL url) {
+        this(url, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout 连接超时，毫秒
+     * @param readTimeout    读取响应超时，毫秒
+     */
+    public HttpChunkTransport(URL url, int connectTimeout, int readTimeout) {
+        this.url = url;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * 每个请求都带上的请求头，例如音频格式、鉴权信息，在开始上传之前设置
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    @Override
+    public long queryOffset() throws IOException {
+        HttpURLConnection connection = open("HEAD");
+        try {
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                finish(connection, code);
+                return 0;
+            }
+            if (code / 100 != 2) {
+                finish(connection, code);
+                throw statusError(code);
+            }
+            long offset = parseOffset(connection, -1);
+            finish(connection, code);
+            return offset;
+        } catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public long upload(long offset, byte[] buffer, int bufferOffset, int length, boolean last) throws IOException {
+        HttpURLConnection connection = open("PUT");
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setRequestProperty(HEADER_OFFSET, Long.toString(offset));
+            if (last) {
+                connection.setRequestProperty(HEADER_COMPLETE, "1");
+            }
+            OutputStream out = connection.getOutputStream();
+            out.write(buffer, bufferOffset, length);
+            out.close();
+            int code = connection.getResponseCode();
+            long acknowledged;
+            if (code / 100 == 2) {
+                //没有返回位置时认为全部收到
+                acknowledged = parseOffset(connection, offset + length);
+            } else if (code == HttpURLConnection.HTTP_CONFLICT) {
+                acknowledged = parseOffset(connection, -1);
+            } else {
+                finish(connection, code);
+                throw statusError(code);
+            }
+            finish(connection, code);
+            return acknowledged;
+        } catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private HttpURLConnection open(String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return connection;
+    }
+
+    /**
+     * @param fallback 没有这个响应头时的返回值，小于0表示必须有
+     */
+    private static long parseOffset(HttpURLConnection connection, long fallback) throws IOException {
+        String value = connection.getHeaderField(HEADER_OFFSET);
+        if (value == null) {
+            if (fallback < 0) {
+                throw new UploadException("missing " + HEADER_OFFSET, connection.getResponseCode(), true);
+            }
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new UploadException("bad " + HEADER_OFFSET + ": " + value, connection.getResponseCode(), false);
+        }
+    }
+
+    /**
+     * 读完并关闭响应体，连接放回连接池
+     */
+    private void finish(HttpURLConnection connection, int code) throws IOException {
+        InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return;
+        }
+        try {
+            while (in.read(drainBuffer) != -1) {
+                //丢弃
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static UploadException statusError(int code) {
+        boolean retryable = code >= 500 || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT || code == 429;
+        return new UploadException("http " + code, code, retryable);
+    }
+}
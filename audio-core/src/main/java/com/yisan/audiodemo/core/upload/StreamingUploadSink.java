@@ -0,0 +1,516 @@
+package com.yisan.audiodemo.core.upload;
+
+import com.yisan.audiodemo.core.PcmSink;
+import com.yisan.audiodemo.core.buffer.PcmRingBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 边录边上传：采集到的数据按固定大小分块，由独立的上传线程发给服务端
+ * <p>
+ * 采集线程只把数据复制进当前块，写满后放进无锁的环形缓冲区，永远不会等待网络。
+ * 上传失败时按指数退避重试，重试前先向服务端查询已经收到的位置，从断点继续。
+ * 网络长时间不通时，上传线程把排队的块转存到磁盘上的暂存文件，内存占用不超过环形缓冲区的大小；
+ * 只有一个请求卡住、来不及转存时环形缓冲区才会写满，这时丢弃数据并计入溢出次数。
+ * <p>
+ * {@link #close()} 交出最后一块后立即返回，不等上传完成，结果通过 {@link Listener} 通知。
+ * 延迟统计的是每一块最后一个字节从采集到服务端确认的时间。
+ */
+public class StreamingUploadSink implements PcmSink {
+
+    public interface Listener {
+
+        /**
+         * 上传线程：全部数据已经确认，或者放弃上传
+         *
+         * @param error 成功时为null
+         */
+        void onUploadFinished(StreamingUploadSink sink, IOException error);
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_QUEUE_CHUNKS = 32;
+
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    /**
+     * 录音结束后连续失败这么多次就放弃，录音过程中一直重试
+     */
+    private static final int MAX_ATTEMPTS_AFTER_CLOSE = 10;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    /**
+     * 暂存文件里每块前面的记录头：采集时间8字节，长度4字节
+     */
+    private static final int SPOOL_HEADER_SIZE = 12;
+
+    private final ChunkTransport transport;
+    private final File spoolFile;
+    private final Listener listener;
+    private final int chunkSize;
+    private final PcmRingBuffer ring;
+    /**
+     * 每一块写满的时间，和环形缓冲区的槽位一一对应
+     */
+    private final long[] captureNanos;
+    private final int mask;
+    private final Thread uploadThread;
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
+
+    //采集线程
+    private final byte[] current;
+    private int currentLength;
+    private long chunksOffered;
+
+    //上传线程
+    private final byte[] sending;
+    private int sendingLength = -1;
+    private long sendingOffset;
+    private long sendingNanos;
+    private long chunksPolled;
+    private boolean completeSent;
+    private boolean resync;
+    private RandomAccessFile spool;
+    private long spoolReadPosition;
+    private long spoolWritePosition;
+    private final byte[] spoolHeader = new byte[SPOOL_HEADER_SIZE];
+    private final Random random = new Random();
+
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private volatile IOException failure;
+
+    private volatile long capturedBytes;
+    private volatile long overrunCount;
+    private volatile long droppedBytes;
+    private volatile long acknowledgedBytes;
+    private volatile long spilledBytes;
+    private volatile long retryCount;
+    private volatile long acknowledgedChunks;
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+    private volatile long totalLagNanos;
+
+    public StreamingUploadSink(ChunkTransport transport, File spoolFile, Listener listener) {
+        this(transport, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CHUNKS, spoolFile, listener);
+    }
+
+    /**
+     * 创建后上传线程立即启动
+     *
+     * @param chunkSize   每一块的字节数，也是一个请求的大小
+     * @param queueChunks 内存里最多排队的块数，决定一个请求卡住时能扛多久
+     * @param spoolFile   网络不通时转存数据的文件，上传结束后删除
+     */
+    public StreamingUploadSink(ChunkTransport transport, int chunkSize, int queueChunks, File spoolFile,
+                               Listener listener) {
+        this.transport = transport;
+        this.chunkSize = chunkSize;
+        this.spoolFile = spoolFile;
+        this.listener = listener;
+        this.ring = new PcmRingBuffer(queueChunks, chunkSize);
+        this.captureNanos = new long[ring.capacity()];
+        this.mask = ring.capacity() - 1;
+        this.current = new byte[chunkSize];
+        this.sending = new byte[chunkSize];
+        this.uploadThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                uploadLoop();
+            }
+        }, "pcm-upload");
+        uploadThread.start();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("sink closed");
+        }
+        //上传失败不影响录音，数据直接丢掉
+        if (finished) {
+            return;
+        }
+        while (length > 0) {
+            int count = Math.min(length, chunkSize - currentLength);
+            System.arraycopy(buffer, offset, current, currentLength, count);
+            currentLength += count;
+            offset += count;
+            length -= count;
+            if (currentLength == chunkSize) {
+                offerCurrent();
+            }
+        }
+    }
+
+    /**
+     * 采集线程：把当前块放进队列，队列满了就丢弃
+     */
+    private void offerCurrent() {
+        //先确认有空位再写时间，队列满时对应的槽位可能还没被上传线程取走
+        if (ring.size() < ring.capacity()) {
+            captureNanos[(int) chunksOffered & mask] = System.nanoTime();
+            //只有采集线程放入，空位不会变少，一定能放进去
+            ring.offer(current, 0, currentLength);
+            chunksOffered++;
+            capturedBytes += currentLength;
+            LockSupport.unpark(uploadThread);
+        } else {
+            overrunCount++;
+            droppedBytes += currentLength;
+        }
+        currentLength = 0;
+    }
+
+    /**
+     * 交出最后不满一块的数据，不等待上传完成
+     * <p>
+     * 队列满时等上传线程把排队的块转存到文件，腾出位置
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (currentLength > 0) {
+            while (ring.size() >= ring.capacity() && !finished) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            if (!finished) {
+                offerCurrent();
+            }
+        }
+        closed = true;
+        LockSupport.unpark(uploadThread);
+    }
+
+    /**
+     * 放弃上传，上传线程在当前请求结束后退出
+     */
+    public void cancel() {
+        cancelled = true;
+        LockSupport.unpark(uploadThread);
+    }
+
+    /**
+     * 等待上传结束
+     *
+     * @return 超时返回false
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        return finishedLatch.await(timeout, unit);
+    }
+
+    private void uploadLoop() {
+        IOException error = null;
+        int failures = 0;
+        try {
+            while (true) {
+                if (cancelled) {
+                    throw new IOException("upload cancelled");
+                }
+                spillBacklog();
+                //先读关闭标记再看队列，关闭之后采集线程不会再放入数据
+                boolean done = closed;
+                if (sendingLength < 0 && !takeNext()) {
+                    if (!done) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        continue;
+                    }
+                    if (completeSent) {
+                        break;
+                    }
+                    //数据正好是整块时最后一块没有带结束标记，补一个空的结束请求
+                    sendingOffset = acknowledgedBytes;
+                    sendingLength = 0;
+                    sendingNanos = 0;
+                }
+                boolean last = done && ring.isEmpty() && spoolReadPosition == spoolWritePosition;
+                try {
+                    if (resync) {
+                        //上次失败时服务端可能已经收到了，先对齐位置
+                        acknowledge(transport.queryOffset(), false);
+                        resync = false;
+                        if (sendingLength < 0) {
+                            continue;
+                        }
+                    }
+                    acknowledge(transport.upload(sendingOffset, sending, 0, sendingLength, last), last);
+                    failures = 0;
+                } catch (UploadException e) {
+                    if (!e.isRetryable()) {
+                        throw e;
+                    }
+                    failures = retry(failures, e);
+                } catch (IOException e) {
+                    failures = retry(failures, e);
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException("upload fail", e);
+        } finally {
+            closeSpool();
+            failure = error;
+            finished = true;
+            finishedLatch.countDown();
+        }
+        if (listener != null) {
+            listener.onUploadFinished(this, error);
+        }
+    }
+
+    /**
+     * 按服务端确认的位置推进
+     *
+     * @param complete 服务端确认了结束标记
+     */
+    private void acknowledge(long acknowledged, boolean complete) throws IOException {
+        if (acknowledged < sendingOffset) {
+            //确认过的数据已经丢掉，没办法重发
+            throw new UploadException("server offset " + acknowledged + " behind " + sendingOffset, 0, false);
+        }
+        long end = sendingOffset + sendingLength;
+        if (acknowledged < end) {
+            //服务端只收到了一部分，从确认的位置继续
+            int skip = (int) (acknowledged - sendingOffset);
+            System.arraycopy(sending, skip, sending, 0, sendingLength - skip);
+            sendingLength -= skip;
+            sendingOffset = acknowledged;
+            acknowledgedBytes = acknowledged;
+            return;
+        }
+        if (sendingLength == 0 && !complete) {
+            //空的结束请求只有真正发出去才算完成
+            return;
+        }
+        if (sendingNanos != 0) {
+            long lag = System.nanoTime() - sendingNanos;
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+            //只有上传线程修改
+            totalLagNanos += lag;
+            acknowledgedChunks++;
+        }
+        acknowledgedBytes = end;
+        sendingLength = -1;
+        if (complete) {
+            completeSent = true;
+        }
+    }
+
+    /**
+     * 退避等待，等待期间继续把积压的块转存到文件
+     *
+     * @return 连续失败的次数
+     */
+    private int retry(int failures, IOException e) throws IOException {
+        failures++;
+        retryCount++;
+        resync = true;
+        if (closed && failures >= MAX_ATTEMPTS_AFTER_CLOSE) {
+            throw e;
+        }
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+        //随机打散，避免大量设备在网络恢复时同时重试
+        backoff = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+        long remaining;
+        while (!cancelled && (remaining = deadline - System.nanoTime()) > 0) {
+            spillBacklog();
+            LockSupport.parkNanos(this, Math.min(remaining, IDLE_PARK_NANOS));
+        }
+        return failures;
+    }
+
+    /**
+     * 取出下一块：先取暂存文件里的，再取内存队列里的
+     */
+    private boolean takeNext() throws IOException {
+        if (spoolReadPosition < spoolWritePosition) {
+            spool.seek(spoolReadPosition);
+            spool.readFully(spoolHeader);
+            sendingNanos = getLong(spoolHeader, 0);
+            sendingLength = getInt(spoolHeader, 8);
+            spool.readFully(sending, 0, sendingLength);
+            spoolReadPosition += SPOOL_HEADER_SIZE + sendingLength;
+            if (spoolReadPosition == spoolWritePosition) {
+                //全部取完，文件从头开始用
+                spool.setLength(0);
+                spoolReadPosition = 0;
+                spoolWritePosition = 0;
+            }
+        } else {
+            if (ring.isEmpty()) {
+                return false;
+            }
+            sendingNanos = captureNanos[(int) chunksPolled & mask];
+            sendingLength = ring.poll(sending, 0, chunkSize);
+            chunksPolled++;
+        }
+        sendingOffset = acknowledgedBytes;
+        return true;
+    }
+
+    /**
+     * 队列超过一半时把排在前面的块转存到文件，采集线程始终有空位
+     */
+    private void spillBacklog() throws IOException {
+        while (ring.size() > ring.capacity() / 2) {
+            if (spool == null) {
+                spool = new RandomAccessFile(spoolFile, "rw");
+                spool.setLength(0);
+            }
+            spool.seek(spoolWritePosition);
+            ring.drainTo(spoolWriter);
+            chunksPolled++;
+        }
+    }
+
+    /**
+     * 把一块追加到暂存文件，记录头带上采集时间
+     */
+    private final PcmSink spoolWriter = new PcmSink() {
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            putLong(spoolHeader, 0, captureNanos[(int) chunksPolled & mask]);
+            putInt(spoolHeader, 8, length);
+            spool.write(spoolHeader);
+            spool.write(buffer, offset, length);
+            spoolWritePosition += SPOOL_HEADER_SIZE + length;
+            //只有上传线程修改
+            spilledBytes += length;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private void closeSpool() {
+        if (spool == null) {
+            return;
+        }
+        try {
+            spool.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        spool = null;
+        spoolFile.delete();
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void putLong(byte[] buffer, int offset, long value) {
+        putInt(buffer, offset, (int) (value >> 32));
+        putInt(buffer, offset + 4, (int) value);
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | buffer[offset + 3] & 0xFF;
+    }
+
+    private static long getLong(byte[] buffer, int offset) {
+        return (long) getInt(buffer, offset) << 32 | getInt(buffer, offset + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 采集线程交给上传队列的字节数
+     */
+    public long getCapturedBytes() {
+        return capturedBytes;
+    }
+
+    /**
+     * 服务端确认收到的字节数
+     */
+    public long getAcknowledgedBytes() {
+        return acknowledgedBytes;
+    }
+
+    /**
+     * 还没有确认的字节数，包括内存队列和暂存文件里的
+     */
+    public long getBacklogBytes() {
+        return capturedBytes - acknowledgedBytes;
+    }
+
+    /**
+     * 转存到暂存文件的字节数
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * 队列写满导致丢数据的次数
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    public long getAcknowledgedChunkCount() {
+        return acknowledgedChunks;
+    }
+
+    /**
+     * 最近一块从采集到确认的时间
+     */
+    public long getLastLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLagNanos);
+    }
+
+    public long getMaxLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+    }
+
+    public long getMeanLagMillis() {
+        long chunks = acknowledgedChunks;
+        return chunks == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLagNanos / chunks);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 放弃上传的原因，成功或者还没有结束时为null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingUploadSink{captured=" + capturedBytes
+                + ", acked=" + acknowledgedBytes
+                + ", spilled=" + spilledBytes
+                + ", dropped=" + droppedBytes
+                + ", retries=" + retryCount
+                + ", lag last/mean/max=" + getLastLagMillis() + "/" + getMeanLagMillis() + "/" + getMaxLagMillis()
+                + "ms}";
+    }
+}
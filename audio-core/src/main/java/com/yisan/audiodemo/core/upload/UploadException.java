@@ -0,0 +1,34 @@
+package com.yisan.audiodemo.core.upload;
+
+import java.io.IOException;
+
+/**
+ * 服务端返回的错误，带上HTTP状态码和是否值得重试
+ */
+public class UploadException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final boolean retryable;
+
+    /**
+     * @param statusCode HTTP状态码，不是服务端返回的错误时为0
+     */
+    public UploadException(String message, int statusCode, boolean retryable) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryable = retryable;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 服务端暂时不可用（5xx、408、429）时重试，请求本身有问题时重试也没有用
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
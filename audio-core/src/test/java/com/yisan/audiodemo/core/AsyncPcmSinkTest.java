@@ -0,0 +1,187 @@
+package com.yisan.audiodemo.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AsyncPcmSinkTest {
+
+    /**
+     * 和录音页面一致：每次读取2048字节，写线程队列64个槽位
+     */
+    private static final int BUFFER_SIZE = 2048;
+    private static final int SLOTS = 64;
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final long STALL_MILLIS = 200;
+
+    /**
+     * 下游卡住200ms（fsync、闪存GC），采集线程照常按实时速度写入，一帧都不能丢
+     */
+    @Test
+    public void writerStallLosesNoFrames() throws Exception {
+        StallingSink downstream = new StallingSink(STALL_MILLIS);
+        AsyncPcmSink sink = new AsyncPcmSink(downstream, SLOTS, BUFFER_SIZE);
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(FORMAT.bytesToMillis(BUFFER_SIZE));
+        //录够卡顿时长的3倍，卡顿发生在第一次写入
+        int buffers = (int) (STALL_MILLIS * 3 / FORMAT.bytesToMillis(BUFFER_SIZE));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long maxWriteNanos = 0;
+        long next = System.nanoTime();
+        for (int i = 0; i < buffers; i++) {
+            fill(buffer, i);
+            long start = System.nanoTime();
+            sink.write(buffer, 0, buffer.length);
+            maxWriteNanos = Math.max(maxWriteNanos, System.nanoTime() - start);
+            expected.write(buffer);
+            next += intervalNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        assertTrue("queue never backed up", sink.getMaxQueueDepth() > 1);
+        sink.close();
+
+        assertEquals(0, sink.getOverrunCount());
+        assertEquals(0, sink.getDroppedBytes());
+        assertEquals(expected.size(), sink.getBytesWritten());
+        assertArrayEquals(expected.toByteArray(), downstream.data.toByteArray());
+        assertTrue(downstream.closed);
+        //采集线程不会等写线程
+        assertTrue("write blocked for " + maxWriteNanos + "ns",
+                maxWriteNanos < TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS / 2));
+    }
+
+    /**
+     * 缓冲区写满时丢弃新数据并计数，已经排队的数据照常写完
+     */
+    @Test
+    public void overrunDropsNewDataAndCountsIt() throws Exception {
+        final CountDownLatch resume = new CountDownLatch(1);
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        AsyncPcmSink sink = new AsyncPcmSink(new PcmSink() {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                written.write(buffer, offset, length);
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 4, 16);
+        byte[] buffer = new byte[16];
+        for (int i = 0; i < 10; i++) {
+            sink.write(buffer, 0, buffer.length);
+        }
+        resume.countDown();
+        sink.close();
+
+        //写线程卡在第一个槽位上，槽位写完才会腾出来，4个槽位之后的都被丢弃
+        assertEquals(6, sink.getOverrunCount());
+        assertEquals(6 * 16, sink.getDroppedBytes());
+        assertEquals(4 * 16, sink.getBytesWritten());
+        assertEquals(4 * 16, written.size());
+    }
+
+    @Test
+    public void downstreamFailureIsReported() throws Exception {
+        AsyncPcmSink sink = new AsyncPcmSink(new PcmSink() {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 4, 16);
+        sink.write(new byte[16], 0, 16);
+        try {
+            sink.close();
+            fail("failure not reported");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * 等待写线程时被中断，写线程退出后仍然归还池里的槽位
+     */
+    @Test
+    public void interruptedCloseStillReturnsPooledSlots() throws Exception {
+        BufferPool<byte[]> pool = BufferPool.heap(BUFFER_SIZE, SLOTS, true);
+        AsyncPcmSink sink = new AsyncPcmSink(new StallingSink(STALL_MILLIS), 8, pool);
+        sink.write(new byte[BUFFER_SIZE], 0, BUFFER_SIZE);
+        Thread.currentThread().interrupt();
+        try {
+            sink.close();
+            fail("close was not interrupted");
+        } catch (InterruptedIOException expected) {
+            //写线程还卡在下游
+        } finally {
+            Thread.interrupted();
+        }
+        long deadline = System.currentTimeMillis() + STALL_MILLIS * 10;
+        while (pool.getLeasedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    /**
+     * 每个缓冲区写入序号，乱序或丢失都能比较出来
+     */
+    private static void fill(byte[] buffer, int index) {
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = (byte) (index * 31 + i);
+        }
+    }
+
+    /**
+     * 第一次写入时卡住一段时间，模拟闪存GC
+     */
+    private static class StallingSink implements PcmSink {
+
+        private final long stallMillis;
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        volatile boolean closed;
+        private boolean stalled;
+
+        StallingSink(long stallMillis) {
+            this.stallMillis = stallMillis;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (!stalled) {
+                stalled = true;
+                try {
+                    Thread.sleep(stallMillis);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            data.write(buffer, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
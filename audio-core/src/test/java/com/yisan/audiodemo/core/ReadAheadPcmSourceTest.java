@@ -0,0 +1,168 @@
+package com.yisan.audiodemo.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.yisan.audiodemo.core.buffer.BufferPool;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ReadAheadPcmSourceTest {
+
+    private static final int BUFFER_SIZE = 2048;
+    private static final int SLOTS = 8;
+
+    @Test
+    public void deliversUpstreamDataInOrder() throws IOException {
+        BufferPool<byte[]> pool = BufferPool.heap(BUFFER_SIZE, SLOTS, true);
+        CountingSource upstream = new CountingSource(100, null);
+        ReadAheadPcmSource source = new ReadAheadPcmSource(upstream, SLOTS, pool);
+        source.start();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = source.read(buffer, 0, buffer.length)) >= 0) {
+            read.write(buffer, 0, length);
+        }
+        source.close();
+
+        assertArrayEquals(upstream.expected(), read.toByteArray());
+        assertTrue(upstream.closed);
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    /**
+     * 播放到一半停止，读线程还在预读
+     */
+    @Test
+    public void closeBeforeEndReturnsPooledSlots() throws IOException {
+        BufferPool<byte[]> pool = BufferPool.heap(BUFFER_SIZE, SLOTS, true);
+        CountingSource upstream = new CountingSource(Integer.MAX_VALUE, null);
+        ReadAheadPcmSource source = new ReadAheadPcmSource(upstream, SLOTS, pool);
+        source.start();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int i = 0; i < 10; i++) {
+            while (source.read(buffer, 0, buffer.length) == 0) {
+                //等读线程
+            }
+        }
+        source.close();
+        assertTrue(upstream.closed);
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    /**
+     * 等待读线程时被中断（页面销毁时关闭线程池），读线程退出后仍然归还池里的槽位
+     */
+    @Test
+    public void interruptedCloseStillReturnsPooledSlots() throws Exception {
+        BufferPool<byte[]> pool = BufferPool.heap(BUFFER_SIZE, SLOTS, true);
+        CountDownLatch stall = new CountDownLatch(1);
+        CountingSource upstream = new CountingSource(Integer.MAX_VALUE, stall);
+        ReadAheadPcmSource source = new ReadAheadPcmSource(upstream, SLOTS, pool);
+        source.start();
+        Thread.currentThread().interrupt();
+        try {
+            source.close();
+            fail("close was not interrupted");
+        } catch (InterruptedIOException expected) {
+            //读线程还卡在上游
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(SLOTS, pool.getLeasedCount());
+        stall.countDown();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pool.getLeasedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getLeasedCount());
+        assertTrue(upstream.closed);
+    }
+
+    /**
+     * 读线程已经读完退出，之后关闭时被中断，也要归还
+     */
+    @Test
+    public void interruptedCloseAfterEndReturnsPooledSlots() throws Exception {
+        BufferPool<byte[]> pool = BufferPool.heap(BUFFER_SIZE, SLOTS, true);
+        CountingSource upstream = new CountingSource(2, null);
+        ReadAheadPcmSource source = new ReadAheadPcmSource(upstream, SLOTS, pool);
+        source.start();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!upstream.closed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.currentThread().interrupt();
+        try {
+            source.close();
+        } catch (InterruptedIOException e) {
+            //读线程可能还没完全退出
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    /**
+     * 产生 buffers 个带序号的缓冲区，stall 不为null时第一次读取等它放行
+     */
+    private static class CountingSource implements PcmSource {
+
+        private final int buffers;
+        private final CountDownLatch stall;
+        private int index;
+        volatile boolean closed;
+
+        CountingSource(int buffers, CountDownLatch stall) {
+            this.buffers = buffers;
+            this.stall = stall;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (stall != null && index == 0) {
+                try {
+                    stall.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (index == buffers) {
+                return -1;
+            }
+            fill(buffer, offset, length, index++);
+            return length;
+        }
+
+        byte[] expected() {
+            byte[] all = new byte[buffers * BUFFER_SIZE];
+            for (int i = 0; i < buffers; i++) {
+                fill(all, i * BUFFER_SIZE, BUFFER_SIZE, i);
+            }
+            return all;
+        }
+
+        private static void fill(byte[] buffer, int offset, int length, int index) {
+            for (int i = 0; i < length; i++) {
+                buffer[offset + i] = (byte) (index * 31 + i);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
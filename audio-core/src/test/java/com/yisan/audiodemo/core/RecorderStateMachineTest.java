@@ -0,0 +1,204 @@
+package com.yisan.audiodemo.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+public class RecorderStateMachineTest {
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private final FakeDriver driver = new FakeDriver();
+    private final List<Integer> states = new ArrayList<>();
+    private final List<Exception> errors = new ArrayList<>();
+    private final RecorderStateMachine machine = new RecorderStateMachine(executor, driver,
+            new RecorderStateMachine.Listener() {
+                @Override
+                public void onStateChanged(int state, Exception error) {
+                    states.add(state);
+                    errors.add(error);
+                }
+            });
+
+    @Test
+    public void startAndStop() {
+        machine.requestStart();
+        executor.runAll();
+        assertEquals(RecorderStateMachine.STATE_RECORDING, machine.getState());
+        machine.requestStop();
+        executor.runAll();
+
+        assertEquals(RecorderStateMachine.STATE_IDLE, machine.getState());
+        assertEquals("start stop ", driver.calls.toString());
+        assertStates(RecorderStateMachine.STATE_STARTING, RecorderStateMachine.STATE_RECORDING,
+                RecorderStateMachine.STATE_STOPPING, RecorderStateMachine.STATE_IDLE);
+    }
+
+    /**
+     * 执行之前的快速点按合并成一次调度，最后是松开时不创建录音器
+     */
+    @Test
+    public void tapsBeforeDrainAreCoalesced() {
+        for (int i = 0; i < 10; i++) {
+            machine.requestStart();
+            machine.requestStop();
+        }
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals("", driver.calls.toString());
+        assertEquals(RecorderStateMachine.STATE_IDLE, machine.getState());
+        assertEquals(20, machine.getRequestCount());
+        assertEquals(0, machine.getTransitionCount());
+    }
+
+    @Test
+    public void lastRequestWins() {
+        machine.requestStop();
+        machine.requestStart();
+        machine.requestStop();
+        machine.requestStart();
+        executor.runAll();
+
+        assertEquals("start ", driver.calls.toString());
+        assertEquals(RecorderStateMachine.STATE_RECORDING, machine.getState());
+    }
+
+    /**
+     * 停止过程中再次按下，停止完成后在同一轮里重新开始
+     */
+    @Test
+    public void pressDuringStoppingRestarts() {
+        machine.requestStart();
+        executor.runAll();
+        driver.onStop = new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(RecorderStateMachine.STATE_STOPPING, machine.getState());
+                machine.requestStart();
+            }
+        };
+        machine.requestStop();
+        executor.runAll();
+
+        assertEquals("start stop start ", driver.calls.toString());
+        assertEquals(RecorderStateMachine.STATE_RECORDING, machine.getState());
+        assertStates(RecorderStateMachine.STATE_STARTING, RecorderStateMachine.STATE_RECORDING,
+                RecorderStateMachine.STATE_STOPPING, RecorderStateMachine.STATE_IDLE,
+                RecorderStateMachine.STATE_STARTING, RecorderStateMachine.STATE_RECORDING);
+    }
+
+    /**
+     * 启动失败回到空闲并带上原因，不重试也不调用stop，下一次按下重新启动
+     */
+    @Test
+    public void startFailureReturnsToIdle() {
+        IOException failure = new IOException("mic busy");
+        driver.startFailure = failure;
+        machine.requestStart();
+        executor.runAll();
+
+        assertEquals(RecorderStateMachine.STATE_IDLE, machine.getState());
+        assertEquals("start ", driver.calls.toString());
+        assertStates(RecorderStateMachine.STATE_STARTING, RecorderStateMachine.STATE_IDLE);
+        assertSame(failure, errors.get(1));
+
+        //松开不会调用stop
+        machine.requestStop();
+        executor.runAll();
+        assertEquals("start ", driver.calls.toString());
+
+        driver.startFailure = null;
+        machine.requestStart();
+        executor.runAll();
+        assertEquals(RecorderStateMachine.STATE_RECORDING, machine.getState());
+        assertNull(errors.get(errors.size() - 1));
+    }
+
+    @Test
+    public void stopFailureIsReportedAndEndsIdle() {
+        machine.requestStart();
+        executor.runAll();
+        RuntimeException failure = new RuntimeException("stop failed");
+        driver.stopFailure = failure;
+        machine.requestStop();
+        executor.runAll();
+
+        assertEquals(RecorderStateMachine.STATE_IDLE, machine.getState());
+        assertSame(failure, errors.get(errors.size() - 1));
+    }
+
+    @Test
+    public void rejectedExecutionIsIgnored() {
+        executor.shutdown = true;
+        machine.requestStart();
+        assertEquals(RecorderStateMachine.STATE_IDLE, machine.getState());
+        assertEquals(0, executor.tasks.size());
+    }
+
+    private void assertStates(Integer... expected) {
+        assertEquals(Arrays.asList(expected), states);
+    }
+
+    /**
+     * 任务排队，由测试决定什么时候执行
+     */
+    private static class ManualExecutor implements Executor {
+
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static class FakeDriver implements RecorderStateMachine.Driver {
+
+        final StringBuilder calls = new StringBuilder();
+        IOException startFailure;
+        RuntimeException stopFailure;
+        Runnable onStop;
+
+        @Override
+        public void start() throws IOException {
+            calls.append("start ");
+            if (startFailure != null) {
+                throw startFailure;
+            }
+        }
+
+        @Override
+        public void stop() {
+            calls.append("stop ");
+            if (onStop != null) {
+                Runnable task = onStop;
+                onStop = null;
+                task.run();
+            }
+            if (stopFailure != null) {
+                throw stopFailure;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.yisan.audiodemo.core;
+
+import java.util.Random;
+
+/**
+ * 测试用的PCM数据：带噪声的正弦、数字静音、直流、满幅随机噪声、削顶的方波，
+ * 编码器的各种子帧类型和解码器的边界值都会用到
+ */
+public final class TestSignals {
+
+    private TestSignals() {
+    }
+
+    /**
+     * 生成小端整数PCM
+     *
+     * @param seed 噪声的随机种子，相同参数生成相同的数据
+     */
+    public static byte[] pcm(AudioFormatSpec format, int frames, long seed) {
+        if (format.isFloat()) {
+            throw new IllegalArgumentException("integer pcm only: " + format);
+        }
+        int channels = format.getChannelCount();
+        int bytesPerSample = format.getBytesPerSample();
+        int max = (1 << (format.getBitsPerSample() - 1)) - 1;
+        Random random = new Random(seed);
+        byte[] pcm = new byte[frames * format.getBytesPerFrame()];
+        int position = 0;
+        for (int i = 0; i < frames; i++) {
+            //按位置分成5段
+            int part = (int) ((long) i * 10 / frames);
+            for (int ch = 0; ch < channels; ch++) {
+                int value;
+                if (part < 6) {
+                    double phase = 2 * Math.PI * 440 * (ch + 1) * i / format.getSampleRate();
+                    value = (int) (max * (0.3 * Math.sin(phase) + 0.01 * random.nextGaussian()));
+                } else if (part < 7) {
+                    value = 0;
+                } else if (part < 8) {
+                    value = max / 3 - ch;
+                } else if (part < 9) {
+                    value = random.nextInt(2 * max + 2) - max - 1;
+                } else {
+                    value = (i / 50) % 2 == 0 ? max : -max - 1;
+                }
+                for (int b = 0; b < bytesPerSample; b++) {
+                    pcm[position++] = (byte) (value >> (b * 8));
+                }
+            }
+        }
+        return pcm;
+    }
+}
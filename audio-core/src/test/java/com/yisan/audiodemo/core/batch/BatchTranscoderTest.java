@@ -0,0 +1,126 @@
+package com.yisan.audiodemo.core.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchTranscoderTest {
+
+    private static final int FILES = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void secondRunSkipsFinishedFiles() throws IOException, InterruptedException {
+        File recordings = recordings();
+        File converted = folder.newFolder("converted");
+        BatchTranscoder first = new BatchTranscoder(recordings, new CopyTranscoder(converted, ".a"), 2, 4);
+        first.run(null);
+        assertEquals(FILES, first.getCompletedCount());
+
+        //输出删掉也不会重新转换，进度文件里已经有记录
+        for (File output : converted.listFiles()) {
+            assertTrue(output.delete());
+        }
+        BatchTranscoder second = new BatchTranscoder(recordings, new CopyTranscoder(converted, ".a"), 2, 4);
+        second.run(null);
+        assertEquals(0, second.getCompletedCount());
+        assertEquals(FILES + 1, second.getSkippedCount());
+    }
+
+    /**
+     * 同一个目录先转成一种格式，再转成另一种格式，第二批不能被第一批的进度跳过
+     */
+    @Test
+    public void anotherTranscoderIsNotSkipped() throws IOException, InterruptedException {
+        File recordings = recordings();
+        File converted = folder.newFolder("converted");
+        new BatchTranscoder(recordings, new CopyTranscoder(converted, ".a"), 2, 4).run(null);
+
+        BatchTranscoder other = new BatchTranscoder(recordings, new CopyTranscoder(converted, ".b"), 2, 4);
+        other.run(null);
+        assertEquals(FILES, other.getCompletedCount());
+        assertEquals(0, other.getFailedCount());
+        for (int i = 0; i < FILES; i++) {
+            assertTrue(new File(converted, i + ".pcm.b").isFile());
+        }
+    }
+
+    @Test
+    public void anotherOutputDirectoryIsNotSkipped() throws IOException, InterruptedException {
+        File recordings = recordings();
+        new BatchTranscoder(recordings, new CopyTranscoder(folder.newFolder("first"), ".a"), 2, 4).run(null);
+
+        File second = folder.newFolder("second");
+        BatchTranscoder other = new BatchTranscoder(recordings, new CopyTranscoder(second, ".a"), 2, 4);
+        other.run(null);
+        assertEquals(FILES, other.getCompletedCount());
+        assertEquals(FILES, second.listFiles().length);
+    }
+
+    private File recordings() throws IOException {
+        File directory = folder.newFolder("recordings");
+        for (int i = 0; i < FILES; i++) {
+            FileOutputStream out = new FileOutputStream(new File(directory, i + ".pcm"));
+            try {
+                out.write(new byte[1000 + i]);
+            } finally {
+                out.close();
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * 把 .pcm 原样复制到输出目录，扩展名区分不同的转换
+     */
+    private static class CopyTranscoder implements Transcoder {
+
+        private final File outputDirectory;
+        private final String extension;
+
+        CopyTranscoder(File outputDirectory, String extension) {
+            this.outputDirectory = outputDirectory;
+            this.extension = extension;
+        }
+
+        @Override
+        public boolean accepts(File input) {
+            return input.getName().endsWith(".pcm");
+        }
+
+        @Override
+        public File outputFor(File input) {
+            return new File(outputDirectory, input.getName() + extension);
+        }
+
+        @Override
+        public long transcode(File input, File output, byte[] buffer) throws IOException {
+            long written = 0;
+            FileInputStream in = new FileInputStream(input);
+            try {
+                FileOutputStream out = new FileOutputStream(output);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                        written += read;
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            return written;
+        }
+    }
+}
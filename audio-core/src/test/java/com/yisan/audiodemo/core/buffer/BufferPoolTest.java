@@ -0,0 +1,180 @@
+package com.yisan.audiodemo.core.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.yisan.audiodemo.core.AsyncPcmSink;
+import com.yisan.audiodemo.core.io.PcmFileWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BufferPoolTest {
+
+    /**
+     * 和录音页面一致：每次读取2048字节，写线程队列64个槽位
+     */
+    private static final int BUFFER_SIZE = 2048;
+    private static final int SLOTS = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 一次完整的录音会话：采集缓冲区、写线程的队列槽位和文件的合并缓冲区都从池里借，
+     * 第一次会话之后再录音不再分配任何缓冲区
+     */
+    @Test
+    public void repeatedSessionsAllocateNothing() throws IOException {
+        BufferPool<byte[]> pcm = BufferPool.heap(BUFFER_SIZE, SLOTS + 1, true);
+        BufferPool<ByteBuffer> blocks = BufferPool.direct(PcmFileWriter.DEFAULT_BLOCK_SIZE, 1, true);
+        File file = folder.newFile("session.pcm");
+
+        record(pcm, blocks, file);
+        long pcmAllocated = pcm.getMissCount();
+        long blocksAllocated = blocks.getMissCount();
+        assertEquals(SLOTS + 1, pcmAllocated);
+        assertEquals(1, blocksAllocated);
+
+        for (int session = 0; session < 20; session++) {
+            record(pcm, blocks, file);
+        }
+        assertEquals(pcmAllocated, pcm.getMissCount());
+        assertEquals(blocksAllocated, blocks.getMissCount());
+        assertEquals(20 * (SLOTS + 1), pcm.getHitCount());
+        assertEquals(20, blocks.getHitCount());
+        assertEquals(0, pcm.getLeasedCount());
+        assertEquals(0, blocks.getLeasedCount());
+        assertTrue(pcm.getOutstandingLeases().isEmpty());
+    }
+
+    /**
+     * 预先分配之后，第一次录音也不需要分配
+     */
+    @Test
+    public void prefillCoversTheFirstSession() throws IOException {
+        BufferPool<byte[]> pcm = BufferPool.heap(BUFFER_SIZE, SLOTS + 1, false);
+        BufferPool<ByteBuffer> blocks = BufferPool.direct(PcmFileWriter.DEFAULT_BLOCK_SIZE, 1, false);
+        pcm.prefill(SLOTS + 1);
+        blocks.prefill(1);
+        record(pcm, blocks, folder.newFile("session.pcm"));
+        assertEquals(0, pcm.getMissCount());
+        assertEquals(0, blocks.getMissCount());
+        //超过上限的预分配被丢弃
+        pcm.prefill(10);
+        assertEquals(SLOTS + 1, pcm.getFreeCount());
+    }
+
+    /**
+     * 泄漏检测记下借出位置，归还后清除
+     */
+    @Test
+    public void leakTrackingRecordsWhereTheBufferWasLeased() {
+        BufferPool<byte[]> pool = BufferPool.heap(16, 4, true);
+        byte[] kept = pool.acquire();
+        byte[] returned = pool.acquire();
+        pool.release(returned);
+
+        List<Throwable> leases = pool.getOutstandingLeases();
+        assertEquals(1, leases.size());
+        assertEquals(1, pool.getLeasedCount());
+        StringWriter trace = new StringWriter();
+        leases.get(0).printStackTrace(new PrintWriter(trace));
+        assertTrue(trace.toString(), trace.toString().contains("leakTrackingRecordsWhereTheBufferWasLeased"));
+
+        pool.release(kept);
+        assertTrue(pool.getOutstandingLeases().isEmpty());
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    @Test
+    public void leakTrackingRejectsDoubleRelease() {
+        BufferPool<byte[]> pool = BufferPool.heap(16, 4, true);
+        byte[] buffer = pool.acquire();
+        pool.release(buffer);
+        try {
+            pool.release(buffer);
+            fail("double release accepted");
+        } catch (IllegalStateException expected) {
+            //第二次归还
+        }
+        try {
+            pool.release(new byte[16]);
+            fail("foreign buffer accepted");
+        } catch (IllegalStateException expected) {
+            //不是从这个池借出的
+        }
+        assertEquals(0, pool.getLeasedCount());
+        assertEquals(1, pool.getFreeCount());
+    }
+
+    /**
+     * 不检测泄漏时没有借出记录，也不检查重复归还
+     */
+    @Test
+    public void withoutTrackingNoLeasesAreRecorded() {
+        BufferPool<byte[]> pool = BufferPool.heap(16, 4, false);
+        assertNotNull(pool.acquire());
+        assertTrue(pool.getOutstandingLeases().isEmpty());
+        assertEquals(1, pool.getLeasedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongSizeIsRejected() {
+        BufferPool.heap(16, 4, false).release(new byte[32]);
+    }
+
+    /**
+     * 空闲缓冲区超过上限的部分直接丢弃
+     */
+    @Test
+    public void freeListIsBounded() {
+        BufferPool<byte[]> pool = BufferPool.heap(16, 2, false);
+        byte[][] buffers = {pool.acquire(), pool.acquire(), pool.acquire()};
+        for (byte[] buffer : buffers) {
+            pool.release(buffer);
+        }
+        assertEquals(2, pool.getFreeCount());
+        assertEquals(3, pool.getMissCount());
+    }
+
+    @Test
+    public void directBuffersAreClearedOnAcquire() {
+        BufferPool<ByteBuffer> pool = BufferPool.direct(64, 1, false);
+        ByteBuffer buffer = pool.acquire();
+        buffer.put(new byte[10]).flip();
+        pool.release(buffer);
+        ByteBuffer again = pool.acquire();
+        assertTrue(again == buffer);
+        assertEquals(0, again.position());
+        assertEquals(64, again.limit());
+    }
+
+    /**
+     * 采集线程借一个读取缓冲区，写线程队列占满 SLOTS 个槽位，文件借一个合并缓冲区
+     */
+    private static void record(BufferPool<byte[]> pcm, BufferPool<ByteBuffer> blocks, File file)
+            throws IOException {
+        byte[] buffer = pcm.acquire();
+        try {
+            AsyncPcmSink sink = new AsyncPcmSink(PcmFileWriter.open(file, blocks), SLOTS, pcm);
+            try {
+                for (int i = 0; i < 100; i++) {
+                    sink.write(buffer, 0, buffer.length);
+                }
+            } finally {
+                sink.close();
+            }
+        } finally {
+            pcm.release(buffer);
+        }
+    }
+}
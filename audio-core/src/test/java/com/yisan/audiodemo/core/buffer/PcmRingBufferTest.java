@@ -0,0 +1,110 @@
+package com.yisan.audiodemo.core.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PcmRingBufferTest {
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(8, new PcmRingBuffer(5, 16).capacity());
+        assertEquals(64, new PcmRingBuffer(64, 16).capacity());
+    }
+
+    @Test
+    public void offerFailsWhenFullAndPollKeepsOrder() {
+        PcmRingBuffer ring = new PcmRingBuffer(4, 4);
+        byte[] slot = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            slot[0] = (byte) i;
+            assertTrue(ring.offer(slot, 0, i + 1));
+        }
+        assertFalse(ring.offer(slot, 0, 1));
+        assertEquals(4, ring.size());
+
+        byte[] out = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, ring.poll(out, 0, out.length));
+            assertEquals(i, out[0]);
+        }
+        assertEquals(0, ring.poll(out, 0, out.length));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offerRejectsDataLargerThanSlot() {
+        new PcmRingBuffer(4, 4).offer(new byte[8], 0, 8);
+    }
+
+    /**
+     * 生产者和消费者在两个线程上同时运行，数据不丢、不乱序
+     */
+    @Test
+    public void producerAndConsumerOnDifferentThreads() throws Exception {
+        final PcmRingBuffer ring = new PcmRingBuffer(16, 8);
+        final int count = 200000;
+        final long[] received = new long[1];
+        final boolean[] ordered = {true};
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] out = new byte[8];
+                long expected = 0;
+                while (expected < count) {
+                    if (ring.poll(out, 0, out.length) == 0) {
+                        Thread.yield();
+                        continue;
+                    }
+                    if (readLong(out) != expected) {
+                        ordered[0] = false;
+                    }
+                    expected++;
+                }
+                received[0] = expected;
+            }
+        });
+        consumer.start();
+        byte[] slot = new byte[8];
+        for (long i = 0; i < count; ) {
+            writeLong(slot, i);
+            if (ring.offer(slot, 0, slot.length)) {
+                i++;
+            } else {
+                Thread.yield();
+            }
+        }
+        consumer.join(10000);
+        assertFalse("consumer did not finish", consumer.isAlive());
+        assertEquals(count, received[0]);
+        assertTrue("slots out of order", ordered[0]);
+    }
+
+    @Test
+    public void releaseReturnsPooledSlots() {
+        BufferPool<byte[]> pool = BufferPool.heap(32, 16, true);
+        PcmRingBuffer ring = new PcmRingBuffer(8, pool);
+        assertEquals(32, ring.slotSize());
+        assertEquals(8, pool.getLeasedCount());
+        ring.release();
+        ring.release();
+        //重复调用不会重复归还
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    static void writeLong(byte[] buffer, long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    static long readLong(byte[] buffer) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (buffer[i] & 0xFFL) << (i * 8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,146 @@
+package com.yisan.audiodemo.core.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordingCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesSurviveReopen() throws IOException {
+        File file = new File(folder.getRoot(), "catalog");
+        RecordingCatalog catalog = RecordingCatalog.open(file);
+        catalog.put(entry("a.wav", 1000));
+        catalog.put(entry("b.wav", 2000));
+        catalog.put(entry("a.wav", 1500));
+        assertTrue(catalog.remove("b.wav"));
+        assertFalse(catalog.remove("b.wav"));
+        catalog.close();
+
+        catalog = RecordingCatalog.open(file);
+        assertEquals(1, catalog.size());
+        assertEquals(1500, catalog.get("a.wav").getDurationMillis());
+        catalog.close();
+    }
+
+    /**
+     * 进程在追加记录时被杀，末尾的半条记录打开时被截掉，之后的记录接着写在完整的记录后面
+     */
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        File file = new File(folder.getRoot(), "catalog");
+        RecordingCatalog catalog = RecordingCatalog.open(file);
+        catalog.put(entry("a.wav", 1000));
+        catalog.put(entry("b.wav", 2000));
+        catalog.close();
+        long complete = file.length();
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            //长度40的记录只写了头和几个字节
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1, 0, 5});
+        } finally {
+            out.close();
+        }
+
+        catalog = RecordingCatalog.open(file);
+        assertEquals(complete, file.length());
+        assertEquals(2, catalog.size());
+        catalog.put(entry("c.wav", 3000));
+        catalog.close();
+
+        catalog = RecordingCatalog.open(file);
+        assertEquals(3, catalog.size());
+        assertEquals(3000, catalog.get("c.wav").getDurationMillis());
+        catalog.close();
+    }
+
+    /**
+     * 写满磁盘时追加失败，写进去的半条记录要截掉，否则之后成功的记录在重新打开时会一起丢掉
+     */
+    @Test
+    public void failedAppendIsRolledBack() throws IOException {
+        File file = new File(folder.getRoot(), "catalog");
+        RecordingCatalog catalog = RecordingCatalog.open(file);
+        catalog.put(entry("a.wav", 1000));
+        long length = file.length();
+        catalog.maxLogLength = length + 10;
+        try {
+            catalog.put(entry("b.wav", 2000));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(length, file.length());
+
+        //空间释放之后继续写
+        catalog.maxLogLength = Long.MAX_VALUE;
+        catalog.put(entry("c.wav", 3000));
+        catalog.close();
+
+        catalog = RecordingCatalog.open(file);
+        assertNotNull(catalog.get("a.wav"));
+        assertNotNull(catalog.get("c.wav"));
+        assertEquals(2, catalog.size());
+        catalog.close();
+    }
+
+    @Test
+    public void overwrittenRecordsAreCompacted() throws IOException {
+        File file = new File(folder.getRoot(), "catalog");
+        RecordingCatalog catalog = RecordingCatalog.open(file);
+        catalog.put(entry("keep.wav", 1));
+        for (int i = 0; i < 1000; i++) {
+            catalog.put(entry("busy.wav", i));
+        }
+        long compacted = file.length();
+        catalog.close();
+        //1001条记录只剩两条有效，日志长度应该在几十条记录以内
+        assertTrue("length " + compacted, compacted < 100 * 60);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        catalog = RecordingCatalog.open(file);
+        assertEquals(2, catalog.size());
+        assertEquals(999, catalog.get("busy.wav").getDurationMillis());
+        assertEquals("keep.wav", catalog.list().get(0).getPath());
+        catalog.close();
+    }
+
+    /**
+     * 重写日志失败时这次更新已经同步，不能抛异常，旧日志也要完整
+     */
+    @Test
+    public void failedCompactionDoesNotFailTheUpdate() throws IOException {
+        File file = new File(folder.getRoot(), "catalog");
+        //临时文件的位置被目录占住，重写一定失败
+        assertTrue(new File(file.getPath() + ".tmp").mkdir());
+        RecordingCatalog catalog = RecordingCatalog.open(file);
+        for (int i = 0; i < 200; i++) {
+            catalog.put(entry("busy.wav", i));
+        }
+        assertTrue(catalog.remove("busy.wav"));
+        catalog.put(entry("last.wav", 7));
+        catalog.close();
+
+        catalog = RecordingCatalog.open(file);
+        assertNull(catalog.get("busy.wav"));
+        assertEquals(7, catalog.get("last.wav").getDurationMillis());
+        assertEquals(1, catalog.size());
+        catalog.close();
+    }
+
+    private static RecordingEntry entry(String path, long duration) {
+        return new RecordingEntry(path, "wav", duration, duration * 88, 0.5f, 1000 + duration);
+    }
+}
@@ -0,0 +1,164 @@
+package com.yisan.audiodemo.core.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.TestSignals;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlacWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip16BitMono() throws IOException {
+        roundTrip(AudioFormatSpec.MONO_16BIT_44100, 3);
+    }
+
+    @Test
+    public void roundTrip16BitStereo() throws IOException {
+        roundTrip(AudioFormatSpec.STEREO_16BIT_44100, 2);
+    }
+
+    @Test
+    public void roundTrip24BitStereo() throws IOException {
+        roundTrip(new AudioFormatSpec(48000, 2, 24), 2);
+    }
+
+    /**
+     * 解码出的采样逐字节等于写入的数据，MD5校验通过，而且确实压缩了
+     */
+    private void roundTrip(AudioFormatSpec format, int seconds) throws IOException {
+        //故意不是块大小的整数倍，最后一帧不满一块
+        int frames = format.getSampleRate() * seconds + 1234;
+        byte[] pcm = TestSignals.pcm(format, frames, 7);
+        File file = folder.newFile("round-trip.flac");
+        FlacWriter writer = FlacWriter.open(file, format);
+        //每次写入的长度不固定，也不对齐采样帧
+        Random random = new Random(1);
+        int offset = 0;
+        while (offset < pcm.length) {
+            int count = Math.min(pcm.length - offset, 1 + random.nextInt(5000));
+            writer.write(pcm, offset, count);
+            offset += count;
+        }
+        writer.close();
+        assertEquals(frames, writer.getTotalSamples());
+        assertTrue("not compressed: " + file.length(), file.length() < pcm.length * 3 / 4);
+
+        FlacReader reader = FlacReader.open(file);
+        try {
+            reader.setVerify(true);
+            assertEquals(format, reader.getFormat());
+            assertEquals(frames, reader.getFrameCount());
+            assertTrue(reader.getSeekPointCount() > 0);
+            assertArrayEquals(pcm, readAll(reader));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void seekLandsOnExactFrame() throws IOException {
+        AudioFormatSpec format = AudioFormatSpec.STEREO_16BIT_44100;
+        int frames = format.getSampleRate() * 4;
+        byte[] pcm = TestSignals.pcm(format, frames, 11);
+        File file = folder.newFile("seek.flac");
+        FlacWriter writer = FlacWriter.open(file, format);
+        writer.write(pcm, 0, pcm.length);
+        writer.close();
+
+        FlacReader reader = FlacReader.open(file);
+        try {
+            int bytesPerFrame = format.getBytesPerFrame();
+            byte[] buffer = new byte[1000 * bytesPerFrame];
+            long[] targets = {0, 1, 4095, 4096, 100000, frames - 10, 50000, 3};
+            for (long target : targets) {
+                reader.seekToFrame(target);
+                assertEquals(target, reader.getPositionFrames());
+                int read = readFully(reader, buffer);
+                int expected = (int) Math.min(buffer.length, (frames - target) * bytesPerFrame);
+                assertEquals("read at " + target, expected, read);
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != pcm[(int) (target * bytesPerFrame) + i]) {
+                        fail("sample differs after seeking to " + target);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 音频数据被改动时，帧CRC或MD5校验能发现
+     */
+    @Test
+    public void corruptedFrameIsDetected() throws IOException {
+        AudioFormatSpec format = AudioFormatSpec.MONO_16BIT_44100;
+        byte[] pcm = TestSignals.pcm(format, format.getSampleRate(), 5);
+        File file = folder.newFile("corrupt.flac");
+        FlacWriter writer = FlacWriter.open(file, format);
+        writer.write(pcm, 0, pcm.length);
+        writer.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long position = raf.length() / 2;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x10);
+        } finally {
+            raf.close();
+        }
+        FlacReader reader = FlacReader.open(file);
+        try {
+            reader.setVerify(true);
+            readAll(reader);
+            fail("corruption not detected");
+        } catch (IOException expected) {
+            //帧CRC不一致或者解码失败
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void floatPcmIsRejected() throws IOException {
+        FlacWriter.open(folder.newFile("float.flac"), AudioFormatSpec.pcmFloat(44100, 1));
+    }
+
+    private static byte[] readAll(FlacReader reader) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3000];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static int readFully(FlacReader reader, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = reader.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
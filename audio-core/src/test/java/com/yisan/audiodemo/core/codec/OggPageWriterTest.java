@@ -0,0 +1,216 @@
+package com.yisan.audiodemo.core.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.yisan.audiodemo.core.OutputStreamPcmSink;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class OggPageWriterTest {
+
+    private static final int SERIAL = 0x1234abcd;
+    private static final int FLAG_CONTINUED = 0x01;
+    private static final int FLAG_BOS = 0x02;
+    private static final int FLAG_EOS = 0x04;
+
+    /**
+     * 各种长度的包（0、255的整数倍、超过一页段表的大包）按页拆开后能原样拼回来，页头和CRC都正确
+     */
+    @Test
+    public void packetsSurviveRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OggPageWriter writer = new OggPageWriter(new OutputStreamPcmSink(out), SERIAL);
+        Random random = new Random(3);
+        int[] sizes = {0, 1, 254, 255, 256, 510, 70000, 65025, 3, 4000};
+        List<byte[]> packets = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int size = i < sizes.length ? sizes[i] : random.nextInt(600);
+            byte[] packet = new byte[size];
+            random.nextBytes(packet);
+            packets.add(packet);
+            writer.writePacket(packet, 0, size, (i + 1) * 960L);
+        }
+        writer.close();
+        assertEquals(out.size(), writer.getBytesWritten());
+
+        List<Page> pages = Page.parse(out.toByteArray());
+        assertEquals(writer.getPageCount(), pages.size());
+        List<byte[]> decoded = new ArrayList<>();
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            assertEquals(SERIAL, page.serial);
+            assertEquals(i, page.sequence);
+            assertEquals(i == 0, (page.flags & FLAG_BOS) != 0);
+            assertEquals(i == pages.size() - 1, (page.flags & FLAG_EOS) != 0);
+            //上一页结束时还有没拼完的包，这一页以续包开始
+            assertEquals("continued flag of page " + i, partial.size() > 0, (page.flags & FLAG_CONTINUED) != 0);
+            int packetsEnded = 0;
+            int position = 0;
+            for (int lacing : page.lacing) {
+                partial.write(page.body, position, lacing);
+                position += lacing;
+                if (lacing < 255) {
+                    decoded.add(partial.toByteArray());
+                    partial.reset();
+                    packetsEnded++;
+                }
+            }
+            //没有包在这一页结束时位置是-1，否则是最后一个结束的包的位置
+            long expected = packetsEnded == 0 ? -1 : decoded.size() * 960L;
+            assertEquals("granule of page " + i, expected, page.granule);
+        }
+        assertEquals(0, partial.size());
+        assertEquals(packets.size(), decoded.size());
+        for (int i = 0; i < packets.size(); i++) {
+            assertArrayEquals("packet " + i, packets.get(i), decoded.get(i));
+        }
+    }
+
+    /**
+     * 最后一个包和EOS标记在同一页，即使这个包让当前页超过了目标大小或者时长
+     */
+    @Test
+    public void lastPacketIsOnEosPage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OggPageWriter writer = new OggPageWriter(new OutputStreamPcmSink(out), SERIAL, 1024, 48000);
+        byte[] packet = new byte[900];
+        for (int i = 0; i < 20; i++) {
+            writer.writePacket(packet, 0, packet.length, (i + 1) * 960L);
+        }
+        //结尾裁剪之后的位置比前一个包多不了一整帧
+        long trimmed = 20 * 960L + 123;
+        writer.writeLastPacket(packet, 0, packet.length, trimmed);
+
+        List<Page> pages = Page.parse(out.toByteArray());
+        Page last = pages.get(pages.size() - 1);
+        assertEquals(FLAG_EOS, last.flags & FLAG_EOS);
+        assertEquals(trimmed, last.granule);
+        assertTrue("last packet not on the EOS page", last.lacing.length > 0);
+        for (int i = 0; i < pages.size() - 1; i++) {
+            assertTrue(pages.get(i).granule < trimmed);
+        }
+    }
+
+    /**
+     * 最后一个包超过一页的段表，也只能在EOS页上结束
+     */
+    @Test
+    public void oversizedLastPacketEndsOnEosPage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OggPageWriter writer = new OggPageWriter(new OutputStreamPcmSink(out), SERIAL);
+        writer.writePacket(new byte[100], 0, 100, 960);
+        writer.writeLastPacket(new byte[70000], 0, 70000, 1500);
+
+        List<Page> pages = Page.parse(out.toByteArray());
+        //第一页的段表放满后写出，大包剩下的部分在EOS页上结束
+        assertEquals(2, pages.size());
+        assertEquals(960, pages.get(0).granule);
+        assertEquals(FLAG_EOS | FLAG_CONTINUED, pages.get(1).flags);
+        assertEquals(1500, pages.get(1).granule);
+    }
+
+    @Test
+    public void closeWithoutDataWritesEmptyEosPage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OggPageWriter writer = new OggPageWriter(new OutputStreamPcmSink(out), SERIAL);
+        writer.writePacket(new byte[10], 0, 10, 960);
+        writer.flush();
+        writer.close();
+
+        List<Page> pages = Page.parse(out.toByteArray());
+        assertEquals(2, pages.size());
+        Page last = pages.get(1);
+        assertEquals(FLAG_EOS, last.flags);
+        assertEquals(0, last.lacing.length);
+        assertEquals(960, last.granule);
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws IOException {
+        OggPageWriter writer = new OggPageWriter(new OutputStreamPcmSink(new ByteArrayOutputStream()), SERIAL);
+        writer.close();
+        writer.writePacket(new byte[1], 0, 1, 0);
+    }
+
+    /**
+     * 按RFC 3533解析出的一页
+     */
+    static final class Page {
+
+        int flags;
+        long granule;
+        int serial;
+        int sequence;
+        int[] lacing;
+        byte[] body;
+
+        /**
+         * 解析整个流，页头格式或CRC不对时直接失败
+         */
+        static List<Page> parse(byte[] data) {
+            List<Page> pages = new ArrayList<>();
+            int position = 0;
+            while (position < data.length) {
+                assertEquals('O', data[position]);
+                assertEquals('g', data[position + 1]);
+                assertEquals('g', data[position + 2]);
+                assertEquals('S', data[position + 3]);
+                assertEquals(0, data[position + 4]);
+                Page page = new Page();
+                page.flags = data[position + 5] & 0xFF;
+                page.granule = readLong(data, position + 6);
+                page.serial = (int) readInt(data, position + 14);
+                page.sequence = (int) readInt(data, position + 18);
+                long crc = readInt(data, position + 22);
+                int segments = data[position + 26] & 0xFF;
+                page.lacing = new int[segments];
+                int bodyLength = 0;
+                for (int i = 0; i < segments; i++) {
+                    page.lacing[i] = data[position + 27 + i] & 0xFF;
+                    bodyLength += page.lacing[i];
+                }
+                int headerLength = 27 + segments;
+                page.body = new byte[bodyLength];
+                System.arraycopy(data, position + headerLength, page.body, 0, bodyLength);
+                //CRC按校验和字段为0计算
+                byte[] copy = new byte[headerLength + bodyLength];
+                System.arraycopy(data, position, copy, 0, copy.length);
+                copy[22] = copy[23] = copy[24] = copy[25] = 0;
+                assertEquals("crc of page " + page.sequence, crc, crc(copy));
+                pages.add(page);
+                position += copy.length;
+            }
+            return pages;
+        }
+
+        private static long readInt(byte[] data, int offset) {
+            return (data[offset] & 0xFFL) | (data[offset + 1] & 0xFFL) << 8 | (data[offset + 2] & 0xFFL) << 16
+                    | (data[offset + 3] & 0xFFL) << 24;
+        }
+
+        private static long readLong(byte[] data, int offset) {
+            return readInt(data, offset) | readInt(data, offset + 4) << 32;
+        }
+
+        /**
+         * 多项式 0x04c11db7，初值0，不反转，逐位计算
+         */
+        private static long crc(byte[] data) {
+            int crc = 0;
+            for (byte b : data) {
+                crc ^= (b & 0xFF) << 24;
+                for (int i = 0; i < 8; i++) {
+                    crc = (crc & 0x80000000) != 0 ? crc << 1 ^ 0x04c11db7 : crc << 1;
+                }
+            }
+            return crc & 0xFFFFFFFFL;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static com.yisan.audiodemo.core.dsp.NoiseGateTest.rms;
+import static com.yisan.audiodemo.core.dsp.NoiseGateTest.tone;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import org.junit.Test;
+
+public class AutomaticGainControlTest {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+
+    /**
+     * 增益已经升到最大时突然来了大声音，放大后的采样不能超过限幅值，也不能削波
+     */
+    @Test
+    public void suddenLoudInputIsLimited() {
+        AutomaticGainControl agc = new AutomaticGainControl(FORMAT);
+        process(agc, tone(-40, 8000));
+        assertEquals(20, agc.getGainDb(), 0.5);
+
+        short[] loud = tone(-3, 500);
+        process(agc, loud);
+        int peak = 0;
+        for (short sample : loud) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        assertTrue("peak " + peak, peak <= 32000);
+        //压下来之后接近目标电平的增益
+        assertTrue(agc.getGainDb() < -5);
+    }
+
+    /**
+     * 稳定的-30dBFS语音拉到-12dBFS附近
+     */
+    @Test
+    public void quietInputIsBroughtToTarget() {
+        AutomaticGainControl agc = new AutomaticGainControl(FORMAT);
+        short[] samples = tone(-30, 10000);
+        short[] original = samples.clone();
+        process(agc, samples);
+        double gainDb = 20 * Math.log10(rms(samples, 44100) / rms(original, 44100));
+        assertEquals(18, gainDb, 1.5);
+        assertEquals(gainDb, agc.getGainDb(), 0.5);
+    }
+
+    @Test
+    public void gainIsClampedToRange() {
+        AutomaticGainControl agc = new AutomaticGainControl(FORMAT, -12f, -6f, 10f, 50f, 500f);
+        process(agc, tone(-40, 5000));
+        assertEquals(10, agc.getGainDb(), 0.2);
+
+        agc.reset();
+        process(agc, tone(-1, 2000));
+        assertEquals(-6, agc.getGainDb(), 0.2);
+    }
+
+    /**
+     * 包络降到噪声底以下后认为是静音，增益保持不变，停顿再长也不会把底噪放大
+     */
+    @Test
+    public void silenceHoldsGain() {
+        AutomaticGainControl agc = new AutomaticGainControl(FORMAT);
+        process(agc, tone(-20, 5000));
+        //包络释放时间300ms，1秒后已经低于噪声底
+        process(agc, tone(-60, 1000));
+        float paused = agc.getGainDb();
+        process(agc, tone(-60, 10000));
+        assertEquals(paused, agc.getGainDb(), 0.01);
+        assertTrue(paused < 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invertedRangeIsRejected() {
+        new AutomaticGainControl(FORMAT, -12f, 10f, -10f, 50f, 2000f);
+    }
+
+    private static void process(DspStage stage, short[] samples) {
+        //和录音时一样分成2048字节的块
+        for (int offset = 0; offset < samples.length; offset += 1024) {
+            stage.process(samples, offset, Math.min(1024, samples.length - offset));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class BiquadFilterTest {
+
+    private static final AudioFormatSpec MONO = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int RATE = MONO.getSampleRate();
+
+    /**
+     * 二阶巴特沃斯高通的幅频响应是 1/sqrt(1+(fc/f)^4)：截止频率处-3dB，往下每倍频程衰减12dB，通带平坦
+     */
+    @Test
+    public void highPassFrequencyResponse() {
+        float cutoff = 80;
+        float[] frequencies = {20, 40, 80, 160, 1000, 5000};
+        for (float frequency : frequencies) {
+            double expected = -10 * Math.log10(1 + Math.pow(cutoff / frequency, 4));
+            double measured = gainDb(BiquadFilter.highPass(MONO, cutoff), frequency);
+            assertEquals(frequency + "Hz", expected, measured, 0.2);
+        }
+    }
+
+    @Test
+    public void higherQPeaksNearCutoff() {
+        double butterworth = gainDb(BiquadFilter.highPass(MONO, 200), 200);
+        double resonant = gainDb(BiquadFilter.highPass(MONO, 200, 2f), 200);
+        //Q=2时截止频率处增益是Q本身，约+6dB
+        assertEquals(-3.0, butterworth, 0.2);
+        assertEquals(20 * Math.log10(2), resonant, 0.3);
+    }
+
+    @Test
+    public void removesDcOffset() {
+        BiquadFilter filter = BiquadFilter.highPass(MONO, 80);
+        short[] samples = new short[RATE];
+        Arrays.fill(samples, (short) 5000);
+        filter.process(samples, 0, samples.length);
+        //float系数的舍入误差会留下一点残余，比偏移小60dB以上
+        for (int i = RATE / 2; i < RATE; i++) {
+            assertTrue("sample " + samples[i], Math.abs(samples[i]) <= 5);
+        }
+    }
+
+    @Test
+    public void channelsAreFilteredIndependently() {
+        AudioFormatSpec stereo = AudioFormatSpec.STEREO_16BIT_44100;
+        BiquadFilter filter = BiquadFilter.highPass(stereo, 80);
+        short[] samples = new short[2 * RATE];
+        for (int i = 0; i < RATE; i++) {
+            samples[2 * i] = (short) (10000 * Math.sin(2 * Math.PI * 1000 * i / RATE));
+        }
+        filter.process(samples, 0, samples.length);
+        double left = 0;
+        for (int i = 0; i < RATE; i++) {
+            assertEquals(0, samples[2 * i + 1]);
+            left = Math.max(left, Math.abs(samples[2 * i]));
+        }
+        assertTrue(left > 9900);
+    }
+
+    /**
+     * 滤波器状态跨调用保持，分成小块处理和一次处理结果相同
+     */
+    @Test
+    public void chunkedProcessingMatchesOneCall() {
+        short[] whole = sine(150, RATE / 4, 8000);
+        short[] chunked = whole.clone();
+        BiquadFilter.highPass(MONO, 80).process(whole, 0, whole.length);
+        BiquadFilter filter = BiquadFilter.highPass(MONO, 80);
+        for (int offset = 0; offset < chunked.length; offset += 333) {
+            filter.process(chunked, offset, Math.min(333, chunked.length - offset));
+        }
+        assertTrue(Arrays.equals(whole, chunked));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cutoffAboveNyquistIsRejected() {
+        BiquadFilter.highPass(MONO, RATE / 2f);
+    }
+
+    /**
+     * 输入1秒正弦，跳过前半秒的瞬态，比较后半秒输出和输入的有效值
+     */
+    private static double gainDb(BiquadFilter filter, float frequency) {
+        short[] samples = sine(frequency, RATE, 10000);
+        double in = rms(samples, RATE / 2);
+        filter.process(samples, 0, samples.length);
+        return 20 * Math.log10(rms(samples, RATE / 2) / in);
+    }
+
+    private static short[] sine(float frequency, int length, int amplitude) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / RATE));
+        }
+        return samples;
+    }
+
+    private static double rms(short[] samples, int from) {
+        double sum = 0;
+        for (int i = from; i < samples.length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (samples.length - from));
+    }
+}
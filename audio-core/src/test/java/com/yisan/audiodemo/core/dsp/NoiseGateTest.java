@@ -0,0 +1,126 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import org.junit.Test;
+
+public class NoiseGateTest {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int RATE = FORMAT.getSampleRate();
+
+    /**
+     * 默认-50dBFS开门、-56dBFS关门，-53dBFS落在两个阈值之间：关着时不会打开，开着时不会关上
+     */
+    @Test
+    public void levelBetweenThresholdsKeepsCurrentState() {
+        NoiseGate closed = new NoiseGate(FORMAT);
+        process(closed, tone(-53, 2000));
+        assertFalse(closed.isOpen());
+
+        NoiseGate open = new NoiseGate(FORMAT);
+        process(open, tone(-20, 100));
+        assertTrue(open.isOpen());
+        //保持时间200ms，在阈值之间待2秒也不关
+        short[] between = tone(-53, 2000);
+        for (int offset = 0; offset < between.length; offset += 441) {
+            open.process(between, offset, 441);
+            assertTrue("closed at " + offset * 1000 / RATE + "ms", open.isOpen());
+        }
+    }
+
+    @Test
+    public void opensAboveThreshold() {
+        NoiseGate gate = new NoiseGate(FORMAT);
+        process(gate, tone(-60, 500));
+        assertFalse(gate.isOpen());
+        process(gate, tone(-45, 20));
+        assertTrue(gate.isOpen());
+    }
+
+    /**
+     * 安静下来之后先等包络降到关门阈值以下，再保持200ms才关门
+     */
+    @Test
+    public void closesAfterHoldTime() {
+        NoiseGate gate = new NoiseGate(FORMAT);
+        process(gate, tone(-20, 200));
+        process(gate, new short[RATE / 5]);
+        assertTrue("closed before hold time", gate.isOpen());
+        process(gate, new short[RATE / 10]);
+        assertFalse("still open", gate.isOpen());
+    }
+
+    /**
+     * 开门时原样通过，关门后衰减floorDb，起音、释放平滑过渡
+     */
+    @Test
+    public void closedGateAttenuatesByFloor() {
+        //阈值调高，关门后的输出远大于1个量化单位
+        NoiseGate gate = new NoiseGate(FORMAT, -20f, -30f, 5f, 200f, 150f);
+        short[] loud = tone(-10, 500);
+        short[] original = loud.clone();
+        process(gate, loud);
+        assertEquals(1.0, rms(loud, RATE / 4) / rms(original, RATE / 4), 0.01);
+
+        short[] quiet = tone(-30, 2000);
+        original = quiet.clone();
+        process(gate, quiet);
+        assertFalse(gate.isOpen());
+        //最后一秒已经完全释放
+        assertEquals(-30, 20 * Math.log10(rms(quiet, RATE) / rms(original, RATE)), 0.5);
+    }
+
+    /**
+     * 采样按所有声道的最大值判断，只有一个声道有声音时两个声道都打开
+     */
+    @Test
+    public void channelsShareOneGain() {
+        AudioFormatSpec stereo = AudioFormatSpec.STEREO_16BIT_44100;
+        NoiseGate gate = new NoiseGate(stereo);
+        short[] mono = tone(-20, 200);
+        short[] samples = new short[mono.length * 2];
+        for (int i = 0; i < mono.length; i++) {
+            samples[2 * i] = mono[i];
+            samples[2 * i + 1] = (short) (mono[i] / 100);
+        }
+        short[] original = samples.clone();
+        gate.process(samples, 0, samples.length);
+        assertTrue(gate.isOpen());
+        int last = samples.length - 1;
+        assertEquals(original[last], samples[last], 1);
+        assertEquals(original[last - 1], samples[last - 1], 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void positiveFloorIsRejected() {
+        new NoiseGate(FORMAT, -50f, 3f, 5f, 200f, 150f);
+    }
+
+    private static void process(DspStage stage, short[] samples) {
+        stage.process(samples, 0, samples.length);
+    }
+
+    /**
+     * 1kHz正弦，峰值 levelDb dBFS
+     */
+    static short[] tone(float levelDb, int millis) {
+        double amplitude = 32768 * Math.pow(10, levelDb / 20);
+        short[] samples = new short[RATE * millis / 1000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * 1000 * i / RATE));
+        }
+        return samples;
+    }
+
+    static double rms(short[] samples, int lastCount) {
+        double sum = 0;
+        for (int i = samples.length - lastCount; i < samples.length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / lastCount);
+    }
+}
@@ -0,0 +1,127 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+
+    /**
+     * 开头结尾各去掉这么多输出帧，不计滤波器的过渡
+     */
+    private static final int EDGE = 200;
+
+    /**
+     * 通带内的正弦转换后和理想的正弦比较，输出和输入在时间上对齐
+     */
+    @Test
+    public void passbandSineKeepsHighSnr() {
+        assertTrue(snrDb(44100, 16000, 1000) > 70);
+        assertTrue(snrDb(48000, 44100, 5000) > 70);
+        assertTrue(snrDb(16000, 48000, 3000) > 70);
+    }
+
+    /**
+     * 高于输出奈奎斯特频率的正弦不能混叠进通带
+     */
+    @Test
+    public void toneAboveNyquistIsRejected() {
+        int[] tones = {9000, 12000, 20000};
+        for (int tone : tones) {
+            float[] out = resample(sine(44100, tone, 44100), 44100, 16000, 1);
+            double level = rmsDb(out, EDGE, out.length - EDGE) - rmsDb(sine(44100, tone, 1000), 0, 1000);
+            assertTrue(tone + "Hz aliases at " + level + "dB", level < -60);
+        }
+    }
+
+    /**
+     * 输出总帧数和输入时长对应，分批输入和一次输入的结果相同
+     */
+    @Test
+    public void outputLengthAndChunkingAreExact() {
+        float[] in = sine(44100, 440, 44100 * 2);
+        for (int i = 0; i < in.length; i++) {
+            in[i] += (i % 7) * 0.01f;
+        }
+        float[] whole = resample(in, 44100, 16000, 1);
+        assertEquals(32000, whole.length);
+
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000, 1);
+        float[] out = new float[whole.length + resampler.getMaxOutputFrames(resampler.getTaps())];
+        int produced = 0;
+        int offset = 0;
+        int step = 1;
+        while (offset < in.length) {
+            int count = Math.min(step, in.length - offset);
+            produced += resampler.process(in, offset, count, out, produced);
+            offset += count;
+            step = step * 3 % 997 + 1;
+        }
+        produced += resampler.flush(out, produced);
+        assertEquals(whole.length, produced);
+        for (int i = 0; i < produced; i++) {
+            assertEquals(whole[i], out[i], 0f);
+        }
+    }
+
+    @Test
+    public void stereoChannelsStaySeparate() {
+        int frames = 44100;
+        float[] left = sine(44100, 1000, frames);
+        float[] in = new float[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            in[2 * i] = left[i];
+        }
+        float[] out = resample(in, 44100, 16000, 2);
+        double leftSquare = 0;
+        double rightSquare = 0;
+        for (int i = EDGE; i < out.length / 2 - EDGE; i++) {
+            leftSquare += out[2 * i] * out[2 * i];
+            rightSquare += out[2 * i + 1] * out[2 * i + 1];
+        }
+        assertTrue(leftSquare > 1000);
+        assertEquals(0, rightSquare, 1e-9);
+    }
+
+    private static double snrDb(int inputRate, int outputRate, int frequency) {
+        float[] out = resample(sine(inputRate, frequency, inputRate), inputRate, outputRate, 1);
+        float[] ideal = sine(outputRate, frequency, out.length);
+        double signal = 0;
+        double noise = 0;
+        for (int i = EDGE; i < out.length - EDGE; i++) {
+            signal += ideal[i] * ideal[i];
+            double error = out[i] - ideal[i];
+            noise += error * error;
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+
+    private static float[] resample(float[] in, int inputRate, int outputRate, int channels) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, outputRate, channels);
+        int frames = in.length / channels;
+        float[] out = new float[(resampler.getMaxOutputFrames(frames)
+                + resampler.getMaxOutputFrames(resampler.getTaps())) * channels];
+        int produced = resampler.process(in, 0, frames, out, 0);
+        produced += resampler.flush(out, produced * channels);
+        float[] result = new float[produced * channels];
+        System.arraycopy(out, 0, result, 0, result.length);
+        return result;
+    }
+
+    private static float[] sine(int rate, int frequency, int frames) {
+        float[] samples = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return samples;
+    }
+
+    private static double rmsDb(float[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return 10 * Math.log10(sum / (to - from) + 1e-30);
+    }
+}
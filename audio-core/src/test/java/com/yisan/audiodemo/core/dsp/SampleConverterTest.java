@@ -0,0 +1,132 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+public class SampleConverterTest {
+
+    /**
+     * 所有16bit取值转成浮点再转回来都不变
+     */
+    @Test
+    public void int16FloatRoundTripIsExact() {
+        short[] all = new short[65536];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (short) (i - 32768);
+        }
+        float[] floats = new float[all.length];
+        SampleConverter.int16ToFloat(all, 0, floats, 0, all.length);
+        short[] back = new short[all.length];
+        SampleConverter.floatToInt16(floats, 0, back, 0, all.length);
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(all[i], back[i]);
+        }
+
+        byte[] bytes = new byte[all.length * 2];
+        SampleConverter.floatToBytes(floats, 0, bytes, 0, all.length);
+        float[] fromBytes = new float[all.length];
+        SampleConverter.bytesToFloat(bytes, 0, fromBytes, 0, all.length);
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(floats[i], fromBytes[i], 0f);
+        }
+    }
+
+    /**
+     * 超出-1~1的截断，NaN转成0
+     */
+    @Test
+    public void floatToInt16Clips() {
+        float[] src = {1f, 2f, -1f, -3f, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        short[] dst = new short[src.length];
+        SampleConverter.floatToInt16(src, 0, dst, 0, src.length);
+        short[] expected = {32767, 32767, -32768, -32768, 0, 32767, -32768};
+        for (int i = 0; i < src.length; i++) {
+            assertEquals("value " + src[i], expected[i], dst[i]);
+        }
+    }
+
+    @Test
+    public void bytesAreLittleEndian() {
+        short[] samples = {0x1234, -2};
+        byte[] bytes = new byte[4];
+        SampleConverter.int16ToBytes(samples, 0, bytes, 0, 2);
+        assertArrayEquals(new byte[]{0x34, 0x12, (byte) 0xFE, (byte) 0xFF}, bytes);
+        short[] back = new short[2];
+        SampleConverter.bytesToInt16(bytes, 0, back, 0, 2);
+        assertEquals(0x1234, back[0]);
+        assertEquals(-2, back[1]);
+    }
+
+    /**
+     * 直接缓冲区没有底层数组，走逐个读写的路径，结果和数组版本一致
+     */
+    @Test
+    public void directBuffersMatchArrays() {
+        int count = 1000;
+        ShortBuffer shorts = ByteBuffer.allocateDirect(count * 2).asShortBuffer();
+        short[] array = new short[count];
+        for (int i = 0; i < count; i++) {
+            array[i] = (short) (i * 67 - 30000);
+            shorts.put(i, array[i]);
+        }
+        FloatBuffer floats = ByteBuffer.allocateDirect(count * 4).asFloatBuffer();
+        SampleConverter.int16ToFloat(shorts, floats, count);
+        float[] expected = new float[count];
+        SampleConverter.int16ToFloat(array, 0, expected, 0, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected[i], floats.get(i), 0f);
+        }
+        ShortBuffer back = ByteBuffer.allocateDirect(count * 2).asShortBuffer();
+        SampleConverter.floatToInt16(floats, back, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(array[i], back.get(i));
+        }
+        assertEquals(0, floats.position());
+    }
+
+    @Test
+    public void stereoDownmixDoesNotOverflow() {
+        short[] stereo = {32767, 32767, -32768, -32768, 100, -101};
+        short[] mono = new short[3];
+        SampleConverter.downmixStereo(stereo, 0, mono, 0, 3);
+        assertEquals(32767, mono[0]);
+        assertEquals(-32768, mono[1]);
+        assertEquals(-1, mono[2]);
+    }
+
+    @Test
+    public void interleaveRoundTrip() {
+        float[] left = {1, 2, 3};
+        float[] right = {-1, -2, -3};
+        float[] interleaved = new float[6];
+        SampleConverter.interleave(left, right, 0, interleaved, 0, 3);
+        assertEquals(-2f, interleaved[3], 0f);
+        float[] l = new float[3];
+        float[] r = new float[3];
+        SampleConverter.deinterleave(interleaved, 0, l, r, 0, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(left[i], l[i], 0f);
+            assertEquals(right[i], r[i], 0f);
+        }
+    }
+
+    @Test
+    public void uint8RoundTrip() {
+        byte[] all = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            all[i] = (byte) i;
+        }
+        float[] floats = new float[256];
+        SampleConverter.uint8ToFloat(all, 0, floats, 0, 256);
+        assertEquals(-1f, floats[0], 0f);
+        assertEquals(0f, floats[128], 0f);
+        byte[] back = new byte[256];
+        SampleConverter.floatToUint8(floats, 0, back, 0, 256);
+        assertArrayEquals(all, back);
+    }
+}
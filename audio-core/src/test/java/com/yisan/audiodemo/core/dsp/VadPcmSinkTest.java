@@ -0,0 +1,136 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.PcmSink;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class VadPcmSinkTest {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.MONO_16BIT_44100;
+    private static final int BUFFER_SIZE = 2048;
+    private static final int SECONDS = 60;
+
+    /**
+     * 1秒语音、2秒背景噪声交替，丢弃静音后剩下的数据量要少于一半，语音本身不能被丢掉
+     */
+    @Test
+    public void dropModeRemovesMostOfTheSilence() throws IOException {
+        CountingSink counter = new CountingSink();
+        VadPcmSink sink = new VadPcmSink(FORMAT, counter, VadPcmSink.MODE_DROP, 0, null);
+        byte[] pcm = speechAndSilence();
+        write(sink, pcm);
+
+        double kept = (double) counter.bytes / pcm.length;
+        assertTrue("kept " + kept, kept < 0.5);
+        assertTrue("kept " + kept, kept > 0.3);
+        assertEquals(pcm.length, sink.getInputBytes());
+        assertEquals(counter.bytes, sink.getOutputBytes());
+        assertEquals(SECONDS / 3, sink.getSegmentCount());
+    }
+
+    /**
+     * 压缩模式下每段静音最多保留 maxSilenceMillis
+     */
+    @Test
+    public void compressModeKeepsShortPauses() throws IOException {
+        CountingSink dropped = new CountingSink();
+        write(new VadPcmSink(FORMAT, dropped, VadPcmSink.MODE_DROP, 0, null), speechAndSilence());
+        CountingSink compressed = new CountingSink();
+        write(new VadPcmSink(FORMAT, compressed, VadPcmSink.MODE_COMPRESS, 200, null), speechAndSilence());
+
+        long pauses = compressed.bytes - dropped.bytes;
+        assertTrue("pauses " + pauses, pauses > 0);
+        assertTrue("pauses " + pauses, pauses <= SECONDS / 3 * FORMAT.millisToBytes(200));
+    }
+
+    /**
+     * 标记模式数据全部写出，语音段的时间落在合成语音的位置上
+     */
+    @Test
+    public void markModeWritesEverythingAndReportsSegments() throws IOException {
+        CountingSink counter = new CountingSink();
+        final List<long[]> segments = new ArrayList<>();
+        VadPcmSink sink = new VadPcmSink(FORMAT, counter, VadPcmSink.MODE_MARK, 0,
+                new VadPcmSink.SegmentListener() {
+                    @Override
+                    public void onSegment(long startUs, long endUs, long outputOffset) {
+                        segments.add(new long[]{startUs, endUs, outputOffset});
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+        byte[] pcm = speechAndSilence();
+        write(sink, pcm);
+
+        assertEquals(pcm.length, counter.bytes);
+        assertEquals(SECONDS / 3, segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            long[] segment = segments.get(i);
+            long speechStartUs = i * 3000000L;
+            //开头最多晚一段，拖尾不超过1秒
+            assertTrue("start " + segment[0], Math.abs(segment[0] - speechStartUs) <= 20000);
+            assertTrue("end " + segment[1], segment[1] >= speechStartUs + 900000);
+            assertTrue("end " + segment[1], segment[1] <= speechStartUs + 2000000);
+            //什么都不丢，输出位置就是原始位置
+            assertEquals(FORMAT.millisToBytes(segment[0] / 1000), segment[2], FORMAT.getBytesPerFrame() * 2);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNon16BitInput() {
+        new VadPcmSink(AudioFormatSpec.pcmFloat(44100, 1), new CountingSink(), VadPcmSink.MODE_DROP, 0, null);
+    }
+
+    private static void write(VadPcmSink sink, byte[] pcm) throws IOException {
+        for (int offset = 0; offset < pcm.length; offset += BUFFER_SIZE) {
+            sink.write(pcm, offset, Math.min(BUFFER_SIZE, pcm.length - offset));
+        }
+        sink.close();
+    }
+
+    /**
+     * 每3秒里第1秒是音节状起伏的语音，其余是 -50dBFS 左右的背景噪声
+     */
+    private static byte[] speechAndSilence() {
+        Random random = new Random(5);
+        int rate = FORMAT.getSampleRate();
+        byte[] pcm = new byte[SECONDS * rate * 2];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            boolean speech = i / rate % 3 == 0;
+            double value = 100 * random.nextGaussian();
+            if (speech) {
+                //基频和共振峰，每秒4个音节
+                double syllable = Math.max(0, Math.sin(2 * Math.PI * 4 * i / rate));
+                value += 8000 * syllable * (Math.sin(2 * Math.PI * 150 * i / rate)
+                        + 0.5 * Math.sin(2 * Math.PI * 700 * i / rate));
+            }
+            short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    private static class CountingSink implements PcmSink {
+
+        long bytes;
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            bytes += length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
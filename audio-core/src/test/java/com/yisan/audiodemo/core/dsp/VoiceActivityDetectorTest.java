@@ -0,0 +1,111 @@
+package com.yisan.audiodemo.core.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    /**
+     * 10ms一段
+     */
+    private static final int FRAME_SAMPLES = SAMPLE_RATE / 100;
+
+    private final Random random = new Random(4);
+    private final byte[] frame = new byte[FRAME_SAMPLES * 2];
+    private long sampleIndex;
+
+    @Test
+    public void digitalSilenceIsNotSpeech() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(1);
+        assertEquals(0, countSpeech(vad, 100, -200, 0));
+    }
+
+    /**
+     * 背景噪声远高于初始噪声底时，噪声底要跟上来，不能一直判成语音
+     */
+    @Test
+    public void steadyNoiseBecomesSilence() {
+        float[] noiseLevels = {-45, -40, -30};
+        for (float level : noiseLevels) {
+            VoiceActivityDetector vad = new VoiceActivityDetector(1);
+            countSpeech(vad, 150, level, 0);
+            assertEquals("noise at " + level + "dB", 0, countSpeech(vad, 200, level, 0));
+            assertTrue(vad.getNoiseFloorDb() > level - 6);
+        }
+    }
+
+    /**
+     * 噪声里的语音段能检测出来，结束后经过拖尾回到静音
+     */
+    @Test
+    public void speechOverNoiseIsDetected() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(1);
+        countSpeech(vad, 300, -45, 0);
+        int speech = countSpeech(vad, 100, -45, -12);
+        assertTrue("speech frames: " + speech, speech >= 95);
+        assertTrue(vad.isSpeech());
+        //拖尾300ms之内仍然算语音
+        assertEquals(10, countSpeech(vad, 10, -45, 0));
+        countSpeech(vad, 30, -45, 0);
+        assertFalse(vad.isSpeech());
+        assertEquals(0, countSpeech(vad, 100, -45, 0));
+    }
+
+    /**
+     * 连续说话十几秒，字间有短停顿，噪声底不会涨到语音的电平上，停顿由拖尾盖住
+     * <p>
+     * 完全没有停顿的平稳音调和背景噪声分不开，会被最小值统计当成噪声，这是预期的。
+     */
+    @Test
+    public void longSpeechKeepsBeingDetected() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(1);
+        countSpeech(vad, 200, -50, 0);
+        int speech = 0;
+        for (int word = 0; word < 40; word++) {
+            speech += countSpeech(vad, 25, -50, -15);
+            speech += countSpeech(vad, 15, -50, 0);
+        }
+        assertTrue("speech frames: " + speech, speech >= 40 * 40 * 95 / 100);
+    }
+
+    @Test
+    public void resetForgetsNoiseFloor() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(1);
+        countSpeech(vad, 300, -30, 0);
+        float adapted = vad.getNoiseFloorDb();
+        vad.reset();
+        assertTrue(vad.getNoiseFloorDb() < adapted);
+        assertFalse(vad.isSpeech());
+    }
+
+    /**
+     * 处理 frames 段由噪声和音节状的音调组成的数据
+     *
+     * @param noiseDb 高斯白噪声的电平（dBFS）
+     * @param toneDb  音调的电平（dBFS），0表示没有音调
+     * @return 判为语音的段数
+     */
+    private int countSpeech(VoiceActivityDetector vad, int frames, float noiseDb, float toneDb) {
+        double noise = 32768 * Math.pow(10, noiseDb / 20);
+        double tone = toneDb == 0 ? 0 : 32768 * Math.sqrt(2) * Math.pow(10, toneDb / 20);
+        int speech = 0;
+        for (int f = 0; f < frames; f++) {
+            for (int i = 0; i < FRAME_SAMPLES; i++, sampleIndex++) {
+                double value = noise * random.nextGaussian()
+                        + tone * Math.sin(2 * Math.PI * 200 * sampleIndex / SAMPLE_RATE);
+                short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+                frame[2 * i] = (byte) sample;
+                frame[2 * i + 1] = (byte) (sample >> 8);
+            }
+            if (vad.process(frame, 0, frame.length)) {
+                speech++;
+            }
+        }
+        return speech;
+    }
+}
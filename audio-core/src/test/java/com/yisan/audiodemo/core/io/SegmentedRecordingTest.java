@@ -0,0 +1,215 @@
+package com.yisan.audiodemo.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import com.yisan.audiodemo.core.TestSignals;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedRecordingTest {
+
+    private static final AudioFormatSpec FORMAT = AudioFormatSpec.STEREO_16BIT_44100;
+    private static final int CHUNK_MILLIS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void finishedRecordingNeedsNoRecovery() throws IOException {
+        File directory = folder.newFolder("session");
+        byte[] pcm = record(directory, 250);
+        assertTrue(SegmentedRecording.isSession(directory));
+
+        SegmentedRecording recording = SegmentedRecording.open(directory);
+        assertFalse(recording.wasRecovered());
+        assertEquals(FORMAT, recording.getFormat());
+        assertEquals(3, recording.getChunks().size());
+        assertEquals(pcm.length, recording.getDataSize());
+        assertArrayEquals(pcm, merge(recording));
+    }
+
+    /**
+     * 进程在最后一个分段写到一半时被杀：分段只有占位文件头、结尾有半个采样帧，日志最后一行只写了一半
+     */
+    @Test
+    public void crashInLastChunkIsRecovered() throws IOException {
+        File directory = folder.newFolder("session");
+        byte[] pcm = record(directory, 250);
+        File journal = new File(directory, SegmentedWavWriter.JOURNAL_NAME);
+        String lines = readJournal(journal);
+        //去掉最后一个分段的 close 和 end，换成写了一半的行
+        int lastClose = lines.lastIndexOf("close 2 ");
+        writeJournal(journal, lines.substring(0, lastClose) + "clo");
+        File lastChunk = SegmentedWavWriter.chunkFile(directory, 2);
+        RandomAccessFile raf = new RandomAccessFile(lastChunk, "rw");
+        try {
+            raf.write(WavHeader.create(FORMAT, 0));
+            raf.seek(raf.length());
+            raf.write(new byte[3]);
+        } finally {
+            raf.close();
+        }
+
+        SegmentedRecording recording = SegmentedRecording.open(directory);
+        assertTrue(recording.wasRecovered());
+        assertEquals(3, recording.getChunks().size());
+        assertEquals(pcm.length, recording.getDataSize());
+        assertArrayEquals(pcm, merge(recording));
+        assertEquals(WavHeader.HEADER_SIZE + pcm.length - 2 * FORMAT.millisToBytes(CHUNK_MILLIS),
+                lastChunk.length());
+        assertTrue(readJournal(journal).endsWith("\nend\n"));
+
+        //修复后日志已经完整，再次打开不需要修复
+        SegmentedRecording reopened = SegmentedRecording.open(directory);
+        assertFalse(reopened.wasRecovered());
+        assertEquals(pcm.length, reopened.getDataSize());
+    }
+
+    /**
+     * 新分段的文件头都没写完就崩溃，丢掉这个分段，前面的分段完整保留
+     */
+    @Test
+    public void chunkWithoutHeaderIsDropped() throws IOException {
+        File directory = folder.newFolder("session");
+        byte[] pcm = record(directory, 250);
+        File journal = new File(directory, SegmentedWavWriter.JOURNAL_NAME);
+        String lines = readJournal(journal);
+        writeJournal(journal, lines.substring(0, lines.lastIndexOf("close 2 ")));
+        RandomAccessFile raf = new RandomAccessFile(SegmentedWavWriter.chunkFile(directory, 2), "rw");
+        try {
+            raf.setLength(WavHeader.HEADER_SIZE / 2);
+        } finally {
+            raf.close();
+        }
+
+        SegmentedRecording recording = SegmentedRecording.open(directory);
+        assertTrue(recording.wasRecovered());
+        assertEquals(2, recording.getChunks().size());
+        int kept = (int) (2 * FORMAT.millisToBytes(CHUNK_MILLIS));
+        assertArrayEquals(Arrays.copyOf(pcm, kept), merge(recording));
+    }
+
+    /**
+     * 分段切换之后、新分段打开之前崩溃，只需要补上 end
+     */
+    @Test
+    public void crashBetweenChunksKeepsAllClosedChunks() throws IOException {
+        File directory = folder.newFolder("session");
+        byte[] pcm = record(directory, 200);
+        File journal = new File(directory, SegmentedWavWriter.JOURNAL_NAME);
+        String lines = readJournal(journal);
+        writeJournal(journal, lines.substring(0, lines.lastIndexOf("end\n")));
+
+        SegmentedRecording recording = SegmentedRecording.open(directory);
+        assertTrue(recording.wasRecovered());
+        assertEquals(2, recording.getChunks().size());
+        assertArrayEquals(pcm, merge(recording));
+    }
+
+    @Test
+    public void deleteRemovesTheWholeSession() throws IOException {
+        File directory = folder.newFolder("session");
+        record(directory, 250);
+        SegmentedRecording.open(directory).delete();
+        assertFalse(directory.exists());
+    }
+
+    /**
+     * 删除中途崩溃留下的目录：日志已经删掉，剩下的分段不再被当成分段录音
+     */
+    @Test
+    public void chunksWithoutJournalAreNotASession() throws IOException {
+        File directory = folder.newFolder("session");
+        record(directory, 250);
+        assertTrue(new File(directory, SegmentedWavWriter.JOURNAL_NAME).delete());
+        assertTrue(SegmentedWavWriter.chunkFile(directory, 1).isFile());
+        assertFalse(SegmentedRecording.isSession(directory));
+    }
+
+    /**
+     * 日志里的分段不见了，合并失败，不留下临时文件
+     */
+    @Test
+    public void failedMergeLeavesNoTempFile() throws IOException {
+        File directory = folder.newFolder("session");
+        record(directory, 250);
+        SegmentedRecording recording = SegmentedRecording.open(directory);
+        assertTrue(SegmentedWavWriter.chunkFile(directory, 1).delete());
+        File merged = new File(folder.getRoot(), "merged.wav");
+        try {
+            recording.mergeTo(merged);
+            fail("merged a missing chunk");
+        } catch (IOException expected) {
+            //分段文件不存在
+        }
+        assertFalse(merged.exists());
+        assertFalse(new File(merged.getPath() + ".tmp").exists());
+    }
+
+    /**
+     * 写 millis 毫秒的数据并正常关闭
+     *
+     * @return 写入的数据
+     */
+    private static byte[] record(File directory, int millis) throws IOException {
+        byte[] pcm = TestSignals.pcm(FORMAT, FORMAT.getSampleRate() * millis / 1000, 9);
+        SegmentedWavWriter writer = new SegmentedWavWriter(directory, FORMAT, CHUNK_MILLIS, null);
+        try {
+            //每次写入的长度和分段长度对不齐
+            for (int offset = 0; offset < pcm.length; offset += 3000) {
+                writer.write(pcm, offset, Math.min(3000, pcm.length - offset));
+            }
+        } finally {
+            writer.close();
+        }
+        return pcm;
+    }
+
+    private byte[] merge(SegmentedRecording recording) throws IOException {
+        File merged = new File(folder.getRoot(), "merged.wav");
+        recording.mergeTo(merged);
+        RandomAccessFile raf = new RandomAccessFile(merged, "r");
+        try {
+            WavHeader header = WavHeader.read(raf.getChannel());
+            assertEquals(FORMAT, header.getFormat());
+            byte[] data = new byte[(int) header.getDataSize()];
+            raf.seek(header.getDataOffset());
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+            merged.delete();
+        }
+    }
+
+    private static String readJournal(File journal) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(journal, "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return new String(data, SegmentedWavWriter.UTF_8);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeJournal(File journal, String lines) throws IOException {
+        FileOutputStream out = new FileOutputStream(journal);
+        try {
+            out.write(lines.getBytes(SegmentedWavWriter.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.yisan.audiodemo.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.yisan.audiodemo.core.AudioFormatSpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavHeaderTest {
+
+    /**
+     * 超过4GB的数据，RIFF的长度字段装不下
+     */
+    private static final long RF64_DATA_SIZE = 5L * 1024 * 1024 * 1024 + 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void riffHeaderRoundTrip() throws IOException {
+        AudioFormatSpec format = AudioFormatSpec.STEREO_16BIT_44100;
+        File file = writeWav(format, 4000, 4000);
+        ByteBuffer header = readHeader(file);
+        assertEquals("RIFF", tag(header, 0));
+        assertEquals(WavHeader.HEADER_SIZE - 8 + 4000, header.getInt(4));
+        assertEquals("JUNK", tag(header, 12));
+        assertEquals("data", tag(header, 72));
+        assertEquals(4000, header.getInt(76));
+
+        WavHeader wav = read(file);
+        assertEquals(format, wav.getFormat());
+        assertEquals(WavHeader.HEADER_SIZE, wav.getDataOffset());
+        assertEquals(4000, wav.getDataSize());
+    }
+
+    @Test
+    public void floatFormatRoundTrip() throws IOException {
+        AudioFormatSpec format = AudioFormatSpec.pcmFloat(48000, 2);
+        WavHeader wav = read(writeWav(format, 800, 800));
+        assertEquals(format, wav.getFormat());
+        assertTrue(wav.getFormat().isFloat());
+        assertEquals(800, wav.getDataSize());
+    }
+
+    /**
+     * 奇数长度的data块后面有一个填充字节，RIFF长度要算上
+     */
+    @Test
+    public void oddDataSizeIsPadded() throws IOException {
+        AudioFormatSpec format = new AudioFormatSpec(8000, 1, 8);
+        ByteBuffer header = ByteBuffer.wrap(WavHeader.create(format, 101)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(WavHeader.HEADER_SIZE - 8 + 101 + 1, header.getInt(4));
+        assertEquals(101, header.getInt(76));
+    }
+
+    /**
+     * 录音中途崩溃留下的占位头：按文件实际长度计算，去掉不完整的帧
+     */
+    @Test
+    public void placeholderHeaderUsesFileLength() throws IOException {
+        AudioFormatSpec format = AudioFormatSpec.STEREO_16BIT_44100;
+        WavHeader wav = read(writeWav(format, 0, 4003));
+        assertEquals(4000, wav.getDataSize());
+    }
+
+    /**
+     * 超过4GB时改成RF64，长度写在ds64块里，文件头长度不变
+     */
+    @Test
+    public void rf64HeaderRoundTrip() throws IOException {
+        AudioFormatSpec format = AudioFormatSpec.MONO_16BIT_44100;
+        byte[] bytes = WavHeader.create(format, RF64_DATA_SIZE);
+        assertEquals(WavHeader.HEADER_SIZE, bytes.length);
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RF64", tag(header, 0));
+        assertEquals(-1, header.getInt(4));
+        assertEquals("ds64", tag(header, 12));
+        assertEquals(WavHeader.HEADER_SIZE - 8 + RF64_DATA_SIZE, header.getLong(20));
+        assertEquals(RF64_DATA_SIZE, header.getLong(28));
+        assertEquals(RF64_DATA_SIZE / format.getBytesPerFrame(), header.getLong(36));
+        assertEquals(-1, header.getInt(76));
+
+        //稀疏文件，不会真的占用5GB
+        File file = folder.newFile("rf64.wav");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(bytes);
+            raf.setLength(WavHeader.HEADER_SIZE + RF64_DATA_SIZE);
+            assertTrue(WavHeader.isWav(raf.getChannel()));
+            WavHeader wav = WavHeader.read(raf.getChannel());
+            assertEquals(format, wav.getFormat());
+            assertEquals(WavHeader.HEADER_SIZE, wav.getDataOffset());
+            assertEquals(RF64_DATA_SIZE, wav.getDataSize());
+        } finally {
+            raf.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * 正好装得下的最大长度仍然是RIFF
+     */
+    @Test
+    public void largestRiffStaysRiff() {
+        long dataSize = 0xFFFFFFFFL - (WavHeader.HEADER_SIZE - 8) - 1;
+        ByteBuffer header = ByteBuffer.wrap(WavHeader.create(AudioFormatSpec.MONO_16BIT_44100, dataSize))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", tag(header, 0));
+        assertEquals(dataSize, header.getInt(76) & 0xFFFFFFFFL);
+        header = ByteBuffer.wrap(WavHeader.create(AudioFormatSpec.MONO_16BIT_44100, dataSize + 2))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RF64", tag(header, 0));
+    }
+
+    @Test
+    public void notWav() throws IOException {
+        File file = folder.newFile("not.wav");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(new byte[64]);
+            assertFalse(WavHeader.isWav(raf.getChannel()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param headerDataSize 文件头里记录的长度
+     * @param dataSize       实际写入的数据长度
+     */
+    private File writeWav(AudioFormatSpec format, long headerDataSize, int dataSize) throws IOException {
+        File file = folder.newFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(WavHeader.create(format, headerDataSize));
+            raf.write(new byte[dataSize]);
+        } finally {
+            raf.close();
+        }
+        return file;
+    }
+
+    private static WavHeader read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return WavHeader.read(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer readHeader(File file) throws IOException {
+        byte[] bytes = new byte[WavHeader.HEADER_SIZE];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String tag(ByteBuffer buffer, int offset) {
+        char[] tag = new char[4];
+        for (int i = 0; i < 4; i++) {
+            tag[i] = (char) buffer.get(offset + i);
+        }
+        return new String(tag);
+    }
+}
@@ -0,0 +1,227 @@
+package com.yisan.audiodemo.core.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HttpChunkTransportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private UploadHandler handler;
+    private HttpChunkTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new UploadHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/upload", handler);
+        server.start();
+        transport = new HttpChunkTransport(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/upload"));
+        transport.setHeader("X-Audio-Format", "pcm;rate=44100");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void queryBeforeAnyDataIsZero() throws IOException {
+        assertEquals(0, transport.queryOffset());
+    }
+
+    @Test
+    public void uploadReturnsServerOffset() throws IOException {
+        byte[] data = data(5000);
+        assertEquals(3000, transport.upload(0, data, 0, 3000, false));
+        assertEquals(3000, transport.queryOffset());
+        assertEquals(5000, transport.upload(3000, data, 3000, 2000, true));
+
+        assertArrayEquals(data, handler.received());
+        assertTrue(handler.complete);
+        assertEquals("pcm;rate=44100", handler.lastFormat);
+    }
+
+    /**
+     * 起始位置和服务端不一致时，409带回服务端的位置，调用方从那里继续
+     */
+    @Test
+    public void conflictReturnsServerOffset() throws IOException {
+        byte[] data = data(3000);
+        transport.upload(0, data, 0, 2000, false);
+        assertEquals(2000, transport.upload(1000, data, 1000, 1000, false));
+        assertEquals(2000, handler.received().length);
+    }
+
+    @Test
+    public void serverErrorIsRetryable() throws IOException {
+        handler.failures = 1;
+        handler.failureCode = 503;
+        try {
+            transport.upload(0, data(100), 0, 100, false);
+            fail();
+        } catch (UploadException e) {
+            assertEquals(503, e.getStatusCode());
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(100, transport.upload(0, data(100), 0, 100, false));
+    }
+
+    @Test
+    public void clientErrorIsNotRetryable() throws IOException {
+        handler.failures = 1;
+        handler.failureCode = 403;
+        try {
+            transport.upload(0, data(100), 0, 100, false);
+            fail();
+        } catch (UploadException e) {
+            assertEquals(403, e.getStatusCode());
+            assertFalse(e.isRetryable());
+        }
+    }
+
+    @Test
+    public void conflictWithoutOffsetIsRetryable() throws IOException {
+        handler.omitOffsetOnConflict = true;
+        transport.upload(0, data(100), 0, 100, false);
+        try {
+            transport.upload(0, data(100), 0, 100, false);
+            fail();
+        } catch (UploadException e) {
+            assertEquals(409, e.getStatusCode());
+            assertTrue(e.isRetryable());
+        }
+    }
+
+    /**
+     * 边录边上传走真正的HTTP：中途503一次，重试前用HEAD对齐位置，最后数据完整
+     */
+    @Test
+    public void streamingUploadSurvivesServerError() throws Exception {
+        handler.failAtRequest = 3;
+        handler.failureCode = 503;
+        StreamingUploadSink sink = new StreamingUploadSink(transport, 1000, 8,
+                new File(folder.getRoot(), "upload.spool"), null);
+        byte[] data = data(6500);
+        for (int offset = 0; offset < data.length; offset += 500) {
+            sink.write(data, offset, Math.min(500, data.length - offset));
+            Thread.sleep(2);
+        }
+        sink.close();
+
+        assertTrue(sink.awaitFinished(10, TimeUnit.SECONDS));
+        assertNull(sink.getFailure());
+        assertEquals(1, sink.getRetryCount());
+        assertArrayEquals(data, handler.received());
+        assertTrue(handler.complete);
+        assertTrue(handler.heads >= 1);
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * 按 {@link HttpChunkTransport} 的协议拼接数据的服务端
+     */
+    private static class UploadHandler implements HttpHandler {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[4096];
+        volatile boolean complete;
+        volatile String lastFormat;
+        volatile int heads;
+        volatile int puts;
+        /**
+         * 接下来几个PUT直接返回 failureCode
+         */
+        volatile int failures;
+        /**
+         * 第几个PUT返回 failureCode，从1开始
+         */
+        volatile int failAtRequest;
+        volatile int failureCode;
+        volatile boolean omitOffsetOnConflict;
+
+        synchronized byte[] received() {
+            return data.toByteArray();
+        }
+
+        @Override
+        public synchronized void handle(HttpExchange exchange) throws IOException {
+            try {
+                lastFormat = exchange.getRequestHeaders().getFirst("X-Audio-Format");
+                //HEAD也要读一遍请求体，否则HttpServer不会复用这个连接
+                byte[] body = readBody(exchange.getRequestBody());
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    heads++;
+                    if (data.size() == 0) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        exchange.getResponseHeaders().set(HttpChunkTransport.HEADER_OFFSET,
+                                Integer.toString(data.size()));
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                    return;
+                }
+                puts++;
+                if (failures > 0 || puts == failAtRequest) {
+                    failures = Math.max(0, failures - 1);
+                    exchange.sendResponseHeaders(failureCode, -1);
+                    return;
+                }
+                long offset = Long.parseLong(exchange.getRequestHeaders().getFirst(HttpChunkTransport.HEADER_OFFSET));
+                if (offset != data.size()) {
+                    if (!omitOffsetOnConflict) {
+                        exchange.getResponseHeaders().set(HttpChunkTransport.HEADER_OFFSET,
+                                Integer.toString(data.size()));
+                    }
+                    exchange.sendResponseHeaders(409, -1);
+                    return;
+                }
+                data.write(body, 0, body.length);
+                if ("1".equals(exchange.getRequestHeaders().getFirst(HttpChunkTransport.HEADER_COMPLETE))) {
+                    complete = true;
+                }
+                exchange.getResponseHeaders().set(HttpChunkTransport.HEADER_OFFSET, Integer.toString(data.size()));
+                exchange.sendResponseHeaders(204, -1);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private byte[] readBody(InputStream in) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return body.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.yisan.audiodemo.core.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamingUploadSinkTest {
+
+    private static final int CHUNK = 1000;
+    private static final int QUEUE = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dataArrivesInOrderAndCompletes() throws Exception {
+        FakeServer server = new FakeServer();
+        StreamingUploadSink sink = sink(server);
+        byte[] data = data(10500);
+        //按采集的节奏写入，一次性写满队列会溢出
+        write(sink, data, 300, 1);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertNull(sink.getFailure());
+        assertArrayEquals(data, server.received());
+        assertTrue(server.complete);
+        //最后一块已经发出时才关闭，会多一个空的结束请求
+        assertTrue(server.uploads.size() == 11 || server.uploads.size() == 12);
+        assertEquals(500, server.uploads.get(10).length);
+        assertEquals(data.length, sink.getAcknowledgedBytes());
+        assertEquals(0, sink.getBacklogBytes());
+        assertEquals(0, sink.getRetryCount());
+    }
+
+    /**
+     * 数据正好是整块、关闭时最后一块已经确认，补一个空的结束请求
+     */
+    @Test
+    public void closeSendsEmptyCompletionRequest() throws Exception {
+        FakeServer server = new FakeServer();
+        StreamingUploadSink sink = sink(server);
+        byte[] data = data(3 * CHUNK);
+        write(sink, data, CHUNK, 0);
+        waitFor(sink, data.length);
+        assertFalse(server.complete);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertArrayEquals(data, server.received());
+        Upload last = server.uploads.get(server.uploads.size() - 1);
+        assertEquals(0, last.length);
+        assertTrue(last.last);
+        assertEquals(3 * CHUNK, last.offset);
+        assertEquals(4, server.uploads.size());
+    }
+
+    /**
+     * 服务端只收下了一部分，从确认的位置继续发剩下的，不算失败
+     */
+    @Test
+    public void shortAckResumesFromAcknowledgedOffset() throws Exception {
+        FakeServer server = new FakeServer();
+        server.acceptLimit = 300;
+        StreamingUploadSink sink = sink(server);
+        byte[] data = data(2 * CHUNK + 100);
+        write(sink, data, CHUNK, 0);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertNull(sink.getFailure());
+        assertArrayEquals(data, server.received());
+        assertEquals(300, server.uploads.get(1).offset);
+        assertEquals(CHUNK - 300, server.uploads.get(1).length);
+        assertEquals(0, sink.getRetryCount());
+    }
+
+    /**
+     * 服务端收到了但响应丢了：重试前先查询位置，不会重复发送
+     */
+    @Test
+    public void lostResponseIsResyncedBeforeRetry() throws Exception {
+        FakeServer server = new FakeServer();
+        server.failAfterStoring = 1;
+        StreamingUploadSink sink = sink(server);
+        byte[] data = data(2 * CHUNK + 100);
+        write(sink, data, CHUNK, 0);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertNull(sink.getFailure());
+        assertArrayEquals(data, server.received());
+        assertEquals(1, server.queries);
+        assertEquals(1, sink.getRetryCount());
+        //第一块确认后直接发第二块
+        assertEquals(CHUNK, server.uploads.get(1).offset);
+    }
+
+    /**
+     * 服务端位置在已经丢掉的数据之前，没有办法补发，放弃上传
+     */
+    @Test
+    public void serverBehindAcknowledgedDataFails() throws Exception {
+        FakeServer server = new FakeServer();
+        StreamingUploadSink sink = sink(server);
+        write(sink, data(CHUNK), CHUNK, 0);
+        waitFor(sink, CHUNK);
+        server.reset();
+        write(sink, data(CHUNK), CHUNK, 0);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertTrue(sink.getFailure() instanceof UploadException);
+        assertFalse(((UploadException) sink.getFailure()).isRetryable());
+    }
+
+    @Test
+    public void failuresBackOffExponentially() throws Exception {
+        FakeServer server = new FakeServer();
+        server.failBeforeStoring = 2;
+        StreamingUploadSink sink = sink(server);
+        byte[] data = data(CHUNK + 10);
+        long start = System.nanoTime();
+        write(sink, data, CHUNK + 10, 0);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertNull(sink.getFailure());
+        assertArrayEquals(data, server.received());
+        assertEquals(2, sink.getRetryCount());
+        assertEquals(2, server.queries);
+        //第一次等250~500ms，第二次500~1000ms
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis >= 750);
+    }
+
+    @Test
+    public void fatalErrorIsNotRetried() throws Exception {
+        final UploadException fatal = new UploadException("http 400", 400, false);
+        FakeServer server = new FakeServer() {
+            @Override
+            public long upload(long offset, byte[] buffer, int bufferOffset, int length, boolean last)
+                    throws IOException {
+                throw fatal;
+            }
+        };
+        final List<IOException> reported = new ArrayList<>();
+        StreamingUploadSink sink = new StreamingUploadSink(server, CHUNK, QUEUE, spool(),
+                new StreamingUploadSink.Listener() {
+                    @Override
+                    public void onUploadFinished(StreamingUploadSink sink, IOException error) {
+                        reported.add(error);
+                    }
+                });
+        write(sink, data(CHUNK), CHUNK, 0);
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertSame(fatal, sink.getFailure());
+        assertEquals(0, sink.getRetryCount());
+        //监听器在结束标记之后回调
+        Thread.sleep(50);
+        assertEquals(1, reported.size());
+        assertSame(fatal, reported.get(0));
+        //上传放弃之后录音照常写入，数据直接丢掉
+        write(sink, data(CHUNK), CHUNK, 0);
+        sink.close();
+    }
+
+    /**
+     * 网络不通时排队的块转存到文件，内存队列不会写满，恢复后按顺序发出
+     */
+    @Test
+    public void backlogSpillsToDiskAndKeepsOrder() throws Exception {
+        FakeServer server = new FakeServer();
+        server.failBeforeStoring = 1;
+        File spool = spool();
+        StreamingUploadSink sink = new StreamingUploadSink(server, CHUNK, QUEUE, spool, null);
+        byte[] data = data(30 * CHUNK);
+        //第一块失败后进入退避，退避期间10ms一块
+        write(sink, data, CHUNK, 10);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertNull(sink.getFailure());
+        assertTrue("spilled " + sink.getSpilledBytes(), sink.getSpilledBytes() >= 5 * CHUNK);
+        assertEquals(0, sink.getOverrunCount());
+        assertArrayEquals(data, server.received());
+        assertFalse(spool.exists());
+    }
+
+    @Test
+    public void lagCoversCaptureToAcknowledgement() throws Exception {
+        FakeServer server = new FakeServer();
+        server.delayMillis = 30;
+        StreamingUploadSink sink = sink(server);
+        write(sink, data(5 * CHUNK + 1), CHUNK, 0);
+        sink.close();
+
+        assertTrue(sink.awaitFinished(5, TimeUnit.SECONDS));
+        assertEquals(6, sink.getAcknowledgedChunkCount());
+        assertTrue(sink.getLastLagMillis() >= 30);
+        assertTrue(sink.getMeanLagMillis() >= 30);
+        assertTrue(sink.getMaxLagMillis() >= sink.getMeanLagMillis());
+        //排在后面的块要等前面的请求，延迟比一次请求长
+        assertTrue(sink.getMaxLagMillis() >= 60);
+    }
+
+    private StreamingUploadSink sink(ChunkTransport transport) {
+        return new StreamingUploadSink(transport, CHUNK, QUEUE, spool(), null);
+    }
+
+    private File spool() {
+        return new File(folder.getRoot(), "upload.spool");
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static void write(StreamingUploadSink sink, byte[] data, int step, long sleepMillis)
+            throws IOException, InterruptedException {
+        for (int offset = 0; offset < data.length; offset += step) {
+            sink.write(data, offset, Math.min(step, data.length - offset));
+            if (sleepMillis > 0) {
+                Thread.sleep(sleepMillis);
+            }
+        }
+    }
+
+    private static void waitFor(StreamingUploadSink sink, long acknowledged) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sink.getAcknowledgedBytes() < acknowledged && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(acknowledged, sink.getAcknowledgedBytes());
+    }
+
+    private static class Upload {
+
+        final long offset;
+        final int length;
+        final boolean last;
+
+        Upload(long offset, int length, boolean last) {
+            this.offset = offset;
+            this.length = length;
+            this.last = last;
+        }
+    }
+
+    /**
+     * 和真正的服务端一样按偏移量拼接，起始位置不一致时返回服务端的位置（HTTP 409）
+     */
+    private static class FakeServer implements ChunkTransport {
+
+        final List<Upload> uploads = new ArrayList<>();
+        private ByteArrayOutputStream data = new ByteArrayOutputStream();
+        volatile boolean complete;
+        volatile int queries;
+        /**
+         * 接下来几次请求在收下数据之前失败
+         */
+        volatile int failBeforeStoring;
+        /**
+         * 接下来几次请求收下数据之后失败，模拟响应丢失
+         */
+        volatile int failAfterStoring;
+        /**
+         * 第一次请求最多收下的字节数
+         */
+        volatile int acceptLimit = Integer.MAX_VALUE;
+        volatile long delayMillis;
+
+        synchronized byte[] received() {
+            return data.toByteArray();
+        }
+
+        synchronized void reset() {
+            data = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public synchronized long queryOffset() {
+            queries++;
+            return data.size();
+        }
+
+        @Override
+        public synchronized long upload(long offset, byte[] buffer, int bufferOffset, int length, boolean last)
+                throws IOException {
+            uploads.add(new Upload(offset, length, last));
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failBeforeStoring > 0) {
+                failBeforeStoring--;
+                throw new IOException("connection reset");
+            }
+            if (offset != data.size()) {
+                return data.size();
+            }
+            int accepted = Math.min(length, acceptLimit);
+            acceptLimit = Integer.MAX_VALUE;
+            data.write(buffer, bufferOffset, accepted);
+            if (last && accepted == length) {
+                complete = true;
+            }
+            if (failAfterStoring > 0) {
+                failAfterStoring--;
+                throw new IOException("read timed out");
+            }
+            return data.size();
+        }
+    }
+}